@@ -0,0 +1,229 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import fiji.plugin.trackmate.helper.TrackingMetricsType.MetricValue;
+import fiji.plugin.trackmate.helper.TrackingMetricsType.MetricValueOptimum;
+
+/**
+ * Index of the best lines of a metrics table, for each detector and tracker
+ * combination and each metric, updated as lines are added.
+ * <p>
+ * For each combination, including the ones where the detector, the tracker or
+ * both are any (<code>null</code>), the index keeps the
+ * {@value #RANKING_SIZE} best lines for each metric, best first. Values are
+ * compared as primitives. <code>NaN</code> values rank after all the others,
+ * and ties are ranked by line order.
+ */
+final class BestMetricsIndex
+{
+
+	/**
+	 * Number of best lines kept for each combination and metric.
+	 */
+	static final int RANKING_SIZE = 10;
+
+	private final TrackingMetricsType type;
+
+	private final Map< List< String >, Ranking[] > rankings;
+
+	/*
+	 * Rankings of the combinations of the last line added. Consecutive lines
+	 * usually have the same detector and tracker.
+	 */
+
+	private String lastDetector;
+
+	private String lastTracker;
+
+	private Ranking[][] lastRankings;
+
+	BestMetricsIndex( final TrackingMetricsType type )
+	{
+		this.type = type;
+		this.rankings = new HashMap<>();
+	}
+
+	/**
+	 * Adds a line to the index.
+	 * 
+	 * @param line
+	 *            the line index in the table.
+	 * @param detector
+	 *            the detector of the line.
+	 * @param tracker
+	 *            the tracker of the line.
+	 * @param values
+	 *            the metric values of the line, in the order of the metrics of
+	 *            the type.
+	 */
+	void add( final int line, final String detector, final String tracker, final double[] values )
+	{
+		if ( lastRankings == null || !Objects.equals( detector, lastDetector ) || !Objects.equals( tracker, lastTracker ) )
+		{
+			lastDetector = detector;
+			lastTracker = tracker;
+			lastRankings = new Ranking[][] {
+					rankings( Arrays.asList( detector, tracker ) ),
+					rankings( Arrays.asList( detector, null ) ),
+					rankings( Arrays.asList( null, tracker ) ),
+					rankings( Arrays.asList( null, null ) ) };
+		}
+		for ( final Ranking[] r : lastRankings )
+			for ( int i = 0; i < r.length; i++ )
+				r[ i ].offer( values[ i ], line );
+	}
+
+	private Ranking[] rankings( final List< String > combination )
+	{
+		Ranking[] r = rankings.get( combination );
+		if ( r == null )
+		{
+			final List< MetricValue > metrics = type.metrics();
+			r = new Ranking[ metrics.size() ];
+			for ( int i = 0; i < r.length; i++ )
+				r[ i ] = new Ranking( metrics.get( i ).optimumType );
+			rankings.put( combination, r );
+		}
+		return r;
+	}
+
+	/**
+	 * Returns the best lines for the specified combination and metric.
+	 * 
+	 * @param detector
+	 *            the detector, or <code>null</code> for any detector.
+	 * @param tracker
+	 *            the tracker, or <code>null</code> for any tracker.
+	 * @param key
+	 *            the metric.
+	 * @return a new array of line indices, best first. Empty if no line
+	 *         matches.
+	 */
+	int[] top( final String detector, final String tracker, final MetricValue key )
+	{
+		final Ranking[] r = rankings.get( Arrays.asList( detector, tracker ) );
+		final int id = type.id( key );
+		if ( r == null || id < 0 )
+			return new int[ 0 ];
+		return Arrays.copyOf( r[ id ].lines, r[ id ].size );
+	}
+
+	/**
+	 * Returns the best line for the specified combination and metric.
+	 * 
+	 * @return the line index, or -1 if no line matches.
+	 */
+	int best( final String detector, final String tracker, final MetricValue key )
+	{
+		final Ranking[] r = rankings.get( Arrays.asList( detector, tracker ) );
+		final int id = type.id( key );
+		if ( r == null || id < 0 || r[ id ].size == 0 )
+			return -1;
+		return r[ id ].lines[ 0 ];
+	}
+
+	/**
+	 * Returns a copy of this index, that is not affected by lines added to
+	 * this index afterwards.
+	 */
+	BestMetricsIndex copy()
+	{
+		final BestMetricsIndex copy = new BestMetricsIndex( type );
+		for ( final Map.Entry< List< String >, Ranking[] > entry : rankings.entrySet() )
+		{
+			final Ranking[] r = entry.getValue();
+			final Ranking[] rc = new Ranking[ r.length ];
+			for ( int i = 0; i < r.length; i++ )
+				rc[ i ] = r[ i ].copy();
+			copy.rankings.put( entry.getKey(), rc );
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns <code>true</code> if the first value is better than the
+	 * second one. <code>NaN</code> is worse than any other value.
+	 */
+	static boolean isBetter( final MetricValueOptimum optimum, final double v1, final double v2 )
+	{
+		if ( Double.isNaN( v1 ) )
+			return false;
+		if ( Double.isNaN( v2 ) )
+			return true;
+		return optimum.isBetterThan( v1, v2 );
+	}
+
+	/**
+	 * The best lines for one metric, sorted best first.
+	 */
+	private static final class Ranking
+	{
+
+		private final MetricValueOptimum optimum;
+
+		private final double[] values;
+
+		private final int[] lines;
+
+		private int size;
+
+		private Ranking( final MetricValueOptimum optimum )
+		{
+			this.optimum = optimum;
+			this.values = new double[ RANKING_SIZE ];
+			this.lines = new int[ RANKING_SIZE ];
+		}
+
+		private void offer( final double value, final int line )
+		{
+			int pos = size;
+			while ( pos > 0 && isBetter( optimum, value, values[ pos - 1 ] ) )
+				pos--;
+			if ( pos >= RANKING_SIZE )
+				return;
+
+			final int n = Math.min( size, RANKING_SIZE - 1 ) - pos;
+			System.arraycopy( values, pos, values, pos + 1, n );
+			System.arraycopy( lines, pos, lines, pos + 1, n );
+			values[ pos ] = value;
+			lines[ pos ] = line;
+			if ( size < RANKING_SIZE )
+				size++;
+		}
+
+		private Ranking copy()
+		{
+			final Ranking copy = new Ranking( optimum );
+			System.arraycopy( values, 0, copy.values, 0, size );
+			System.arraycopy( lines, 0, copy.lines, 0, size );
+			copy.size = size;
+			return copy;
+		}
+	}
+}
@@ -28,18 +28,26 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.scijava.Cancelable;
+import org.scijava.listeners.Listeners;
 
 import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.TrackMate;
+import fiji.plugin.trackmate.helper.SweepEvent.Outcome;
 import fiji.plugin.trackmate.helper.ctc.CTCTrackingMetricsType;
+import fiji.plugin.trackmate.helper.model.AbstractSweepModel;
 import fiji.plugin.trackmate.helper.model.ParameterSweepModel;
 import fiji.plugin.trackmate.helper.model.ParameterSweepModelIO;
 import fiji.plugin.trackmate.helper.model.detector.DetectorSweepModel;
 import fiji.plugin.trackmate.helper.model.tracker.TrackerSweepModel;
+import fiji.plugin.trackmate.helper.spt.SPTMetricsRunner;
 import fiji.plugin.trackmate.helper.spt.SPTTrackingMetricsType;
 import fiji.plugin.trackmate.io.TmXmlWriter;
 import fiji.plugin.trackmate.util.TMUtils;
@@ -50,6 +58,46 @@ import net.imglib2.util.ValuePair;
 public class HelperRunner implements Runnable, Cancelable
 {
 
+	/**
+	 * Listener notified of the progress of a parameter sweep, on the runner
+	 * thread. Listeners should return quickly, since the sweep waits for
+	 * them.
+	 */
+	public interface SweepListener
+	{
+		/**
+		 * Called when a sweep starts, before its first test.
+		 * 
+		 * @param detectorCounts
+		 *            the number of settings of each active detector, by
+		 *            detector key, in the order they are tested.
+		 * @param trackerCounts
+		 *            the number of settings of each active tracker, by tracker
+		 *            key, in the order they are tested for each detector
+		 *            settings.
+		 */
+		public void sweepStarted( Map< String, Long > detectorCounts, Map< String, Long > trackerCounts );
+
+		/**
+		 * Called after each test, whether it was executed or not.
+		 * 
+		 * @param event
+		 *            what happened to the test.
+		 */
+		public void tested( SweepEvent event );
+
+		/**
+		 * Called when a sweep ends, completed, canceled or failed.
+		 */
+		public void sweepFinished();
+	}
+
+	/**
+	 * Name of the file, in the save folder, the full log of the runs is
+	 * written to.
+	 */
+	public static final String LOG_FILE_NAME = "TrackMate-Helper.log";
+
 	private final String gtPath;
 
 	private final ImagePlus imp;
@@ -62,6 +110,11 @@ public class HelperRunner implements Runnable, Cancelable
 
 	private Logger batchLogger;
 
+	/**
+	 * The logger of the current run, which also writes to the log file.
+	 */
+	private volatile Logger runLogger;
+
 	private Logger trackmateLogger;
 
 	private final TrackingMetricsType type;
@@ -72,8 +125,12 @@ public class HelperRunner implements Runnable, Cancelable
 
 	private boolean saveTrackMateFiles;
 
+	private int sptScreening;
+
 	private final String modelPath;
 
+	private final Listeners.List< SweepListener > sweepListeners = new Listeners.SynchronizedList<>();
+
 	private HelperRunner(
 			final TrackingMetricsType type,
 			final String gtPath,
@@ -84,7 +141,8 @@ public class HelperRunner implements Runnable, Cancelable
 			final String savePath,
 			final Logger batchLogger,
 			final Logger trackmateLogger,
-			final boolean saveTrackMateFiles )
+			final boolean saveTrackMateFiles,
+			final int sptScreening )
 	{
 		this.type = type;
 		this.gtPath = gtPath;
@@ -96,6 +154,7 @@ public class HelperRunner implements Runnable, Cancelable
 		this.batchLogger = batchLogger;
 		this.trackmateLogger = trackmateLogger;
 		this.saveTrackMateFiles = saveTrackMateFiles;
+		this.sptScreening = sptScreening;
 		this.crawler = new ResultsCrawler( type, batchLogger );
 		crawler.reset();
 		try
@@ -215,20 +274,83 @@ public class HelperRunner implements Runnable, Cancelable
 		this.saveTrackMateFiles = saveTrackMateFiles;
 	}
 
+	/**
+	 * Sets the screening mode of the SPT metrics. Only affects the SPT
+	 * metrics type.
+	 * 
+	 * @param nTopCandidates
+	 *            the number of best tests to score exactly, or 0 to score all
+	 *            the tests exactly.
+	 * @see SPTMetricsRunner#setScreening(int)
+	 */
+	public void setSptScreening( final int nTopCandidates )
+	{
+		if ( nTopCandidates < 0 )
+			throw new IllegalArgumentException( "The number of top candidates must be positive or zero." );
+		this.sptScreening = nTopCandidates;
+	}
+
+	/**
+	 * Exposes the listeners notified of the progress of the runs.
+	 * 
+	 * @return the listeners.
+	 */
+	public Listeners.List< SweepListener > sweepListeners()
+	{
+		return sweepListeners;
+	}
+
 	@Override
 	public void run()
+	{
+		final RotatingFileLogger logger = new RotatingFileLogger( new File( savePath, LOG_FILE_NAME ), batchLogger );
+		runLogger = logger;
+		try
+		{
+			run( logger );
+		}
+		finally
+		{
+			runLogger = null;
+			logger.close();
+			for ( final SweepListener l : sweepListeners.list )
+				l.sweepFinished();
+		}
+	}
+
+	private void run( final Logger logger )
 	{
 		cancelReason = null;
-		final int count = model.count();
+		final Settings countBase = new Settings( null );
+		final Map< String, Long > detectorCounts;
+		final Map< String, Long > trackerCounts;
+		final long nTrackerSettings;
+		final long count;
+		try
+		{
+			detectorCounts = count( model.getActiveDetectors(), countBase, s -> s.detectorFactory.getKey() );
+			trackerCounts = count( model.getActiveTracker(), countBase, s -> s.trackerFactory.getKey() );
+			nTrackerSettings = sum( trackerCounts );
+			count = Math.multiplyExact( sum( detectorCounts ), nTrackerSettings );
+		}
+		catch ( final ArithmeticException e )
+		{
+			logger.error( "Too many settings to test in this parameter sweep.\n" );
+			return;
+		}
+		for ( final SweepListener l : sweepListeners.list )
+			l.sweepStarted( detectorCounts, trackerCounts );
 
 		final MetricsRunner runner = type.runner( gtPath, savePath );
-		runner.setBatchLogger( batchLogger );
+		runner.setBatchLogger( logger );
 		runner.setTrackmateLogger( trackmateLogger );
+		if ( runner instanceof SPTMetricsRunner )
+			( ( SPTMetricsRunner ) runner ).setScreening( sptScreening );
 
 		final Settings base = new Settings( imp );
 		base.setSpotFilters( model.getSpotFilters() );
 		base.setTrackFilters( model.getTrackFilters() );
-		int progress = 0;
+		long progress = 0;
 
 		DETECTOR_SETTINGS_LOOP: for ( final DetectorSweepModel detectorModel : model.getActiveDetectors() )
 		{
@@ -240,8 +362,10 @@ public class HelperRunner implements Runnable, Cancelable
 					return;
 
 				boolean detectionDone = false;
+				boolean detectionReported = false;
 				TrackMate trackmate = null;
 				double detectionTiming = Double.NaN;
+				final long detectionStart = progress;
 
 				for ( final TrackerSweepModel trackerModel : model.getActiveTracker() )
 				{
@@ -252,24 +376,21 @@ public class HelperRunner implements Runnable, Cancelable
 						if ( isCanceled() )
 							return;
 
-						batchLogger.setProgress( ( double ) ++progress / count );
-						batchLogger.log( "________________________________________\n" );
+						logger.setProgress( ( double ) ++progress / count );
 
 						if ( crawler.isSettingsPresent( dts ) )
 						{
-							batchLogger.log( "Settings for detector " + dts.detectorFactory.getKey() + " with parameters:\n" );
-							batchLogger.log( TMUtils.echoMap( dts.detectorSettings, 2 ) );
-							batchLogger.log( "and tracker " + dts.trackerFactory.getKey() + " with parameters:\n" );
-							batchLogger.log( TMUtils.echoMap( dts.trackerSettings, 2 ) );
-							batchLogger.log( "were already tested. Skipping.\n" );
+							final SweepEvent event = new SweepEvent( progress, count, Outcome.SKIPPED, dts, Double.NaN, Double.NaN, Double.NaN );
+							logger.log( event + "\n" );
+							notifyTested( event );
 							continue;
 						}
 
+						logger.log( "________________________________________\n" );
 						if ( !detectionDone )
 						{
-							batchLogger.log( "\n________________________________________\n" );
-							batchLogger.log( TMUtils.getCurrentTimeString() + "\n" );
-							batchLogger.setStatus( ds.detectorFactory.getName() );
+							logger.log( TMUtils.getCurrentTimeString() + "\n" );
+							logger.setStatus( ds.detectorFactory.getName() );
 
 							final ValuePair< TrackMate, Double > detectionResult = runner.execDetection( dts );
 							trackmate = detectionResult.getA();
@@ -279,17 +400,21 @@ public class HelperRunner implements Runnable, Cancelable
 							// Detection failed?
 							if ( null == trackmate )
 							{
-								batchLogger.error( "Error running TrackMate with these parameters.\nSkipping.\n" );
-								progress += model.countTrackerSettings();
-								batchLogger.setProgress( ( double ) ++progress / count );
+								final SweepEvent event = new SweepEvent( progress, count, Outcome.DETECTION_FAILED, dts, Double.NaN, Double.NaN, Double.NaN );
+								logger.error( event + "\n" );
+								notifyTested( event );
+								progress = detectionStart + nTrackerSettings;
+								logger.setProgress( ( double ) progress / count );
 								continue DETECTOR_SETTINGS_LOOP;
 							}
 							// Got 0 spots to track?
 							if ( trackmate.getModel().getSpots().getNSpots( true ) == 0 )
 							{
-								batchLogger.log( "Settings result in having 0 spots to track.\nSkipping.\n" );
-								progress += model.countTrackerSettings();
-								batchLogger.setProgress( ( double ) ++progress / count );
+								final SweepEvent event = new SweepEvent( progress, count, Outcome.NO_SPOTS, dts, detectionTiming, Double.NaN, Double.NaN );
+								logger.log( event + "\n" );
+								notifyTested( event );
+								progress = detectionStart + nTrackerSettings;
+								logger.setProgress( ( double ) progress / count );
 								continue DETECTOR_SETTINGS_LOOP;
 							}
 						}
@@ -297,13 +422,22 @@ public class HelperRunner implements Runnable, Cancelable
 						final Settings settings = trackmate.getSettings();
 						settings.trackerFactory = dts.trackerFactory;
 						settings.trackerSettings = dts.trackerSettings;
-						batchLogger.setStatus( settings.detectorFactory.getName() + " + " + settings.trackerFactory.getName() );
+						logger.setStatus( settings.detectorFactory.getName() + " + " + settings.trackerFactory.getName() );
 
 						// Exec tracking.
 						final double trackingTiming = runner.execTracking( trackmate );
 
 						// Perform and save metrics measurements.
+						final long metricsStart = System.currentTimeMillis();
 						runner.performAndSaveMetricsMeasurements( trackmate, detectionTiming, trackingTiming );
+						final double metricsTiming = ( System.currentTimeMillis() - metricsStart ) / 1000.;
+
+						// Report the detection time with the first test only.
+						final SweepEvent event = new SweepEvent( progress, count, Outcome.TESTED, settings,
+								detectionReported ? Double.NaN : detectionTiming, trackingTiming, metricsTiming );
+						detectionReported = true;
+						logger.log( event + "\n", Logger.BLUE_COLOR );
+						notifyTested( event );
 
 						// Save TrackMate file if required.
 						if ( saveTrackMateFiles )
@@ -328,11 +462,11 @@ public class HelperRunner implements Runnable, Cancelable
 							try
 							{
 								writer.writeToFile();
-								batchLogger.log( "Saved results to TrackMate file: " + trackmateFile + "\n" );
+								logger.log( "Saved results to TrackMate file: " + trackmateFile + "\n" );
 							}
 							catch ( final IOException e )
 							{
-								batchLogger.error( e.getMessage() );
+								logger.error( e.getMessage() );
 								e.printStackTrace();
 							}
 						}
@@ -342,10 +476,41 @@ public class HelperRunner implements Runnable, Cancelable
 		}
 	}
 
+	private void notifyTested( final SweepEvent event )
+	{
+		for ( final SweepListener l : sweepListeners.list )
+			l.tested( event );
+	}
+
+	/**
+	 * Counts the settings generated by each module model, by module key. Only
+	 * the first settings of each model is generated, to read the key.
+	 */
+	private static Map< String, Long > count( final List< ? extends AbstractSweepModel< ? > > models, final Settings base, final Function< Settings, String > key )
+	{
+		final Map< String, Long > counts = new LinkedHashMap<>();
+		for ( final AbstractSweepModel< ? > m : models )
+		{
+			final Iterator< Settings > it = m.iterator( base, 1 );
+			if ( it.hasNext() )
+				counts.merge( key.apply( it.next() ), Long.valueOf( m.count() ), ( a, b ) -> Long.valueOf( Math.addExact( a.longValue(), b.longValue() ) ) );
+		}
+		return counts;
+	}
+
+	private static long sum( final Map< String, Long > counts )
+	{
+		long sum = 0;
+		for ( final Long c : counts.values() )
+			sum = Math.addExact( sum, c.longValue() );
+		return sum;
+	}
+
 	@Override
 	public void cancel( final String cancelReason )
 	{
-		batchLogger.log( TMUtils.getCurrentTimeString() + " - " + cancelReason + '\n' );
+		final Logger logger = runLogger;
+		( logger == null ? batchLogger : logger ).log( TMUtils.getCurrentTimeString() + " - " + cancelReason + '\n' );
 		this.cancelReason = cancelReason;
 	}
 
@@ -398,6 +563,8 @@ public class HelperRunner implements Runnable, Cancelable
 
 		private double maxDist = Double.NaN;
 
+		private int sptScreening = 0;
+
 		/**
 		 * Sets the tracking metrics type to use.
 		 * 
@@ -599,6 +766,25 @@ public class HelperRunner implements Runnable, Cancelable
 			return this;
 		}
 
+		/**
+		 * Sets the number of best tests to score exactly with the SPT metrics.
+		 * The other tests are screened with an approximate pairing, and their
+		 * approximate scores are saved apart from the results files.
+		 * <p>
+		 * Only affect the SPT metrics type.
+		 * 
+		 * @param nTopCandidates
+		 *            the number of best tests to score exactly, or 0 to score
+		 *            all the tests exactly.
+		 * @return this builder.
+		 * @see SPTMetricsRunner#setScreening(int)
+		 */
+		public Builder sptScreening( final int nTopCandidates )
+		{
+			this.sptScreening = nTopCandidates;
+			return this;
+		}
+
 		public HelperRunner get()
 		{
 			boolean ok = true;
@@ -635,6 +821,12 @@ public class HelperRunner implements Runnable, Cancelable
 				}
 			}
 
+			if ( sptScreening < 0 )
+			{
+				ok = false;
+				str.append( "The number of SPT top candidates must be positive or zero.\n" );
+			}
+
 			// Path to ground truth.
 			if ( gtPath == null )
 			{
@@ -727,7 +919,8 @@ public class HelperRunner implements Runnable, Cancelable
 					savePath,
 					batchLogger,
 					trackmateLogger,
-					saveTrackMateFiles );
+					saveTrackMateFiles,
+					sptScreening );
 		}
 
 		public String getErrorMessage()
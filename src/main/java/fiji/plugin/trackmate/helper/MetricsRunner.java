@@ -40,12 +40,18 @@ import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.TrackMate;
 import fiji.plugin.trackmate.TrackModel;
-import fiji.plugin.trackmate.util.TMUtils;
 import net.imglib2.util.ValuePair;
 
 public abstract class MetricsRunner
 {
 
+	/**
+	 * Suffix of the files in which approximate metric values are saved, next
+	 * to the results file of the same tests. They are not crawled as results
+	 * files.
+	 */
+	public static final String SCREENING_SUFFIX = ".screening.csv";
+
 	/**
 	 * Logger to supervise the batch.
 	 */
@@ -109,7 +115,10 @@ public abstract class MetricsRunner
 			final TrackingMetrics metrics = performMetricsMeasurements( trackmate );
 			batchLogger.log( "SPT metrics:\n" );
 			batchLogger.log( metrics.toString() + '\n' );
-			writeResults( csvFile, metrics, detectionTiming, trackingTiming, settings, csvHeader1 );
+			final File targetFile = metrics.isApproximate()
+					? findScreeningFile( csvFile, settings )
+					: csvFile;
+			writeResults( targetFile, metrics, detectionTiming, trackingTiming, settings, csvHeader1 );
 		}
 		catch ( final MetricsComputationErrorException e )
 		{
@@ -119,11 +128,9 @@ public abstract class MetricsRunner
 
 	public ValuePair< TrackMate, Double > execDetection( final Settings settings )
 	{
-		batchLogger.log( "Executing detection.\n" );
-		batchLogger.log( "Configured detector: " );
+		batchLogger.log( "Executing detection with " );
 		batchLogger.log( settings.detectorFactory.getName(), Logger.BLUE_COLOR );
-		batchLogger.log( " with settings:\n" );
-		batchLogger.log( TMUtils.echoMap( settings.detectorSettings, 2 ) );
+		batchLogger.log( ".\n" );
 	
 		final long start = System.currentTimeMillis();
 		final TrackMate trackmate = new TrackMate( settings );
@@ -157,15 +164,9 @@ public abstract class MetricsRunner
 
 	public double execTracking( final TrackMate trackmate )
 	{
-		batchLogger.log( "Executing tracking.\n" );
-		batchLogger.log( "Configured detector: " );
-		batchLogger.log( trackmate.getSettings().detectorFactory.getName(), Logger.BLUE_COLOR );
-		batchLogger.log( " with settings:\n" );
-		batchLogger.log( TMUtils.echoMap( trackmate.getSettings().detectorSettings, 2 ) );
-		batchLogger.log( "Configured tracker: " );
+		batchLogger.log( "Executing tracking with " );
 		batchLogger.log( trackmate.getSettings().trackerFactory.getName(), Logger.BLUE_COLOR );
-		batchLogger.log( " with settings:\n" );
-		batchLogger.log( TMUtils.echoMap( trackmate.getSettings().trackerSettings, 2 ) );
+		batchLogger.log( ".\n" );
 	
 		final long start = System.currentTimeMillis();
 		if ( !trackmate.checkInput()
@@ -247,6 +248,39 @@ public abstract class MetricsRunner
 		return null;
 	}
 
+	/**
+	 * Returns the screening file paired with the specified results file, and
+	 * creates it with the same header if it does not exist.
+	 */
+	private File findScreeningFile( final File csvFile, final Settings settings )
+	{
+		if ( csvFile == null )
+			return null;
+
+		final String name = csvFile.getName();
+		final File screeningFile = new File( csvFile.getParentFile(),
+				name.substring( 0, name.length() - ".csv".length() ) + SCREENING_SUFFIX );
+		if ( screeningFile.exists() )
+			return screeningFile;
+
+		final String[] csvHeader = type.concatWithHeader( toCSVHeader( settings ) );
+		try (CSVWriter csvWriter = new CSVWriter( new FileWriter( screeningFile ),
+				CSVWriter.DEFAULT_SEPARATOR,
+				CSVWriter.NO_QUOTE_CHARACTER,
+				CSVWriter.DEFAULT_ESCAPE_CHARACTER,
+				CSVWriter.DEFAULT_LINE_END ))
+		{
+			csvWriter.writeNext( csvHeader );
+		}
+		catch ( final IOException e )
+		{
+			batchLogger.error( "Cannot open CSV file " + screeningFile + " for writing:\n" + e.getMessage() );
+			e.printStackTrace();
+		}
+		batchLogger.log( "Created screening file " + screeningFile + ".\n" );
+		return screeningFile;
+	}
+
 	/**
 	 * Appends a line to the specified CSV file with the specified tracking
 	 * metrics. This method will also add the timing metrics to the specified
@@ -0,0 +1,196 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import fiji.plugin.trackmate.helper.TrackingMetricsType.MetricValue;
+import fiji.plugin.trackmate.helper.TrackingMetricsType.MetricValueOptimum;
+import net.imglib2.util.ValuePair;
+
+/**
+ * The Pareto front of results for several metrics, for instance an accuracy
+ * metric and the execution time.
+ * <p>
+ * A result is on the front if no other result is at least as good for all
+ * the metrics and better for one of them, in the sense of the optimum of each
+ * metric. Results with a <code>NaN</code> value for one of the metrics are
+ * never on the front. Of several results with the same values, only the
+ * first one offered is on the front.
+ * <p>
+ * Fronts are obtained from {@link ResultsCrawler#paretoFront(MetricValue...)}
+ * and maintained by the crawler as results arrive: each new result is
+ * compared only to the results on the front. The points returned are those
+ * of the last {@link ResultsSnapshot} published by the crawler, and can be
+ * read from any thread.
+ */
+public class ParetoFront
+{
+
+	private final ResultsCrawler crawler;
+
+	private final List< MetricValue > metrics;
+
+	private final MetricValueOptimum[] optima;
+
+	/**
+	 * The current front, modified only by the crawler.
+	 */
+	private final List< Point > points = new ArrayList<>();
+
+	ParetoFront( final ResultsCrawler crawler, final List< MetricValue > metrics )
+	{
+		this.crawler = crawler;
+		this.metrics = Collections.unmodifiableList( new ArrayList<>( metrics ) );
+		this.optima = new MetricValueOptimum[ metrics.size() ];
+		for ( int i = 0; i < optima.length; i++ )
+			optima[ i ] = metrics.get( i ).optimumType;
+	}
+
+	/**
+	 * Returns the metrics of this front.
+	 * 
+	 * @return an unmodifiable list of metrics.
+	 */
+	public List< MetricValue > metrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * Returns the results on the front, sorted by value of the first metric,
+	 * best first, then by the following metrics.
+	 * 
+	 * @return an unmodifiable list of CSV file and line pairs.
+	 * @see ResultsSnapshot#paretoFront(MetricValue...)
+	 */
+	public List< ValuePair< String, Integer > > points()
+	{
+		final List< ValuePair< String, Integer > > points = crawler.snapshot().fronts().get( metrics );
+		return points == null ? Collections.emptyList() : points;
+	}
+
+	/**
+	 * Returns the number of results on the front.
+	 * 
+	 * @return the number of results.
+	 */
+	public int size()
+	{
+		return points().size();
+	}
+
+	/**
+	 * Offers the specified lines of a table.
+	 * 
+	 * @return <code>true</code> if the front changed.
+	 */
+	boolean offer( final String csvFile, final TrackingMetricsTable table, final int from, final int to )
+	{
+		boolean changed = false;
+		for ( int line = from; line < to; line++ )
+		{
+			final double[] values = new double[ metrics.size() ];
+			boolean valid = true;
+			for ( int i = 0; i < values.length && valid; i++ )
+			{
+				values[ i ] = table.getMetric( line, metrics.get( i ) );
+				valid = !Double.isNaN( values[ i ] );
+			}
+			if ( valid )
+				changed |= offer( new Point( csvFile, line, values ) );
+		}
+		return changed;
+	}
+
+	private boolean offer( final Point p )
+	{
+		for ( final Point q : points )
+			if ( weaklyDominates( q.values, p.values ) )
+				return false;
+
+		for ( final Iterator< Point > it = points.iterator(); it.hasNext(); )
+			if ( weaklyDominates( p.values, it.next().values ) )
+				it.remove();
+		points.add( p );
+		return true;
+	}
+
+	/**
+	 * Returns <code>true</code> if the first values are at least as good as
+	 * the second ones for all the metrics.
+	 */
+	private boolean weaklyDominates( final double[] v1, final double[] v2 )
+	{
+		for ( int i = 0; i < v1.length; i++ )
+			if ( optima[ i ].isBetterThan( v2[ i ], v1[ i ] ) )
+				return false;
+		return true;
+	}
+
+	void clear()
+	{
+		points.clear();
+	}
+
+	/**
+	 * Returns the current front, sorted as in {@link #points()}.
+	 */
+	List< ValuePair< String, Integer > > sortedPoints()
+	{
+		final List< Point > sorted = new ArrayList<>( points );
+		sorted.sort( ( p1, p2 ) -> {
+			for ( int i = 0; i < optima.length; i++ )
+			{
+				if ( optima[ i ].isBetterThan( p1.values[ i ], p2.values[ i ] ) )
+					return -1;
+				if ( optima[ i ].isBetterThan( p2.values[ i ], p1.values[ i ] ) )
+					return 1;
+			}
+			return 0;
+		} );
+		final List< ValuePair< String, Integer > > out = new ArrayList<>( sorted.size() );
+		for ( final Point p : sorted )
+			out.add( new ValuePair<>( p.csvFile, Integer.valueOf( p.line ) ) );
+		return Collections.unmodifiableList( out );
+	}
+
+	private static final class Point
+	{
+
+		private final String csvFile;
+
+		private final int line;
+
+		private final double[] values;
+
+		private Point( final String csvFile, final int line, final double[] values )
+		{
+			this.csvFile = csvFile;
+			this.line = line;
+			this.values = values;
+		}
+	}
+}
@@ -21,29 +21,25 @@
  */
 package fiji.plugin.trackmate.helper;
 
-import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
-import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
-
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.nio.file.FileSystems;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.WatchEvent;
-import java.nio.file.WatchEvent.Kind;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.scijava.listeners.Listeners;
 
@@ -59,32 +55,157 @@ import net.imglib2.util.ValuePair;
 public class ResultsCrawler
 {
 
+	/**
+	 * Listener notified when the crawler publishes a new snapshot.
+	 * <p>
+	 * Snapshots are published one at a time and listeners are notified in
+	 * the order of publication, on the thread that published the snapshot,
+	 * typically the watcher thread. A listener that hands the snapshot to
+	 * another thread can use its {@link ResultsSnapshot#version()} to drop
+	 * snapshots older than one it already processed.
+	 */
 	public interface CrawlerListener
 	{
 		public void crawled();
+
+		/**
+		 * Called when a new snapshot is published. Calls {@link #crawled()}
+		 * by default.
+		 * 
+		 * @param snapshot
+		 *            the snapshot published.
+		 */
+		public default void crawled( final ResultsSnapshot snapshot )
+		{
+			crawled();
+		}
+	}
+
+	/**
+	 * How the crawler detects changes in the folder it watches.
+	 */
+	public static enum WatchMode
+	{
+		/**
+		 * Polling on network file systems and where file system events are
+		 * emulated by polling, file system events otherwise.
+		 */
+		AUTO,
+		/**
+		 * File system events, through a {@link java.nio.file.WatchService}.
+		 */
+		EVENTS,
+		/**
+		 * Polling the attributes of the results files, for file systems that
+		 * do not report events, such as NFS or Lustre.
+		 */
+		POLLING;
+	}
+
+	/**
+	 * Name of the system property that sets the watch mode used by
+	 * {@link #watch(String)}, one of the {@link WatchMode} names.
+	 */
+	public static final String WATCH_MODE_PROPERTY = "trackmate.helper.watchmode";
+
+	/**
+	 * Detects changes in a watched folder and updates the crawler.
+	 */
+	interface FolderWatcher
+	{
+		public void start();
+
+		public void stopWatching();
 	}
 
 	private final transient Listeners.List< CrawlerListener > listeners = new Listeners.SynchronizedList<>();
 
 	private final Logger batchLogger;
 
-	private final Map< String, TrackingMetricsTable > tables;
+	/**
+	 * The last snapshot published. Crawls build the next snapshot and
+	 * replace it at once, readers never lock.
+	 */
+	private final AtomicReference< ResultsSnapshot > snapshot;
 
-	private ResultsFolderWatcher folderWatcher;
+	private FolderWatcher folderWatcher;
 
 	private final TrackingMetricsType type;
 
+	/**
+	 * Maximal number of bytes of a CSV file read at once.
+	 */
+	private static final int CHUNK_SIZE = 1 << 23;
+
+	/**
+	 * Parsing state of each CSV file. Modified only during crawls, which are
+	 * serialized by this crawler, but by several threads within a crawl.
+	 */
+	private final Map< String, CsvFileState > fileStates = new ConcurrentHashMap<>();
+
+	/**
+	 * Files whose table was removed during the current crawl.
+	 */
+	private final Set< String > removedFiles = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Pareto fronts maintained by this crawler. Fronts are added and
+	 * updated only by the crawls, which are serialized by this crawler.
+	 */
+	private final Map< List< MetricValue >, ParetoFront > fronts = new ConcurrentHashMap<>();
+
 	public ResultsCrawler( final TrackingMetricsType type, final Logger batchLogger )
 	{
 		this.type = type;
 		this.batchLogger = batchLogger;
-		this.tables = new ConcurrentHashMap<>();
+		this.snapshot = new AtomicReference<>( new ResultsSnapshot( type ) );
 	}
 
+	/**
+	 * Watches the specified folder and its sub-folders, and updates the
+	 * tables when results files change. The watch mode is read from the
+	 * {@value #WATCH_MODE_PROPERTY} system property, and is
+	 * {@link WatchMode#AUTO} if it is not set.
+	 * 
+	 * @param folder
+	 *            the folder to watch.
+	 */
 	public void watch( final String folder )
+	{
+		WatchMode mode = WatchMode.AUTO;
+		final String property = System.getProperty( WATCH_MODE_PROPERTY );
+		if ( property != null )
+		{
+			try
+			{
+				mode = WatchMode.valueOf( property.trim().toUpperCase() );
+			}
+			catch ( final IllegalArgumentException e )
+			{
+				batchLogger.error( "Unknown watch mode: " + property + ". Using " + mode + ".\n" );
+			}
+		}
+		watch( folder, mode );
+	}
+
+	/**
+	 * Watches the specified folder and its sub-folders, and updates the
+	 * tables when results files change, using the specified watch mode.
+	 * 
+	 * @param folder
+	 *            the folder to watch.
+	 * @param mode
+	 *            how to detect changes.
+	 */
+	public void watch( final String folder, final WatchMode mode )
 	{
 		stopWatching();
-		this.folderWatcher = new ResultsFolderWatcher( this, folder, batchLogger );
+		final boolean polling = ( mode == WatchMode.POLLING )
+				|| ( mode == WatchMode.AUTO && ResultsFolderPoller.isPollingPreferred( folder ) );
+		if ( polling )
+			this.folderWatcher = new ResultsFolderPoller( this, folder, batchLogger );
+		else
+			this.folderWatcher = new ResultsFolderWatcher( this, folder, batchLogger );
 		folderWatcher.start();
 	}
 
@@ -94,104 +215,447 @@ public class ResultsCrawler
 			folderWatcher.stopWatching();
 	}
 
-	public void reset()
+	/**
+	 * Forgets all the results crawled, and publishes an empty snapshot.
+	 */
+	public synchronized void reset()
+	{
+		fileStates.clear();
+		removedFiles.clear();
+		for ( final ParetoFront front : fronts.values() )
+			front.clear();
+		publish( new HashMap<>(), true );
+	}
+
+	/**
+	 * Returns the last snapshot published by this crawler. It is never
+	 * modified, and is replaced by a new snapshot at the end of each crawl
+	 * that changed the results. Readers that make several calls, for instance
+	 * to find the best line and then read it, should take one snapshot and
+	 * use it for all the calls.
+	 * 
+	 * @return the current snapshot.
+	 */
+	public ResultsSnapshot snapshot()
 	{
-		tables.clear();
+		return snapshot.get();
 	}
 
 	public String printReport()
 	{
-		final StringBuilder str = new StringBuilder();
-		str.append( "Optimum for each " + type.name() + " metrics, over " + count( true )
-				+ " valid results and " + count( false ) + " different tests." );
-		str.append( "\n\n________________________________________________________________\n" );
-		for ( final MetricValue key : type.metrics() )
+		return snapshot().printReport();
+	}
+
+	/**
+	 * Returns the CSV file and the line of the best result in the current
+	 * snapshot.
+	 * 
+	 * @see ResultsSnapshot#bestFor(String, String, MetricValue)
+	 */
+	public ValuePair< String, Integer > bestFor( final String detector, final String tracker, final MetricValue key )
+	{
+		return snapshot().bestFor( detector, tracker, key );
+	}
+
+	/**
+	 * Returns the CSV files and lines of the best results in the current
+	 * snapshot.
+	 * 
+	 * @see ResultsSnapshot#topFor(String, String, MetricValue)
+	 */
+	public List< ValuePair< String, Integer > > topFor( final String detector, final String tracker, final MetricValue key )
+	{
+		return snapshot().topFor( detector, tracker, key );
+	}
+
+	/**
+	 * Returns a new query over the tables of the current snapshot. Tables
+	 * changed by later crawls are not seen by the query.
+	 * 
+	 * @return a new query.
+	 */
+	public ResultsQuery query()
+	{
+		return snapshot().query();
+	}
+
+	public ValuePair< String, Integer > bestFor( final MetricValue key )
+	{
+		return snapshot().bestFor( key );
+	}
+
+	public TrackingMetricsTable get( final String csvFile )
+	{
+		return snapshot().get( csvFile );
+	}
+
+	/**
+	 * Crawls the specified folder and its sub-folders for CSV results files,
+	 * and updates the tables with their content.
+	 * <p>
+	 * The crawl is incremental. For each file, the crawler remembers the
+	 * offset of the end of the last line it parsed. Since results files are
+	 * only appended to, only the lines added since the previous crawl are
+	 * parsed and added to the table of the file. A file is parsed again from
+	 * the start only if it shrank or if its header changed. Tables of files
+	 * that were removed are removed.
+	 * <p>
+	 * Files are parsed in parallel. The tables are published in a new
+	 * {@link ResultsSnapshot} when the crawl finishes, so readers never see
+	 * the tables of a crawl in progress and never wait for it. Listeners are
+	 * notified only if a table changed.
+	 * 
+	 * @param resultsFolder
+	 *            the folder to crawl.
+	 * @throws IOException
+	 */
+	public synchronized void crawl( final String resultsFolder ) throws IOException
+	{
+		final List< String > csvFiles = findFiles( resultsFolder, "csv" );
+		final Map< String, TrackingMetricsTable > next = new ConcurrentHashMap<>( snapshot().tables() );
+		boolean changed = false;
+
+		// Forget the files that were removed from this folder.
+		final Set< String > present = new HashSet<>( csvFiles );
+		final String root = new File( resultsFolder ).getAbsolutePath() + File.separator;
+		for ( final Iterator< String > it = fileStates.keySet().iterator(); it.hasNext(); )
 		{
-			final ValuePair< String, Integer > pair = bestFor( key );
-			final TrackingMetricsTable results = get( pair.getA() );
-			if ( results == null )
+			final String csvFile = it.next();
+			if ( csvFile.startsWith( root ) && !present.contains( csvFile ) )
+			{
+				it.remove();
+				changed |= removeTable( csvFile, next );
+			}
+		}
+
+		changed |= update( csvFiles, next );
+		if ( changed )
+			publish( next, false );
+	}
+
+	/**
+	 * Updates the tables with the content of the specified CSV files only, as
+	 * an incremental crawl would. Files that do not exist anymore have their
+	 * table removed. Listeners are notified at most once, and only if a table
+	 * changed.
+	 * 
+	 * @param csvFiles
+	 *            the absolute paths of the CSV files that changed.
+	 */
+	public synchronized void crawl( final Collection< String > csvFiles )
+	{
+		final Map< String, TrackingMetricsTable > next = new ConcurrentHashMap<>( snapshot().tables() );
+		if ( update( csvFiles, next ) )
+			publish( next, false );
+	}
+
+	/**
+	 * Parses the specified CSV files in parallel, and puts their new tables
+	 * in the specified map.
+	 * 
+	 * @return <code>true</code> if a table changed.
+	 */
+	private boolean update( final Collection< String > csvFiles, final Map< String, TrackingMetricsTable > next )
+	{
+		final AtomicBoolean changed = new AtomicBoolean( false );
+		csvFiles.parallelStream().forEach( csvFile -> {
+			try
 			{
-				str.append( "There is no good configuration for " + key.description );
+				if ( update( csvFile, next ) )
+					changed.set( true );
 			}
-			else
+			catch ( final IOException | CsvValidationException e )
 			{
-				final String s = results.printLine( pair.getB() );
-				str.append( String.format( "Best configuration for %s with a score of %.3f\n",
-						key.description,
-						results.getMetrics( pair.getB() ).get( key ) ) );
-				str.append( s );
+				batchLogger.error( "Cannot open CSV file " + csvFile + " for reading:\n" + e.getMessage() );
+				e.printStackTrace();
 			}
-			str.append( "\n\n________________________________________________________________\n" );
+		} );
+		return changed.get();
+	}
+
+	/**
+	 * Builds the snapshot of the specified tables, publishes it and notifies
+	 * the listeners. Must be called by the thread that crawls.
+	 * 
+	 * @param rebuildFronts
+	 *            if <code>true</code>, the Pareto fronts are built again from
+	 *            all the tables.
+	 */
+	private void publish( final Map< String, TrackingMetricsTable > next, final boolean rebuildFronts )
+	{
+		final ResultsSnapshot previous = snapshot.get();
+		final Map< String, Map< SettingsFingerprint, Integer > > settings = new HashMap<>();
+		for ( final String csvFile : next.keySet() )
+		{
+			final CsvFileState state = fileStates.get( csvFile );
+			if ( state != null )
+				settings.put( csvFile, state.firstLines );
 		}
 
-		return str.toString();
+		final ResultsSnapshot published = new ResultsSnapshot(
+				previous.version() + 1,
+				type,
+				next,
+				settings,
+				updateFronts( previous, next, rebuildFronts ) );
+		snapshot.set( published );
+		notifyListeners( published );
 	}
 
-	public ValuePair< String, Integer > bestFor( final String detector, final String tracker, final MetricValue key )
+	/**
+	 * Offers the lines added to the tables to the Pareto fronts, and returns
+	 * the points of each front. Fronts are built again if a table was
+	 * removed, since results it dominated may be on the front again.
+	 */
+	private Map< List< MetricValue >, List< ValuePair< String, Integer > > > updateFronts(
+			final ResultsSnapshot previous,
+			final Map< String, TrackingMetricsTable > next,
+			final boolean rebuildFronts )
 	{
-		TrackingMetrics best = null;
-		int bestLine = -1;
-		String bestCSVFile = null;
-		for ( final String csvFile : tables.keySet() )
+		final boolean rebuild = rebuildFronts || !removedFiles.isEmpty();
+		removedFiles.clear();
+		final Map< List< MetricValue >, List< ValuePair< String, Integer > > > points = new HashMap<>();
+		for ( final ParetoFront front : fronts.values() )
 		{
-			final TrackingMetricsTable results = tables.get( csvFile );
-			final int line = results.bestFor( detector, tracker, key );
-			if ( line < 0 )
-				continue;
-
-			final TrackingMetrics m = results.getMetrics( line );
-			if ( m.isBetterThan( best, key ) )
+			if ( rebuild )
+				front.clear();
+			boolean changed = rebuild;
+			for ( final Map.Entry< String, TrackingMetricsTable > entry : next.entrySet() )
 			{
-				best = m;
-				bestLine = line;
-				bestCSVFile = csvFile;
+				final TrackingMetricsTable before = previous.get( entry.getKey() );
+				final int from = ( rebuild || before == null ) ? 0 : before.size();
+				changed |= front.offer( entry.getKey(), entry.getValue(), from, entry.getValue().size() );
 			}
+			final List< ValuePair< String, Integer > > previousPoints = previous.fronts().get( front.metrics() );
+			points.put( front.metrics(), ( changed || previousPoints == null ) ? front.sortedPoints() : previousPoints );
 		}
-		return new ValuePair<>( bestCSVFile, bestLine );
+		return points;
 	}
 
-	public ValuePair< String, Integer > bestFor( final MetricValue key )
+	/**
+	 * Returns the Pareto front of the results for the specified metrics, for
+	 * instance an accuracy metric and {@link TrackingMetricsType#TIM}. The
+	 * front is maintained by this crawler as results are crawled, and the
+	 * same instance is returned for the same metrics. The first call for
+	 * some metrics builds the front and publishes a new snapshot, after the
+	 * crawl in progress if any.
+	 * 
+	 * @param keys
+	 *            the metrics, at least two.
+	 * @return the Pareto front.
+	 */
+	public ParetoFront paretoFront( final MetricValue... keys )
 	{
-		return bestFor( null, null, key );
+		final ParetoFront front = fronts.get( Arrays.asList( keys ) );
+		if ( front != null )
+			return front;
+		return addParetoFront( keys );
 	}
 
-	public TrackingMetricsTable get( final String csvFile )
+	private synchronized ParetoFront addParetoFront( final MetricValue... keys )
 	{
-		if ( csvFile == null )
-			return null;
-		return tables.get( csvFile );
+		if ( keys.length < 2 )
+			throw new IllegalArgumentException( "A Pareto front needs at least two metrics." );
+
+		for ( final MetricValue k : keys )
+			if ( type.id( k ) < 0 )
+				throw new IllegalArgumentException( "Unknown metric for " + type.name() + ": " + k );
+
+		final List< MetricValue > key = Arrays.asList( keys );
+		ParetoFront front = fronts.get( key );
+		if ( front == null )
+		{
+			front = new ParetoFront( this, key );
+			fronts.put( key, front );
+			publish( new HashMap<>( snapshot().tables() ), true );
+		}
+		return front;
 	}
 
-	public synchronized void crawl( final String resultsFolder ) throws IOException
+	/**
+	 * Parses the lines appended to a CSV file since the last crawl, and puts
+	 * its new table in the specified map.
+	 * 
+	 * @return <code>true</code> if the table of this file changed.
+	 */
+	private boolean update( final String csvFile, final Map< String, TrackingMetricsTable > next ) throws IOException, CsvValidationException
 	{
-		final List< String > csvFiles = findFiles( resultsFolder, "csv" );
-		for ( final String csvFile : csvFiles )
+		final File file = new File( csvFile );
+		if ( !file.isFile() )
 		{
-			try (CSVReader csvReader = new CSVReaderBuilder( new FileReader( csvFile ) ).build())
+			fileStates.remove( csvFile );
+			return removeTable( csvFile, next );
+		}
+		final long length = file.length();
+		final long lastModified = file.lastModified();
+		CsvFileState state = fileStates.get( csvFile );
+		if ( state != null && state.length == length && state.lastModified == lastModified )
+			return false;
+
+		try (RandomAccessFile raf = new RandomAccessFile( file, "r" ))
+		{
+			final String headerLine = readHeaderLine( raf );
+			if ( headerLine == null )
+			{
+				// Header not fully written yet.
+				fileStates.remove( csvFile );
+				return removeTable( csvFile, next );
+			}
+
+			boolean changed = false;
+			if ( state == null || length < state.offset || !headerLine.equals( state.headerLine ) )
 			{
-				final String[] readHeader = csvReader.readNext();
+				// New file, or not an append: parse it again from the start.
+				changed = removeTable( csvFile, next );
+				state = new CsvFileState( headerLine );
+				fileStates.put( csvFile, state );
+				final String[] readHeader = parseLines( stripLineEnd( headerLine ) ).get( 0 );
 				if ( !type.isHeader( readHeader ) )
 				{
 					batchLogger.log( String.format(
 							"CSV file %s is not a " + type.name() + " results file. Skipping.\n", csvFile ) );
-					continue;
 				}
+				else
+				{
+					state.builder = type.tableBuilder().addHeader( readHeader );
+					next.put( csvFile, state.builder.get() );
+					changed = true;
+				}
+			}
+			if ( state.builder == null )
+			{
+				// Not a results file, nothing to parse.
+				state.offset = length;
+				state.length = length;
+				state.lastModified = lastModified;
+				return changed;
+			}
 
-				final TrackingMetricsTableBuilder builder = type.tableBuilder().addHeader( readHeader );
-				String[] line;
-				while ( ( line = csvReader.readNext() ) != null )
-					builder.addFromCSV( line );
+			/*
+			 * Only parse complete lines, the last one may still be written.
+			 * The lines are added to the table, and the file state is
+			 * updated, only if the file could be read. Malformed lines are
+			 * skipped, so that they do not hide the lines after them.
+			 */
+			final int nMetrics = type.metrics().size();
+			final List< ResultsCsvParser.Line > lines = new ArrayList<>();
+			final List< String > errors = new ArrayList<>();
+			long offset = state.offset;
+			int chunkSize = CHUNK_SIZE;
+			raf.seek( offset );
+			while ( offset < length )
+			{
+				final int nBytes = ( int ) Math.min( chunkSize, length - offset );
+				final byte[] bytes = new byte[ nBytes ];
+				raf.readFully( bytes );
+				int end = nBytes;
+				while ( end > 0 && bytes[ end - 1 ] != '\n' )
+					end--;
+				if ( end == 0 )
+				{
+					if ( nBytes < chunkSize )
+						break;
+					// A line longer than the chunk.
+					chunkSize *= 2;
+					raf.seek( offset );
+					continue;
+				}
 
-				final TrackingMetricsTable results = builder.get();
-				tables.put( csvFile, results );
+				ResultsCsvParser.parse( new String( bytes, 0, end, Charset.defaultCharset() ), nMetrics, lines, errors );
+				offset += end;
+				raf.seek( offset );
 			}
-			catch ( final IOException | CsvValidationException e )
+			state.offset = offset;
+			state.length = length;
+			state.lastModified = lastModified;
+			for ( final String error : errors )
+				batchLogger.error( "Skipped a malformed line in CSV file " + csvFile + ":\n" + error + '\n' );
+			if ( lines.isEmpty() )
+				return changed;
+
+			final int before = state.builder.size();
+			for ( final ResultsCsvParser.Line line : lines )
+				state.builder.add( line.values, line.fields );
+
+			final TrackingMetricsTable table = state.builder.get();
+			index( state, table, before );
+			next.put( csvFile, table );
+			return true;
+		}
+	}
+
+	/**
+	 * Reads the first line of a file, without its line terminator.
+	 * 
+	 * @return the first line, or <code>null</code> if the file does not have
+	 *         a complete line yet.
+	 */
+	private static String readHeaderLine( final RandomAccessFile raf ) throws IOException
+	{
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[ 8192 ];
+		raf.seek( 0 );
+		int n;
+		while ( ( n = raf.read( buffer ) ) > 0 )
+		{
+			for ( int i = 0; i < n; i++ )
 			{
-				batchLogger.error( "Cannot open CSV file " + csvFile + " for reading:\n" + e.getMessage() );
-				e.printStackTrace();
+				if ( buffer[ i ] == '\n' )
+				{
+					out.write( buffer, 0, i );
+					return new String( out.toByteArray(), Charset.defaultCharset() );
+				}
 			}
+			out.write( buffer, 0, n );
+		}
+		return null;
+	}
+
+	private static String stripLineEnd( final String line )
+	{
+		return line.endsWith( "\r" ) ? line.substring( 0, line.length() - 1 ) : line;
+	}
+
+	private static List< String[] > parseLines( final String lines ) throws IOException, CsvValidationException
+	{
+		final List< String[] > out = new ArrayList<>();
+		try (CSVReader csvReader = new CSVReaderBuilder( new StringReader( lines ) ).build())
+		{
+			String[] line;
+			while ( ( line = csvReader.readNext() ) != null )
+				out.add( line );
 		}
-		notifyListeners();
+		return out;
+	}
+
+	/**
+	 * Removes the table of a file from the specified map.
+	 * 
+	 * @return <code>true</code> if there was a table for this file.
+	 */
+	private boolean removeTable( final String csvFile, final Map< String, TrackingMetricsTable > next )
+	{
+		if ( next.remove( csvFile ) == null )
+			return false;
+		removedFiles.add( csvFile );
+		return true;
+	}
+
+	/**
+	 * Adds the lines of a table to the settings index of its file, starting
+	 * from the specified line.
+	 */
+	private static void index( final CsvFileState state, final TrackingMetricsTable table, final int from )
+	{
+		for ( int i = from; i < table.size(); i++ )
+			state.firstLines.putIfAbsent( fingerprint( table, i ), Integer.valueOf( i ) );
+	}
+
+	private static SettingsFingerprint fingerprint( final TrackingMetricsTable table, final int line )
+	{
+		return SettingsFingerprint.of(
+				table.getDetector( line ), table.getDetectorParams( line ),
+				table.getTracker( line ), table.getTrackerParams( line ) );
 	}
 
 	private static final List< String > findFiles( final String folder, final String fileExtension )
@@ -208,9 +672,7 @@ public class ResultsCrawler
 		final List< String > out = new ArrayList< String >();
 		for ( final File f : list )
 		{
-			// Skip CTC export folders.
-			final String name = f.getName();
-			if ( name.endsWith( "GT" ) || name.endsWith( "ST" ) || name.endsWith( "RES" ) )
+			if ( isExcluded( f.getName() ) )
 				continue;
 
 			if ( f.isDirectory() )
@@ -221,51 +683,32 @@ public class ResultsCrawler
 		return out;
 	}
 
-	public synchronized boolean isSettingsPresent( final Settings settings )
+	/**
+	 * Returns <code>true</code> if a file or folder must not be crawled. This
+	 * is the case for CTC export folders, and for screening files, whose
+	 * approximate metric values are not results.
+	 */
+	static boolean isExcluded( final String name )
 	{
-		final List< TrackingMetricsTable > list = new ArrayList<>( tables.values() );
-		for ( final TrackingMetricsTable results : list )
-		{
-			// Test detector.
-			final int ntests = results.size();
-			LINE: for ( int i = 0; i < ntests; i++ )
-			{
-				final String detectorKey = results.getDetector( i );
-				if ( !detectorKey.equals( settings.detectorFactory.getKey() ) )
-					continue;
-				// Detectors are equal.
-
-				final Map< String, Object > ds = settings.detectorSettings;
-				final Map< String, String > dp = results.getDetectorParams( i );
-				for ( final String key : ds.keySet() )
-				{
-					final Object o1 = ds.get( key );
-					final String o2 = dp.get( key );
-					if ( !o1.toString().equals( o2 ) )
-						continue LINE;
-				}
-				// Detector params are equal.
-
-				final String trackerKey = results.getTracker( i );
-				if ( !trackerKey.equals( settings.trackerFactory.getKey() ) )
-					continue;
-				// Tracker are equal.
-
-				final Map< String, Object > ts = settings.trackerSettings;
-				final Map< String, String > tp = results.getTrackerParams( i );
-				for ( final String key : ts.keySet() )
-				{
-					final Object o1 = ts.get( key );
-					final String o2 = tp.get( key );
-					if ( !o1.toString().equals( o2 ) )
-						continue LINE;
-				}
-				// Tracker params are equal.
+		return name.endsWith( "GT" ) || name.endsWith( "ST" ) || name.endsWith( "RES" )
+				|| name.endsWith( MetricsRunner.SCREENING_SUFFIX );
+	}
 
-				return true;
-			}
-		}
-		return false;
+	/**
+	 * Returns <code>true</code> if the detector and tracker configuration of
+	 * the specified settings was already tested, that is if it is in one of
+	 * the results files crawled. Parameter values are compared through their
+	 * string representation, with numbers normalized, using the index of
+	 * settings fingerprints maintained during crawls. This never waits for a
+	 * crawl in progress.
+	 * 
+	 * @param settings
+	 *            the settings to test.
+	 * @return <code>true</code> if these settings were already tested.
+	 */
+	public boolean isSettingsPresent( final Settings settings )
+	{
+		return snapshot().isSettingsPresent( settings );
 	}
 
 	public Listeners.List< CrawlerListener > listeners()
@@ -273,167 +716,75 @@ public class ResultsCrawler
 		return listeners;
 	}
 
-	protected void notifyListeners()
+	protected void notifyListeners( final ResultsSnapshot published )
 	{
 		for ( final CrawlerListener l : listeners.list )
-			l.crawled();
+			l.crawled( published );
 	}
 
 	public Set< String > getDetectors()
 	{
-		final Set< String > set = new HashSet<>();
-		for ( final TrackingMetricsTable results : tables.values() )
-		{
-			for ( int i = 0; i < results.size(); i++ )
-				set.add( results.getDetector( i ) );
-		}
-		final ArrayList< String > list = new ArrayList<>( set );
-		list.sort( null );
-		return new LinkedHashSet<>( list );
+		return snapshot().getDetectors();
 	}
 
 	public Set< String > getTrackers()
 	{
-		final Set< String > set = new HashSet<>();
-		for ( final TrackingMetricsTable results : tables.values() )
-		{
-			for ( int i = 0; i < results.size(); i++ )
-				set.add( results.getTracker( i ) );
-		}
-		final ArrayList< String > list = new ArrayList<>( set );
-		list.sort( null );
-		return new LinkedHashSet<>( list );
+		return snapshot().getTrackers();
 	}
 
 	public Set< String > getDetectorTrackerCombination()
 	{
-		final Set< String > set = new HashSet<>();
-		for ( final TrackingMetricsTable results : tables.values() )
-		{
-			for ( int i = 0; i < results.size(); i++ )
-			{
-				final String detector = results.getDetector( i );
-				final String tracker = results.getTracker( i );
-				set.add( detector + ", " + tracker );
-			}
-		}
-		final ArrayList< String > list = new ArrayList<>( set );
-		list.sort( null );
-		return new LinkedHashSet<>( list );
+		return snapshot().getDetectorTrackerCombination();
 	}
 
 	/**
 	 * Returns how many parameter combinations were discovered by this crawler.
-	 * The boolean flag discriminates between counting only combinations that
-	 * return a valid metrics (non-NaN results) or all combinations.
 	 * 
-	 * @param validOnly
-	 *            if <code>true</code> will only count combinations that return
-	 *            valid metrics.
-	 * @return the number of parameter combinations.
+	 * @see ResultsSnapshot#count(boolean)
 	 */
 	public int count( final boolean validOnly )
 	{
-		if ( !validOnly )
-			return tables.values().stream().mapToInt( r -> r.size() ).sum();
-
-		int count = 0;
-		for ( final TrackingMetricsTable results : tables.values() )
-			for ( int i = 0; i < results.size(); i++ )
-				if ( !results.getMetrics( i ).isNaN() )
-					count++;
-
-		return count;
+		return snapshot().count( validOnly );
 	}
 
-	private static final class ResultsFolderWatcher extends Thread
+	public TrackingMetricsType getType()
 	{
+		return type;
+	}
 
-		private final ResultsCrawler crawler;
+	/**
+	 * How far a CSV file was parsed.
+	 */
+	private static final class CsvFileState
+	{
 
-		private WatchService watcher;
+		private final String headerLine;
 
-		private final Path dir;
+		/**
+		 * Builder of the table, or <code>null</code> if the file is not a
+		 * results file.
+		 */
+		private TrackingMetricsTableBuilder builder;
 
-		private final Logger logger;
+		/**
+		 * Offset of the first byte after the last line parsed.
+		 */
+		private long offset;
 
-		private boolean stopped;
+		private long length;
 
-		public ResultsFolderWatcher( final ResultsCrawler crawler, final String folder, final Logger logger )
-		{
-			super( "ResultsWatcher_" + folder );
-			this.crawler = crawler;
-			this.logger = logger;
-			this.dir = Paths.get( folder );
-			try
-			{
-				this.watcher = FileSystems.getDefault().newWatchService();
-				dir.register( watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY );
-			}
-			catch ( final IOException e )
-			{
-				e.printStackTrace();
-			}
-		}
+		private long lastModified;
 
-		public void stopWatching()
-		{
-			stopped = true;
-		}
+		/**
+		 * First line of each settings fingerprint in the table. Only added
+		 * to, and read by the snapshots that share it.
+		 */
+		private final Map< SettingsFingerprint, Integer > firstLines = new ConcurrentHashMap<>();
 
-		@Override
-		public void run()
+		private CsvFileState( final String headerLine )
 		{
-			logger.log( "Watching folder " + dir.toString() + " for results files.\n" );
-			stopped = false;
-			try
-			{
-				while ( stopped == false )
-				{
-					final WatchKey key = watcher.take();
-					if ( key == null )
-						break;
-
-					for ( final WatchEvent< ? > event : key.pollEvents() )
-					{
-						final Kind< ? > kind = event.kind();
-						if ( kind == OVERFLOW )
-							continue;
-
-						// Crawl only if we have touched a CSV file.
-						@SuppressWarnings( "unchecked" )
-						final WatchEvent< Path > ev = ( WatchEvent< Path > ) event;
-						final Path filename = ev.context();
-						if ( filename.toString().toLowerCase().endsWith( "csv" ) )
-						{
-							try
-							{
-								crawler.reset();
-								crawler.crawl( dir.toString() );
-							}
-							catch ( final IOException e )
-							{
-								logger.error( "Error while crawling the folder " + dir.toString() + " for CSV results file:\n" );
-								logger.error( e.getMessage() );
-								e.printStackTrace();
-							}
-						}
-					}
-					final boolean valid = key.reset();
-					if ( !valid )
-						break;
-				}
-				logger.log( "Stopped watching folder " + dir.toString() + " for metric results files.\n" );
-			}
-			catch ( final InterruptedException e )
-			{
-				e.printStackTrace();
-			}
+			this.headerLine = headerLine;
+			this.offset = headerLine.getBytes( Charset.defaultCharset() ).length + 1;
 		}
 	}
-
-	public TrackingMetricsType getType()
-	{
-		return type;
-	}
 }
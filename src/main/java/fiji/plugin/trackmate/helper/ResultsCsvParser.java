@@ -0,0 +1,419 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.List;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+
+/**
+ * Parses the lines of a results CSV file.
+ * <p>
+ * Results files are written without quotes, so their lines can be split at
+ * each comma, and the metric values at the start of each line are parsed
+ * directly from the text, without creating a string per value. Chunks that
+ * contain quote or escape characters are parsed with opencsv instead, which
+ * gives the same result for the other chunks.
+ */
+final class ResultsCsvParser
+{
+
+	/**
+	 * Exact powers of ten, up to the largest that is exactly representable
+	 * as a double.
+	 */
+	private static final double[] POWERS_OF_TEN = new double[ 23 ];
+	static
+	{
+		POWERS_OF_TEN[ 0 ] = 1.;
+		for ( int i = 1; i < POWERS_OF_TEN.length; i++ )
+			POWERS_OF_TEN[ i ] = 10. * POWERS_OF_TEN[ i - 1 ];
+	}
+
+	/**
+	 * Largest integer that is exactly representable as a double.
+	 */
+	private static final long MAX_EXACT_MANTISSA = ( 1L << 53 ) - 1;
+
+	private static final int MIN_POWER_OF_TEN = -342;
+
+	private static final int MAX_POWER_OF_TEN = 308;
+
+	/**
+	 * 128-bit approximations of the powers of ten from
+	 * {@link #MIN_POWER_OF_TEN} to {@link #MAX_POWER_OF_TEN}, rounded down and
+	 * shifted so that their top bit is set. High 64 bits then low 64 bits.
+	 */
+	private static final long[] POWERS_OF_TEN_128 = new long[ 2 * ( MAX_POWER_OF_TEN - MIN_POWER_OF_TEN + 1 ) ];
+	static
+	{
+		for ( int q = MIN_POWER_OF_TEN; q <= MAX_POWER_OF_TEN; q++ )
+		{
+			final BigInteger p = BigInteger.TEN.pow( Math.abs( q ) );
+			BigInteger v;
+			if ( q >= 0 )
+			{
+				final int shift = p.bitLength() - 128;
+				v = ( shift > 0 ) ? p.shiftRight( shift ) : p.shiftLeft( -shift );
+			}
+			else
+			{
+				v = BigInteger.ONE.shiftLeft( 127 + p.bitLength() ).divide( p );
+				if ( v.bitLength() > 128 )
+					v = v.shiftRight( 1 );
+			}
+			final int i = 2 * ( q - MIN_POWER_OF_TEN );
+			POWERS_OF_TEN_128[ i ] = v.shiftRight( 64 ).longValue();
+			POWERS_OF_TEN_128[ i + 1 ] = v.longValue();
+		}
+	}
+
+	private ResultsCsvParser()
+	{}
+
+	/**
+	 * A parsed line of a results file.
+	 */
+	static final class Line
+	{
+
+		/**
+		 * The metric values, in the order of the metrics of the type.
+		 */
+		final double[] values;
+
+		/**
+		 * The fields of the line. The metric fields may be <code>null</code>.
+		 */
+		final String[] fields;
+
+		private Line( final double[] values, final String[] fields )
+		{
+			this.values = values;
+			this.fields = fields;
+		}
+	}
+
+	/**
+	 * Parses complete lines and adds them to the specified list. Blank lines
+	 * are skipped. Lines that miss metric values, or whose metric values are
+	 * not numbers, are skipped and reported in the error list. Such a line
+	 * is left for instance when a sweep is killed while writing a line, and
+	 * resumed later.
+	 * 
+	 * @param text
+	 *            the lines to parse, each ended by a line terminator.
+	 * @param nMetrics
+	 *            the number of metric values at the start of each line.
+	 * @param out
+	 *            the list to add the parsed lines to.
+	 * @param errors
+	 *            the list to add the error message of each skipped line to.
+	 */
+	static void parse( final String text, final int nMetrics, final List< Line > out, final List< String > errors ) throws IOException, CsvValidationException
+	{
+		if ( text.indexOf( '"' ) >= 0 || text.indexOf( '\\' ) >= 0 )
+		{
+			parseWithOpenCSV( text, nMetrics, out, errors );
+			return;
+		}
+
+		int start = 0;
+		while ( start < text.length() )
+		{
+			int end = text.indexOf( '\n', start );
+			if ( end < 0 )
+				end = text.length();
+			final int next = end + 1;
+			if ( end > start && text.charAt( end - 1 ) == '\r' )
+				end--;
+
+			if ( end > start )
+			{
+				try
+				{
+					out.add( parseLine( text, start, end, nMetrics ) );
+				}
+				catch ( final NumberFormatException e )
+				{
+					errors.add( e.getMessage() + " in line: " + text.substring( start, end ) );
+				}
+			}
+			start = next;
+		}
+	}
+
+	private static Line parseLine( final String text, final int start, final int end, final int nMetrics )
+	{
+		final int nFields = count( text, start, end, ',' ) + 1;
+		if ( nFields < nMetrics )
+			throw new NumberFormatException( "Missing metric values" );
+
+		// Metric values are left null in the fields.
+		final double[] values = new double[ nMetrics ];
+		final String[] fields = new String[ nFields ];
+		int from = start;
+		for ( int f = 0; f < nFields; f++ )
+		{
+			int to = text.indexOf( ',', from );
+			if ( to < 0 || to > end )
+				to = end;
+			if ( f < nMetrics )
+				values[ f ] = parseDouble( text, from, to );
+			else
+				fields[ f ] = text.substring( from, to );
+			from = to + 1;
+		}
+		return new Line( values, fields );
+	}
+
+	private static void parseWithOpenCSV( final String text, final int nMetrics, final List< Line > out, final List< String > errors ) throws IOException, CsvValidationException
+	{
+		try (CSVReader csvReader = new CSVReaderBuilder( new StringReader( text ) ).build())
+		{
+			String[] line;
+			while ( ( line = csvReader.readNext() ) != null )
+			{
+				// Skip blank lines.
+				if ( line.length == 1 && line[ 0 ].isEmpty() )
+					continue;
+				if ( line.length < nMetrics )
+				{
+					errors.add( "Missing metric values in line: " + String.join( ",", line ) );
+					continue;
+				}
+
+				try
+				{
+					final double[] values = new double[ nMetrics ];
+					for ( int f = 0; f < nMetrics; f++ )
+						values[ f ] = Double.parseDouble( line[ f ] );
+					out.add( new Line( values, line ) );
+				}
+				catch ( final NumberFormatException e )
+				{
+					errors.add( e.getMessage() + " in line: " + String.join( ",", line ) );
+				}
+			}
+		}
+	}
+
+	private static int count( final String text, final int from, final int to, final char c )
+	{
+		int n = 0;
+		for ( int i = from; i < to; i++ )
+			if ( text.charAt( i ) == c )
+				n++;
+		return n;
+	}
+
+	/**
+	 * Parses a decimal number, with the same result as
+	 * {@link Double#parseDouble(String)} on the substring.
+	 * <p>
+	 * Numbers whose significant digits fit in the 53 bits of a double, with
+	 * a small exponent, are converted with one multiplication or division of
+	 * exact operands, which is correctly rounded. Numbers with up to 18
+	 * significant digits are converted with the Eisel-Lemire algorithm, which
+	 * is also correctly rounded when it succeeds. The other ones, and special
+	 * values such as <code>NaN</code>, are handed to
+	 * {@link Double#parseDouble(String)}.
+	 * 
+	 * @param text
+	 *            the text containing the number.
+	 * @param from
+	 *            the index of the first character of the number.
+	 * @param to
+	 *            the index after the last character of the number.
+	 * @return the number.
+	 * @throws NumberFormatException
+	 *             if the substring is not a number.
+	 */
+	static double parseDouble( final String text, final int from, final int to )
+	{
+		int i = from;
+		boolean negative = false;
+		if ( i < to && ( text.charAt( i ) == '-' || text.charAt( i ) == '+' ) )
+		{
+			negative = text.charAt( i ) == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int nDigits = 0;
+		int exponent = 0;
+		boolean hasDigit = false;
+		boolean inFraction = false;
+		for ( ; i < to; i++ )
+		{
+			final char c = text.charAt( i );
+			if ( c >= '0' && c <= '9' )
+			{
+				hasDigit = true;
+				if ( mantissa != 0 || c != '0' )
+				{
+					if ( ++nDigits > 18 )
+						return Double.parseDouble( text.substring( from, to ) );
+					mantissa = 10 * mantissa + ( c - '0' );
+				}
+				if ( inFraction )
+					exponent--;
+			}
+			else if ( c == '.' && !inFraction )
+			{
+				inFraction = true;
+			}
+			else
+			{
+				break;
+			}
+		}
+		if ( !hasDigit )
+			return Double.parseDouble( text.substring( from, to ) );
+
+		if ( i < to && ( text.charAt( i ) == 'e' || text.charAt( i ) == 'E' ) )
+		{
+			i++;
+			boolean negativeExponent = false;
+			if ( i < to && ( text.charAt( i ) == '-' || text.charAt( i ) == '+' ) )
+			{
+				negativeExponent = text.charAt( i ) == '-';
+				i++;
+			}
+			int e = 0;
+			int nExpDigits = 0;
+			for ( ; i < to; i++ )
+			{
+				final char c = text.charAt( i );
+				if ( c < '0' || c > '9' || ++nExpDigits > 3 )
+					return Double.parseDouble( text.substring( from, to ) );
+				e = 10 * e + ( c - '0' );
+			}
+			if ( nExpDigits == 0 )
+				return Double.parseDouble( text.substring( from, to ) );
+			exponent += negativeExponent ? -e : e;
+		}
+		if ( i < to )
+			return Double.parseDouble( text.substring( from, to ) );
+
+		final double value;
+		if ( mantissa == 0 )
+			value = 0.;
+		else if ( mantissa <= MAX_EXACT_MANTISSA && exponent >= 0 && exponent < POWERS_OF_TEN.length )
+			value = mantissa * POWERS_OF_TEN[ exponent ];
+		else if ( mantissa <= MAX_EXACT_MANTISSA && exponent < 0 && -exponent < POWERS_OF_TEN.length )
+			value = mantissa / POWERS_OF_TEN[ -exponent ];
+		else
+		{
+			final double v = eiselLemire( mantissa, exponent );
+			if ( Double.isNaN( v ) )
+				return Double.parseDouble( text.substring( from, to ) );
+			value = v;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Returns <code>mantissa * 10^exponent</code> correctly rounded, or
+	 * <code>NaN</code> if the algorithm cannot decide the rounding, or if the
+	 * result is subnormal or infinite.
+	 * 
+	 * @param mantissa
+	 *            a strictly positive mantissa.
+	 * @param exponent
+	 *            the power of ten.
+	 */
+	private static double eiselLemire( final long mantissa, final int exponent )
+	{
+		if ( exponent < MIN_POWER_OF_TEN || exponent > MAX_POWER_OF_TEN )
+			return Double.NaN;
+
+		// Normalization.
+		final int clz = Long.numberOfLeadingZeros( mantissa );
+		final long man = mantissa << clz;
+		long exp2 = ( ( 217706L * exponent ) >> 16 ) + 64 + 1023 - clz;
+
+		// Multiplication by the 128-bit power of ten.
+		final int i = 2 * ( exponent - MIN_POWER_OF_TEN );
+		long xHi = multiplyHighUnsigned( man, POWERS_OF_TEN_128[ i ] );
+		long xLo = man * POWERS_OF_TEN_128[ i ];
+		if ( ( xHi & 0x1FF ) == 0x1FF && Long.compareUnsigned( xLo + man, man ) < 0 )
+		{
+			// Wider approximation.
+			final long yHi = multiplyHighUnsigned( man, POWERS_OF_TEN_128[ i + 1 ] );
+			final long yLo = man * POWERS_OF_TEN_128[ i + 1 ];
+			long mergedHi = xHi;
+			final long mergedLo = xLo + yHi;
+			if ( Long.compareUnsigned( mergedLo, xLo ) < 0 )
+				mergedHi++;
+			if ( ( mergedHi & 0x1FF ) == 0x1FF && mergedLo + 1 == 0 && Long.compareUnsigned( yLo + man, man ) < 0 )
+				return Double.NaN;
+			xHi = mergedHi;
+			xLo = mergedLo;
+		}
+
+		// Shift to 54 bits.
+		final long msb = xHi >>> 63;
+		long m = xHi >>> ( msb + 9 );
+		exp2 -= 1 ^ msb;
+
+		// Half-way ambiguity.
+		if ( xLo == 0 && ( xHi & 0x1FF ) == 0 && ( m & 3 ) == 1 )
+			return Double.NaN;
+
+		// Round to 53 bits.
+		m += m & 1;
+		m >>>= 1;
+		if ( ( m >>> 53 ) > 0 )
+		{
+			m >>>= 1;
+			exp2++;
+		}
+		if ( exp2 <= 0 || exp2 >= 0x7FF )
+			return Double.NaN;
+		return Double.longBitsToDouble( ( exp2 << 52 ) | ( m & 0x000FFFFFFFFFFFFFL ) );
+	}
+
+	/**
+	 * Returns the high 64 bits of the unsigned 128-bit product of two
+	 * unsigned 64-bit values.
+	 */
+	private static long multiplyHighUnsigned( final long a, final long b )
+	{
+		final long mask = 0xFFFFFFFFL;
+		final long aHi = a >>> 32;
+		final long aLo = a & mask;
+		final long bHi = b >>> 32;
+		final long bLo = b & mask;
+		final long loLo = aLo * bLo;
+		final long hiLo = aHi * bLo;
+		final long loHi = aLo * bHi;
+		final long hiHi = aHi * bHi;
+		final long cross = ( loLo >>> 32 ) + ( hiLo & mask ) + loHi;
+		return ( hiLo >>> 32 ) + ( cross >>> 32 ) + hiHi;
+	}
+}
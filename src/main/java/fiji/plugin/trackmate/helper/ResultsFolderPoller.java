@@ -0,0 +1,364 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import fiji.plugin.trackmate.Logger;
+
+/**
+ * Watches a results folder and its sub-folders for changes in CSV files by
+ * polling their attributes, and has the crawler update the tables of the
+ * files that changed.
+ * <p>
+ * This is meant for network file systems such as NFS or Lustre, where file
+ * system events are not reported, or are emulated by listing the whole
+ * folder. The poller keeps the modification time, size and file key (the
+ * inode on POSIX systems) of each CSV file, and of each folder. The content
+ * of a folder is listed again only if the folder itself changed, so a poll
+ * costs one attribute read per folder and per CSV file.
+ * <p>
+ * The poll interval adapts to the activity: it goes down to
+ * {@link #MIN_INTERVAL} ms when files change, and doubles up to
+ * {@link #MAX_INTERVAL} ms when they do not. It is never less than
+ * {@link #COST_FACTOR} times the duration of the last poll, to keep the CPU
+ * and server load low on folders with many files.
+ */
+final class ResultsFolderPoller extends Thread implements ResultsCrawler.FolderWatcher
+{
+
+	/**
+	 * Minimal poll interval, in ms.
+	 */
+	static final long MIN_INTERVAL = 500;
+
+	/**
+	 * Maximal poll interval, in ms.
+	 */
+	static final long MAX_INTERVAL = 10000;
+
+	/**
+	 * Minimal ratio of the poll interval to the poll duration.
+	 */
+	static final int COST_FACTOR = 20;
+
+	/**
+	 * A folder listing is trusted only if it was made this long after its
+	 * modification time was first seen, in ms, because modification times
+	 * may have a coarse resolution. Until then the folder is listed again at
+	 * each poll. Both times are read from the local clock, so that the clock
+	 * of the file server does not matter.
+	 */
+	private static final long LISTING_MARGIN = 2000;
+
+	/**
+	 * File system types for which polling is preferred.
+	 */
+	private static final Set< String > NETWORK_FILE_SYSTEMS = new HashSet<>( Arrays.asList(
+			"nfs", "nfs4", "lustre", "cifs", "smbfs", "smb2", "gpfs", "beegfs", "afs", "ceph", "fuse.sshfs", "9p", "webdav" ) );
+
+	private final ResultsCrawler crawler;
+
+	private final Path dir;
+
+	private final Logger logger;
+
+	private final Map< Path, FolderState > folders = new HashMap<>();
+
+	private final Map< String, FileStamp > files = new HashMap<>();
+
+	private volatile boolean stopped;
+
+	public ResultsFolderPoller( final ResultsCrawler crawler, final String folder, final Logger logger )
+	{
+		super( "ResultsPoller_" + folder );
+		this.crawler = crawler;
+		this.logger = logger;
+		this.dir = Paths.get( folder ).toAbsolutePath();
+	}
+
+	@Override
+	public void stopWatching()
+	{
+		stopped = true;
+		interrupt();
+	}
+
+	@Override
+	public void run()
+	{
+		logger.log( "Polling folder " + dir.toString() + " for results files.\n" );
+		// The first poll only records the current state.
+		poll( null );
+		long interval = MIN_INTERVAL;
+		try
+		{
+			while ( !stopped )
+			{
+				Thread.sleep( interval );
+				final long start = System.currentTimeMillis();
+				final Set< String > changed = new LinkedHashSet<>();
+				poll( changed );
+				final long cost = System.currentTimeMillis() - start;
+
+				if ( changed.isEmpty() )
+				{
+					interval = Math.min( MAX_INTERVAL, 2 * interval );
+				}
+				else
+				{
+					interval = MIN_INTERVAL;
+					crawler.crawl( changed );
+				}
+				interval = Math.max( interval, COST_FACTOR * cost );
+			}
+		}
+		catch ( final InterruptedException e )
+		{
+			// Stopped.
+		}
+		logger.log( "Stopped polling folder " + dir.toString() + " for metric results files.\n" );
+	}
+
+	/**
+	 * Reads the attributes of all the folders and CSV files, and collects the
+	 * CSV files that were created, modified or removed since the last poll.
+	 * 
+	 * @param changed
+	 *            the set to add the changed files to, or <code>null</code> to
+	 *            only record the current state.
+	 */
+	private void poll( final Set< String > changed )
+	{
+		final Set< Path > seenFolders = new HashSet<>();
+		final Set< String > seenFiles = new HashSet<>();
+		poll( dir, changed, seenFolders, seenFiles );
+
+		folders.keySet().retainAll( seenFolders );
+		for ( final Iterator< String > it = files.keySet().iterator(); it.hasNext(); )
+		{
+			final String csvFile = it.next();
+			if ( !seenFiles.contains( csvFile ) )
+			{
+				it.remove();
+				if ( changed != null )
+					changed.add( csvFile );
+			}
+		}
+	}
+
+	private void poll( final Path folder, final Set< String > changed, final Set< Path > seenFolders, final Set< String > seenFiles )
+	{
+		final FileStamp folderStamp = FileStamp.of( folder );
+		if ( folderStamp == null )
+			return;
+		seenFolders.add( folder );
+
+		FolderState state = folders.get( folder );
+		if ( state == null || !state.isValid( folderStamp ) )
+		{
+			state = FolderState.list( folder, folderStamp, state );
+			if ( state == null )
+				return;
+			folders.put( folder, state );
+		}
+
+		for ( final Path subFolder : state.subFolders )
+			poll( subFolder, changed, seenFolders, seenFiles );
+
+		for ( final Path path : state.csvFiles )
+		{
+			final FileStamp stamp = FileStamp.of( path );
+			if ( stamp == null )
+				continue;
+			final String csvFile = path.toString();
+			seenFiles.add( csvFile );
+			final FileStamp previous = files.put( csvFile, stamp );
+			if ( changed != null && !stamp.equals( previous ) )
+				changed.add( csvFile );
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the specified folder should be polled
+	 * rather than watched with file system events. This is the case on
+	 * network file systems, and where the watch service itself polls.
+	 */
+	static boolean isPollingPreferred( final String folder )
+	{
+		try
+		{
+			final String type = Files.getFileStore( Paths.get( folder ) ).type().toLowerCase();
+			if ( NETWORK_FILE_SYSTEMS.contains( type ) )
+				return true;
+		}
+		catch ( final IOException e )
+		{
+			// Cannot tell, rely on the watch service.
+		}
+		try (WatchService watchService = FileSystems.getDefault().newWatchService())
+		{
+			return watchService.getClass().getSimpleName().contains( "Polling" );
+		}
+		catch ( final IOException | UnsupportedOperationException e )
+		{
+			return true;
+		}
+	}
+
+	/**
+	 * Modification time, size and file key of a file or folder.
+	 */
+	private static final class FileStamp
+	{
+
+		private final long lastModified;
+
+		private final long size;
+
+		private final Object fileKey;
+
+		private FileStamp( final BasicFileAttributes attrs )
+		{
+			this.lastModified = attrs.lastModifiedTime().toMillis();
+			this.size = attrs.size();
+			this.fileKey = attrs.fileKey();
+		}
+
+		/**
+		 * Returns the stamp of the specified path, or <code>null</code> if it
+		 * cannot be read, for instance because it was removed.
+		 */
+		private static FileStamp of( final Path path )
+		{
+			try
+			{
+				return new FileStamp( Files.readAttributes( path, BasicFileAttributes.class ) );
+			}
+			catch ( final IOException e )
+			{
+				return null;
+			}
+		}
+
+		@Override
+		public boolean equals( final Object obj )
+		{
+			if ( !( obj instanceof FileStamp ) )
+				return false;
+			final FileStamp o = ( FileStamp ) obj;
+			return lastModified == o.lastModified && size == o.size && Objects.equals( fileKey, o.fileKey );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash( lastModified, size, fileKey );
+		}
+	}
+
+	/**
+	 * Content of a folder when it was last listed.
+	 */
+	private static final class FolderState
+	{
+
+		private final FileStamp stamp;
+
+		/**
+		 * Local time when the stamp was first seen, in ns.
+		 */
+		private final long stampSeen;
+
+		/**
+		 * Local time of the listing, in ns.
+		 */
+		private final long listed;
+
+		private final List< Path > subFolders = new ArrayList<>();
+
+		private final List< Path > csvFiles = new ArrayList<>();
+
+		private FolderState( final FileStamp stamp, final long stampSeen )
+		{
+			this.stamp = stamp;
+			this.stampSeen = stampSeen;
+			this.listed = System.nanoTime();
+		}
+
+		private boolean isValid( final FileStamp current )
+		{
+			return stamp.equals( current ) && listed - stampSeen > TimeUnit.MILLISECONDS.toNanos( LISTING_MARGIN );
+		}
+
+		/**
+		 * Lists the sub-folders and CSV files of a folder, except CTC export
+		 * folders. Returns <code>null</code> if the folder cannot be listed.
+		 * 
+		 * @param previous
+		 *            the previous listing of the folder, or <code>null</code>.
+		 */
+		private static FolderState list( final Path folder, final FileStamp stamp, final FolderState previous )
+		{
+			final long stampSeen = ( previous != null && previous.stamp.equals( stamp ) )
+					? previous.stampSeen
+					: System.nanoTime();
+			final FolderState state = new FolderState( stamp, stampSeen );
+			try (DirectoryStream< Path > stream = Files.newDirectoryStream( folder ))
+			{
+				for ( final Path path : stream )
+				{
+					final String name = path.getFileName().toString();
+					if ( ResultsCrawler.isExcluded( name ) )
+						continue;
+					if ( Files.isDirectory( path ) )
+						state.subFolders.add( path );
+					else if ( name.toLowerCase().endsWith( "csv" ) )
+						state.csvFiles.add( path );
+				}
+			}
+			catch ( final IOException e )
+			{
+				return null;
+			}
+			return state;
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import fiji.plugin.trackmate.Logger;
+
+/**
+ * Watches a results folder and its sub-folders for changes in CSV files, and
+ * has the crawler update the tables of the files that changed.
+ * <p>
+ * Events are coalesced per file: the files that changed are collected until
+ * no event arrived for {@link #QUIET_PERIOD} ms, or at most for
+ * {@link #MAX_DELAY} ms, and then handed to the crawler in one go. A sweep
+ * that appends to the results files many times per second therefore triggers
+ * at most one crawl per {@link #MAX_DELAY} ms. Folders created after the
+ * watch started are watched too.
+ */
+final class ResultsFolderWatcher extends Thread implements ResultsCrawler.FolderWatcher
+{
+
+	/**
+	 * Time without event after which the changed files are crawled, in ms.
+	 */
+	static final long QUIET_PERIOD = 250;
+
+	/**
+	 * Maximal time between the first event and the crawl, in ms.
+	 */
+	static final long MAX_DELAY = 1000;
+
+	private final ResultsCrawler crawler;
+
+	private final Path dir;
+
+	private final Logger logger;
+
+	private WatchService watcher;
+
+	private final Map< WatchKey, Path > keys = new HashMap<>();
+
+	private volatile boolean stopped;
+
+	public ResultsFolderWatcher( final ResultsCrawler crawler, final String folder, final Logger logger )
+	{
+		super( "ResultsWatcher_" + folder );
+		this.crawler = crawler;
+		this.logger = logger;
+		this.dir = Paths.get( folder ).toAbsolutePath();
+		try
+		{
+			this.watcher = FileSystems.getDefault().newWatchService();
+			registerAll( dir );
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public void stopWatching()
+	{
+		stopped = true;
+		// Wakes up the thread if it is waiting for events.
+		try
+		{
+			if ( watcher != null )
+				watcher.close();
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public void run()
+	{
+		if ( watcher == null )
+			return;
+
+		logger.log( "Watching folder " + dir.toString() + " for results files.\n" );
+		final Set< String > changed = new LinkedHashSet<>();
+		boolean crawlAll = false;
+		long firstEvent = 0;
+		try
+		{
+			while ( !stopped && !keys.isEmpty() )
+			{
+				final boolean pending = crawlAll || !changed.isEmpty();
+				final WatchKey key;
+				if ( !pending )
+				{
+					key = watcher.take();
+					firstEvent = System.currentTimeMillis();
+				}
+				else
+				{
+					final long left = MAX_DELAY - ( System.currentTimeMillis() - firstEvent );
+					key = ( left > 0 )
+							? watcher.poll( Math.min( QUIET_PERIOD, left ), TimeUnit.MILLISECONDS )
+							: null;
+				}
+
+				if ( key != null )
+				{
+					crawlAll |= process( key, changed );
+					if ( System.currentTimeMillis() - firstEvent < MAX_DELAY )
+						continue;
+				}
+
+				// Quiet period elapsed or max delay reached.
+				if ( crawlAll )
+					crawlAll();
+				else if ( !changed.isEmpty() )
+					crawler.crawl( new ArrayList<>( changed ) );
+				crawlAll = false;
+				changed.clear();
+			}
+		}
+		catch ( final InterruptedException | ClosedWatchServiceException e )
+		{
+			// Stopped.
+		}
+		logger.log( "Stopped watching folder " + dir.toString() + " for metric results files.\n" );
+	}
+
+	/**
+	 * Collects the CSV files touched by the events of a key, and watches the
+	 * folders created.
+	 * 
+	 * @return <code>true</code> if the whole folder must be crawled again.
+	 */
+	private boolean process( final WatchKey key, final Set< String > changed )
+	{
+		boolean crawlAll = false;
+		final Path parent = keys.get( key );
+		for ( final WatchEvent< ? > event : key.pollEvents() )
+		{
+			if ( event.kind() == OVERFLOW || parent == null )
+			{
+				// Events were lost.
+				crawlAll = true;
+				continue;
+			}
+
+			@SuppressWarnings( "unchecked" )
+			final WatchEvent< Path > ev = ( WatchEvent< Path > ) event;
+			final Path filename = ev.context();
+			final Path child = parent.resolve( filename );
+			if ( ResultsCrawler.isExcluded( filename.toString() ) )
+				continue;
+
+			if ( event.kind() == ENTRY_CREATE && Files.isDirectory( child ) )
+			{
+				// It may already contain files, crawl it all.
+				try
+				{
+					registerAll( child );
+				}
+				catch ( final IOException e )
+				{
+					logger.error( "Cannot watch folder " + child + ":\n" + e.getMessage() + '\n' );
+				}
+				crawlAll = true;
+			}
+			else if ( filename.toString().toLowerCase().endsWith( "csv" ) )
+			{
+				changed.add( child.toString() );
+			}
+		}
+		if ( !key.reset() )
+		{
+			// Folder deleted. Its files are removed by the next crawl.
+			keys.remove( key );
+			crawlAll = true;
+		}
+		return crawlAll;
+	}
+
+	private void crawlAll()
+	{
+		if ( !Files.isDirectory( dir ) )
+			return;
+		try
+		{
+			crawler.crawl( dir.toString() );
+		}
+		catch ( final IOException e )
+		{
+			logger.error( "Error while crawling the folder " + dir.toString() + " for CSV results file:\n" );
+			logger.error( e.getMessage() );
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Watches a folder and all its sub-folders, except CTC export folders.
+	 */
+	private void registerAll( final Path start ) throws IOException
+	{
+		Files.walkFileTree( start, new SimpleFileVisitor< Path >()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory( final Path d, final BasicFileAttributes attrs ) throws IOException
+			{
+				if ( !d.equals( start ) && ResultsCrawler.isExcluded( d.getFileName().toString() ) )
+					return FileVisitResult.SKIP_SUBTREE;
+				keys.put( d.register( watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY ), d );
+				return FileVisitResult.CONTINUE;
+			}
+		} );
+	}
+}
@@ -0,0 +1,474 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import fiji.plugin.trackmate.helper.TrackingMetricsType.MetricValue;
+import fiji.plugin.trackmate.helper.TrackingMetricsType.MetricValueOptimum;
+import net.imglib2.util.ValuePair;
+
+/**
+ * A query over the results tables of a {@link ResultsCrawler}.
+ * <p>
+ * Conditions on the detector, the tracker, parameter values and metric
+ * values are added with the <code>where</code> methods, and all must hold
+ * for a result line to be selected. The selected lines can then be counted,
+ * listed, ranked by any metric or grouped by any parameter. Results are CSV
+ * file and line pairs, as in {@link ResultsCrawler#bestFor(MetricValue)}.
+ * <p>
+ * The query runs on the tables crawled when it was created. Conditions on
+ * string columns use an index of the lines of each distinct value, so a
+ * predicate is evaluated once per distinct value and not once per line.
+ * Rankings use an index of the lines sorted by each metric. These indices
+ * are built on first use and kept by the tables, so later queries on the
+ * same tables are answered in milliseconds even for millions of lines. A
+ * query must be used by one thread, but queries in several threads can share
+ * the tables and their indices.
+ * <p>
+ * Example:
+ * 
+ * <pre>
+ * final List&lt; ValuePair&lt; String, Integer &gt; &gt; top = crawler.query()
+ * 		.whereDetector( "LOG_DETECTOR" )
+ * 		.whereRange( "RADIUS", 1., 3. )
+ * 		.whereMetric( TrackingMetricsType.TIM, 0., 10. )
+ * 		.top( metric, 5 );
+ * </pre>
+ */
+public class ResultsQuery
+{
+
+	/**
+	 * Name of the detector column.
+	 */
+	public static final String DETECTOR = "DETECTOR";
+
+	/**
+	 * Name of the tracker column.
+	 */
+	public static final String TRACKER = "TRACKER";
+
+	/**
+	 * The tables queried, sorted by CSV file.
+	 */
+	private final Map< String, TrackingMetricsTable > tables;
+
+	private final List< Condition > conditions = new ArrayList<>();
+
+	/**
+	 * Lines selected in each table by the current conditions.
+	 */
+	private final Map< TrackingMetricsTable, BitSet > selections = new IdentityHashMap<>();
+
+	ResultsQuery( final Map< String, TrackingMetricsTable > tables )
+	{
+		this.tables = new TreeMap<>( tables );
+	}
+
+	/**
+	 * Selects the lines of the specified detector.
+	 * 
+	 * @param detector
+	 *            the detector key.
+	 * @return this query.
+	 */
+	public ResultsQuery whereDetector( final String detector )
+	{
+		return where( DETECTOR, detector );
+	}
+
+	/**
+	 * Selects the lines of the specified tracker.
+	 * 
+	 * @param tracker
+	 *            the tracker key.
+	 * @return this query.
+	 */
+	public ResultsQuery whereTracker( final String tracker )
+	{
+		return where( TRACKER, tracker );
+	}
+
+	/**
+	 * Selects the lines with the specified value in a column. Values are
+	 * compared as they are written in the results files.
+	 * 
+	 * @param column
+	 *            {@value #DETECTOR}, {@value #TRACKER} or the name of a
+	 *            detector or tracker parameter.
+	 * @param value
+	 *            the value.
+	 * @return this query.
+	 */
+	public ResultsQuery where( final String column, final String value )
+	{
+		return where( column, v -> v.equals( value ) );
+	}
+
+	/**
+	 * Selects the lines whose value in a column matches a predicate. Lines
+	 * without value in this column are not selected.
+	 * 
+	 * @param column
+	 *            {@value #DETECTOR}, {@value #TRACKER} or the name of a
+	 *            detector or tracker parameter.
+	 * @param predicate
+	 *            the predicate on the values, as they are written in the
+	 *            results files.
+	 * @return this query.
+	 */
+	public ResultsQuery where( final String column, final Predicate< String > predicate )
+	{
+		addCondition( table -> {
+			final BitSet lines = new BitSet( table.size() );
+			for ( final Map.Entry< String, BitSet > entry : table.valueIndex( column ).entrySet() )
+				if ( predicate.test( entry.getKey() ) )
+					lines.or( entry.getValue() );
+			return lines;
+		} );
+		return this;
+	}
+
+	/**
+	 * Selects the lines whose numerical value in a column is in a range.
+	 * Lines with a value that is not a number are not selected.
+	 * 
+	 * @param column
+	 *            the name of a detector or tracker parameter.
+	 * @param min
+	 *            the minimal value, inclusive.
+	 * @param max
+	 *            the maximal value, inclusive.
+	 * @return this query.
+	 */
+	public ResultsQuery whereRange( final String column, final double min, final double max )
+	{
+		return where( column, v -> {
+			try
+			{
+				final double d = Double.parseDouble( v );
+				return d >= min && d <= max;
+			}
+			catch ( final NumberFormatException e )
+			{
+				return false;
+			}
+		} );
+	}
+
+	/**
+	 * Selects the lines whose value of a metric is in a range. Lines with a
+	 * <code>NaN</code> value are not selected.
+	 * 
+	 * @param key
+	 *            the metric.
+	 * @param min
+	 *            the minimal value, inclusive.
+	 * @param max
+	 *            the maximal value, inclusive.
+	 * @return this query.
+	 */
+	public ResultsQuery whereMetric( final MetricValue key, final double min, final double max )
+	{
+		addCondition( table -> table.selectRange( key, min, max ) );
+		return this;
+	}
+
+	/**
+	 * Returns the number of selected lines.
+	 * 
+	 * @return the number of lines.
+	 */
+	public int count()
+	{
+		int count = 0;
+		for ( final TrackingMetricsTable table : tables.values() )
+			count += select( table ).cardinality();
+		return count;
+	}
+
+	/**
+	 * Returns the selected lines, sorted by CSV file and line.
+	 * 
+	 * @return a new list of CSV file and line pairs.
+	 */
+	public List< ValuePair< String, Integer > > lines()
+	{
+		final List< ValuePair< String, Integer > > out = new ArrayList<>();
+		for ( final Map.Entry< String, TrackingMetricsTable > entry : tables.entrySet() )
+			add( out, entry.getKey(), select( entry.getValue() ) );
+		return out;
+	}
+
+	/**
+	 * Returns the selected lines with the best values of a metric, best
+	 * first. <code>NaN</code> values rank last, and ties are ranked by CSV
+	 * file and line.
+	 * 
+	 * @param key
+	 *            the metric.
+	 * @param k
+	 *            the maximal number of lines to return.
+	 * @return a new list of at most <code>k</code> CSV file and line pairs.
+	 */
+	public List< ValuePair< String, Integer > > top( final MetricValue key, final int k )
+	{
+		final List< Ranked > candidates = new ArrayList<>();
+		for ( final Map.Entry< String, TrackingMetricsTable > entry : tables.entrySet() )
+			top( candidates, entry.getKey(), entry.getValue(), select( entry.getValue() ), key, k );
+		return merge( candidates, key, k );
+	}
+
+	/**
+	 * Returns the fastest of the selected lines whose value of an accuracy
+	 * metric is within epsilon of the best one.
+	 * 
+	 * @param accuracy
+	 *            the accuracy metric.
+	 * @param epsilon
+	 *            the tolerance on the accuracy, in the unit of the metric.
+	 * @return the CSV file and line, or <code>null</code> if no selected line
+	 *         has an accuracy value.
+	 * @see #cheapestWithin(MetricValue, double, MetricValue)
+	 */
+	public ValuePair< String, Integer > fastestWithin( final MetricValue accuracy, final double epsilon )
+	{
+		return cheapestWithin( accuracy, epsilon, TrackingMetricsType.TIM );
+	}
+
+	/**
+	 * Returns the selected line with the best value of a cost metric, among
+	 * the ones whose value of an accuracy metric is within epsilon of the
+	 * best one. For instance, with the alpha score, an epsilon of 0.01 and the
+	 * execution time as cost, this returns the fastest configuration with an
+	 * alpha score at most 0.01 below the best alpha score. Ties are resolved
+	 * by CSV file and line.
+	 * 
+	 * @param accuracy
+	 *            the accuracy metric.
+	 * @param epsilon
+	 *            the tolerance on the accuracy, in the unit of the metric.
+	 * @param cost
+	 *            the cost metric.
+	 * @return the CSV file and line, or <code>null</code> if no selected line
+	 *         has an accuracy value.
+	 */
+	public ValuePair< String, Integer > cheapestWithin( final MetricValue accuracy, final double epsilon, final MetricValue cost )
+	{
+		final List< ValuePair< String, Integer > > best = top( accuracy, 1 );
+		if ( best.isEmpty() )
+			return null;
+		final double bestAccuracy = tables.get( best.get( 0 ).getA() ).getMetric( best.get( 0 ).getB().intValue(), accuracy );
+		if ( Double.isNaN( bestAccuracy ) )
+			return null;
+		final double threshold = ( accuracy.optimumType == MetricValueOptimum.HIGHER_IS_BETTER )
+				? bestAccuracy - epsilon
+				: bestAccuracy + epsilon;
+
+		String bestFile = null;
+		int bestLine = -1;
+		double bestCost = Double.NaN;
+		for ( final Map.Entry< String, TrackingMetricsTable > entry : tables.entrySet() )
+		{
+			final TrackingMetricsTable table = entry.getValue();
+			final BitSet selected = select( table );
+			// Accuracy-ranked lines, until out of tolerance.
+			for ( final int line : table.rankedLines( accuracy ) )
+			{
+				if ( accuracy.optimumType.isBetterThan( threshold, table.getMetric( line, accuracy ) )
+						|| Double.isNaN( table.getMetric( line, accuracy ) ) )
+					break;
+				if ( !selected.get( line ) )
+					continue;
+
+				final double c = table.getMetric( line, cost );
+				if ( bestLine < 0
+						|| BestMetricsIndex.isBetter( cost.optimumType, c, bestCost )
+						|| ( bestFile.equals( entry.getKey() ) && line < bestLine && !BestMetricsIndex.isBetter( cost.optimumType, bestCost, c ) ) )
+				{
+					bestFile = entry.getKey();
+					bestLine = line;
+					bestCost = c;
+				}
+			}
+		}
+		return ( bestLine < 0 ) ? null : new ValuePair<>( bestFile, Integer.valueOf( bestLine ) );
+	}
+
+	/**
+	 * Returns the selected lines grouped by their value in a column. Lines
+	 * without value in this column are not in any group.
+	 * 
+	 * @param column
+	 *            {@value #DETECTOR}, {@value #TRACKER} or the name of a
+	 *            detector or tracker parameter.
+	 * @return a new map from value to CSV file and line pairs, sorted by
+	 *         value, and by CSV file and line in each group.
+	 */
+	public Map< String, List< ValuePair< String, Integer > > > groupBy( final String column )
+	{
+		final Map< String, List< ValuePair< String, Integer > > > groups = new TreeMap<>();
+		for ( final Map.Entry< String, TrackingMetricsTable > entry : tables.entrySet() )
+		{
+			final BitSet selected = select( entry.getValue() );
+			for ( final Map.Entry< String, BitSet > group : entry.getValue().valueIndex( column ).entrySet() )
+			{
+				final BitSet lines = ( BitSet ) group.getValue().clone();
+				lines.and( selected );
+				if ( !lines.isEmpty() )
+					add( groups.computeIfAbsent( group.getKey(), g -> new ArrayList<>() ), entry.getKey(), lines );
+			}
+		}
+		return groups;
+	}
+
+	/**
+	 * Returns, for each value of a column, the selected lines with the best
+	 * values of a metric, best first.
+	 * 
+	 * @param column
+	 *            {@value #DETECTOR}, {@value #TRACKER} or the name of a
+	 *            detector or tracker parameter.
+	 * @param key
+	 *            the metric.
+	 * @param k
+	 *            the maximal number of lines to return per group.
+	 * @return a new map from value to at most <code>k</code> CSV file and
+	 *         line pairs, sorted by value.
+	 * @see #top(MetricValue, int)
+	 */
+	public Map< String, List< ValuePair< String, Integer > > > topPerGroup( final String column, final MetricValue key, final int k )
+	{
+		final Map< String, List< Ranked > > candidates = new TreeMap<>();
+		for ( final Map.Entry< String, TrackingMetricsTable > entry : tables.entrySet() )
+		{
+			final BitSet selected = select( entry.getValue() );
+			for ( final Map.Entry< String, BitSet > group : entry.getValue().valueIndex( column ).entrySet() )
+			{
+				final BitSet lines = ( BitSet ) group.getValue().clone();
+				lines.and( selected );
+				if ( !lines.isEmpty() )
+					top( candidates.computeIfAbsent( group.getKey(), g -> new ArrayList<>() ), entry.getKey(), entry.getValue(), lines, key, k );
+			}
+		}
+		final Map< String, List< ValuePair< String, Integer > > > groups = new TreeMap<>();
+		for ( final Map.Entry< String, List< Ranked > > entry : candidates.entrySet() )
+			groups.put( entry.getKey(), merge( entry.getValue(), key, k ) );
+		return groups;
+	}
+
+	private void addCondition( final Condition condition )
+	{
+		conditions.add( condition );
+		selections.clear();
+	}
+
+	/**
+	 * Returns the lines of a table that satisfy all the conditions, in a bit
+	 * set that must not be modified.
+	 */
+	private BitSet select( final TrackingMetricsTable table )
+	{
+		return selections.computeIfAbsent( table, t -> {
+			final BitSet lines = new BitSet( t.size() );
+			lines.set( 0, t.size() );
+			for ( final Condition condition : conditions )
+			{
+				if ( lines.isEmpty() )
+					break;
+				lines.and( condition.select( t ) );
+			}
+			return lines;
+		} );
+	}
+
+	private static void add( final List< ValuePair< String, Integer > > out, final String csvFile, final BitSet lines )
+	{
+		for ( int line = lines.nextSetBit( 0 ); line >= 0; line = lines.nextSetBit( line + 1 ) )
+			out.add( new ValuePair<>( csvFile, Integer.valueOf( line ) ) );
+	}
+
+	/**
+	 * Adds the best k lines of a table among the specified ones to the
+	 * candidates.
+	 */
+	private static void top( final List< Ranked > candidates, final String csvFile, final TrackingMetricsTable table, final BitSet lines, final MetricValue key, final int k )
+	{
+		int n = 0;
+		for ( final int line : table.rankedLines( key ) )
+		{
+			if ( n >= k )
+				break;
+			if ( lines.get( line ) )
+			{
+				candidates.add( new Ranked( csvFile, line, table.getMetric( line, key ) ) );
+				n++;
+			}
+		}
+	}
+
+	/**
+	 * Sorts the candidates from several tables, best first, and returns the k
+	 * first ones. The sort is stable, so ties stay in CSV file and line order.
+	 */
+	private static List< ValuePair< String, Integer > > merge( final List< Ranked > candidates, final MetricValue key, final int k )
+	{
+		candidates.sort( ( r1, r2 ) -> BestMetricsIndex.isBetter( key.optimumType, r1.value, r2.value ) ? -1
+				: BestMetricsIndex.isBetter( key.optimumType, r2.value, r1.value ) ? 1 : 0 );
+		final List< ValuePair< String, Integer > > out = new ArrayList<>( Math.min( k, candidates.size() ) );
+		for ( int i = 0; i < candidates.size() && i < k; i++ )
+			out.add( new ValuePair<>( candidates.get( i ).csvFile, Integer.valueOf( candidates.get( i ).line ) ) );
+		return out;
+	}
+
+	/**
+	 * Selects lines of a table.
+	 */
+	private interface Condition
+	{
+		public BitSet select( TrackingMetricsTable table );
+	}
+
+	private static final class Ranked
+	{
+
+		private final String csvFile;
+
+		private final int line;
+
+		private final double value;
+
+		private Ranked( final String csvFile, final int line, final double value )
+		{
+			this.csvFile = csvFile;
+			this.line = line;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,358 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.helper.TrackingMetricsType.MetricValue;
+import net.imglib2.util.ValuePair;
+
+/**
+ * An immutable state of the results crawled by a {@link ResultsCrawler}.
+ * <p>
+ * A snapshot holds the tables of the results files, the index of the
+ * settings they contain and the Pareto fronts maintained by the crawler, all
+ * as they were at the end of the same crawl. The crawler builds a new
+ * snapshot at the end of each crawl that changed something, and publishes it
+ * at once. A reader that takes a snapshot can therefore read it from any
+ * thread, for as long as it needs, without locking and without seeing the
+ * results of a crawl in progress.
+ * <p>
+ * Snapshots are numbered by a version, which increases by one with each
+ * snapshot published by a crawler.
+ */
+public final class ResultsSnapshot
+{
+
+	private final long version;
+
+	private final TrackingMetricsType type;
+
+	private final Map< String, TrackingMetricsTable > tables;
+
+	/**
+	 * For each CSV file, the first line of each settings fingerprint. The
+	 * maps may contain lines added after this snapshot was taken, which are
+	 * ignored because they are beyond the size of the table.
+	 */
+	private final Map< String, Map< SettingsFingerprint, Integer > > settings;
+
+	private final Map< List< MetricValue >, List< ValuePair< String, Integer > > > fronts;
+
+	/**
+	 * Creates the empty snapshot of a crawler.
+	 */
+	ResultsSnapshot( final TrackingMetricsType type )
+	{
+		this( 0, type, Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap() );
+	}
+
+	ResultsSnapshot(
+			final long version,
+			final TrackingMetricsType type,
+			final Map< String, TrackingMetricsTable > tables,
+			final Map< String, Map< SettingsFingerprint, Integer > > settings,
+			final Map< List< MetricValue >, List< ValuePair< String, Integer > > > fronts )
+	{
+		this.version = version;
+		this.type = type;
+		this.tables = Collections.unmodifiableMap( tables );
+		this.settings = settings;
+		this.fronts = fronts;
+	}
+
+	/**
+	 * Returns the version of this snapshot.
+	 * 
+	 * @return the version, 0 for the first snapshot of a crawler.
+	 */
+	public long version()
+	{
+		return version;
+	}
+
+	public TrackingMetricsType getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Returns the tables of this snapshot.
+	 * 
+	 * @return an unmodifiable map from CSV file to table.
+	 */
+	public Map< String, TrackingMetricsTable > tables()
+	{
+		return tables;
+	}
+
+	Map< SettingsFingerprint, Integer > settings( final String csvFile )
+	{
+		return settings.get( csvFile );
+	}
+
+	Map< List< MetricValue >, List< ValuePair< String, Integer > > > fronts()
+	{
+		return fronts;
+	}
+
+	public TrackingMetricsTable get( final String csvFile )
+	{
+		if ( csvFile == null )
+			return null;
+		return tables.get( csvFile );
+	}
+
+	/**
+	 * Returns a new query over the tables of this snapshot.
+	 * 
+	 * @return a new query.
+	 */
+	public ResultsQuery query()
+	{
+		return new ResultsQuery( tables );
+	}
+
+	/**
+	 * Returns the results on the Pareto front for the specified metrics, as
+	 * in {@link ParetoFront#points()}. The front must have been obtained from
+	 * the crawler before this snapshot was published.
+	 * 
+	 * @param keys
+	 *            the metrics of the front.
+	 * @return an unmodifiable list of CSV file and line pairs, empty if the
+	 *         crawler does not maintain this front.
+	 */
+	public List< ValuePair< String, Integer > > paretoFront( final MetricValue... keys )
+	{
+		final List< ValuePair< String, Integer > > points = fronts.get( Arrays.asList( keys ) );
+		return points == null ? Collections.emptyList() : points;
+	}
+
+	/**
+	 * Returns the CSV file and the line of the best result for the specified
+	 * metric, detector and tracker, over all the tables. Each table keeps an
+	 * index of its best lines, so this is proportional to the number of
+	 * tables.
+	 * 
+	 * @param detector
+	 *            the detector key, or <code>null</code> for any detector.
+	 * @param tracker
+	 *            the tracker key, or <code>null</code> for any tracker.
+	 * @param key
+	 *            the metric.
+	 * @return the CSV file and line of the best result. The file is
+	 *         <code>null</code> and the line is -1 if there is no result.
+	 */
+	public ValuePair< String, Integer > bestFor( final String detector, final String tracker, final MetricValue key )
+	{
+		double best = Double.NaN;
+		int bestLine = -1;
+		String bestCSVFile = null;
+		for ( final Map.Entry< String, TrackingMetricsTable > entry : tables.entrySet() )
+		{
+			final TrackingMetricsTable results = entry.getValue();
+			final int line = results.bestFor( detector, tracker, key );
+			if ( line < 0 )
+				continue;
+
+			final double value = results.getMetric( line, key );
+			if ( bestLine < 0 || BestMetricsIndex.isBetter( key.optimumType, value, best ) )
+			{
+				best = value;
+				bestLine = line;
+				bestCSVFile = entry.getKey();
+			}
+		}
+		return new ValuePair<>( bestCSVFile, bestLine );
+	}
+
+	public ValuePair< String, Integer > bestFor( final MetricValue key )
+	{
+		return bestFor( null, null, key );
+	}
+
+	/**
+	 * Returns the CSV files and lines of the best results for the specified
+	 * metric, detector and tracker, over all the tables, best first. At most
+	 * {@value BestMetricsIndex#RANKING_SIZE} results are returned.
+	 * 
+	 * @param detector
+	 *            the detector key, or <code>null</code> for any detector.
+	 * @param tracker
+	 *            the tracker key, or <code>null</code> for any tracker.
+	 * @param key
+	 *            the metric.
+	 * @return a new list of CSV file and line pairs.
+	 */
+	public List< ValuePair< String, Integer > > topFor( final String detector, final String tracker, final MetricValue key )
+	{
+		final List< ValuePair< String, Integer > > top = new ArrayList<>();
+		final List< Double > values = new ArrayList<>();
+		for ( final Map.Entry< String, TrackingMetricsTable > entry : tables.entrySet() )
+		{
+			final TrackingMetricsTable results = entry.getValue();
+			for ( final int line : results.topFor( detector, tracker, key ) )
+			{
+				final double value = results.getMetric( line, key );
+				int pos = top.size();
+				while ( pos > 0 && BestMetricsIndex.isBetter( key.optimumType, value, values.get( pos - 1 ).doubleValue() ) )
+					pos--;
+				if ( pos >= BestMetricsIndex.RANKING_SIZE )
+					break;
+				top.add( pos, new ValuePair<>( entry.getKey(), Integer.valueOf( line ) ) );
+				values.add( pos, Double.valueOf( value ) );
+				if ( top.size() > BestMetricsIndex.RANKING_SIZE )
+				{
+					top.remove( top.size() - 1 );
+					values.remove( values.size() - 1 );
+				}
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * Returns <code>true</code> if the detector and tracker configuration of
+	 * the specified settings is in one of the tables of this snapshot.
+	 * Parameter values are compared through their string representation, with
+	 * numbers normalized.
+	 * 
+	 * @param settings
+	 *            the settings to test.
+	 * @return <code>true</code> if these settings were already tested.
+	 */
+	public boolean isSettingsPresent( final Settings settings )
+	{
+		final SettingsFingerprint fingerprint = SettingsFingerprint.of( settings );
+		for ( final Map.Entry< String, Map< SettingsFingerprint, Integer > > entry : this.settings.entrySet() )
+		{
+			final Integer line = entry.getValue().get( fingerprint );
+			if ( line != null && line.intValue() < tables.get( entry.getKey() ).size() )
+				return true;
+		}
+		return false;
+	}
+
+	public Set< String > getDetectors()
+	{
+		final Set< String > set = new HashSet<>();
+		for ( final TrackingMetricsTable results : tables.values() )
+		{
+			for ( int i = 0; i < results.size(); i++ )
+				set.add( results.getDetector( i ) );
+		}
+		final ArrayList< String > list = new ArrayList<>( set );
+		list.sort( null );
+		return new LinkedHashSet<>( list );
+	}
+
+	public Set< String > getTrackers()
+	{
+		final Set< String > set = new HashSet<>();
+		for ( final TrackingMetricsTable results : tables.values() )
+		{
+			for ( int i = 0; i < results.size(); i++ )
+				set.add( results.getTracker( i ) );
+		}
+		final ArrayList< String > list = new ArrayList<>( set );
+		list.sort( null );
+		return new LinkedHashSet<>( list );
+	}
+
+	public Set< String > getDetectorTrackerCombination()
+	{
+		final Set< String > set = new HashSet<>();
+		for ( final TrackingMetricsTable results : tables.values() )
+		{
+			for ( int i = 0; i < results.size(); i++ )
+			{
+				final String detector = results.getDetector( i );
+				final String tracker = results.getTracker( i );
+				set.add( detector + ", " + tracker );
+			}
+		}
+		final ArrayList< String > list = new ArrayList<>( set );
+		list.sort( null );
+		return new LinkedHashSet<>( list );
+	}
+
+	/**
+	 * Returns how many parameter combinations are in this snapshot. The
+	 * boolean flag discriminates between counting only combinations that
+	 * return a valid metrics (non-NaN results) or all combinations.
+	 * 
+	 * @param validOnly
+	 *            if <code>true</code> will only count combinations that return
+	 *            valid metrics.
+	 * @return the number of parameter combinations.
+	 */
+	public int count( final boolean validOnly )
+	{
+		if ( !validOnly )
+			return tables.values().stream().mapToInt( r -> r.size() ).sum();
+
+		int count = 0;
+		for ( final TrackingMetricsTable results : tables.values() )
+			for ( int i = 0; i < results.size(); i++ )
+				if ( !results.getMetrics( i ).isNaN() )
+					count++;
+
+		return count;
+	}
+
+	public String printReport()
+	{
+		final StringBuilder str = new StringBuilder();
+		str.append( "Optimum for each " + type.name() + " metrics, over " + count( true )
+				+ " valid results and " + count( false ) + " different tests." );
+		str.append( "\n\n________________________________________________________________\n" );
+		for ( final MetricValue key : type.metrics() )
+		{
+			final ValuePair< String, Integer > pair = bestFor( key );
+			final TrackingMetricsTable results = get( pair.getA() );
+			if ( results == null )
+			{
+				str.append( "There is no good configuration for " + key.description );
+			}
+			else
+			{
+				final String s = results.printLine( pair.getB() );
+				str.append( String.format( "Best configuration for %s with a score of %.3f\n",
+						key.description,
+						results.getMetrics( pair.getB() ).get( key ) ) );
+				str.append( s );
+			}
+			str.append( "\n\n________________________________________________________________\n" );
+		}
+
+		return str.toString();
+	}
+}
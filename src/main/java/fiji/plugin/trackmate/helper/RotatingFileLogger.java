@@ -0,0 +1,269 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper;
+
+import java.awt.Color;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import fiji.plugin.trackmate.Logger;
+
+/**
+ * A logger that writes all the messages to a log file, and forwards them to
+ * another logger, typically the one of the GUI, which may only keep the last
+ * ones.
+ * <p>
+ * Messages are written by a separate thread, so logging does not wait for
+ * the disk unless many messages are pending. When the log file exceeds a
+ * maximal size, it is renamed with the suffix <code>.1</code>, the previous
+ * <code>.1</code> file is renamed with the suffix <code>.2</code> and so on,
+ * and the oldest file is deleted. Progress and status are only forwarded.
+ */
+public class RotatingFileLogger extends Logger
+{
+
+	/**
+	 * Default maximal size of a log file, in bytes.
+	 */
+	public static final long DEFAULT_MAX_SIZE = 10 * 1024 * 1024;
+
+	/**
+	 * Default number of rotated log files kept, in addition to the current
+	 * one.
+	 */
+	public static final int DEFAULT_MAX_FILES = 5;
+
+	/**
+	 * Maximal number of messages waiting to be written.
+	 */
+	private static final int QUEUE_CAPACITY = 10000;
+
+	/**
+	 * Marks the end of the messages.
+	 */
+	private static final String END = new String();
+
+	private final File file;
+
+	private final long maxSize;
+
+	private final int maxFiles;
+
+	private final Logger next;
+
+	private final BlockingQueue< String > queue = new LinkedBlockingQueue<>( QUEUE_CAPACITY );
+
+	private final Thread writerThread;
+
+	private OutputStream out;
+
+	private long size;
+
+	/**
+	 * Creates a logger writing to the specified file, with the default
+	 * maximal size and number of files.
+	 * 
+	 * @param file
+	 *            the log file. Messages are appended to it if it exists.
+	 * @param next
+	 *            the logger messages are forwarded to.
+	 */
+	public RotatingFileLogger( final File file, final Logger next )
+	{
+		this( file, DEFAULT_MAX_SIZE, DEFAULT_MAX_FILES, next );
+	}
+
+	/**
+	 * Creates a logger writing to the specified file.
+	 * 
+	 * @param file
+	 *            the log file. Messages are appended to it if it exists.
+	 * @param maxSize
+	 *            the size in bytes above which the log file is rotated.
+	 * @param maxFiles
+	 *            the number of rotated log files kept, at least 1.
+	 * @param next
+	 *            the logger messages are forwarded to.
+	 */
+	public RotatingFileLogger( final File file, final long maxSize, final int maxFiles, final Logger next )
+	{
+		if ( maxFiles < 1 )
+			throw new IllegalArgumentException( "At least one rotated log file must be kept." );
+		this.file = file;
+		this.maxSize = maxSize;
+		this.maxFiles = maxFiles;
+		this.next = next;
+		this.writerThread = new Thread( this::write, "TrackMate Helper log writer thread" );
+		writerThread.setDaemon( true );
+		writerThread.start();
+	}
+
+	@Override
+	public void log( final String message, final Color color )
+	{
+		next.log( message, color );
+		enqueue( message );
+	}
+
+	@Override
+	public void error( final String message )
+	{
+		next.error( message );
+		enqueue( message );
+	}
+
+	@Override
+	public void setProgress( final double val )
+	{
+		next.setProgress( val );
+	}
+
+	@Override
+	public void setStatus( final String status )
+	{
+		next.setStatus( status );
+	}
+
+	/**
+	 * Writes the pending messages and closes the log file. Messages logged
+	 * afterwards are only forwarded.
+	 */
+	public void close()
+	{
+		if ( !writerThread.isAlive() )
+			return;
+		enqueue( END );
+		try
+		{
+			writerThread.join();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void enqueue( final String message )
+	{
+		if ( !writerThread.isAlive() )
+			return;
+		try
+		{
+			queue.put( message );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes the messages as they come, on the writer thread.
+	 */
+	private void write()
+	{
+		final List< String > messages = new ArrayList<>();
+		try
+		{
+			open();
+			while ( true )
+			{
+				messages.add( queue.take() );
+				queue.drainTo( messages );
+				for ( final String message : messages )
+				{
+					if ( message == END )
+						return;
+					// Count bytes, not chars, to compare with the file length.
+					final byte[] bytes = message.getBytes( StandardCharsets.UTF_8 );
+					out.write( bytes );
+					size += bytes.length;
+					if ( size > maxSize )
+					{
+						out.close();
+						rotate();
+						open();
+					}
+				}
+				messages.clear();
+				out.flush();
+			}
+		}
+		catch ( final IOException e )
+		{
+			next.error( "Cannot write to the log file " + file + ":\n" + e.getMessage() + '\n' );
+		}
+		catch ( final InterruptedException e )
+		{
+			// Stop writing.
+		}
+		finally
+		{
+			queue.clear();
+			if ( out != null )
+			{
+				try
+				{
+					out.close();
+				}
+				catch ( final IOException e )
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private void open() throws IOException
+	{
+		out = new BufferedOutputStream( new FileOutputStream( file, true ) );
+		size = file.length();
+	}
+
+	private void rotate() throws IOException
+	{
+		final File oldest = rotated( maxFiles );
+		if ( oldest.exists() && !oldest.delete() )
+			throw new IOException( "Cannot delete the old log file " + oldest );
+		for ( int i = maxFiles - 1; i >= 1; i-- )
+		{
+			final File f = rotated( i );
+			if ( f.exists() && !f.renameTo( rotated( i + 1 ) ) )
+				throw new IOException( "Cannot rename the log file " + f );
+		}
+		if ( !file.renameTo( rotated( 1 ) ) )
+			throw new IOException( "Cannot rename the log file " + file );
+	}
+
+	private File rotated( final int i )
+	{
+		return new File( file.getPath() + '.' + i );
+	}
+}
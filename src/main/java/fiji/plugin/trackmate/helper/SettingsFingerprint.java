@@ -0,0 +1,194 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import fiji.plugin.trackmate.Settings;
+
+/**
+ * Canonical fingerprint of a detector and tracker configuration, used to find
+ * quickly whether a configuration was already tested.
+ * <p>
+ * The configuration is encoded as the detector key, its parameters sorted by
+ * name, the tracker key and its parameters sorted by name. Parameter values
+ * are compared through their string representation, except numbers, which
+ * are compared through their double value so that for instance
+ * <code>2</code> and <code>2.0</code> have the same encoding. The
+ * fingerprint is a 128-bit hash of this encoding, computed without building
+ * it, so that it can be stored compactly for millions of tests.
+ */
+final class SettingsFingerprint
+{
+
+	private final long h1;
+
+	private final long h2;
+
+	private SettingsFingerprint( final long h1, final long h2 )
+	{
+		this.h1 = h1;
+		this.h2 = h2;
+	}
+
+	/**
+	 * Returns the fingerprint of the detector and tracker configuration of
+	 * the specified settings.
+	 */
+	static SettingsFingerprint of( final Settings settings )
+	{
+		return of( settings.detectorFactory.getKey(), settings.detectorSettings,
+				settings.trackerFactory.getKey(), settings.trackerSettings );
+	}
+
+	/**
+	 * Returns the fingerprint of a detector and tracker configuration.
+	 */
+	static SettingsFingerprint of(
+			final String detector,
+			final Map< String, ? > detectorParams,
+			final String tracker,
+			final Map< String, ? > trackerParams )
+	{
+		final Hash hash = new Hash();
+		append( hash, detector, detectorParams );
+		append( hash, tracker, trackerParams );
+		return new SettingsFingerprint( mix( hash.h1 ), mix( hash.h2 ^ hash.length ) );
+	}
+
+	private static void append( final Hash hash, final String key, final Map< String, ? > params )
+	{
+		hash.string( String.valueOf( key ) );
+		hash.character( '\u0000' );
+		final String[] names = params.keySet().toArray( new String[ 0 ] );
+		Arrays.sort( names );
+		for ( final String name : names )
+		{
+			hash.string( name );
+			hash.character( '\u0001' );
+			normalize( hash, params.get( name ) );
+			hash.character( '\u0002' );
+		}
+		hash.character( '\u0003' );
+	}
+
+	/**
+	 * Hashes a parameter value: numbers are hashed through the bits of their
+	 * double value, other values through their string representation.
+	 */
+	private static void normalize( final Hash hash, final Object value )
+	{
+		if ( value == null )
+		{
+			hash.string( "null" );
+			return;
+		}
+		final String s = value.toString().trim();
+		if ( !s.isEmpty() )
+		{
+			final char c = s.charAt( 0 );
+			if ( ( c >= '0' && c <= '9' ) || c == '-' || c == '+' || c == '.' )
+			{
+				try
+				{
+					final double d = ResultsCsvParser.parseDouble( s, 0, s.length() );
+					hash.character( '\u0004' );
+					hash.number( Double.doubleToLongBits( d ) );
+					return;
+				}
+				catch ( final NumberFormatException e )
+				{}
+			}
+		}
+		hash.string( s );
+	}
+
+	/**
+	 * Two independent 64-bit hashes: FNV-1a and a multiplicative hash.
+	 */
+	private static final class Hash
+	{
+
+		private long h1 = 0xcbf29ce484222325L;
+
+		private long h2 = 0x9e3779b97f4a7c15L;
+
+		private long length = 0;
+
+		private void character( final int c )
+		{
+			h1 = ( h1 ^ c ) * 0x100000001b3L;
+			h2 = ( h2 + c ) * 0xbf58476d1ce4e5b9L;
+			h2 ^= h2 >>> 31;
+			length++;
+		}
+
+		private void string( final String s )
+		{
+			for ( int i = 0; i < s.length(); i++ )
+				character( s.charAt( i ) );
+		}
+
+		private void number( final long bits )
+		{
+			for ( int shift = 0; shift < 64; shift += 16 )
+				character( ( int ) ( ( bits >>> shift ) & 0xffff ) );
+		}
+	}
+
+	/**
+	 * Final avalanche step of the 64-bit MurmurHash3.
+	 */
+	private static long mix( long h )
+	{
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	@Override
+	public boolean equals( final Object obj )
+	{
+		if ( this == obj )
+			return true;
+		if ( !( obj instanceof SettingsFingerprint ) )
+			return false;
+		final SettingsFingerprint o = ( SettingsFingerprint ) obj;
+		return h1 == o.h1 && h2 == o.h2;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return ( int ) ( h1 ^ ( h1 >>> 32 ) );
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "%016x%016x", h1, h2 );
+	}
+}
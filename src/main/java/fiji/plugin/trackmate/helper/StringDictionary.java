@@ -0,0 +1,82 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only dictionary that encodes strings as <code>int</code> codes, so
+ * that a value repeated over many lines is stored once.
+ * <p>
+ * Codes are never reassigned, and the array returned by {@link #values()} is
+ * never modified below the codes already assigned, so it can decode these
+ * codes even after more strings are added.
+ */
+final class StringDictionary
+{
+
+	/**
+	 * Code of <code>null</code> values.
+	 */
+	static final int NULL = -1;
+
+	private final Map< String, Integer > codes = new HashMap<>();
+
+	private String[] values = new String[ 16 ];
+
+	private int size = 0;
+
+	/**
+	 * Returns the code of the specified string, adding it if it is not in the
+	 * dictionary yet.
+	 * 
+	 * @param value
+	 *            the string to encode, may be <code>null</code>.
+	 * @return the code of the string, or {@link #NULL}.
+	 */
+	int encode( final String value )
+	{
+		if ( value == null )
+			return NULL;
+		final Integer code = codes.get( value );
+		if ( code != null )
+			return code.intValue();
+
+		if ( size == values.length )
+			values = Arrays.copyOf( values, 2 * size );
+		values[ size ] = value;
+		codes.put( value, Integer.valueOf( size ) );
+		return size++;
+	}
+
+	/**
+	 * Returns the array that decodes the codes assigned so far.
+	 * 
+	 * @return the values, indexed by code.
+	 */
+	String[] values()
+	{
+		return values;
+	}
+}
@@ -0,0 +1,217 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import fiji.plugin.trackmate.Settings;
+
+/**
+ * What happened to one test of a parameter sweep.
+ * <p>
+ * The runner logs one event per test, on one line, instead of the detector
+ * and tracker parameters on several lines, so that the log of a sweep of
+ * tens of thousands of tests stays readable and small.
+ */
+public class SweepEvent
+{
+
+	public static enum Outcome
+	{
+		TESTED( "Tested" ),
+		SKIPPED( "Already tested" ),
+		DETECTION_FAILED( "Detection failed" ),
+		NO_SPOTS( "No spots to track" );
+
+		private final String name;
+
+		private Outcome( final String name )
+		{
+			this.name = name;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name;
+		}
+	}
+
+	private final long index;
+
+	private final long count;
+
+	private final Outcome outcome;
+
+	private final String detectorKey;
+
+	private final String trackerKey;
+
+	private final String detector;
+
+	private final String tracker;
+
+	private final double detectionTiming;
+
+	private final double trackingTiming;
+
+	private final double metricsTiming;
+
+	/**
+	 * Creates an event.
+	 * 
+	 * @param index
+	 *            the index of the test in the sweep, starting at 1.
+	 * @param count
+	 *            the number of tests in the sweep.
+	 * @param outcome
+	 *            what happened to the test.
+	 * @param settings
+	 *            the settings of the test. If the detection failed, or
+	 *            yielded no spots, the tracker settings are not reported since
+	 *            all the tests with this detector configuration are skipped.
+	 * @param detectionTiming
+	 *            the detection time in seconds, <code>NaN</code> if the
+	 *            detection was not run for this test, for instance because it
+	 *            was run for a previous test with the same detector settings.
+	 * @param trackingTiming
+	 *            the tracking time in seconds, <code>NaN</code> if the tracking
+	 *            was not run.
+	 * @param metricsTiming
+	 *            the time spent measuring and saving the metrics in seconds,
+	 *            <code>NaN</code> if they were not measured.
+	 */
+	public SweepEvent( final long index, final long count, final Outcome outcome, final Settings settings, final double detectionTiming, final double trackingTiming, final double metricsTiming )
+	{
+		this.index = index;
+		this.count = count;
+		this.outcome = outcome;
+		final boolean tracked = outcome != Outcome.DETECTION_FAILED && outcome != Outcome.NO_SPOTS;
+		this.detectorKey = settings.detectorFactory.getKey();
+		this.trackerKey = tracked ? settings.trackerFactory.getKey() : null;
+		this.detector = detectorKey + " " + format( settings.detectorSettings );
+		this.tracker = tracked ? trackerKey + " " + format( settings.trackerSettings ) : null;
+		this.detectionTiming = detectionTiming;
+		this.trackingTiming = trackingTiming;
+		this.metricsTiming = metricsTiming;
+	}
+
+	public long getIndex()
+	{
+		return index;
+	}
+
+	public long getCount()
+	{
+		return count;
+	}
+
+	public Outcome getOutcome()
+	{
+		return outcome;
+	}
+
+	/**
+	 * @return the key of the detector of this test.
+	 */
+	public String getDetectorKey()
+	{
+		return detectorKey;
+	}
+
+	/**
+	 * @return the key of the tracker of this test, <code>null</code> if the
+	 *         detection failed or yielded no spots.
+	 */
+	public String getTrackerKey()
+	{
+		return trackerKey;
+	}
+
+	/**
+	 * @return the detection time in seconds, <code>NaN</code> if the
+	 *         detection was not run for this test.
+	 */
+	public double getDetectionTiming()
+	{
+		return detectionTiming;
+	}
+
+	/**
+	 * @return the tracking time in seconds, <code>NaN</code> if the tracking
+	 *         was not run for this test.
+	 */
+	public double getTrackingTiming()
+	{
+		return trackingTiming;
+	}
+
+	/**
+	 * @return the time spent measuring and saving the metrics in seconds,
+	 *         <code>NaN</code> if they were not measured for this test.
+	 */
+	public double getMetricsTiming()
+	{
+		return metricsTiming;
+	}
+
+	/**
+	 * Returns the event on one line, for instance:
+	 * 
+	 * <pre>
+	 * [  12/4560] Tested: LOG_DETECTOR {RADIUS=2.0, THRESHOLD=1.0} + SIMPLE_SPARSE_LAP_TRACKER {LINKING_MAX_DISTANCE=5.0}, detection 1.2 s, tracking 0.4 s, metrics 0.2 s.
+	 * </pre>
+	 */
+	@Override
+	public String toString()
+	{
+		final int width = Long.toString( count ).length();
+		final StringBuilder str = new StringBuilder();
+		str.append( String.format( "[%" + width + "d/%d] ", index, count ) );
+		str.append( outcome );
+		str.append( ": " );
+		str.append( detector );
+		if ( tracker != null )
+			str.append( " + " ).append( tracker );
+		if ( !Double.isNaN( detectionTiming ) )
+			str.append( String.format( ", detection %.1f s", detectionTiming ) );
+		if ( !Double.isNaN( trackingTiming ) )
+			str.append( String.format( ", tracking %.1f s", trackingTiming ) );
+		if ( !Double.isNaN( metricsTiming ) )
+			str.append( String.format( ", metrics %.1f s", metricsTiming ) );
+		str.append( '.' );
+		return str.toString();
+	}
+
+	/**
+	 * Returns detector or tracker parameters on one line, sorted by name.
+	 * 
+	 * @param params
+	 *            the parameters.
+	 * @return a new string.
+	 */
+	public static String format( final Map< String, ? > params )
+	{
+		return new TreeMap<>( params ).toString();
+	}
+}
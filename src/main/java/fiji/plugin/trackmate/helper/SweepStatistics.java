@@ -0,0 +1,532 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import fiji.plugin.trackmate.helper.HelperRunner.SweepListener;
+import fiji.plugin.trackmate.helper.SweepEvent.Outcome;
+
+/**
+ * Accumulates the timings of the tests of a parameter sweep, to monitor its
+ * throughput and estimate the time it still needs.
+ * <p>
+ * An instance is registered as a listener of a {@link HelperRunner} and is
+ * notified on the runner thread. Its getters can be called from any other
+ * thread, for instance by a panel refreshing periodically.
+ * <p>
+ * The remaining time is estimated from the mean timings of the tests
+ * executed so far, separately for each detector and for each detector and
+ * tracker pair, so that a sweep that moves on to a slower detector gets a
+ * corrected estimate as soon as this detector has been timed once.
+ */
+public class SweepStatistics implements SweepListener
+{
+
+	/**
+	 * The stages of a test that are timed.
+	 */
+	public static enum Stage
+	{
+		DETECTION( "Detection" ),
+		TRACKING( "Tracking" ),
+		METRICS( "Metrics" );
+
+		private final String name;
+
+		private Stage( final String name )
+		{
+			this.name = name;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name;
+		}
+	}
+
+	/**
+	 * Number of bins of the stage timing histograms.
+	 */
+	public static final int N_BINS = 18;
+
+	/**
+	 * Upper bound of the first bin of the histograms, in seconds. The bins
+	 * after it are twice as wide as the previous one, and the last one
+	 * collects all the larger timings.
+	 */
+	private static final double FIRST_BIN = 0.01;
+
+	/**
+	 * Duration of the window over which the recent throughput is measured,
+	 * in nanoseconds.
+	 */
+	private static final long RECENT_WINDOW = 5L * 60 * 1_000_000_000L;
+
+	private final Map< String, Long > detectorCounts = new LinkedHashMap<>();
+
+	private final Map< String, Long > trackerCounts = new LinkedHashMap<>();
+
+	private long trackerTotal;
+
+	private long count;
+
+	private boolean running;
+
+	private long startTime;
+
+	private long endTime;
+
+	private long lastEventTime;
+
+	private long processed;
+
+	private long executed;
+
+	private long skipped;
+
+	private long notRun;
+
+	private double busy;
+
+	private final int[][] histograms = new int[ Stage.values().length ][ N_BINS ];
+
+	private final Mean[] stageMeans = new Mean[ Stage.values().length ];
+
+	private final Map< String, Mean > detectionMeans = new HashMap<>();
+
+	private final Map< String, Mean > trackerMeans = new HashMap<>();
+
+	private final Map< String, Mean > pairMeans = new HashMap<>();
+
+	private final Mean testMean = new Mean();
+
+	private final Deque< Long > recent = new ArrayDeque<>();
+
+	public SweepStatistics()
+	{
+		for ( int i = 0; i < stageMeans.length; i++ )
+			stageMeans[ i ] = new Mean();
+	}
+
+	@Override
+	public synchronized void sweepStarted( final Map< String, Long > detectorCounts, final Map< String, Long > trackerCounts )
+	{
+		this.detectorCounts.clear();
+		this.detectorCounts.putAll( detectorCounts );
+		this.trackerCounts.clear();
+		this.trackerCounts.putAll( trackerCounts );
+		this.trackerTotal = sum( trackerCounts );
+		this.count = Math.multiplyExact( sum( detectorCounts ), trackerTotal );
+
+		running = true;
+		startTime = System.nanoTime();
+		endTime = startTime;
+		lastEventTime = startTime;
+		processed = 0;
+		executed = 0;
+		skipped = 0;
+		notRun = 0;
+		busy = 0.;
+		for ( final int[] histogram : histograms )
+			for ( int i = 0; i < histogram.length; i++ )
+				histogram[ i ] = 0;
+		for ( final Mean mean : stageMeans )
+			mean.clear();
+		detectionMeans.clear();
+		trackerMeans.clear();
+		pairMeans.clear();
+		testMean.clear();
+		recent.clear();
+	}
+
+	@Override
+	public synchronized void tested( final SweepEvent event )
+	{
+		final long now = System.nanoTime();
+		lastEventTime = now;
+		final Outcome outcome = event.getOutcome();
+		switch ( outcome )
+		{
+		case SKIPPED:
+			skipped++;
+			processed = Math.max( processed, event.getIndex() );
+			break;
+
+		case DETECTION_FAILED:
+		case NO_SPOTS:
+		{
+			// All the tests with this detector configuration are dropped.
+			final long end = ( trackerTotal == 0 )
+					? event.getIndex()
+					: ( ( event.getIndex() - 1 ) / trackerTotal + 1 ) * trackerTotal;
+			final long before = Math.max( processed, event.getIndex() - 1 );
+			notRun += Math.max( 0, end - before );
+			processed = Math.max( processed, end );
+			break;
+		}
+
+		case TESTED:
+		{
+			executed++;
+			processed = Math.max( processed, event.getIndex() );
+			recent.addLast( now );
+			final double trackingAndMetrics = valueOr0( event.getTrackingTiming() ) + valueOr0( event.getMetricsTiming() );
+			final String pair = event.getDetectorKey() + " + " + event.getTrackerKey();
+			pairMeans.computeIfAbsent( pair, k -> new Mean() ).add( trackingAndMetrics );
+			trackerMeans.computeIfAbsent( event.getTrackerKey(), k -> new Mean() ).add( trackingAndMetrics );
+			testMean.add( trackingAndMetrics );
+			break;
+		}
+		}
+
+		// Stage timings, whatever the outcome.
+		if ( !Double.isNaN( event.getDetectionTiming() ) )
+			detectionMeans.computeIfAbsent( event.getDetectorKey(), k -> new Mean() ).add( event.getDetectionTiming() );
+		add( Stage.DETECTION, event.getDetectionTiming() );
+		add( Stage.TRACKING, event.getTrackingTiming() );
+		add( Stage.METRICS, event.getMetricsTiming() );
+	}
+
+	@Override
+	public synchronized void sweepFinished()
+	{
+		running = false;
+		endTime = System.nanoTime();
+	}
+
+	/**
+	 * Returns whether a sweep is running.
+	 * 
+	 * @return <code>true</code> between the start and the end of a sweep.
+	 */
+	public synchronized boolean isRunning()
+	{
+		return running;
+	}
+
+	/**
+	 * @return the number of tests in the sweep.
+	 */
+	public synchronized long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * @return the number of tests processed so far, executed, skipped or
+	 *         not run.
+	 */
+	public synchronized long getProcessed()
+	{
+		return processed;
+	}
+
+	/**
+	 * @return the number of tests executed so far.
+	 */
+	public synchronized long getExecuted()
+	{
+		return executed;
+	}
+
+	/**
+	 * @return the number of tests skipped so far because their results were
+	 *         already in the save folder.
+	 */
+	public synchronized long getSkipped()
+	{
+		return skipped;
+	}
+
+	/**
+	 * @return the number of tests not run so far because their detection
+	 *         failed or yielded no spots.
+	 */
+	public synchronized long getNotRun()
+	{
+		return notRun;
+	}
+
+	/**
+	 * @return the time elapsed since the start of the sweep, in seconds, up
+	 *         to its end if it is finished.
+	 */
+	public synchronized double getElapsed()
+	{
+		return seconds( ( running ? System.nanoTime() : endTime ) - startTime );
+	}
+
+	/**
+	 * Returns the time elapsed since the last test was processed, in
+	 * seconds. A value much larger than the typical test time while the sweep
+	 * is running points to a stalled test.
+	 * 
+	 * @return the time since the last test, <code>NaN</code> if the sweep is
+	 *         not running.
+	 */
+	public synchronized double getTimeSinceLastTest()
+	{
+		return running ? seconds( System.nanoTime() - lastEventTime ) : Double.NaN;
+	}
+
+	/**
+	 * @return the number of tests executed per minute since the start of the
+	 *         sweep.
+	 */
+	public synchronized double getRate()
+	{
+		final double elapsed = getElapsed();
+		return elapsed > 0. ? 60. * executed / elapsed : 0.;
+	}
+
+	/**
+	 * @return the number of tests executed per minute over the last five
+	 *         minutes.
+	 */
+	public synchronized double getRecentRate()
+	{
+		final long now = running ? System.nanoTime() : endTime;
+		while ( !recent.isEmpty() && now - recent.peekFirst() > RECENT_WINDOW )
+			recent.removeFirst();
+		final double window = seconds( Math.min( RECENT_WINDOW, now - startTime ) );
+		return window > 0. ? 60. * recent.size() / window : 0.;
+	}
+
+	/**
+	 * Returns the fraction of the elapsed time the runner spent detecting,
+	 * tracking and measuring metrics. The rest is spent skipping tests
+	 * already done, saving files and logging.
+	 * 
+	 * @return the utilization, from 0 to 1.
+	 */
+	public synchronized double getUtilization()
+	{
+		final double elapsed = getElapsed();
+		return elapsed > 0. ? Math.min( 1., busy / elapsed ) : 0.;
+	}
+
+	/**
+	 * Returns the estimated time needed to process the remaining tests, in
+	 * seconds.
+	 * <p>
+	 * Each remaining detection is estimated with the mean detection time of
+	 * its detector, and each remaining test with the mean tracking and
+	 * metrics time of its detector and tracker pair. Detectors or pairs not
+	 * timed yet are estimated with the mean over all of them. The sum is
+	 * scaled by the utilization, to account for the time spent outside of
+	 * these stages. Remaining tests are assumed to be all executed.
+	 * 
+	 * @return the estimated remaining time, <code>NaN</code> if no test was
+	 *         executed yet.
+	 */
+	public synchronized double getEta()
+	{
+		if ( executed == 0 || trackerTotal == 0 )
+			return Double.NaN;
+		if ( processed >= count )
+			return 0.;
+
+		// Next detector settings, and position of the next test in it.
+		final long nextDetection = processed / trackerTotal;
+		final long nextTracker = processed % trackerTotal;
+
+		double remaining = 0.;
+		long detectionStart = 0;
+		for ( final String detectorKey : detectorCounts.keySet() )
+		{
+			final long detectionEnd = detectionStart + detectorCounts.get( detectorKey ).longValue();
+			if ( detectionEnd > nextDetection )
+			{
+				// Full detector settings remaining.
+				long full = detectionEnd - Math.max( detectionStart, nextDetection );
+				if ( nextTracker > 0 && nextDetection >= detectionStart )
+				{
+					// Detection already done for the current one.
+					full--;
+					remaining += trackingTime( detectorKey, nextTracker );
+				}
+				remaining += full * ( detectionTime( detectorKey ) + trackingTime( detectorKey, 0 ) );
+			}
+			detectionStart = detectionEnd;
+		}
+
+		final double utilization = getUtilization();
+		return utilization > 0. ? remaining / utilization : remaining;
+	}
+
+	/**
+	 * Returns the histogram of the timings of the specified stage. Bin 0
+	 * counts the timings below 10 ms, and bin <code>i</code> the timings
+	 * between {@link #binLowerBound(int)} for <code>i</code> and
+	 * <code>i+1</code>.
+	 * 
+	 * @param stage
+	 *            the stage.
+	 * @return a new array of {@link #N_BINS} counts.
+	 */
+	public synchronized int[] getHistogram( final Stage stage )
+	{
+		return histograms[ stage.ordinal() ].clone();
+	}
+
+	/**
+	 * @param stage
+	 *            the stage.
+	 * @return the mean timing of the stage in seconds, <code>NaN</code> if it
+	 *         was not timed yet.
+	 */
+	public synchronized double getMean( final Stage stage )
+	{
+		return stageMeans[ stage.ordinal() ].mean();
+	}
+
+	/**
+	 * @param stage
+	 *            the stage.
+	 * @return the largest timing of the stage in seconds, <code>NaN</code> if
+	 *         it was not timed yet.
+	 */
+	public synchronized double getMax( final Stage stage )
+	{
+		return stageMeans[ stage.ordinal() ].max();
+	}
+
+	/**
+	 * Returns the lower bound of a histogram bin.
+	 * 
+	 * @param bin
+	 *            the bin index.
+	 * @return the lower bound in seconds.
+	 */
+	public static double binLowerBound( final int bin )
+	{
+		return bin == 0 ? 0. : FIRST_BIN * ( 1L << ( bin - 1 ) );
+	}
+
+	private static int bin( final double timing )
+	{
+		if ( timing < FIRST_BIN )
+			return 0;
+		final int bin = 1 + ( int ) Math.floor( Math.log( timing / FIRST_BIN ) / Math.log( 2. ) );
+		return Math.min( N_BINS - 1, bin );
+	}
+
+	private void add( final Stage stage, final double timing )
+	{
+		if ( Double.isNaN( timing ) )
+			return;
+		histograms[ stage.ordinal() ][ bin( timing ) ]++;
+		stageMeans[ stage.ordinal() ].add( timing );
+		busy += timing;
+	}
+
+	/**
+	 * Estimated tracking and metrics time of the tests of one detector
+	 * settings, from the specified tracker position to the last one.
+	 */
+	private double trackingTime( final String detectorKey, final long from )
+	{
+		double time = 0.;
+		long trackerStart = 0;
+		for ( final String trackerKey : trackerCounts.keySet() )
+		{
+			final long trackerEnd = trackerStart + trackerCounts.get( trackerKey ).longValue();
+			if ( trackerEnd > from )
+			{
+				Mean mean = pairMeans.get( detectorKey + " + " + trackerKey );
+				if ( mean == null )
+					mean = trackerMeans.getOrDefault( trackerKey, testMean );
+				time += ( trackerEnd - Math.max( trackerStart, from ) ) * mean.mean();
+			}
+			trackerStart = trackerEnd;
+		}
+		return time;
+	}
+
+	private double detectionTime( final String detectorKey )
+	{
+		final Mean mean = detectionMeans.get( detectorKey );
+		if ( mean != null )
+			return mean.mean();
+		final double all = stageMeans[ Stage.DETECTION.ordinal() ].mean();
+		return Double.isNaN( all ) ? 0. : all;
+	}
+
+	private static long sum( final Map< String, Long > counts )
+	{
+		long sum = 0;
+		for ( final Long c : counts.values() )
+			sum = Math.addExact( sum, c.longValue() );
+		return sum;
+	}
+
+	private static double valueOr0( final double val )
+	{
+		return Double.isNaN( val ) ? 0. : val;
+	}
+
+	private static double seconds( final long nanos )
+	{
+		return nanos / 1e9;
+	}
+
+	private static final class Mean
+	{
+
+		private int n;
+
+		private double sum;
+
+		private double max = Double.NaN;
+
+		private void add( final double val )
+		{
+			n++;
+			sum += val;
+			if ( Double.isNaN( max ) || val > max )
+				max = val;
+		}
+
+		private double mean()
+		{
+			return n == 0 ? Double.NaN : sum / n;
+		}
+
+		private double max()
+		{
+			return max;
+		}
+
+		private void clear()
+		{
+			n = 0;
+			sum = 0.;
+			max = Double.NaN;
+		}
+	}
+}
@@ -32,6 +32,8 @@ public class TrackingMetrics
 
 	private final double[] arr;
 
+	private boolean approximate = false;
+
 	public TrackingMetrics( final TrackingMetricsType type )
 	{
 		this.type = type;
@@ -39,6 +41,16 @@ public class TrackingMetrics
 		Arrays.fill( arr, Double.NaN );
 	}
 
+	/**
+	 * Wraps the specified metric values, in the order of the metrics of the
+	 * type.
+	 */
+	TrackingMetrics( final TrackingMetricsType type, final double[] arr )
+	{
+		this.type = type;
+		this.arr = arr;
+	}
+
 	public boolean isNaN()
 	{
 		for ( final double d : arr )
@@ -64,6 +76,24 @@ public class TrackingMetrics
 		arr[ id ] = val;
 	}
 
+	/**
+	 * Sets whether these metric values are approximate. Approximate values
+	 * are saved apart from the results files, so that they are not taken as
+	 * the results of their tests.
+	 * 
+	 * @param approximate
+	 *            whether the values are approximate.
+	 */
+	public void setApproximate( final boolean approximate )
+	{
+		this.approximate = approximate;
+	}
+
+	public boolean isApproximate()
+	{
+		return approximate;
+	}
+
 	public double[] toArray()
 	{
 		return arr;
@@ -21,27 +21,72 @@
  */
 package fiji.plugin.trackmate.helper;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import fiji.plugin.trackmate.helper.TrackingMetricsType.MetricValue;
+import fiji.plugin.trackmate.helper.TrackingMetricsType.MetricValueOptimum;
 import fiji.plugin.trackmate.util.TMUtils;
 
+/**
+ * A table of tracking metrics results, one line per tested configuration.
+ * <p>
+ * The table is stored by columns: one <code>double[]</code> array per metric,
+ * and one <code>int[]</code> array per parameter, holding codes of a string
+ * dictionary shared by all the columns. The parameter maps returned for a
+ * line are read-only views over these columns.
+ */
 public class TrackingMetricsTable
 {
 
 	private final TrackingMetricsType type;
 
-	private final List< TrackingMetrics > metrics;
+	private final int size;
+
+	/**
+	 * Metric values, indexed by metric then by line.
+	 */
+	private final double[][] metrics;
+
+	/**
+	 * Decodes the codes of the string columns.
+	 */
+	private final String[] dictionary;
+
+	private final int[] detectors;
+
+	private final int[] trackers;
+
+	private final Columns detectorParams;
 
-	private final List< String > detectors;
+	private final Columns trackerParams;
 
-	private final List< String > trackers;
+	private final BestMetricsIndex index;
 
-	private final List< Map< String, String > > detectorParams;
+	/*
+	 * Query indices, built on demand.
+	 */
 
-	private final List< Map< String, String > > trackerParams;
+	/**
+	 * Lines of each value, per string column.
+	 */
+	private final Map< String, Map< String, BitSet > > valueIndices = new ConcurrentHashMap<>();
+
+	/**
+	 * Lines sorted best first, per metric id.
+	 */
+	private final Map< Integer, int[] > rankedLines = new ConcurrentHashMap<>();
 
 	public TrackingMetricsTable(
 			final TrackingMetricsType type,
@@ -52,73 +97,309 @@ public class TrackingMetricsTable
 			final List< Map< String, String > > trackerParams )
 	{
 		this.type = type;
+		this.size = metrics.size();
+		this.metrics = new double[ type.metrics().size() ][ size ];
+		this.detectors = new int[ size ];
+		this.trackers = new int[ size ];
+		final StringDictionary dict = new StringDictionary();
+		this.detectorParams = Columns.encode( detectorParams, dict );
+		this.trackerParams = Columns.encode( trackerParams, dict );
+		this.index = new BestMetricsIndex( type );
+		for ( int i = 0; i < size; i++ )
+		{
+			final double[] values = metrics.get( i ).toArray();
+			for ( int k = 0; k < values.length; k++ )
+				this.metrics[ k ][ i ] = values[ k ];
+			this.detectors[ i ] = dict.encode( detectors.get( i ) );
+			this.trackers[ i ] = dict.encode( trackers.get( i ) );
+			index.add( i, detectors.get( i ), trackers.get( i ), values );
+		}
+		this.dictionary = dict.values();
+	}
+
+	/**
+	 * Creates a table over the first lines of the specified columns, with an
+	 * index of its best lines. The arrays are not copied, and must not be
+	 * modified below the specified size.
+	 */
+	TrackingMetricsTable(
+			final TrackingMetricsType type,
+			final int size,
+			final double[][] metrics,
+			final String[] dictionary,
+			final int[] detectors,
+			final int[] trackers,
+			final Columns detectorParams,
+			final Columns trackerParams,
+			final BestMetricsIndex index )
+	{
+		this.type = type;
+		this.size = size;
 		this.metrics = metrics;
+		this.dictionary = dictionary;
 		this.detectors = detectors;
 		this.trackers = trackers;
 		this.detectorParams = detectorParams;
 		this.trackerParams = trackerParams;
+		this.index = index;
 	}
 
 	public int size()
 	{
-		return metrics.size();
+		return size;
 	}
 
 	public String getDetector( final int line )
 	{
-		return detectors.get( line );
+		return decode( detectors[ checkLine( line ) ] );
 	}
 
 	public String getTracker( final int line )
 	{
-		return trackers.get( line );
+		return decode( trackers[ checkLine( line ) ] );
 	}
 
+	/**
+	 * Returns the detector parameters of the specified line, as a read-only
+	 * map view over the parameter columns.
+	 */
 	public Map< String, String > getDetectorParams( final int line )
 	{
-		return detectorParams.get( line );
+		return new LineParams( detectorParams, dictionary, checkLine( line ) );
 	}
 
+	/**
+	 * Returns the tracker parameters of the specified line, as a read-only map
+	 * view over the parameter columns.
+	 */
 	public Map< String, String > getTrackerParams( final int line )
 	{
-		return trackerParams.get( line );
+		return new LineParams( trackerParams, dictionary, checkLine( line ) );
 	}
 
+	/**
+	 * Returns a copy of the metric values of the specified line.
+	 */
 	public TrackingMetrics getMetrics( final int i )
 	{
-		return metrics.get( i );
+		checkLine( i );
+		final double[] values = new double[ metrics.length ];
+		for ( int k = 0; k < values.length; k++ )
+			values[ k ] = metrics[ k ][ i ];
+		return new TrackingMetrics( type, values );
+	}
+
+	/**
+	 * Returns the value of one metric for the specified line, without copying
+	 * the other metric values.
+	 * 
+	 * @param line
+	 *            the line index.
+	 * @param key
+	 *            the metric.
+	 * @return the metric value.
+	 */
+	public double getMetric( final int line, final MetricValue key )
+	{
+		return metrics[ type.id( key ) ][ checkLine( line ) ];
+	}
+
+	private int checkLine( final int line )
+	{
+		if ( line < 0 || line >= size )
+			throw new IndexOutOfBoundsException( "Line: " + line + ", size: " + size );
+		return line;
+	}
+
+	private String decode( final int code )
+	{
+		return ( code == StringDictionary.NULL ) ? null : dictionary[ code ];
 	}
 
+	/**
+	 * Returns the line with the best value of the specified metric, for the
+	 * specified detector and tracker. Lines with a <code>NaN</code> value are
+	 * returned only if all the matching lines have a <code>NaN</code> value.
+	 * Ties are resolved by line order.
+	 * 
+	 * @param detector
+	 *            the detector key, or <code>null</code> for any detector.
+	 * @param tracker
+	 *            the tracker key, or <code>null</code> for any tracker.
+	 * @param key
+	 *            the metric.
+	 * @return the best line index, or -1 if no line matches.
+	 */
 	public int bestFor( final String detector, final String tracker, final MetricValue key )
 	{
-		int bestLine = -1;
-		TrackingMetrics best = null;
-		for ( int i = 0; i < metrics.size(); i++ )
+		return index.best( detector, tracker, key );
+	}
+
+	/**
+	 * Returns the lines with the best values of the specified metric, for the
+	 * specified detector and tracker, best first. At most
+	 * {@value BestMetricsIndex#RANKING_SIZE} lines are returned.
+	 * 
+	 * @param detector
+	 *            the detector key, or <code>null</code> for any detector.
+	 * @param tracker
+	 *            the tracker key, or <code>null</code> for any tracker.
+	 * @param key
+	 *            the metric.
+	 * @return a new array of line indices.
+	 */
+	public int[] topFor( final String detector, final String tracker, final MetricValue key )
+	{
+		return index.top( detector, tracker, key );
+	}
+
+	/**
+	 * Returns the lines of each value of a string column. The index is built
+	 * on the first call for each column.
+	 * 
+	 * @param column
+	 *            {@value ResultsQuery#DETECTOR}, {@value ResultsQuery#TRACKER}
+	 *            or the name of a detector or tracker parameter.
+	 * @return a map from value to lines, that must not be modified. Empty if
+	 *         the column does not exist. Lines without value are not in it.
+	 */
+	Map< String, BitSet > valueIndex( final String column )
+	{
+		return valueIndices.computeIfAbsent( column, c -> {
+			final int[] codes = codes( c );
+			if ( codes == null )
+				return Collections.emptyMap();
+
+			final Map< Integer, BitSet > byCode = new HashMap<>();
+			for ( int i = 0; i < size; i++ )
+				if ( codes[ i ] != StringDictionary.NULL )
+					byCode.computeIfAbsent( codes[ i ], k -> new BitSet( size ) ).set( i );
+
+			final Map< String, BitSet > byValue = new HashMap<>( byCode.size() * 2 );
+			for ( final Map.Entry< Integer, BitSet > entry : byCode.entrySet() )
+				byValue.put( decode( entry.getKey().intValue() ), entry.getValue() );
+			return byValue;
+		} );
+	}
+
+	private int[] codes( final String column )
+	{
+		if ( ResultsQuery.DETECTOR.equals( column ) )
+			return detectors;
+		if ( ResultsQuery.TRACKER.equals( column ) )
+			return trackers;
+		Integer c = detectorParams.keyIndex.get( column );
+		if ( c != null )
+			return detectorParams.columns[ c.intValue() ];
+		c = trackerParams.keyIndex.get( column );
+		if ( c != null )
+			return trackerParams.columns[ c.intValue() ];
+		return null;
+	}
+
+	/**
+	 * Returns the lines whose value of the specified metric is in a range.
+	 * 
+	 * @param key
+	 *            the metric.
+	 * @param min
+	 *            the minimal value, inclusive.
+	 * @param max
+	 *            the maximal value, inclusive.
+	 * @return a new bit set of lines. <code>NaN</code> values are never in
+	 *         it.
+	 */
+	BitSet selectRange( final MetricValue key, final double min, final double max )
+	{
+		final BitSet lines = new BitSet( size );
+		final int id = type.id( key );
+		if ( id < 0 || id >= metrics.length )
+			return lines;
+		final double[] values = metrics[ id ];
+		for ( int i = 0; i < size; i++ )
+			if ( values[ i ] >= min && values[ i ] <= max )
+				lines.set( i );
+		return lines;
+	}
+
+	/**
+	 * Returns all the lines sorted by value of the specified metric, best
+	 * first, in the same order as {@link #topFor(String, String, MetricValue)}:
+	 * <code>NaN</code> values last and ties by line order. The index is built
+	 * on the first call for each metric.
+	 * 
+	 * @param key
+	 *            the metric.
+	 * @return the lines, in an array that must not be modified.
+	 */
+	int[] rankedLines( final MetricValue key )
+	{
+		final int id = type.id( key );
+		if ( id < 0 || id >= metrics.length )
+			return new int[ 0 ];
+		return rankedLines.computeIfAbsent( Integer.valueOf( id ), k -> rank( metrics[ id ], key.optimumType == MetricValueOptimum.HIGHER_IS_BETTER ) );
+	}
+
+	/**
+	 * Sorts the lines by value, stably, using sortable integer keys.
+	 */
+	private int[] rank( final double[] values, final boolean higherIsBetter )
+	{
+		final long[] keys = new long[ size ];
+		for ( int i = 0; i < size; i++ )
+			keys[ i ] = rankKey( values[ i ], higherIsBetter );
+		final long[] sorted = Arrays.copyOf( keys, size );
+		Arrays.sort( sorted );
+
+		// Place each line after the lines with the same key before it.
+		final int[] placed = new int[ size ];
+		final int[] lines = new int[ size ];
+		for ( int i = 0; i < size; i++ )
 		{
-			if ( ( null != detector && !detectors.get( i ).equals( detector ) )
-					|| ( null != tracker && !trackers.get( i ).equals( tracker ) ) )
-				continue;
+			final int first = lowerBound( sorted, keys[ i ] );
+			lines[ first + placed[ first ]++ ] = i;
+		}
+		return lines;
+	}
 
-			final TrackingMetrics c = metrics.get( i );
-			if ( c.isBetterThan( best, key ) )
-			{
-				best = c;
-				bestLine = i;
-			}
+	/**
+	 * Returns a key that sorts values best first, with <code>NaN</code> last.
+	 */
+	private static long rankKey( final double value, final boolean higherIsBetter )
+	{
+		if ( Double.isNaN( value ) )
+			return Long.MAX_VALUE;
+		// -0 and 0 are ties.
+		final long bits = Double.doubleToLongBits( value == 0. ? 0. : value );
+		final long sortable = bits ^ ( ( bits >> 63 ) & Long.MAX_VALUE );
+		return higherIsBetter ? ~sortable : sortable;
+	}
+
+	private static int lowerBound( final long[] sorted, final long key )
+	{
+		int lo = 0;
+		int hi = sorted.length;
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			if ( sorted[ mid ] < key )
+				lo = mid + 1;
+			else
+				hi = mid;
 		}
-		return bestLine;
+		return lo;
 	}
 
 	@SuppressWarnings( { "unchecked", "rawtypes" } )
 	public String printLine( final int i )
 	{
 		final StringBuilder str = new StringBuilder();
-		str.append( "For detector: " + detectors.get( i ) + " with settings:" );
-		str.append( "\n" + TMUtils.echoMap( ( Map ) detectorParams.get( i ), 2 ) );
-		str.append( "And tracker: " + trackers.get( i ) + " with settings:" );
-		str.append( "\n" + TMUtils.echoMap( ( Map ) trackerParams.get( i ), 2 ) );
+		str.append( "For detector: " + getDetector( i ) + " with settings:" );
+		str.append( "\n" + TMUtils.echoMap( ( Map ) getDetectorParams( i ), 2 ) );
+		str.append( "And tracker: " + getTracker( i ) + " with settings:" );
+		str.append( "\n" + TMUtils.echoMap( ( Map ) getTrackerParams( i ), 2 ) );
 		str.append( type.name() + " metrics:\n" );
-		str.append( metrics.get( i ).toString() );
+		str.append( getMetrics( i ).toString() );
 		return str.toString();
 	}
 
@@ -133,31 +414,23 @@ public class TrackingMetricsTable
 		final int[] colWidths =
 				new int[ descs.size()
 						+ 2
-						+ detectorParams.get( 0 ).size()
-						+ trackerParams.get( 0 ).size() ];
+						+ detectorParams.keys.length
+						+ trackerParams.keys.length ];
 		for ( int i = 0; i < descs.size(); i++ )
 			colWidths[ id++ ] = Math.max( 5, descs.get( i ).key.length() );
 
 		// Detector col.
-		colWidths[ id++ ] = detectors.stream()
-				.mapToInt( d -> d.length() )
-				.max()
-				.getAsInt();
+		colWidths[ id++ ] = maxLength( detectors );
 
 		// Detector param cols.
-		final Set< String > detectorKeys = detectorParams.get( 0 ).keySet();
-		for ( final String dk : detectorKeys )
+		for ( final String dk : detectorParams.keys )
 			colWidths[ id++ ] = dk.length();
 
 		// Tracker col.
-		colWidths[ id++ ] = trackers.stream()
-				.mapToInt( d -> d.length() )
-				.max()
-				.getAsInt();
+		colWidths[ id++ ] = maxLength( trackers );
 
 		// Tracker param cols.
-		final Set< String > trackerKeys = trackerParams.get( 0 ).keySet();
-		for ( final String dk : trackerKeys )
+		for ( final String dk : trackerParams.keys )
 			colWidths[ id++ ] = dk.length();
 
 		// Add space.
@@ -176,12 +449,12 @@ public class TrackingMetricsTable
 
 		str.append( String.format( "%" + colWidths[ id++ ] + "s", "DETECTOR" ) );
 
-		for ( final String dk : detectorKeys )
+		for ( final String dk : detectorParams.keys )
 			str.append( String.format( "%" + colWidths[ id++ ] + "s", dk ) );
 
 		str.append( String.format( "%" + colWidths[ id++ ] + "s", "TRACKER" ) );
 
-		for ( final String tk : trackerKeys )
+		for ( final String tk : trackerParams.keys )
 			str.append( String.format( "%" + colWidths[ id++ ] + "s", tk ) );
 
 		str.append( '\n' );
@@ -193,25 +466,178 @@ public class TrackingMetricsTable
 		for ( int i = 0; i < size(); i++ )
 		{
 			id = 0;
-			final double[] cm = metrics.get( i ).toArray();
-			for ( int j = 0; j < cm.length; j++ )
-				str.append( String.format( "%" + colWidths[ id++ ] + ".3f", cm[ j ] ) );
+			for ( int j = 0; j < metrics.length; j++ )
+				str.append( String.format( "%" + colWidths[ id++ ] + ".3f", metrics[ j ][ i ] ) );
 
-			str.append( String.format( "%" + colWidths[ id++ ] + "s", detectors.get( i ) ) );
+			str.append( String.format( "%" + colWidths[ id++ ] + "s", getDetector( i ) ) );
 
-			final Map< String, String > dp = detectorParams.get( i );
-			for ( final String dk : detectorKeys )
-				str.append( String.format( "%" + colWidths[ id++ ] + "s", dp.get( dk ) ) );
+			for ( final int[] col : detectorParams.columns )
+				str.append( String.format( "%" + colWidths[ id++ ] + "s", decode( col[ i ] ) ) );
 
-			str.append( String.format( "%" + colWidths[ id++ ] + "s", trackers.get( i ) ) );
+			str.append( String.format( "%" + colWidths[ id++ ] + "s", getTracker( i ) ) );
 
-			final Map< String, String > tp = trackerParams.get( i );
-			for ( final String tk : trackerKeys )
-				str.append( String.format( "%" + colWidths[ id++ ] + "s", tp.get( tk ) ) );
+			for ( final int[] col : trackerParams.columns )
+				str.append( String.format( "%" + colWidths[ id++ ] + "s", decode( col[ i ] ) ) );
 
 			str.append( '\n' );
 		}
 
 		return str.toString();
 	}
+
+	private int maxLength( final int[] codes )
+	{
+		int max = 0;
+		for ( int i = 0; i < size; i++ )
+		{
+			final String s = decode( codes[ i ] );
+			if ( s != null )
+				max = Math.max( max, s.length() );
+		}
+		return max;
+	}
+
+	/**
+	 * Parameter columns sharing one header: one array of dictionary codes
+	 * per parameter key.
+	 */
+	static final class Columns
+	{
+
+		final String[] keys;
+
+		final int[][] columns;
+
+		/**
+		 * Column of each key.
+		 */
+		final Map< String, Integer > keyIndex;
+
+		Columns( final String[] keys, final int[][] columns, final Map< String, Integer > keyIndex )
+		{
+			this.keys = keys;
+			this.columns = columns;
+			this.keyIndex = keyIndex;
+		}
+
+		/**
+		 * Returns a copy of these columns referencing the same arrays, that
+		 * is not affected if the arrays of these columns are replaced.
+		 */
+		Columns snapshot()
+		{
+			return new Columns( keys, columns.clone(), keyIndex );
+		}
+
+		static Map< String, Integer > keyIndex( final String[] keys )
+		{
+			final Map< String, Integer > keyIndex = new HashMap<>();
+			for ( int c = 0; c < keys.length; c++ )
+				keyIndex.put( keys[ c ], Integer.valueOf( c ) );
+			return keyIndex;
+		}
+
+		/**
+		 * Encodes parameter maps in columns, one per key found in the maps.
+		 */
+		private static Columns encode( final List< Map< String, String > > params, final StringDictionary dict )
+		{
+			final Set< String > keySet = new LinkedHashSet<>();
+			for ( final Map< String, String > map : params )
+				keySet.addAll( map.keySet() );
+			final String[] keys = keySet.toArray( new String[ 0 ] );
+			final int[][] columns = new int[ keys.length ][ params.size() ];
+			for ( int c = 0; c < keys.length; c++ )
+				for ( int i = 0; i < params.size(); i++ )
+					columns[ c ][ i ] = dict.encode( params.get( i ).get( keys[ c ] ) );
+			return new Columns( keys, columns, keyIndex( keys ) );
+		}
+	}
+
+	/**
+	 * Read-only view of the parameters of one line. Parameters with no value
+	 * are not in the map.
+	 */
+	private static final class LineParams extends AbstractMap< String, String >
+	{
+
+		private final Columns params;
+
+		private final String[] dictionary;
+
+		private final int line;
+
+		private LineParams( final Columns params, final String[] dictionary, final int line )
+		{
+			this.params = params;
+			this.dictionary = dictionary;
+			this.line = line;
+		}
+
+		@Override
+		public String get( final Object key )
+		{
+			final Integer c = params.keyIndex.get( key );
+			if ( c == null )
+				return null;
+			final int code = params.columns[ c.intValue() ][ line ];
+			return ( code == StringDictionary.NULL ) ? null : dictionary[ code ];
+		}
+
+		@Override
+		public boolean containsKey( final Object key )
+		{
+			return get( key ) != null;
+		}
+
+		@Override
+		public Set< Map.Entry< String, String > > entrySet()
+		{
+			return new AbstractSet< Map.Entry< String, String > >()
+			{
+				@Override
+				public Iterator< Map.Entry< String, String > > iterator()
+				{
+					return new Iterator< Map.Entry< String, String > >()
+					{
+						private int next = advance( 0 );
+
+						private int advance( final int from )
+						{
+							int c = from;
+							while ( c < params.keys.length && params.columns[ c ][ line ] == StringDictionary.NULL )
+								c++;
+							return c;
+						}
+
+						@Override
+						public boolean hasNext()
+						{
+							return next < params.keys.length;
+						}
+
+						@Override
+						public Map.Entry< String, String > next()
+						{
+							if ( !hasNext() )
+								throw new NoSuchElementException();
+							final int c = next;
+							next = advance( c + 1 );
+							return new SimpleImmutableEntry<>( params.keys[ c ], dictionary[ params.columns[ c ][ line ] ] );
+						}
+					};
+				}
+
+				@Override
+				public int size()
+				{
+					int n = 0;
+					for ( final int[] col : params.columns )
+						if ( col[ line ] != StringDictionary.NULL )
+							n++;
+					return n;
+				}
+			};
+		}
+	}
 }
@@ -21,28 +21,49 @@
  */
 package fiji.plugin.trackmate.helper;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
+/**
+ * Builds a {@link TrackingMetricsTable} from the lines of a CSV results file.
+ * <p>
+ * Lines can still be added after {@link #get()} has been called. The tables
+ * returned are snapshots of the lines added so far: the storage is
+ * append-only, so they are not affected by lines added afterwards, and can be
+ * read by other threads while the builder keeps growing. The index of the
+ * best lines of each table is also updated as lines are added, and copied in
+ * each snapshot.
+ * <p>
+ * Lines are stored by columns. Detector and tracker names and parameter
+ * values are encoded with a dictionary shared by all the columns, so values
+ * repeated over many lines are stored once.
+ */
 public class TrackingMetricsTableBuilder
 {
 
+	private static final int INITIAL_CAPACITY = 16;
+
 	private final TrackingMetricsType type;
 
+	private final StringDictionary dictionary = new StringDictionary();
+
 	private String[] header;
 
-	private final List< TrackingMetrics > metrics = new ArrayList<>();
+	/**
+	 * Metric values, indexed by metric then by line.
+	 */
+	private final double[][] metrics;
+
+	private int[] detectors = new int[ INITIAL_CAPACITY ];
 
-	private final List< String > detectors = new ArrayList<>();
+	private int[] trackers = new int[ INITIAL_CAPACITY ];
 
-	private final List< String > trackers = new ArrayList<>();
+	private TrackingMetricsTable.Columns detectorParams;
 
-	private final List< Map< String, String > > detectorParams = new ArrayList<>();
+	private TrackingMetricsTable.Columns trackerParams;
 
-	private final List< Map< String, String > > trackerParams = new ArrayList<>();
+	private int size = 0;
+
+	private final BestMetricsIndex index;
 
 	private int detectorCol = -1;
 
@@ -51,6 +72,10 @@ public class TrackingMetricsTableBuilder
 	public TrackingMetricsTableBuilder( final TrackingMetricsType type )
 	{
 		this.type = type;
+		this.index = new BestMetricsIndex( type );
+		this.metrics = new double[ type.metrics().size() ][ INITIAL_CAPACITY ];
+		this.detectorParams = columns( new String[ 0 ] );
+		this.trackerParams = columns( new String[ 0 ] );
 	}
 
 	public TrackingMetricsTableBuilder addHeader( final String[] header )
@@ -61,43 +86,111 @@ public class TrackingMetricsTableBuilder
 		this.detectorCol = Arrays.asList( header ).indexOf( "DETECTOR" );
 		this.trackerCol = Arrays.asList( header ).indexOf( "TRACKER" );
 		this.header = header;
+		this.detectorParams = columns( Arrays.copyOfRange( header, detectorCol + 1, trackerCol ) );
+		this.trackerParams = columns( Arrays.copyOfRange( header, trackerCol + 1, header.length ) );
 		return this;
 	}
 
+	private TrackingMetricsTable.Columns columns( final String[] keys )
+	{
+		return new TrackingMetricsTable.Columns(
+				keys,
+				new int[ keys.length ][ detectors.length ],
+				TrackingMetricsTable.Columns.keyIndex( keys ) );
+	}
+
 	public TrackingMetricsTableBuilder addFromCSV( final String[] line )
 	{
 		if ( header == null )
 			throw new IllegalArgumentException( "CSV header is not set yet." );
 
 		// Parse the metrics first.
-		final TrackingMetrics m = type.fromCSVLine( line );
-		metrics.add( m );
+		return add( type.fromCSVLine( line ).toArray(), line );
+	}
+
+	/**
+	 * Adds a line whose metric values are already parsed. The metric fields
+	 * of the line are not read, and the values are copied.
+	 * 
+	 * @param values
+	 *            the metric values, in the order of the metrics of the type.
+	 * @param line
+	 *            the fields of the CSV line.
+	 * @return this builder.
+	 */
+	TrackingMetricsTableBuilder add( final double[] values, final String[] line )
+	{
+		if ( header == null )
+			throw new IllegalArgumentException( "CSV header is not set yet." );
+
+		if ( size == detectors.length )
+			grow();
+		for ( int k = 0; k < values.length; k++ )
+			metrics[ k ][ size ] = values[ k ];
 
 		// Detector and Tracker.
-		detectors.add( line[ detectorCol ] );
-		trackers.add( line[ trackerCol ] );
+		final String detector = line[ detectorCol ];
+		final String tracker = line[ trackerCol ];
+		detectors[ size ] = dictionary.encode( detector );
+		trackers[ size ] = dictionary.encode( tracker );
 
 		// Parameters.
-		final Map< String, String > dp = new HashMap<>();
-		for ( int col = detectorCol + 1; col < trackerCol; col++ )
-			dp.put( header[ col ], line[ col ] );
+		encode( line, detectorCol + 1, detectorParams );
+		encode( line, trackerCol + 1, trackerParams );
+
+		index.add( size, detector, tracker, values );
+		size++;
+		return this;
+	}
 
-		detectorParams.add( dp );
+	private void encode( final String[] line, final int firstCol, final TrackingMetricsTable.Columns params )
+	{
+		for ( int c = 0; c < params.columns.length; c++ )
+		{
+			final int col = firstCol + c;
+			params.columns[ c ][ size ] = dictionary.encode( ( col < line.length ) ? line[ col ] : null );
+		}
+	}
 
-		final Map< String, String > tp = new HashMap<>();
-		for ( int col = trackerCol + 1; col < line.length; col++ )
-			tp.put( header[ col ], line[ col ] );
+	/**
+	 * Returns the number of lines added so far.
+	 * 
+	 * @return the number of lines.
+	 */
+	public int size()
+	{
+		return size;
+	}
 
-		trackerParams.add( tp );
+	/**
+	 * Grows the storage. New arrays are allocated, so that the tables
+	 * returned so far keep reading from the old ones.
+	 */
+	private void grow()
+	{
+		final int capacity = detectors.length + ( detectors.length >> 1 );
+		for ( int k = 0; k < metrics.length; k++ )
+			metrics[ k ] = Arrays.copyOf( metrics[ k ], capacity );
+		detectors = Arrays.copyOf( detectors, capacity );
+		trackers = Arrays.copyOf( trackers, capacity );
+		grow( detectorParams, capacity );
+		grow( trackerParams, capacity );
+	}
 
-		return this;
+	private static void grow( final TrackingMetricsTable.Columns params, final int capacity )
+	{
+		for ( int c = 0; c < params.columns.length; c++ )
+			params.columns[ c ] = Arrays.copyOf( params.columns[ c ], capacity );
 	}
 
 	public TrackingMetricsTable get()
 	{
 		return new TrackingMetricsTable( type,
-				metrics,
+				size,
+				metrics.clone(),
+				dictionary.values(),
 				detectors, trackers,
-				detectorParams, trackerParams );
+				detectorParams.snapshot(), trackerParams.snapshot(),
+				index.copy() );
 	}
 }
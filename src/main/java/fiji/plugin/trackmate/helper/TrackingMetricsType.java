@@ -25,7 +25,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.function.BiPredicate;
 
 import gnu.trove.map.hash.TObjectIntHashMap;
 
@@ -40,15 +39,22 @@ public abstract class TrackingMetricsType
 
 	public static enum MetricValueOptimum
 	{
-		HIGHER_IS_BETTER( ( v1, v2 ) -> v1 > v2 ),
-		LOWER_IS_BETTER( ( v1, v2 ) -> v1 < v2 );
-
-		private final BiPredicate< Double, Double > comparator;
-
-		private MetricValueOptimum( final BiPredicate< Double, Double > comparator )
+		HIGHER_IS_BETTER
 		{
-			this.comparator = comparator;
-		}
+			@Override
+			public boolean isBetterThan( final double val1, final double val2 )
+			{
+				return val1 > val2;
+			}
+		},
+		LOWER_IS_BETTER
+		{
+			@Override
+			public boolean isBetterThan( final double val1, final double val2 )
+			{
+				return val1 < val2;
+			}
+		};
 
 		/**
 		 * Returns <code>true</code> if the first metric value is 'better than'
@@ -61,10 +67,7 @@ public abstract class TrackingMetricsType
 		 * @return <code>true</code> if the first value is better than the
 		 *         second one.
 		 */
-		public boolean isBetterThan( final double val1, final double val2 )
-		{
-			return comparator.test( val1, val2 );
-		}
+		public abstract boolean isBetterThan( final double val1, final double val2 );
 	}
 
 	public static class MetricValue
@@ -30,6 +30,7 @@ import org.scijava.plugin.SciJavaPlugin;
 import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.TrackMateModule;
 import fiji.plugin.trackmate.helper.model.parameter.AbstractParamSweepModel;
+import fiji.plugin.trackmate.helper.model.parameter.Combinations;
 
 public abstract class AbstractSweepModel< F extends TrackMateModule > implements SciJavaPlugin
 {
@@ -60,6 +61,21 @@ public abstract class AbstractSweepModel< F extends TrackMateModule > implements
 
 	public abstract Iterator< Settings > iterator( final Settings base, final int targetChannel );
 
+	/**
+	 * Returns the number of settings the iterator of this model generates,
+	 * computed from the sizes of the parameter ranges without generating
+	 * them.
+	 * 
+	 * @return the number of settings.
+	 */
+	public long count()
+	{
+		// Null factory signals not to create any settings.
+		if ( factory == null )
+			return 0;
+		return Combinations.of( models ).size();
+	}
+
 	public String getName()
 	{
 		return name;
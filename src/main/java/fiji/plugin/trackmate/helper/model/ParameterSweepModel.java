@@ -25,7 +25,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -37,7 +36,6 @@ import org.scijava.log.LogService;
 import org.scijava.plugin.PluginInfo;
 import org.scijava.plugin.PluginService;
 
-import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.features.FeatureFilter;
 import fiji.plugin.trackmate.helper.model.AbstractSweepModel.ModelListener;
 import fiji.plugin.trackmate.helper.model.detector.DetectorSweepModel;
@@ -157,9 +155,9 @@ public class ParameterSweepModel
 	 * 
 	 * @return the count of settings.
 	 */
-	public int count()
+	public long count()
 	{
-		return countDetectorSettings() * countTrackerSettings();
+		return Math.multiplyExact( countDetectorSettings(), countTrackerSettings() );
 	}
 
 	/**
@@ -168,20 +166,11 @@ public class ParameterSweepModel
 	 * 
 	 * @return the count of settings.
 	 */
-	public int countTrackerSettings()
+	public long countTrackerSettings()
 	{
-		final int targetChannel = 1;
-		final Settings base = new Settings( null );
-		int count = 0;
+		long count = 0;
 		for ( final TrackerSweepModel trackerModel : getActiveTracker() )
-		{
-			final Iterator< Settings > tit = trackerModel.iterator( base, targetChannel );
-			while ( tit.hasNext() )
-			{
-				tit.next();
-				count++;
-			}
-		}
+			count = Math.addExact( count, trackerModel.count() );
 		return count;
 	}
 
@@ -191,20 +180,11 @@ public class ParameterSweepModel
 	 * 
 	 * @return the count of settings.
 	 */
-	public int countDetectorSettings()
+	public long countDetectorSettings()
 	{
-		final int targetChannel = 1;
-		final Settings base = new Settings( null );
-		int count = 0;
+		long count = 0;
 		for ( final DetectorSweepModel detectorModel : getActiveDetectors() )
-		{
-			final Iterator< Settings > dit = detectorModel.iterator( base, targetChannel );
-			while ( dit.hasNext() )
-			{
-				dit.next();
-				count++;
-			}
-		}
+			count = Math.addExact( count, detectorModel.count() );
 		return count;
 	}
 
@@ -25,8 +25,6 @@ import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_TARGET_CHANNEL;
 
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 
 import fiji.plugin.trackmate.Settings;
@@ -69,14 +67,7 @@ public class DetectorSweepModel extends AbstractSweepModel< SpotDetectorFactoryB
 		public ModelsIterator( final Settings base, final Map< String, AbstractParamSweepModel< ? > > models )
 		{
 			this.base = base;
-			final Map< String, List< Object > > values = new LinkedHashMap<>( models.size() );
-			for ( final String key : models.keySet() )
-			{
-				@SuppressWarnings( "unchecked" )
-				final List< Object > range = ( List< Object > ) models.get( key ).getRange();
-				values.put( key, range );
-			}
-			this.combinations = new Combinations( values );
+			this.combinations = Combinations.of( models );
 		}
 
 		@Override
@@ -89,13 +80,7 @@ public class DetectorSweepModel extends AbstractSweepModel< SpotDetectorFactoryB
 		public Settings next()
 		{
 			final Settings copy = base.copyOn( base.imp );
-
-			final Map< String, Object > params = combinations.next();
-			for ( final String key : params.keySet() )
-			{
-				final Object val = params.get( key );
-				copy.detectorSettings.put( key, val );
-			}
+			combinations.putNext( copy.detectorSettings );
 			return copy;
 		}
 	}
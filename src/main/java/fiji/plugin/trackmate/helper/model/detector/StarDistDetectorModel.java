@@ -62,6 +62,12 @@ public class StarDistDetectorModel extends DetectorSweepModel
 		return Collections.singleton( s ).iterator();
 	}
 
+	@Override
+	public long count()
+	{
+		return unavailable ? 0 : 1;
+	}
+
 	private static SpotDetectorFactoryBase< ? > createFactory()
 	{
 		if ( null == new DetectorProvider().getFactory( "STARDIST_DETECTOR" ) )
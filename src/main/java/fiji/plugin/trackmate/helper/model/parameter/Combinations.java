@@ -26,16 +26,66 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
+/**
+ * The combinations of the values of several parameters, indexed from 0 to
+ * {@link #size()} - 1.
+ * <p>
+ * Combinations are ordered like nested loops over the parameters, the last
+ * parameter varying fastest. The size is the product of the range sizes,
+ * and a combination is computed from its index without enumerating the ones
+ * before it, so a large space can be counted, sampled at random or split in
+ * slices, for instance to share it between several runners, without being
+ * generated.
+ * <p>
+ * An instance also iterates over its combinations. A space without
+ * parameters, or with a parameter without values, is empty.
+ */
 public class Combinations implements Iterator< Map< String, Object > >
 {
 
+	private final List< String > keys;
+
 	private final List< List< Object > > elements;
 
-	private final int[] indices;
+	/**
+	 * Number of combinations between two successive values of each
+	 * parameter.
+	 */
+	private final long[] strides;
 
-	private final List< String > keys;
+	/**
+	 * Index of the first combination of this space in the full space.
+	 */
+	private final long from;
+
+	/**
+	 * Index of the combination after the last one of this space in the full
+	 * space.
+	 */
+	private final long to;
 
+	/**
+	 * Index of the next combination to iterate in the full space.
+	 */
+	private long cursor;
+
+	/**
+	 * Indices in each range of the next combination to iterate.
+	 */
+	private final int[] indices;
+
+	/**
+	 * Creates the combination space of several parameters.
+	 * 
+	 * @param values
+	 *            the values of each parameter, by parameter key, in the order
+	 *            of the nested loops.
+	 * @throws ArithmeticException
+	 *             if there are more than {@link Long#MAX_VALUE}
+	 *             combinations.
+	 */
 	public Combinations( final Map< String, List< Object > > values )
 	{
 		this.elements = new ArrayList<>( values.size() );
@@ -45,35 +95,185 @@ public class Combinations implements Iterator< Map< String, Object > >
 			keys.add( key );
 			elements.add( values.get( key ) );
 		}
-		this.indices = new int[ values.size() ];
+		this.strides = new long[ keys.size() ];
+		long stride = 1;
+		for ( int i = strides.length - 1; i >= 0; i-- )
+		{
+			strides[ i ] = stride;
+			stride = Math.multiplyExact( stride, elements.get( i ).size() );
+		}
+		this.from = 0;
+		this.to = keys.isEmpty() ? 0 : stride;
+		this.cursor = from;
+		this.indices = new int[ keys.size() ];
+	}
+
+	private Combinations( final Combinations space, final long from, final long to )
+	{
+		this.keys = space.keys;
+		this.elements = space.elements;
+		this.strides = space.strides;
+		this.from = from;
+		this.to = to;
+		this.cursor = from;
+		this.indices = new int[ keys.size() ];
+		if ( from < to )
+			for ( int i = 0; i < indices.length; i++ )
+				indices[ i ] = index( i, from );
+	}
+
+	/**
+	 * Creates the combination space of the ranges of parameter sweep models.
+	 * 
+	 * @param models
+	 *            the parameter sweep models, by parameter key.
+	 * @return a new combination space.
+	 */
+	public static Combinations of( final Map< String, AbstractParamSweepModel< ? > > models )
+	{
+		final Map< String, List< Object > > values = new LinkedHashMap<>( models.size() );
+		for ( final String key : models.keySet() )
+		{
+			@SuppressWarnings( "unchecked" )
+			final List< Object > range = ( List< Object > ) models.get( key ).getRange();
+			values.put( key, range );
+		}
+		return new Combinations( values );
+	}
+
+	/**
+	 * Returns the number of combinations in this space.
+	 * 
+	 * @return the number of combinations.
+	 */
+	public long size()
+	{
+		return to - from;
+	}
+
+	/**
+	 * Returns the combination at the specified index.
+	 * 
+	 * @param index
+	 *            the index of the combination in this space.
+	 * @return a new map of the parameter values, by parameter key.
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is not in the space.
+	 */
+	public Map< String, Object > get( final long index )
+	{
+		final Map< String, Object > combination = new LinkedHashMap<>( keys.size() );
+		put( index, combination );
+		return combination;
+	}
+
+	/**
+	 * Puts the parameter values of the combination at the specified index in
+	 * a map, for instance directly in the detector or tracker settings map.
+	 * 
+	 * @param index
+	 *            the index of the combination in this space.
+	 * @param target
+	 *            the map to put the parameter values in.
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is not in the space.
+	 */
+	public void put( final long index, final Map< String, Object > target )
+	{
+		if ( index < 0 || index >= size() )
+			throw new IndexOutOfBoundsException( "Index " + index + " is not in [0, " + size() + "[." );
+
+		for ( int i = 0; i < keys.size(); i++ )
+			target.put( keys.get( i ), elements.get( i ).get( index( i, from + index ) ) );
+	}
+
+	/**
+	 * Returns the combinations of this space with an index in a range, as a
+	 * new space with its own iteration.
+	 * 
+	 * @param start
+	 *            the index of the first combination of the slice, inclusive.
+	 * @param end
+	 *            the index after the last combination of the slice.
+	 * @return a new space, indexed from 0.
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is not in the space.
+	 */
+	public Combinations slice( final long start, final long end )
+	{
+		if ( start < 0 || end > size() || start > end )
+			throw new IndexOutOfBoundsException( "Range [" + start + ", " + end + "[ is not in [0, " + size() + "[." );
+		return new Combinations( this, from + start, from + end );
+	}
+
+	/**
+	 * Splits this space in contiguous slices of sizes differing by at most
+	 * one.
+	 * 
+	 * @param n
+	 *            the number of slices, at least 1.
+	 * @return a new list of <code>n</code> slices, in order. Some of them are
+	 *         empty if there are less combinations than slices.
+	 */
+	public List< Combinations > split( final int n )
+	{
+		if ( n < 1 )
+			throw new IllegalArgumentException( "The number of slices must be at least 1, was " + n + "." );
+
+		final long size = size();
+		final List< Combinations > slices = new ArrayList<>( n );
+		for ( int i = 0; i < n; i++ )
+			slices.add( slice( size / n * i + Math.min( i, size % n ), size / n * ( i + 1 ) + Math.min( i + 1, size % n ) ) );
+		return slices;
 	}
 
 	@Override
 	public boolean hasNext()
 	{
-		if ( elements.isEmpty() )
-			return false;
-		// has first index not yet reached max position?
-		return indices[ 0 ] < elements.get( 0 ).size();
+		return cursor < to;
 	}
 
 	@Override
 	public Map< String, Object > next()
 	{
-		// get next
 		final Map< String, Object > result = new LinkedHashMap<>( indices.length );
+		putNext( result );
+		return result;
+	}
+
+	/**
+	 * Puts the parameter values of the next combination in a map, instead of
+	 * returning them in a new map like {@link #next()}.
+	 * 
+	 * @param target
+	 *            the map to put the parameter values in.
+	 * @throws NoSuchElementException
+	 *             if there are no more combinations.
+	 */
+	public void putNext( final Map< String, Object > target )
+	{
+		if ( !hasNext() )
+			throw new NoSuchElementException();
+
 		for ( int i = 0; i < indices.length; i++ )
-			result.put( keys.get( i ), elements.get( i ).get( indices[ i ] ) );
+			target.put( keys.get( i ), elements.get( i ).get( indices[ i ] ) );
 
 		// increase indices
+		cursor++;
 		for ( int i = indices.length - 1; i >= 0; i-- )
 		{
 			indices[ i ]++;
-			if ( indices[ i ] >= elements.get( i ).size() && i > 0 )
-				indices[ i ] %= elements.get( i ).size();
-			else
+			if ( indices[ i ] < elements.get( i ).size() )
 				break;
+			indices[ i ] = 0;
 		}
-		return result;
+	}
+
+	/**
+	 * Index in the range of a parameter of a combination of the full space.
+	 */
+	private int index( final int parameter, final long combination )
+	{
+		return ( int ) ( combination / strides[ parameter ] % elements.get( parameter ).size() );
 	}
 }
@@ -23,8 +23,6 @@ package fiji.plugin.trackmate.helper.model.tracker;
 
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 
 import fiji.plugin.trackmate.Settings;
@@ -66,14 +64,7 @@ public class TrackerSweepModel extends AbstractSweepModel< SpotTrackerFactory >
 		public MyIterator( final Settings base, final Map< String, AbstractParamSweepModel< ? > > models )
 		{
 			this.base = base;
-			final Map< String, List< Object > > values = new LinkedHashMap<>( models.size() );
-			for ( final String key : models.keySet() )
-			{
-				@SuppressWarnings( "unchecked" )
-				final List< Object > range = ( List< Object > ) models.get( key ).getRange();
-				values.put( key, range );
-			}
-			this.combinations = new Combinations( values );
+			this.combinations = Combinations.of( models );
 		}
 
 		@Override
@@ -86,12 +77,7 @@ public class TrackerSweepModel extends AbstractSweepModel< SpotTrackerFactory >
 		public Settings next()
 		{
 			final Settings copy = base.copyOn( base.imp );
-			final Map< String, Object > params = combinations.next();
-			for ( final String key : params.keySet() )
-			{
-				final Object val = params.get( key );
-				copy.trackerSettings.put( key, val );
-			}
+			combinations.putNext( copy.trackerSettings );
 			return copy;
 		}
 	}
@@ -0,0 +1,374 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper.spt;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.helper.spt.importer.SPTFormatImporter;
+import fiji.plugin.trackmate.helper.spt.measure.DistanceTypes;
+import fiji.plugin.trackmate.helper.spt.measure.PreparedReference;
+import fiji.plugin.trackmate.helper.spt.measure.TrackSegment;
+
+/**
+ * Scores folders of candidate files in the ISBI SPT challenge format against
+ * their reference file, and writes the scores in one CSV file per reference.
+ * <p>
+ * Each candidate file is scored as a separate task on a bounded work-stealing
+ * pool, so that the load is balanced whatever the number of candidate files
+ * per folder. A reference file is parsed and prepared only once, by a task
+ * of its own, and the tasks of its folder are submitted when it is ready, so
+ * that no task waits for another one. The reference is shared read-only by
+ * them, and released as soon as the scores of its folder are written.
+ * The scores of each folder are written by a single writer in the order of
+ * the candidate file names, whatever the order in which the tasks complete.
+ * Candidate files already present in a CSV file are skipped, so that an
+ * interrupted batch can be resumed.
+ */
+public class ISBIBatchScorer
+{
+
+	private final double maxDist;
+
+	private final DistanceTypes distType;
+
+	private final int nThreads;
+
+	private final Logger logger;
+
+	/**
+	 * Creates a batch scorer.
+	 * 
+	 * @param maxDist
+	 *            the gate (maximum Euclidian distance) between detections.
+	 * @param distType
+	 *            the distance type.
+	 * @param nThreads
+	 *            the number of threads to use.
+	 * @param logger
+	 *            a logger to report progress to.
+	 */
+	public ISBIBatchScorer( final double maxDist, final DistanceTypes distType, final int nThreads, final Logger logger )
+	{
+		if ( nThreads < 1 )
+			throw new IllegalArgumentException( "The number of threads must be at least 1, was " + nThreads + "." );
+		this.maxDist = maxDist;
+		this.distType = distType;
+		this.nThreads = nThreads;
+		this.logger = logger;
+	}
+
+	/**
+	 * Scores all the candidate files and blocks until they are all processed.
+	 * 
+	 * @param refToFolders
+	 *            a map from the path of each reference file to the path of the
+	 *            folder that contains the candidate files to score against it.
+	 */
+	public void score( final Map< String, String > refToFolders )
+	{
+		final List< BatchJob > jobs = new ArrayList<>();
+		int nTasks = 0;
+		for ( final Map.Entry< String, String > entry : refToFolders.entrySet() )
+		{
+			final BatchJob job = createJob( entry.getKey(), entry.getValue() );
+			if ( job == null )
+				continue;
+			jobs.add( job );
+			nTasks += job.files.length;
+		}
+		logger.log( String.format( "Scoring %d candidate files against %d references on %d threads.\n",
+				nTasks, jobs.size(), nThreads ) );
+
+		final int total = nTasks;
+		final AtomicInteger done = new AtomicInteger( 0 );
+		final ForkJoinPool pool = new ForkJoinPool( nThreads );
+		try
+		{
+			final List< CompletableFuture< Void > > folders = new ArrayList<>( jobs.size() );
+			for ( final BatchJob job : jobs )
+			{
+				if ( job.files.length == 0 )
+					continue;
+				folders.add( CompletableFuture.supplyAsync( () -> prepare( job ), pool )
+						.handle( ( reference, e ) -> submit( job, reference, e, pool, done, total ) )
+						.thenCompose( tasks -> tasks ) );
+			}
+
+			// Only the calling thread waits.
+			CompletableFuture.allOf( folders.toArray( new CompletableFuture[ 0 ] ) ).join();
+		}
+		finally
+		{
+			pool.shutdown();
+			for ( final BatchJob job : jobs )
+				job.close();
+		}
+		logger.log( "Finished scoring.\n" );
+	}
+
+	/**
+	 * Submits the tasks of the candidate files of a folder, once its
+	 * reference is prepared. If it could not be, the files are skipped.
+	 * 
+	 * @return a future completed when all the files are processed.
+	 */
+	private CompletableFuture< Void > submit( final BatchJob job, final PreparedReference reference, final Throwable error, final ForkJoinPool pool, final AtomicInteger done, final int total )
+	{
+		if ( error != null )
+		{
+			final Throwable cause = ( error instanceof CompletionException && error.getCause() != null ) ? error.getCause() : error;
+			logger.error( "Trouble dealing with reference file " + job.referenceTrackPath + "\nSkipping folder " + job.candidatesFolder + ".\n" + cause.getMessage() + "\n" );
+			for ( int i = 0; i < job.files.length; i++ )
+				complete( job, i, null, done, total );
+			return CompletableFuture.completedFuture( null );
+		}
+
+		final CompletableFuture< ? >[] tasks = new CompletableFuture[ job.files.length ];
+		for ( int i = 0; i < job.files.length; i++ )
+		{
+			final int index = i;
+			tasks[ i ] = CompletableFuture.runAsync( () -> process( job, index, reference, done, total ), pool );
+		}
+		return CompletableFuture.allOf( tasks );
+	}
+
+	private void process( final BatchJob job, final int index, final PreparedReference reference, final AtomicInteger done, final int total )
+	{
+		final File file = job.files[ index ];
+		String line = null;
+		try
+		{
+			final long start = System.currentTimeMillis();
+			final List< TrackSegment > candidates = SPTFormatImporter.fromXML( file );
+			final double[] score = ISBIScoring.score( reference, candidates, distType, false );
+			line = String.format( "%s, %f, %f, %f, %f, %f\n", file.getName(), score[ 0 ], score[ 1 ], score[ 2 ], score[ 3 ], score[ 4 ] );
+			final long end = System.currentTimeMillis();
+			logger.log( String.format( " - Processed %s in %.1f minutes.\n", file.getName(), ( end - start ) / 1000. / 60. ) );
+		}
+		catch ( final Exception e )
+		{
+			logger.error( "Trouble dealing with file " + file + "\nSkipping.\n" + e.getMessage() + "\n" );
+		}
+		complete( job, index, line, done, total );
+	}
+
+	private void complete( final BatchJob job, final int index, final String line, final AtomicInteger done, final int total )
+	{
+		job.write( index, line );
+
+		final int n = done.incrementAndGet();
+		logger.setStatus( String.format( "Scored %d / %d files", n, total ) );
+		logger.setProgress( ( double ) n / total );
+	}
+
+	private PreparedReference prepare( final BatchJob job )
+	{
+		logger.log( "Processing " + job.candidatesFolder + "\n" );
+		return new PreparedReference( SPTFormatImporter.fromXML( new File( job.referenceTrackPath ) ), maxDist );
+	}
+
+	/**
+	 * Lists the candidate files of a folder that are not scored yet, and
+	 * prepares the output file.
+	 * 
+	 * @return a new job, or <code>null</code> if the folder cannot be scored.
+	 */
+	private BatchJob createJob( final String referenceTrackPath, final String candidatesFolder )
+	{
+		final File folder = new File( candidatesFolder );
+		final String parent = folder.getParent();
+		final String outputFileName = new File( referenceTrackPath ).getName().replace( ".xml", ".csv" );
+		final File outputFile = new File( parent, outputFileName );
+
+		/*
+		 * Check whether the output files exist if parse it to know what is
+		 * already done.
+		 */
+
+		final Set< String > alreadyComputed = new HashSet<>();
+		if ( outputFile.isFile() )
+		{
+			try (final BufferedReader reader = new BufferedReader( new FileReader( outputFile ) ))
+			{
+				String line = reader.readLine();
+				while ( line != null )
+				{
+					final int idx = line.indexOf( ',' );
+					if ( idx > 0 )
+						alreadyComputed.add( line.substring( 0, idx ) );
+					line = reader.readLine();
+				}
+			}
+			catch ( final IOException e )
+			{
+				logger.error( "Problem reading target file " + outputFile + ":\n" + e.getMessage() + "\n" );
+				return null;
+			}
+		}
+
+		final File[] files = folder.listFiles( ( d, name ) -> name.endsWith( ".xml" ) );
+		if ( files == null )
+		{
+			logger.error( "Cannot list candidate files in " + candidatesFolder + "\n" );
+			return null;
+		}
+		Arrays.sort( files );
+
+		final List< File > toProcess = new ArrayList<>( files.length );
+		for ( final File file : files )
+		{
+			// Test whether we already processed the file.
+			if ( alreadyComputed.contains( file.getName() ) )
+			{
+				logger.log( " - Found results in target file for " + file.getName() + ". Skipping.\n" );
+				continue;
+			}
+			toProcess.add( file );
+		}
+
+		final Writer writer;
+		try
+		{
+			final boolean exists = outputFile.isFile();
+			writer = new FileWriter( outputFile, true );
+			if ( !exists )
+			{
+				writer.write( String.format( "%s, %s, %s, %s, %s, %s\n", "name", "alpha", "beta", "detectionsJaccard", "tracksJaccard", "rmse" ) );
+				writer.flush();
+			}
+		}
+		catch ( final IOException e )
+		{
+			logger.error( "Cannot write to target file " + outputFile + ":\n" + e.getMessage() + "\n" );
+			return null;
+		}
+		return new BatchJob( referenceTrackPath, candidatesFolder, outputFile, toProcess.toArray( new File[ 0 ] ), writer );
+	}
+
+	/**
+	 * The candidate files of one folder, scored against one reference and
+	 * written to one output file.
+	 */
+	private final class BatchJob
+	{
+
+		private final String referenceTrackPath;
+
+		private final String candidatesFolder;
+
+		private final File outputFile;
+
+		private final File[] files;
+
+		/**
+		 * Lines of the files that are completed but not written yet, because a
+		 * file before them is not completed.
+		 */
+		private final String[] pendingLines;
+
+		private final boolean[] completed;
+
+		private int nextToWrite = 0;
+
+		private Writer writer;
+
+		private BatchJob( final String referenceTrackPath, final String candidatesFolder, final File outputFile, final File[] files, final Writer writer )
+		{
+			this.referenceTrackPath = referenceTrackPath;
+			this.candidatesFolder = candidatesFolder;
+			this.outputFile = outputFile;
+			this.files = files;
+			this.pendingLines = new String[ files.length ];
+			this.completed = new boolean[ files.length ];
+			this.writer = writer;
+			if ( files.length == 0 )
+				close();
+		}
+
+		/**
+		 * Records the result line of a file, and writes all the lines that
+		 * are now in order.
+		 * 
+		 * @param line
+		 *            the line to write, or <code>null</code> if the file could
+		 *            not be scored.
+		 */
+		private synchronized void write( final int index, final String line )
+		{
+			completed[ index ] = true;
+			pendingLines[ index ] = line;
+			if ( writer == null )
+				return;
+			try
+			{
+				while ( nextToWrite < files.length && completed[ nextToWrite ] )
+				{
+					if ( pendingLines[ nextToWrite ] != null )
+						writer.write( pendingLines[ nextToWrite ] );
+					pendingLines[ nextToWrite ] = null;
+					nextToWrite++;
+				}
+				writer.flush();
+			}
+			catch ( final IOException e )
+			{
+				logger.error( "Cannot write to target file " + outputFile + ":\n" + e.getMessage() + "\n" );
+			}
+			if ( nextToWrite == files.length )
+			{
+				close();
+				logger.log( "Finished processing " + candidatesFolder + "\n" );
+			}
+		}
+
+		private synchronized void close()
+		{
+			if ( writer == null )
+				return;
+			try
+			{
+				writer.close();
+			}
+			catch ( final IOException e )
+			{
+				logger.error( "Problem closing target file " + outputFile + ":\n" + e.getMessage() + "\n" );
+			}
+			writer = null;
+		}
+	}
+}
@@ -21,24 +21,22 @@
  */
 package fiji.plugin.trackmate.helper.spt;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
+import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.helper.spt.importer.SPTFormatImporter;
 import fiji.plugin.trackmate.helper.spt.measure.DistanceTypes;
+import fiji.plugin.trackmate.helper.spt.measure.GreedyAssignmentSolver;
+import fiji.plugin.trackmate.helper.spt.measure.MultiThresholdAnalyzer;
 import fiji.plugin.trackmate.helper.spt.measure.PerformanceAnalyzer;
+import fiji.plugin.trackmate.helper.spt.measure.PerformanceReport;
+import fiji.plugin.trackmate.helper.spt.measure.PreparedReference;
+import fiji.plugin.trackmate.helper.spt.measure.SparseAssignmentSolver;
 import fiji.plugin.trackmate.helper.spt.measure.TrackProcessorPerformance;
 import fiji.plugin.trackmate.helper.spt.measure.TrackSegment;
 
@@ -64,119 +62,144 @@ public class ISBIScoring
 	 */
 	public static final double[] score( final List< TrackSegment > references, final List< TrackSegment > candidates, final double maxDist, final DistanceTypes distType )
 	{
-		/*
-		 * Alpha, beta and RMSE.
-		 */
+		return score( references, candidates, maxDist, distType, false );
+	}
+
+	/**
+	 * Returns a <code>double[]</code> array with alpha, beta, JSC, JSCtheta and
+	 * RMSE, possibly computing the track pairing over several threads.
+	 * 
+	 * @param references
+	 *            the list of reference track segments.
+	 * @param candidates
+	 *            the list of candidate track segments.
+	 * @param parallel
+	 *            if <code>true</code>, the track pairing is computed on the
+	 *            common fork-join pool. The scores are identical to the
+	 *            sequential computation.
+	 * @return the ISBI SPT scores.
+	 */
+	public static final double[] score( final List< TrackSegment > references, final List< TrackSegment > candidates, final double maxDist, final DistanceTypes distType, final boolean parallel )
+	{
 		final TrackProcessorPerformance processor = new TrackProcessorPerformance();
-		final PerformanceAnalyzer analyzer = processor.pairTracks( references, candidates, maxDist );
-		final double alpha = analyzer.getPairedTracksNormalizedDistance( distType, maxDist );
-		final double beta = analyzer.getFullTrackingScore( distType, maxDist );
-		final double rmse = analyzer.getDistanceDetectionData( maxDist )[ 0 ];
-
-		/*
-		 * Detection and track Jaccard indices.
-		 */
-		final int numSpuriousTracks = analyzer.getNumSpuriousTracks();
-		final int numMissedTracks = analyzer.getNumMissedTracks();
-		final int numCorrectTracks = analyzer.getNumPairedTracks();
-		final int numRecoveredDetections = analyzer.getNumPairedDetections( maxDist );
-		final int numMissedDetections = analyzer.getNumMissedDetections( maxDist );
-		final int numWrongDetections = analyzer.getNumWrongDetections( maxDist );
-
-		final double detectionsSimilarity = numRecoveredDetections / ( ( double ) numRecoveredDetections + ( double ) numMissedDetections + numWrongDetections );
-		final double tracksSimilarity = numCorrectTracks / ( ( double ) numCorrectTracks + ( double ) numMissedTracks + numSpuriousTracks );
-
-		return new double[] { alpha, beta, detectionsSimilarity, tracksSimilarity, rmse };
+		final PerformanceAnalyzer analyzer = processor.pairTracks( references, candidates, maxDist, parallel );
+		return analyzer.getReport( distType, maxDist ).toScores();
 	}
 
-	public static final void batch( final String referenceTrackPath, final String candidatesFolder, final double maxDist, final DistanceTypes distType )
+	/**
+	 * Returns a <code>double[]</code> array with alpha, beta, JSC, JSCtheta and
+	 * RMSE, against a prepared reference and for the gate it was prepared for.
+	 * <p>
+	 * The reference-only quantities are not computed again, so this is the
+	 * method to use when scoring many candidate sets against the same
+	 * reference. The prepared reference can be shared by several threads.
+	 * 
+	 * @param reference
+	 *            the prepared reference track segments.
+	 * @param candidates
+	 *            the list of candidate track segments.
+	 * @param parallel
+	 *            if <code>true</code>, the track pairing is computed on the
+	 *            common fork-join pool. The scores are identical to the
+	 *            sequential computation.
+	 * @return the ISBI SPT scores.
+	 */
+	public static final double[] score( final PreparedReference reference, final List< TrackSegment > candidates, final DistanceTypes distType, final boolean parallel )
 	{
-		System.out.println( "Processing " + candidatesFolder );
-		final File folder = new File( candidatesFolder );
-		final String parent = folder.getParent();
-		final String outputFileName = new File( referenceTrackPath ).getName().replace( ".xml", ".csv" );
-		final File outputFile = new File( parent, outputFileName );
-
-		/*
-		 * Check whether the output files exist if parse it to know what is
-		 * already done.
-		 */
-
-		final Set< String > alreadyComputed = new HashSet<>();
-		if ( outputFile.isFile() )
-		{
-			try (final BufferedReader reader = new BufferedReader( new FileReader( outputFile ) ))
-			{
-				String line = reader.readLine();
-				while ( line != null )
-				{
-					final int idx = line.indexOf( ',' );
-					alreadyComputed.add( line.substring( 0, idx ) );
-					line = reader.readLine();
-				}
-			}
-			catch ( final FileNotFoundException e2 )
-			{
-				System.out.println( "Cannot find target file " + outputFile );
-				e2.printStackTrace();
-			}
-			catch ( final IOException e2 )
-			{
-				System.out.println( "Problem reading target file " + outputFile );
-				e2.printStackTrace();
-			}
-		}
-		else
-		{
-			try (FileWriter fw = new FileWriter( outputFile, false ))
-			{
-				fw.write( String.format( "%s, %s, %s, %s, %s, %s\n", "name", "alpha", "beta", "detectionsJaccard", "tracksJaccard", "rmse" ) );
-			}
-			catch ( final IOException e1 )
-			{
-				System.out.println( "Cannot write to target file " + outputFile );
-				e1.printStackTrace();
-			}
-		}
+		final TrackProcessorPerformance processor = new TrackProcessorPerformance();
+		final PerformanceAnalyzer analyzer = processor.pairTracks( reference, candidates, parallel );
+		return analyzer.getReport( distType, reference.getMaxDist() ).toScores();
+	}
 
-		final File[] files = folder.listFiles( ( d, name ) -> name.endsWith( ".xml" ) );
-		for ( final File file : files )
-		{
-			// Test whether we already processed the file.
-			if ( alreadyComputed.contains( file.getName() ) )
-			{
-				System.out.println( " - Found results in target file for " + file.getName() + ". Skipping." );
-				continue;
-			}
-			System.out.println( " - Processing " + file.getName() );
+	/**
+	 * Returns approximate ISBI SPT scores against a prepared reference, with a
+	 * bound on the error of the alpha score.
+	 * <p>
+	 * The tracks are paired with the {@link GreedyAssignmentSolver} instead of
+	 * the optimal solver, which is faster on large and dense track sets. This
+	 * is meant to screen many candidate sets quickly, and to score exactly
+	 * with {@link #score(PreparedReference, List, DistanceTypes, boolean)}
+	 * only the ones that may be the best. The scores are computed with the
+	 * Euclidian distance.
+	 *
+	 * @param reference
+	 *            the prepared reference track segments.
+	 * @param candidates
+	 *            the list of candidate track segments.
+	 * @param parallel
+	 *            if <code>true</code>, the track pairing is computed on the
+	 *            common fork-join pool.
+	 * @return the approximate ISBI SPT scores.
+	 */
+	public static final ScreeningScore screen( final PreparedReference reference, final List< TrackSegment > candidates, final boolean parallel )
+	{
+		final DistanceTypes distType = DistanceTypes.DISTANCE_EUCLIDIAN;
+		final TrackProcessorPerformance processor = new TrackProcessorPerformance();
+		final PerformanceAnalyzer analyzer = processor.pairTracks( reference, candidates, new GreedyAssignmentSolver(), parallel );
+		final double[] scores = analyzer.getReport( distType, reference.getMaxDist() ).toScores();
+		return new ScreeningScore(
+				scores,
+				processor.getAssignmentCost(),
+				processor.getCostLowerBound(),
+				reference.getNoAssociationDistance( distType ) );
+	}
 
-			try
-			{
-				final long start = System.currentTimeMillis();
-				final double[] score = score( referenceTrackPath, file.getAbsolutePath(), maxDist, distType );
-				try (FileWriter fw = new FileWriter( outputFile, true ))
-				{
-					fw.write( String.format( "%s, %f, %f, %f, %f, %f\n", file.getName(), score[ 0 ], score[ 1 ], score[ 2 ], score[ 3 ], score[ 4 ] ) );
-				}
-				final long end = System.currentTimeMillis();
-				System.out.println( String.format( " - Processed %s in %.1f minutes.", file.getName(), ( end - start ) / 1000. / 60. ) );
-			}
-			catch ( final Exception e )
-			{
-				System.out.println( "Trouble dealing with file " + file + "\nSkipping." );
-				e.printStackTrace();
-				continue;
-			}
-		}
-		System.out.println( "Finished processing " + candidatesFolder );
+	/**
+	 * Returns the ISBI SPT scores for several max pairing distances, as one
+	 * <code>double[]</code> array with alpha, beta, JSC, JSCtheta and RMSE per
+	 * distance.
+	 * <p>
+	 * This is equivalent to calling
+	 * {@link #score(List, List, double, DistanceTypes)} for each distance, but
+	 * the distances between detections are computed only once for all of
+	 * them.
+	 * 
+	 * @param references
+	 *            the list of reference track segments.
+	 * @param candidates
+	 *            the list of candidate track segments.
+	 * @param maxDists
+	 *            the max pairing distances, sorted in increasing order.
+	 * @param parallel
+	 *            if <code>true</code>, the computations are done on the common
+	 *            fork-join pool. The scores are identical to the sequential
+	 *            computation.
+	 * @return the ISBI SPT scores, one array per max pairing distance, in the
+	 *         same order.
+	 */
+	public static final double[][] score( final List< TrackSegment > references, final List< TrackSegment > candidates, final double[] maxDists, final DistanceTypes distType, final boolean parallel )
+	{
+		final MultiThresholdAnalyzer analyzer = new MultiThresholdAnalyzer( references, candidates );
+		final List< PerformanceReport > reports = analyzer.analyze( maxDists, distType, new SparseAssignmentSolver(), parallel );
+		final double[][] scores = new double[ reports.size() ][];
+		for ( int i = 0; i < scores.length; i++ )
+			scores[ i ] = reports.get( i ).toScores();
+		return scores;
 	}
 
-	public static final void parallelise( final Map< String, String > refToFolders, final int nThreads, final double maxDist, final DistanceTypes distType )
+	/**
+	 * Scores all the candidate files of a folder against a reference file,
+	 * and appends the scores to a CSV file named after the reference, in the
+	 * parent folder of the candidate folder. Blocks until all the files are
+	 * scored.
+	 * 
+	 * @see ISBIBatchScorer
+	 */
+	public static final void batch( final String referenceTrackPath, final String candidatesFolder, final double maxDist, final DistanceTypes distType )
 	{
-		final ExecutorService service = Executors.newFixedThreadPool( nThreads );
+		parallelise( Collections.singletonMap( referenceTrackPath, candidatesFolder ), Runtime.getRuntime().availableProcessors(), maxDist, distType );
+	}
 
-		refToFolders.forEach( ( ref, folder ) -> service.submit( () -> batch( ref, folder, maxDist, distType ) ) );
-		service.shutdown();
+	/**
+	 * Scores the candidate files of several folders against their reference
+	 * file, on a pool of the specified number of threads shared by all the
+	 * candidate files. Blocks until all the files are scored.
+	 * 
+	 * @see ISBIBatchScorer
+	 */
+	public static final void parallelise( final Map< String, String > refToFolders, final int nThreads, final double maxDist, final DistanceTypes distType )
+	{
+		new ISBIBatchScorer( maxDist, distType, nThreads, Logger.DEFAULT_LOGGER ).score( refToFolders );
 	}
 
 	public static void main( final String[] args, final double maxDist, final DistanceTypes distType )
@@ -221,6 +244,6 @@ public class ISBIScoring
 			}
 		}
 
-		parallelise( map, map.size(), maxDist, distType );
+		parallelise( map, Runtime.getRuntime().availableProcessors(), maxDist, distType );
 	}
 }
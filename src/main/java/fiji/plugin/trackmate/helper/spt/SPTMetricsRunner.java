@@ -23,31 +23,40 @@ package fiji.plugin.trackmate.helper.spt;
 
 import java.io.File;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import java.util.PriorityQueue;
 
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.TrackMate;
 import fiji.plugin.trackmate.helper.MetricsRunner;
 import fiji.plugin.trackmate.helper.TrackingMetrics;
 import fiji.plugin.trackmate.helper.spt.importer.SPTFormatImporter;
-import fiji.plugin.trackmate.helper.spt.importer.XMLUtil;
 import fiji.plugin.trackmate.helper.spt.measure.DistanceTypes;
+import fiji.plugin.trackmate.helper.spt.measure.PreparedReference;
 import fiji.plugin.trackmate.helper.spt.measure.TrackSegment;
 import fiji.plugin.trackmate.io.TmXmlReader;
 
 public class SPTMetricsRunner extends MetricsRunner
 {
 
-	private final List< TrackSegment > referenceTracks;
+	private final PreparedReference reference;
 
 	private final double maxDist;
 
 	private final String units;
 
+	/**
+	 * Number of best tests that are scored exactly in screening mode. 0 if
+	 * screening is off.
+	 */
+	private int nTopCandidates = 0;
+
+	/**
+	 * The best alpha scores found so far in screening mode, smallest first.
+	 * They are lower bounds of the exact alpha scores.
+	 */
+	private final PriorityQueue< Double > topAlphas = new PriorityQueue<>();
+
 	public SPTMetricsRunner( final String gtPath, final String saveFolder, final double maxDist, final String units )
 	{
 		super( Paths.get( saveFolder ), new SPTTrackingMetricsType( maxDist, units ) );
@@ -56,13 +65,8 @@ public class SPTMetricsRunner extends MetricsRunner
 
 		// Is the GT a TrackMate or a ISBI challenge file?
 		final File gtFile = new File( gtPath );
-		final Document document = XMLUtil.loadDocument( gtFile );
-		final Element root = XMLUtil.getRootElement( document );
-		if ( root == null )
-			throw new IllegalArgumentException( "can't find: <root> tag." );
-
-		final ArrayList< Element > rootEls = XMLUtil.getElements( root, "TrackContestISBI2012" );
-		if ( rootEls.size() == 0 )
+		final List< TrackSegment > referenceTracks;
+		if ( !SPTFormatImporter.isISBIFile( gtFile ) )
 		{
 			// Not an ISBI challenge file.
 			final TmXmlReader reader = new TmXmlReader( gtFile );
@@ -72,7 +76,7 @@ public class SPTMetricsRunner extends MetricsRunner
 			final Model model = reader.getModel();
 			try
 			{
-				this.referenceTracks = SPTFormatImporter.fromTrackMate( model );
+				referenceTracks = SPTFormatImporter.fromTrackMate( model );
 			}
 			catch ( final Exception iae )
 			{
@@ -82,8 +86,11 @@ public class SPTMetricsRunner extends MetricsRunner
 		else
 		{
 			// ISBI challenge file.
-			this.referenceTracks = SPTFormatImporter.fromXML( gtFile );
+			referenceTracks = SPTFormatImporter.fromXML( gtFile );
 		}
+
+		// Reference-only quantities are computed once for all the tests.
+		this.reference = new PreparedReference( referenceTracks, maxDist );
 	}
 
 	@Override
@@ -94,12 +101,77 @@ public class SPTMetricsRunner extends MetricsRunner
 		// Perform SPT measurements.
 		batchLogger.log( String.format( "Performing SPT metrics measurements with max pairing dist = %.2f %s\n",
 				maxDist, units ) );
-		final double[] score = ISBIScoring.score( referenceTracks, candidateTracks, maxDist, DistanceTypes.DISTANCE_EUCLIDIAN );
+		if ( nTopCandidates > 0 )
+			return screen( candidateTracks );
+
+		final double[] score = ISBIScoring.score( reference, candidateTracks, DistanceTypes.DISTANCE_EUCLIDIAN, true );
+		return toMetrics( score, false );
+	}
 
+	private TrackingMetrics toMetrics( final double[] score, final boolean approximate )
+	{
 		final TrackingMetrics metrics = new TrackingMetrics( type );
 		for ( int i = 0; i < score.length; i++ )
 			metrics.set( i, score[ i ] );
-
+		metrics.setApproximate( approximate );
 		return metrics;
 	}
+
+	/**
+	 * Scores the candidate tracks with an approximate pairing, and scores them
+	 * again exactly if they may rank among the best tests so far.
+	 */
+	private TrackingMetrics screen( final List< TrackSegment > candidateTracks )
+	{
+		final ScreeningScore screening = ISBIScoring.screen( reference, candidateTracks, true );
+		final double[] score;
+		boolean approximate = false;
+		if ( screening.isOptimal() )
+		{
+			// The greedy pairing is optimal: alpha is exact.
+			score = screening.getScores();
+		}
+		else if ( topAlphas.size() >= nTopCandidates && screening.getAlphaUpperBound() < topAlphas.peek().doubleValue() )
+		{
+			// Cannot be among the best tests: keep the approximate scores.
+			batchLogger.log( String.format( "Screening: approximate scores, alpha in [%.4f, %.4f].\n",
+					screening.getAlpha(), screening.getAlphaUpperBound() ) );
+			score = screening.getScores();
+			approximate = true;
+		}
+		else
+		{
+			batchLogger.log( String.format( "Screening: alpha in [%.4f, %.4f] may rank among the %d best tests, scoring exactly.\n",
+					screening.getAlpha(), screening.getAlphaUpperBound(), nTopCandidates ) );
+			score = ISBIScoring.score( reference, candidateTracks, DistanceTypes.DISTANCE_EUCLIDIAN, true );
+		}
+
+		// Approximate alphas are lower bounds, so the threshold stays safe.
+		topAlphas.add( Double.valueOf( score[ 0 ] ) );
+		if ( topAlphas.size() > nTopCandidates )
+			topAlphas.poll();
+		return toMetrics( score, approximate );
+	}
+
+	/**
+	 * Sets the screening mode. In screening mode, the tracks are first paired
+	 * with a fast approximate solver, which gives a bound on the exact alpha
+	 * score. Only the tests that may rank among the specified number of best
+	 * tests, by alpha score, are scored again with the exact pairing. The
+	 * other tests are saved with approximate scores, that slightly
+	 * underestimate alpha, in a screening file next to the results file.
+	 * They are not taken as results, so they are tested again if the sweep
+	 * is resumed.
+	 * 
+	 * @param nTopCandidates
+	 *            the number of best tests to score exactly, or 0 to score all
+	 *            the tests exactly.
+	 */
+	public void setScreening( final int nTopCandidates )
+	{
+		if ( nTopCandidates < 0 )
+			throw new IllegalArgumentException( "The number of top candidates must be positive or zero." );
+		this.nTopCandidates = nTopCandidates;
+		topAlphas.clear();
+	}
 }
@@ -0,0 +1,117 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper.spt;
+
+/**
+ * The ISBI SPT scores of a candidate set computed with an approximate track
+ * pairing, along with a bound on their error.
+ * <p>
+ * The pairing cost of an approximate solver is larger than or equal to the
+ * optimal one, and a lower bound of the optimal cost is known. Since alpha is
+ * a decreasing function of the pairing cost, the alpha score of the optimal
+ * pairing lies between the approximate alpha and {@link #getAlphaUpperBound()}.
+ * The other scores are those of the approximate pairing, and are not bounded.
+ */
+public class ScreeningScore
+{
+
+	private final double[] scores;
+
+	private final double assignmentCost;
+
+	private final double costLowerBound;
+
+	private final double noAssociationDistance;
+
+	/**
+	 * Creates a screening score.
+	 * 
+	 * @param scores
+	 *            alpha, beta, JSC, JSCtheta and RMSE of the approximate
+	 *            pairing, with the Euclidian distance.
+	 * @param assignmentCost
+	 *            the cost of the approximate pairing.
+	 * @param costLowerBound
+	 *            a lower bound of the cost of the optimal pairing.
+	 * @param noAssociationDistance
+	 *            the cost when no reference track is associated.
+	 */
+	public ScreeningScore( final double[] scores, final double assignmentCost, final double costLowerBound, final double noAssociationDistance )
+	{
+		this.scores = scores.clone();
+		this.assignmentCost = assignmentCost;
+		this.costLowerBound = costLowerBound;
+		this.noAssociationDistance = noAssociationDistance;
+	}
+
+	/**
+	 * @return a new array with alpha, beta, JSC, JSCtheta and RMSE of the
+	 *         approximate pairing.
+	 */
+	public double[] getScores()
+	{
+		return scores.clone();
+	}
+
+	/**
+	 * @return the alpha score of the approximate pairing, a lower bound of
+	 *         the exact alpha score.
+	 */
+	public double getAlpha()
+	{
+		return scores[ 0 ];
+	}
+
+	/**
+	 * @return an upper bound of the exact alpha score.
+	 */
+	public double getAlphaUpperBound()
+	{
+		if ( noAssociationDistance <= 0 )
+			return getAlpha();
+		return Math.max( getAlpha(), 1. - costLowerBound / noAssociationDistance );
+	}
+
+	/**
+	 * Returns a bound on the optimality gap of the approximate pairing, that
+	 * is the difference between its cost and the lower bound of the optimal
+	 * cost.
+	 * 
+	 * @return the optimality gap bound, in the units of the Euclidian
+	 *         distance.
+	 */
+	public double getOptimalityGap()
+	{
+		return Math.max( 0., assignmentCost - costLowerBound );
+	}
+
+	/**
+	 * Returns <code>true</code> if the approximate pairing is known to be
+	 * optimal, in which case its alpha score is exact.
+	 * 
+	 * @return whether the optimality gap is zero.
+	 */
+	public boolean isOptimal()
+	{
+		return assignmentCost <= costLowerBound;
+	}
+}
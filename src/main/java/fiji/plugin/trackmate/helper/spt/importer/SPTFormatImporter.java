@@ -21,15 +21,29 @@
  */
 package fiji.plugin.trackmate.helper.spt.importer;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.function.Consumer;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
@@ -45,6 +59,12 @@ import fiji.plugin.trackmate.helper.spt.measure.TrackSegment;
 public class SPTFormatImporter
 {
 
+	private static final String TRACKING_SET_ELEMENT = "TrackContestISBI2012";
+
+	private static final String PARTICLE_ELEMENT = "particle";
+
+	private static final String DETECTION_ELEMENT = "detection";
+
 	public static List< TrackSegment > fromTrackMate( final Model model )
 	{
 		final Set< Integer > trackIDs = model.getTrackModel().unsortedTrackIDs( true );
@@ -77,80 +97,244 @@ public class SPTFormatImporter
 		return tracks;
 	}
 
+	/**
+	 * Reads the tracks of a file in the format used for the ISBI'2012 Particle
+	 * tracking challenge.
+	 * 
+	 * @param inputFile
+	 *            the .xml file to read.
+	 * @return a new list of tracks.
+	 * @throws IllegalArgumentException
+	 *             if the file cannot be read or is not an ISBI challenge file.
+	 * @see #fromXML(File, Consumer)
+	 */
 	public static List< TrackSegment > fromXML( final File inputFile ) throws IllegalArgumentException
 	{
 		final List< TrackSegment > tracks = new ArrayList< TrackSegment >();
-		final Document document = XMLUtil.loadDocument( inputFile );
-		final Element root = XMLUtil.getRootElement( document );
-		if ( root == null )
-			throw new IllegalArgumentException( "can't find: <root> tag." );
+		fromXML( inputFile, tracks::add );
+		return tracks;
+	}
 
-		final ArrayList< Element > trackingSets = XMLUtil.getElements( root, "TrackContestISBI2012" );
-		if ( trackingSets.size() == 0 )
+	/**
+	 * Reads the tracks of a file in the format used for the ISBI'2012 Particle
+	 * tracking challenge, and passes them one by one to the specified consumer
+	 * as soon as they are parsed.
+	 * <p>
+	 * The file is read with a streaming parser, so that only the track being
+	 * parsed is held in memory. If the file is malformed, the tracks found
+	 * before the error have already been passed to the consumer when the
+	 * exception is thrown.
+	 * 
+	 * @param inputFile
+	 *            the .xml file to read.
+	 * @param consumer
+	 *            the consumer that receives the tracks, in file order.
+	 * @throws IllegalArgumentException
+	 *             if the file cannot be read or is not an ISBI challenge file.
+	 */
+	public static void fromXML( final File inputFile, final Consumer< TrackSegment > consumer ) throws IllegalArgumentException
+	{
+		boolean trackingSetFound = false;
+		try (final InputStream is = new BufferedInputStream( new FileInputStream( inputFile ) ))
+		{
+			final XMLStreamReader reader = createInputFactory().createXMLStreamReader( is );
+			try
+			{
+				int depth = 0;
+				boolean inTrackingSet = false;
+				TreeMap< Integer, Detection > detections = null;
+				while ( reader.hasNext() )
+				{
+					final int event = reader.next();
+					if ( event == XMLStreamConstants.START_ELEMENT )
+					{
+						depth++;
+						final String name = reader.getLocalName();
+						if ( depth == 2 && !trackingSetFound && name.equals( TRACKING_SET_ELEMENT ) )
+						{
+							// Only the first tracking set is read.
+							trackingSetFound = true;
+							inTrackingSet = true;
+						}
+						else if ( inTrackingSet && depth == 3 && name.equals( PARTICLE_ELEMENT ) )
+						{
+							detections = new TreeMap< Integer, Detection >();
+						}
+						else if ( detections != null && depth == 4 && name.equals( DETECTION_ELEMENT ) )
+						{
+							final int t = StringUtil.parseInt( reader.getAttributeValue( null, "t" ), -1 );
+							if ( t < 0 )
+								throw new IllegalArgumentException( "invalid t value: " + t );
+							if ( detections.containsKey( Integer.valueOf( t ) ) )
+								throw new IllegalArgumentException( "duplicated detection for a single track at time " + t );
+							final double x = attribute( reader, "x", 0 );
+							final double y = attribute( reader, "y", 0 );
+							final double z = attribute( reader, "z", 0 );
+							final Detection detection = new Detection( x, y, z, t );
+							detection.setDetectionType( Detection.DETECTIONTYPE_REAL_DETECTION );
+							detections.put( Integer.valueOf( t ), detection );
+						}
+					}
+					else if ( event == XMLStreamConstants.END_ELEMENT )
+					{
+						if ( depth == 3 && detections != null )
+						{
+							if ( !detections.isEmpty() )
+							{
+								final TrackSegment track = makeTrack( detections );
+								if ( trimTrack( track ) )
+									consumer.accept( track );
+							}
+							detections = null;
+						}
+						else if ( depth == 2 )
+						{
+							inTrackingSet = false;
+						}
+						depth--;
+					}
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch ( final IOException | XMLStreamException e )
+		{
+			throw new IllegalArgumentException( "Could not read file " + inputFile + ":\n" + e.getMessage(), e );
+		}
+		if ( !trackingSetFound )
 			throw new IllegalArgumentException( "can't find: <root><TrackContestISBI2012> tag." );
-		
-		final Element trackingSet = trackingSets.get( 0 );
-		final List< Element > particleElementArrayList = XMLUtil.getElements( trackingSet, "particle" );
+	}
 
-		for ( final Element particleElement : particleElementArrayList )
+	/**
+	 * Returns <code>true</code> if the specified file is in the format used for
+	 * the ISBI'2012 Particle tracking challenge, that is if its root element
+	 * has a <code>TrackContestISBI2012</code> child. The file is scanned with a
+	 * streaming parser and is not loaded in memory.
+	 * 
+	 * @param file
+	 *            the file to test.
+	 * @return <code>true</code> if the file is an ISBI challenge file.
+	 */
+	public static boolean isISBIFile( final File file )
+	{
+		try (final InputStream is = new BufferedInputStream( new FileInputStream( file ) ))
 		{
-			final List< Element > detectionElementArrayList = XMLUtil.getElements( particleElement, "detection" );
-			final TreeMap< Integer, Detection > detections = new TreeMap< Integer, Detection >();
-			for ( final Element detectionElement : detectionElementArrayList )
+			final XMLStreamReader reader = createInputFactory().createXMLStreamReader( is );
+			try
 			{
-				final int t = XMLUtil.getAttributeIntValue( detectionElement, "t", -1 );
-				if ( t < 0 )
-					throw new IllegalArgumentException( "invalid t value: " + t );
-				if ( detections.containsKey( Integer.valueOf( t ) ) )
-					throw new IllegalArgumentException( "duplicated detection for a single track at time " + t );
-				final double x = XMLUtil.getAttributeDoubleValue( detectionElement, "x", 0 );
-				final double y = XMLUtil.getAttributeDoubleValue( detectionElement, "y", 0 );
-				final double z = XMLUtil.getAttributeDoubleValue( detectionElement, "z", 0 );
-				final Detection detection = new Detection( x, y, z, t );
-				detection.setDetectionType( Detection.DETECTIONTYPE_REAL_DETECTION );
-				detections.put( Integer.valueOf( t ), detection );
+				int depth = 0;
+				while ( reader.hasNext() )
+				{
+					final int event = reader.next();
+					if ( event == XMLStreamConstants.START_ELEMENT )
+					{
+						depth++;
+						if ( depth == 2 && reader.getLocalName().equals( TRACKING_SET_ELEMENT ) )
+							return true;
+					}
+					else if ( event == XMLStreamConstants.END_ELEMENT )
+					{
+						depth--;
+					}
+				}
+			}
+			finally
+			{
+				reader.close();
 			}
-			if ( !detections.isEmpty() )
-				tracks.add( makeTrack( detections ) );
 		}
-		trimTrack( tracks );
-		return tracks;
+		catch ( final IOException | XMLStreamException e )
+		{
+			return false;
+		}
+		return false;
 	}
 
 	/**
 	 * Export TrackSegment objects to a .xml file.
+	 * <p>
+	 * The file is written with a streaming writer, so that the tracks are not
+	 * duplicated in memory as a document.
 	 * 
 	 * @param file
 	 *            output .xml file containing track information in the format
 	 *            used for the ISBI'2012 Particle tracking challenge
 	 * @param tracks
-	 *            a list of TrackSegment objects that corresponds to the tracks
-	 *            to save
-	 * 
+	 *            the TrackSegment objects that corresponds to the tracks to
+	 *            save
+	 * @throws IllegalArgumentException
+	 *             if the file cannot be written.
 	 */
-	public static void toXML( final File file, final ArrayList< TrackSegment > tracks ) throws IllegalArgumentException
+	public static void toXML( final File file, final Iterable< TrackSegment > tracks ) throws IllegalArgumentException
 	{
-		final Document document = XMLUtil.createDocument( true );
-		final Element dataSetElement = document.createElement( "TrackContestISBI2012" );
-		XMLUtil.getRootElement( document ).appendChild( dataSetElement );
-
-		for ( final TrackSegment particle : tracks )
+		try (final Writer out = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ), StandardCharsets.UTF_8 ) ))
 		{
-			final Element particleElement = document.createElement( "particle" );
-			dataSetElement.appendChild( particleElement );
-
-			for ( final Detection detection : particle.getDetectionList() )
+			final XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter( out );
+			try
+			{
+				writer.writeStartDocument( "UTF-8", "1.0" );
+				writer.writeCharacters( "\n" );
+				writer.writeStartElement( XMLUtil.NODE_ROOT_NAME );
+				writer.writeCharacters( "\n" );
+				writer.writeStartElement( TRACKING_SET_ELEMENT );
+				for ( final TrackSegment particle : tracks )
+				{
+					writer.writeCharacters( "\n" );
+					writer.writeStartElement( PARTICLE_ELEMENT );
+					for ( final Detection detection : particle.getDetectionList() )
+					{
+						writer.writeCharacters( "\n" );
+						writer.writeEmptyElement( DETECTION_ELEMENT );
+						writer.writeAttribute( "t", StringUtil.toString( detection.getT() ) );
+						writer.writeAttribute( "x", StringUtil.toString( detection.getX() ) );
+						writer.writeAttribute( "y", StringUtil.toString( detection.getY() ) );
+						writer.writeAttribute( "z", StringUtil.toString( detection.getZ() ) );
+					}
+					writer.writeCharacters( "\n" );
+					writer.writeEndElement();
+				}
+				writer.writeCharacters( "\n" );
+				writer.writeEndElement();
+				writer.writeCharacters( "\n" );
+				writer.writeEndElement();
+				writer.writeCharacters( "\n" );
+				writer.writeEndDocument();
+				writer.flush();
+			}
+			finally
 			{
-				final Element detectionElement = document.createElement( "detection" );
-				particleElement.appendChild( detectionElement );
-				XMLUtil.setAttributeDoubleValue( detectionElement, "x", detection.getX() );
-				XMLUtil.setAttributeDoubleValue( detectionElement, "y", detection.getY() );
-				XMLUtil.setAttributeDoubleValue( detectionElement, "z", detection.getZ() );
-				XMLUtil.setAttributeIntValue( detectionElement, "t", detection.getT() );
+				writer.close();
 			}
 		}
+		catch ( final IOException | XMLStreamException e )
+		{
+			throw new IllegalArgumentException( "Could not write to file " + file + ":\n" + e.getMessage(), e );
+		}
+	}
+
+	/**
+	 * Reads a numerical attribute of the current element, returning the
+	 * default value if it is absent or not a number, like the DOM reader
+	 * did. 2D files for instance have no <code>z</code> attribute.
+	 */
+	private static double attribute( final XMLStreamReader reader, final String name, final double def )
+	{
+		final String val = reader.getAttributeValue( null, name );
+		if ( val == null )
+			return def;
+		return StringUtil.parseDouble( val.trim(), def );
+	}
 
-		XMLUtil.saveDocument( document, file );
+	private static XMLInputFactory createInputFactory()
+	{
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		// Do not resolve external entities.
+		factory.setProperty( XMLInputFactory.SUPPORT_DTD, Boolean.FALSE );
+		factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+		return factory;
 	}
 
 	/*
@@ -163,43 +347,44 @@ public class SPTFormatImporter
 	 */
 	private static final void trimTrack( final List< TrackSegment > trackArrayList )
 	{
-		for ( final TrackSegment track : new ArrayList< TrackSegment >( trackArrayList ) )
+		trackArrayList.removeIf( track -> !trimTrack( track ) );
+	}
+
+	/*
+	 * Trims NaN detections at the beginning and end of a single track. Returns
+	 * false if the track must be discarded.
+	 */
+	private static final boolean trimTrack( final TrackSegment track )
+	{
+		// trim NaN from the beginning of track.
+		for ( final Detection detection : new ArrayList< Detection >( track.getDetectionList() ) )
 		{
-			// trim NaN from the beginning of track.
-			for ( final Detection detection : new ArrayList< Detection >( track.getDetectionList() ) )
-			{
-				if ( containsNaN( detection ) )
-					track.removeDetection( detection );
-				else
-					break;
-			}
+			if ( containsNaN( detection ) )
+				track.removeDetection( detection );
+			else
+				break;
+		}
 
-			// trim NaN from the end of track.
-			for ( int i = track.getDetectionList().size() - 1; i >= 0; i-- )
-			{
-				final Detection detection = track.getDetectionList().get( i );
-				if ( containsNaN( detection ) )
-					track.removeDetection( detection );
-				else
-					break;
-			}
+		// trim NaN from the end of track.
+		for ( int i = track.getDetectionList().size() - 1; i >= 0; i-- )
+		{
+			final Detection detection = track.getDetectionList().get( i );
+			if ( containsNaN( detection ) )
+				track.removeDetection( detection );
+			else
+				break;
+		}
 
-			if ( track.getDetectionList().size() == 0 )
-			{
-				trackArrayList.remove( track );
-				continue;
-			}
+		if ( track.getDetectionList().size() == 0 )
+			return false;
 
-			// check if a NaN still exists in the remaining track
-			for ( final Detection detection : new ArrayList< Detection >( track.getDetectionList() ) )
-			{
-				if ( containsNaN( detection ) )
-				{
-					trackArrayList.remove( track );
-					break;
-				}
-			}
+		// check if a NaN still exists in the remaining track
+		for ( final Detection detection : track.getDetectionList() )
+		{
+			if ( containsNaN( detection ) )
+				return false;
 		}
+		return true;
 	}
 
 	/*
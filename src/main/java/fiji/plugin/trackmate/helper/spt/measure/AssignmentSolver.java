@@ -0,0 +1,52 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper.spt.measure;
+
+/**
+ * Interface for solvers of the rectangular linear assignment problem used to
+ * pair reference and candidate tracks.
+ * <p>
+ * Every row (reference track) must be assigned to exactly one column
+ * (candidate or dummy track), and a column can be assigned to at most one row.
+ * Only the entries present in the cost matrix can be used in the assignment.
+ * <p>
+ * Implementations must be stateless, or at least thread-safe, because
+ * independent clusters may be solved concurrently with the same solver
+ * instance.
+ */
+public interface AssignmentSolver
+{
+
+	/**
+	 * Solves the assignment problem for the specified cost matrix.
+	 * 
+	 * @param costs
+	 *            the sparse cost matrix. The number of rows must be less than
+	 *            or equal to the number of columns.
+	 * @return an array giving for each row the index of the column it is
+	 *         assigned to.
+	 * @throws Exception
+	 *             if a complete assignment cannot be found.
+	 */
+	public int[] solve( SparseCostMatrix costs ) throws Exception;
+
+}
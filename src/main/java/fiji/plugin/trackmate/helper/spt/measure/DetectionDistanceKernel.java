@@ -0,0 +1,156 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper.spt.measure;
+
+/**
+ * Kernel computing the distances between the detections of two tracks, and
+ * the statistics of a {@link TrackToTrackDistance}, over contiguous
+ * coordinate arrays.
+ * <p>
+ * The kernel works in two passes. The first one computes the Euclidian
+ * distance at each overlapping time-point in a loop over primitive arrays,
+ * without branches nor object access, that the JIT compiler can vectorize.
+ * The second one counts the matched, non-matched and wrong detections, and
+ * accumulates the sum, sum of squares, min and max of the matching distances
+ * in a single pass.
+ * <p>
+ * Both passes perform the same floating-point operations in the same order as
+ * the original per-detection loop, so the results are bit-identical to it:
+ * the tolerance is zero. In particular, the sums are accumulated in time
+ * order. Accumulating them in several lanes would change their rounding, by
+ * up to about <code>n</code> ulps for <code>n</code> time-points, and is
+ * deliberately not done.
+ */
+final class DetectionDistanceKernel
+{
+
+	private DetectionDistanceKernel()
+	{}
+
+	/**
+	 * Computes the Euclidian distances between the detections of two tracks,
+	 * for each time-point between <code>firstT</code> and <code>endT</code>
+	 * included. Both tracks must span this interval.
+	 * 
+	 * @param a
+	 *            the coordinates of the first track.
+	 * @param b
+	 *            the coordinates of the second track.
+	 * @param firstT
+	 *            the first time-point.
+	 * @param endT
+	 *            the last time-point.
+	 * @return a new array of distances, in time order.
+	 */
+	static double[] distances( final TrackCoordinates a, final TrackCoordinates b, final int firstT, final int endT )
+	{
+		final int n = endT - firstT + 1;
+		final double[] out = new double[ Math.max( 0, n ) ];
+		final double[] xa = a.x;
+		final double[] ya = a.y;
+		final double[] za = a.z;
+		final double[] xb = b.x;
+		final double[] yb = b.y;
+		final double[] zb = b.z;
+		final int oa = firstT - a.t0;
+		final int ob = firstT - b.t0;
+		for ( int i = 0; i < n; i++ )
+		{
+			final double dx = xa[ oa + i ] - xb[ ob + i ];
+			final double dy = ya[ oa + i ] - yb[ ob + i ];
+			final double dz = za[ oa + i ] - zb[ ob + i ];
+			out[ i ] = Math.sqrt( dx * dx + dy * dy + dz * dz );
+		}
+		return out;
+	}
+
+	/**
+	 * Accumulates the statistics of the overlapping time-points of two
+	 * tracks in a distance.
+	 * 
+	 * @param distances
+	 *            the distances between detections, in time order.
+	 * @param real
+	 *            whether the candidate detections are real detections.
+	 * @param realOffset
+	 *            the index in <code>real</code> of the first time-point.
+	 * @param firstT
+	 *            the first time-point.
+	 * @param maxDist
+	 *            the gate.
+	 * @param euclidian
+	 *            if <code>true</code>, the distance is incremented by the
+	 *            matching distances and the gate, otherwise it counts the
+	 *            non-matched time-points.
+	 * @param d
+	 *            the distance to update.
+	 * @return <code>true</code> if at least one pair of detections matches.
+	 */
+	static boolean accumulate(
+			final double[] distances,
+			final boolean[] real,
+			final int realOffset,
+			final int firstT,
+			final double maxDist,
+			final boolean euclidian,
+			final TrackToTrackDistance d )
+	{
+		boolean matching = false;
+		for ( int i = 0; i < distances.length; i++ )
+		{
+			final double ed = distances[ i ];
+			final boolean isReal = real[ realOffset + i ];
+			if ( isReal && ed < maxDist )
+			{
+				if ( !matching )
+				{
+					d.firstMatchingTime = firstT + i;
+					matching = true;
+				}
+				d.lastMatchingTime = firstT + i;
+				if ( euclidian )
+					d.distance += ed;
+				d.numMatchingDetections++;
+				// distance between detections
+				d.sumDetectionDistance += ed;
+				d.sumSquareDetectionDistance += ( ed * ed );
+				if ( ed < d.minDetectionDistance )
+					d.minDetectionDistance = ed;
+				else if ( ed > d.maxDetectionDistance )
+					d.maxDetectionDistance = ed;
+			}
+			else
+			{
+				// virtual detections are not considered as spurious
+				// detections
+				if ( isReal )
+					d.numWrongDetections++;
+				d.numNonMatchedDetections++;
+				if ( euclidian )
+					d.distance += maxDist;
+				else
+					d.distance++;
+			}
+		}
+		return matching;
+	}
+}
@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper.spt.measure;
+
+import java.util.Arrays;
+
+/**
+ * Approximate solver of the assignment problem, that picks the entries of the
+ * sparse cost matrix greedily by increasing cost.
+ * <p>
+ * An entry is taken if neither its row nor its column is assigned yet. This
+ * requires <code>O(m log m)</code> time for <code>m</code> entries, but the
+ * assignment found is not optimal in general. Its total cost is bounded from
+ * below by the sum of the row minima (see
+ * {@link OneToOneMatcher#getCostLowerBound()}), which gives a bound on the
+ * optimality gap. When pairing tracks, every row has its own dummy column, so
+ * a complete assignment is always found.
+ * <p>
+ * Ties are broken by entry order, so the assignment is deterministic.
+ */
+public class GreedyAssignmentSolver implements AssignmentSolver
+{
+
+	@Override
+	public int[] solve( final SparseCostMatrix costs ) throws Exception
+	{
+		final int nRows = costs.nRows;
+		final int nEntries = costs.rowStart[ nRows ];
+
+		final int[] entryRows = new int[ nEntries ];
+		for ( int r = 0; r < nRows; r++ )
+			for ( int k = costs.rowStart[ r ]; k < costs.rowStart[ r + 1 ]; k++ )
+				entryRows[ k ] = r;
+
+		final int[] order = new int[ nEntries ];
+		for ( int k = 0; k < nEntries; k++ )
+			order[ k ] = k;
+		sort( order, costs.costs, 0, nEntries - 1 );
+
+		final int[] assignment = new int[ nRows ];
+		Arrays.fill( assignment, -1 );
+		final boolean[] assignedCols = new boolean[ costs.nCols ];
+		int nAssigned = 0;
+		for ( int i = 0; i < nEntries && nAssigned < nRows; i++ )
+		{
+			final int k = order[ i ];
+			final int r = entryRows[ k ];
+			final int c = costs.cols[ k ];
+			if ( assignment[ r ] >= 0 || assignedCols[ c ] )
+				continue;
+			assignment[ r ] = c;
+			assignedCols[ c ] = true;
+			nAssigned++;
+		}
+		if ( nAssigned < nRows )
+			throw new Exception( "No match found when building assignment" );
+
+		return assignment;
+	}
+
+	/**
+	 * Sorts entry indices by increasing cost, then by increasing index, with
+	 * a quicksort on primitive arrays.
+	 */
+	private static void sort( final int[] order, final double[] costs, int lo, int hi )
+	{
+		while ( hi - lo > 16 )
+		{
+			// Median of three as pivot.
+			final int mid = ( lo + hi ) >>> 1;
+			if ( less( order[ mid ], order[ lo ], costs ) )
+				swap( order, lo, mid );
+			if ( less( order[ hi ], order[ lo ], costs ) )
+				swap( order, lo, hi );
+			if ( less( order[ hi ], order[ mid ], costs ) )
+				swap( order, mid, hi );
+			final int pivot = order[ mid ];
+
+			int i = lo;
+			int j = hi;
+			while ( i <= j )
+			{
+				while ( less( order[ i ], pivot, costs ) )
+					i++;
+				while ( less( pivot, order[ j ], costs ) )
+					j--;
+				if ( i <= j )
+					swap( order, i++, j-- );
+			}
+			// Recurse on the smaller part, loop on the larger one.
+			if ( j - lo < hi - i )
+			{
+				sort( order, costs, lo, j );
+				lo = i;
+			}
+			else
+			{
+				sort( order, costs, i, hi );
+				hi = j;
+			}
+		}
+		for ( int i = lo + 1; i <= hi; i++ )
+		{
+			final int k = order[ i ];
+			int j = i - 1;
+			while ( j >= lo && less( k, order[ j ], costs ) )
+			{
+				order[ j + 1 ] = order[ j ];
+				j--;
+			}
+			order[ j + 1 ] = k;
+		}
+	}
+
+	private static boolean less( final int a, final int b, final double[] costs )
+	{
+		return costs[ a ] < costs[ b ] || ( costs[ a ] == costs[ b ] && a < b );
+	}
+
+	private static void swap( final int[] order, final int i, final int j )
+	{
+		final int tmp = order[ i ];
+		order[ i ] = order[ j ];
+		order[ j ] = tmp;
+	}
+}
@@ -0,0 +1,83 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper.spt.measure;
+
+/**
+ * Solves the assignment with the Hungarian algorithm on a dense cost matrix.
+ * <p>
+ * Missing entries of the sparse cost matrix are set to the max cost plus one,
+ * so that they are never preferred over a feasible association. This requires
+ * <code>O(n^2)</code> memory and <code>O(n^3)</code> time for <code>n</code>
+ * tracks, and should only be used for small clusters.
+ */
+public class HungarianAssignmentSolver implements AssignmentSolver
+{
+
+	private final boolean useNewMethod;
+
+	/**
+	 * Creates a dense Hungarian solver.
+	 * 
+	 * @param useNewMethod
+	 *            if <code>true</code>, uses {@link HungarianMatchingNew},
+	 *            otherwise {@link HungarianMatching}.
+	 */
+	public HungarianAssignmentSolver( final boolean useNewMethod )
+	{
+		this.useNewMethod = useNewMethod;
+	}
+
+	@Override
+	public int[] solve( final SparseCostMatrix costs ) throws Exception
+	{
+		final double[][] dense = costs.toDense( costs.maxCost() + 1 );
+		// use Munkres algorithm to find the best pairing
+		final boolean[][] matching;
+		if ( useNewMethod )
+		{
+			final HungarianMatchingNew matcher = new HungarianMatchingNew( dense );
+			matching = matcher.compute();
+		}
+		else
+		{
+			final HungarianMatching matcher = new HungarianMatching( dense );
+			matching = matcher.optimize();
+		}
+
+		final int[] assignment = new int[ costs.nRows ];
+		for ( int r = 0; r < costs.nRows; r++ )
+		{
+			assignment[ r ] = -1;
+			for ( int c = 0; c < matching[ r ].length; c++ )
+			{
+				if ( matching[ r ][ c ] )
+				{
+					assignment[ r ] = c;
+					break;
+				}
+			}
+			if ( assignment[ r ] < 0 )
+				throw new Exception( "No match found when building assignment" );
+		}
+		return assignment;
+	}
+}
@@ -0,0 +1,203 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper.spt.measure;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import fiji.plugin.trackmate.helper.spt.measure.OneToOneMatcher.DisjointSet;
+import fiji.plugin.trackmate.helper.spt.measure.OneToOneMatcher.TrackPairsCluster;
+
+/**
+ * Computes the tracking performance criteria for a whole range of gates in one
+ * pass.
+ * <p>
+ * The distances between the detections of every pair of tracks that may match
+ * are computed only once, for the largest gate, and reused for all the gates.
+ * A pair that is feasible for a gate is also feasible for all larger gates, so
+ * gates are processed in increasing order and the clusters of reference tracks
+ * that share candidate tracks are built incrementally from the ones of the
+ * previous gate, only linking the pairs that became feasible. The assignment
+ * problem of each cluster is solved again for each gate, since all the costs
+ * depend on the gate.
+ * <p>
+ * The reports are identical to the ones obtained by scoring each gate
+ * separately with {@link TrackProcessorPerformance} and
+ * {@link PerformanceAnalyzer}.
+ */
+public class MultiThresholdAnalyzer
+{
+
+	private final List< TrackSegment > referenceTracks;
+
+	private final List< TrackSegment > candidateTracks;
+
+	/**
+	 * @param referenceTracks
+	 *            the set of reference tracks
+	 * @param candidateTracks
+	 *            the set of candidate tracks
+	 */
+	public MultiThresholdAnalyzer( final List< TrackSegment > referenceTracks, final List< TrackSegment > candidateTracks )
+	{
+		this.referenceTracks = new ArrayList<>( referenceTracks );
+		this.candidateTracks = new ArrayList<>( candidateTracks );
+	}
+
+	/**
+	 * Pairs the tracks and computes the performance report for each of the
+	 * specified gates.
+	 * 
+	 * @param maxDists
+	 *            the gates (maximum Euclidian distance between detections),
+	 *            sorted in increasing order.
+	 * @param distType
+	 *            type of distance that is used for computing the criteria.
+	 *            The tracks are always paired with the Euclidian distance.
+	 * @param solver
+	 *            the solver used to find the best assignment in each cluster
+	 *            of track pairs.
+	 * @param parallel
+	 *            if <code>true</code>, the distances are computed and the
+	 *            clusters are solved on the common fork-join pool.
+	 * @return a list of reports, one per gate, in the same order.
+	 */
+	public List< PerformanceReport > analyze( final double[] maxDists, final DistanceTypes distType, final AssignmentSolver solver, final boolean parallel )
+	{
+		if ( maxDists.length == 0 )
+			return new ArrayList<>();
+		for ( int k = 0; k < maxDists.length; k++ )
+		{
+			if ( maxDists[ k ] < 0 )
+				throw new IllegalArgumentException( "Maximum distance needs to be a positive value" );
+			if ( k > 0 && maxDists[ k ] < maxDists[ k - 1 ] )
+				throw new IllegalArgumentException( "Maximum distances must be sorted in increasing order." );
+		}
+
+		/*
+		 * Distance profiles of the pairs that may match for the largest gate.
+		 */
+		final PreparedReference index = new PreparedReference( referenceTracks, maxDists[ maxDists.length - 1 ] );
+		final List< List< TrackSegment > > matchableCandidates = new ArrayList<>( referenceTracks.size() );
+		for ( int r = 0; r < referenceTracks.size(); r++ )
+			matchableCandidates.add( new ArrayList<>() );
+		for ( final TrackSegment candidate : candidateTracks )
+			for ( final int r : index.getMatchableReferences( candidate ) )
+				matchableCandidates.get( r ).add( candidate );
+
+		final double largest = index.getMaxDist();
+		final Map< TrackSegment, TrackCoordinates > coordinates = TrackCoordinates.of( candidateTracks, parallel );
+		final IntStream referenceIndices = parallel
+				? IntStream.range( 0, referenceTracks.size() ).parallel()
+				: IntStream.range( 0, referenceTracks.size() );
+		final List< List< TrackDistanceProfile > > profiles = referenceIndices
+				.mapToObj( r -> getProfiles( referenceTracks.get( r ), matchableCandidates.get( r ), coordinates, largest ) )
+				.collect( Collectors.toList() );
+
+		/*
+		 * Pair and analyze each gate.
+		 */
+		final List< PerformanceReport > reports = new ArrayList<>( maxDists.length );
+		final DisjointSet sets = new DisjointSet( referenceTracks.size() );
+		final Map< TrackSegment, Integer > firstReference = new IdentityHashMap<>();
+		double previous = Double.NEGATIVE_INFINITY;
+		for ( final double maxDist : maxDists )
+		{
+			final List< List< TrackPair > > feasiblePairs = new ArrayList<>( referenceTracks.size() );
+			for ( int r = 0; r < referenceTracks.size(); r++ )
+			{
+				final List< TrackPair > pairs = new ArrayList<>();
+				final List< TrackPair > newPairs = new ArrayList<>();
+				for ( final TrackDistanceProfile profile : profiles.get( r ) )
+				{
+					if ( !profile.isMatching( maxDist ) )
+						continue;
+					final TrackPair pair = profile.toPair( maxDist );
+					pairs.add( pair );
+					if ( !profile.isMatching( previous ) )
+						newPairs.add( pair );
+				}
+				// Only the pairs that became feasible can merge clusters.
+				OneToOneMatcher.linkSharedCandidates( r, newPairs, sets, firstReference );
+
+				// add a dummy track for representing no association
+				final TrackSegment ts = referenceTracks.get( r );
+				final TrackToTrackDistance distance = new TrackToTrackDistance( ts, null, DistanceTypes.DISTANCE_EUCLIDIAN, maxDist );
+				pairs.add( new TrackPair(
+						ts,
+						new TrackSegment(),
+						distance.distance,
+						distance.firstMatchingTime,
+						distance.lastMatchingTime ) );
+				feasiblePairs.add( pairs );
+			}
+
+			final List< TrackPairsCluster > clusters = OneToOneMatcher.gatherClusters( feasiblePairs, sets );
+			final List< TrackPair > assignment = new ArrayList<>();
+			try
+			{
+				assignment.addAll( OneToOneMatcher.solveClusters( clusters, solver, parallel ) );
+			}
+			catch ( final Exception e )
+			{
+				e.printStackTrace();
+				assignment.clear();
+			}
+
+			for ( final TrackPair tp : assignment )
+				if ( tp.candidateTrack.getDetectionList().isEmpty() )
+					tp.candidateTrack = null;
+
+			final PerformanceAnalyzer analyzer = new PerformanceAnalyzer( referenceTracks, candidateTracks, assignment );
+			reports.add( analyzer.getReport( distType, maxDist ) );
+			previous = maxDist;
+		}
+		return reports;
+	}
+
+	/**
+	 * Computes the distance profiles between a reference track and the
+	 * candidate tracks it can match for the specified gate.
+	 */
+	private static List< TrackDistanceProfile > getProfiles(
+			final TrackSegment ts,
+			final List< TrackSegment > candidates,
+			final Map< TrackSegment, TrackCoordinates > coordinates,
+			final double maxDist )
+	{
+		final List< TrackDistanceProfile > profiles = new ArrayList<>();
+		if ( candidates.isEmpty() )
+			return profiles;
+		final TrackCoordinates c1 = TrackCoordinates.of( ts );
+		for ( final TrackSegment candidate : candidates )
+		{
+			final TrackDistanceProfile profile = new TrackDistanceProfile( ts, c1, candidate, coordinates.get( candidate ) );
+			if ( profile.isMatching( maxDist ) )
+				profiles.add( profile );
+		}
+		return profiles;
+	}
+}
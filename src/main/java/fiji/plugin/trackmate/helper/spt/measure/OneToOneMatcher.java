@@ -33,9 +33,13 @@ package fiji.plugin.trackmate.helper.spt.measure;
  */
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class OneToOneMatcher
 {
@@ -46,6 +50,8 @@ public class OneToOneMatcher
 
 	private final List< List< TrackPair > > feasiblePairs;
 
+	private final PreparedReference reference;
+
 	/**
 	 * @param refTracks
 	 *            the set of reference tracks
@@ -61,6 +67,28 @@ public class OneToOneMatcher
 		this.candidateTracks.addAll( candidateTracks );
 
 		this.feasiblePairs = new ArrayList< List< TrackPair > >();
+		this.reference = null;
+	}
+
+	/**
+	 * Creates a matcher against a prepared reference. Its index is used to
+	 * skip the candidate tracks that cannot match a reference track, when
+	 * pairing with the gate the reference was prepared for.
+	 * 
+	 * @param reference
+	 *            the prepared reference tracks
+	 * @param candidateTracks
+	 *            the set of candidate tracks
+	 */
+	public OneToOneMatcher( final PreparedReference reference, final List< TrackSegment > candidateTracks )
+	{
+		this.refTracks = reference.getTracks();
+
+		this.candidateTracks = new ArrayList< TrackSegment >();
+		this.candidateTracks.addAll( candidateTracks );
+
+		this.feasiblePairs = new ArrayList< List< TrackPair > >();
+		this.reference = reference;
 	}
 
 	/**
@@ -79,112 +107,289 @@ public class OneToOneMatcher
 	 * @throws Exception
 	 */
 	public List< TrackPair > pairTracks( final double maxDist, final DistanceTypes distType, final boolean useNewMethod ) throws Exception
+	{
+		return pairTracks( maxDist, distType, useNewMethod, false );
+	}
+
+	/**
+	 * Compute the best pairing, possibly in parallel.
+	 * 
+	 * @param maxDist
+	 *            maximum Euclidian distance between two detections (gate)
+	 * @param distType
+	 *            type of distance that is used for computing the costs of
+	 *            association
+	 * @param useNewMethod
+	 *            use new method (should be faster).
+	 * @param parallel
+	 *            if <code>true</code>, computations are dispatched over
+	 *            several threads.
+	 * @return the best pairing between tracks. All the reference tracks are
+	 *         paired (potentially to a dummy track), while some candidate
+	 *         tracks may not be in the list
+	 * @throws Exception
+	 * @see #pairTracks(double, DistanceTypes, AssignmentSolver, boolean)
+	 */
+	public List< TrackPair > pairTracks( final double maxDist, final DistanceTypes distType, final boolean useNewMethod, final boolean parallel ) throws Exception
+	{
+		return pairTracks( maxDist, distType, new HungarianAssignmentSolver( useNewMethod ), parallel );
+	}
+
+	/**
+	 * Compute the best pairing with the specified assignment solver, possibly
+	 * in parallel.
+	 * <p>
+	 * In parallel mode, the feasible pairs are computed for each reference
+	 * track concurrently, and the independent track pair clusters are solved
+	 * concurrently, on the common fork-join pool. The pairing returned is
+	 * identical to the one computed in sequential mode, in the same order.
+	 * 
+	 * @param maxDist
+	 *            maximum Euclidian distance between two detections (gate)
+	 * @param distType
+	 *            type of distance that is used for computing the costs of
+	 *            association
+	 * @param solver
+	 *            the solver used to find the best assignment in each cluster
+	 *            of track pairs.
+	 * @param parallel
+	 *            if <code>true</code>, computations are dispatched over
+	 *            several threads.
+	 * @return the best pairing between tracks. All the reference tracks are
+	 *         paired (potentially to a dummy track), while some candidate
+	 *         tracks may not be in the list
+	 * @throws Exception
+	 */
+	public List< TrackPair > pairTracks( final double maxDist, final DistanceTypes distType, final AssignmentSolver solver, final boolean parallel ) throws Exception
 	{
 		// build the potential track pairs
 		this.feasiblePairs.clear();
-		for ( final TrackSegment ts : refTracks )
-			this.feasiblePairs.add( getFeasiblePairs( ts, candidateTracks, distType, maxDist ) );
+		final List< List< TrackSegment > > matchableCandidates = getMatchableCandidates( maxDist );
+		final Map< TrackSegment, TrackCoordinates > coordinates = TrackCoordinates.of( candidateTracks, parallel );
+		if ( parallel )
+		{
+			feasiblePairs.addAll( IntStream.range( 0, refTracks.size() ).parallel()
+					.mapToObj( r -> getFeasiblePairs( refTracks.get( r ), matchableCandidates.get( r ), coordinates, distType, maxDist ) )
+					.collect( Collectors.toList() ) );
+		}
+		else
+		{
+			for ( int r = 0; r < refTracks.size(); r++ )
+				this.feasiblePairs.add( getFeasiblePairs( refTracks.get( r ), matchableCandidates.get( r ), coordinates, distType, maxDist ) );
+		}
 
 		// cluster track pairs
-		final List< TrackPairsCluster > clusters = new ArrayList< OneToOneMatcher.TrackPairsCluster >();
-		try
+		final List< TrackPairsCluster > clusters = getTrackPairClusters( feasiblePairs );
+		return solveClusters( clusters, solver, parallel );
+	}
+
+	public List< TrackPair > pairTracks( final double maxDist, final DistanceTypes distType ) throws Exception
+	{
+		return pairTracks( maxDist, distType, false );
+	}
+
+	/**
+	 * Returns a lower bound on the total cost of the optimal pairing computed
+	 * by the last call to <code>pairTracks</code>.
+	 * <p>
+	 * The bound is the sum, over the reference tracks, of the cost of their
+	 * cheapest feasible pair, dummy pair included. It is the value of a
+	 * feasible solution of the dual problem, so the optimal pairing cannot be
+	 * cheaper. The difference between the cost of a pairing found by an
+	 * approximate solver, such as {@link GreedyAssignmentSolver}, and this
+	 * bound is a bound on its optimality gap. The bound is reached when no
+	 * two reference tracks compete for the same candidate track.
+	 *
+	 * @return the lower bound, or 0 if no pairing was computed.
+	 */
+	public double getCostLowerBound()
+	{
+		double bound = 0;
+		for ( final List< TrackPair > pairs : feasiblePairs )
 		{
-			clusters.addAll( getTrackPairClusters() );
+			double min = Double.POSITIVE_INFINITY;
+			for ( final TrackPair tp : pairs )
+				if ( tp.distance < min )
+					min = tp.distance;
+			bound += min;
 		}
-		catch ( final Exception e )
+		return bound;
+	}
+
+	/**
+	 * Returns, for each reference track, the candidate tracks that may be
+	 * paired with it. If there is a prepared reference for this gate, its
+	 * index is used to skip candidate tracks that cannot match. Otherwise all
+	 * the candidate tracks are returned for every reference track.
+	 */
+	private List< List< TrackSegment > > getMatchableCandidates( final double maxDist )
+	{
+		final List< List< TrackSegment > > matchableCandidates = new ArrayList<>( refTracks.size() );
+		if ( reference == null || reference.getMaxDist() != maxDist )
 		{
-			throw e;
+			for ( int r = 0; r < refTracks.size(); r++ )
+				matchableCandidates.add( candidateTracks );
+			return matchableCandidates;
 		}
 
+		for ( int r = 0; r < refTracks.size(); r++ )
+			matchableCandidates.add( new ArrayList<>() );
+		for ( final TrackSegment candidate : candidateTracks )
+			for ( final int r : reference.getMatchableReferences( candidate ) )
+				matchableCandidates.get( r ).add( candidate );
+		return matchableCandidates;
+	}
+
+	/**
+	 * Finds the best assignment within each cluster of track pairs, possibly
+	 * solving the clusters concurrently.
+	 * 
+	 * @param clusters
+	 *            the clusters to solve.
+	 * @param solver
+	 *            the assignment solver.
+	 * @param parallel
+	 *            if <code>true</code>, clusters are solved on the common
+	 *            fork-join pool.
+	 * @return the track pairs of the best assignment, in cluster order.
+	 * @throws Exception
+	 */
+	static List< TrackPair > solveClusters( final List< TrackPairsCluster > clusters, final AssignmentSolver solver, final boolean parallel ) throws Exception
+	{
 		final List< TrackPair > assignment = new ArrayList< TrackPair >();
-		for ( final TrackPairsCluster cluster : clusters )
+		if ( parallel )
 		{
-			cluster.buildCostMatrix();
-			// use Munkres algorithm to find the best pairing
+			// Solve clusters concurrently, but collect them in order.
+			final List< List< TrackPair > > clusterAssignments;
 			try
 			{
-				boolean[][] matching;
-				if ( useNewMethod )
-				{
-					final HungarianMatchingNew matcher = new HungarianMatchingNew( cluster.costs );
-					matching = matcher.compute();
-				}
-				else
-				{
-					final HungarianMatching matcher = new HungarianMatching( cluster.costs );
-					matching = matcher.optimize();
-				}
-				assignment.addAll( cluster.getAssignements( matching ) );
+				clusterAssignments = clusters.parallelStream()
+						.map( cluster -> {
+							try
+							{
+								return solve( cluster, solver );
+							}
+							catch ( final Exception e )
+							{
+								throw new CompletionException( e );
+							}
+						} )
+						.collect( Collectors.toList() );
 			}
-			catch ( final Exception e )
+			catch ( final CompletionException e )
 			{
-				throw e;
+				throw ( Exception ) e.getCause();
 			}
+			for ( final List< TrackPair > clusterAssignment : clusterAssignments )
+				assignment.addAll( clusterAssignment );
+		}
+		else
+		{
+			for ( final TrackPairsCluster cluster : clusters )
+				assignment.addAll( solve( cluster, solver ) );
 		}
 		return assignment;
 	}
 
-	public List< TrackPair > pairTracks( final double maxDist, final DistanceTypes distType ) throws Exception
+	/**
+	 * Finds the best assignment within a single cluster of track pairs.
+	 * 
+	 * @param cluster
+	 *            the cluster to solve.
+	 * @param solver
+	 *            the assignment solver.
+	 * @return the track pairs of the best assignment in this cluster.
+	 * @throws Exception
+	 */
+	private static List< TrackPair > solve( final TrackPairsCluster cluster, final AssignmentSolver solver ) throws Exception
 	{
-		return pairTracks( maxDist, distType, false );
+		final SparseCostMatrix costs = cluster.buildCostMatrix();
+		final int[] assignment = solver.solve( costs );
+		return cluster.getAssignements( assignment );
 	}
 
 	/**
-	 * Build the clusters of TrackPair objects
+	 * Build the clusters of TrackPair objects.
+	 * <p>
+	 * Reference tracks that share a candidate track are merged in the same
+	 * cluster using a disjoint-set structure over the reference track
+	 * indices. Clusters are returned in the order of their first reference
+	 * track.
 	 * 
+	 * @param feasiblePairs
+	 *            the feasible pairs of each reference track.
 	 * @return list of TrackPairsCluster for the current set of TrackPairs
 	 */
-	private List< TrackPairsCluster > getTrackPairClusters() throws Exception
+	private static List< TrackPairsCluster > getTrackPairClusters( final List< List< TrackPair > > feasiblePairs ) throws Exception
 	{
-		List< TrackPairsCluster > clusters = new ArrayList< TrackPairsCluster >();
-		for ( final List< TrackPair > trackPairsList : feasiblePairs )
+		final int nRefs = feasiblePairs.size();
+		final DisjointSet sets = new DisjointSet( nRefs );
+
+		// Candidate track -> index of the first reference track using it.
+		final Map< TrackSegment, Integer > firstReference = new IdentityHashMap<>();
+		for ( int r = 0; r < nRefs; r++ )
 		{
-			if ( !trackPairsList.isEmpty() )
-			{
-				/*
-				 * create a cluster with tracks corresponding to the current
-				 * reference track
-				 */
-				final TrackPairsCluster currentCluster = new TrackPairsCluster();
-				final TrackSegment refTrack = trackPairsList.get( 0 ).referenceTrack;
-				currentCluster.usedReferenceTracks.add( refTrack );
-				for ( final TrackPair tp : trackPairsList )
-					currentCluster.usedCandidateTracks.add( tp.candidateTrack );
-				currentCluster.trackPairs.addAll( trackPairsList );
-				// now try to merge this cluster with others
-				final ArrayList< TrackPairsCluster > clustersCopy = new ArrayList< TrackPairsCluster >();
-				clustersCopy.add( currentCluster );
-				for ( final TrackPairsCluster cluster : clusters )
-				{
-					/*
-					 * check if cluster contains tracks that are used by the
-					 * current cluster we do not check for the reference track
-					 * as it should not be used elsewhere
-					 */
-					boolean found = false;
-					for ( final TrackPair tp : trackPairsList )
-					{
-						found = cluster.usedCandidateTracks.contains( tp.candidateTrack );
-						if ( found )
-							break;
-					}
-					if ( found )
-					{
-						// merge clusters
-						currentCluster.mergeCluster( cluster );
-					}
-					else
-					{
-						// keep the investigate cluster intact
-						clustersCopy.add( cluster );
-					}
-				}
-				clusters = clustersCopy;
-			}
-			else
-			{
+			final List< TrackPair > trackPairsList = feasiblePairs.get( r );
+			if ( trackPairsList.isEmpty() )
 				throw new Exception( "There is a track cluster empty" );
+			linkSharedCandidates( r, trackPairsList, sets, firstReference );
+		}
+		return gatherClusters( feasiblePairs, sets );
+	}
+
+	/**
+	 * Merges the set of a reference track with the sets of the reference
+	 * tracks that share one of the candidate tracks of the specified pairs.
+	 * 
+	 * @param r
+	 *            the index of the reference track.
+	 * @param trackPairs
+	 *            some pairs of this reference track.
+	 * @param sets
+	 *            the disjoint sets of reference track indices.
+	 * @param firstReference
+	 *            a map from each candidate track to the index of the first
+	 *            reference track found to use it. Updated by this method.
+	 */
+	static void linkSharedCandidates(
+			final int r,
+			final Iterable< TrackPair > trackPairs,
+			final DisjointSet sets,
+			final Map< TrackSegment, Integer > firstReference )
+	{
+		for ( final TrackPair tp : trackPairs )
+		{
+			final Integer other = firstReference.putIfAbsent( tp.candidateTrack, Integer.valueOf( r ) );
+			if ( other != null )
+				sets.union( r, other.intValue() );
+		}
+	}
+
+	/**
+	 * Gathers the feasible pairs of the reference tracks in the same set into
+	 * clusters, in the order of their first reference track.
+	 * 
+	 * @param feasiblePairs
+	 *            the feasible pairs of each reference track.
+	 * @param sets
+	 *            the disjoint sets of reference track indices.
+	 * @return the clusters.
+	 */
+	static List< TrackPairsCluster > gatherClusters( final List< List< TrackPair > > feasiblePairs, final DisjointSet sets )
+	{
+		final int nRefs = feasiblePairs.size();
+		final List< TrackPairsCluster > clusters = new ArrayList< TrackPairsCluster >();
+		final int[] clusterIndex = new int[ nRefs ];
+		Arrays.fill( clusterIndex, -1 );
+		for ( int r = 0; r < nRefs; r++ )
+		{
+			final int root = sets.find( r );
+			if ( clusterIndex[ root ] < 0 )
+			{
+				clusterIndex[ root ] = clusters.size();
+				clusters.add( new TrackPairsCluster() );
 			}
+			clusters.get( clusterIndex[ root ] ).addReferenceTrack( feasiblePairs.get( r ) );
 		}
 		return clusters;
 	}
@@ -198,6 +403,8 @@ public class OneToOneMatcher
 	 *            the reference TrackSegment object
 	 * @param tracks2
 	 *            the set of candidate tracks
+	 * @param coordinates
+	 *            the coordinates of the non-empty candidate tracks
 	 * @param distType
 	 *            type of distance that is used for computing the costs of
 	 *            association
@@ -207,13 +414,15 @@ public class OneToOneMatcher
 	private List< TrackPair > getFeasiblePairs(
 			final TrackSegment ts,
 			final List< TrackSegment > tracks2,
+			final Map< TrackSegment, TrackCoordinates > coordinates,
 			final DistanceTypes distType,
 			final double maxDist )
 	{
 		final ArrayList< TrackPair > feasiblePairs = new ArrayList< TrackPair >();
+		final TrackCoordinates c1 = TrackCoordinates.of( ts );
 		for ( final TrackSegment ts2 : tracks2 )
 		{
-			final TrackToTrackDistance distance = new TrackToTrackDistance( ts, ts2, distType, maxDist );
+			final TrackToTrackDistance distance = new TrackToTrackDistance( c1, coordinates.get( ts2 ), distType, maxDist );
 			if ( distance.isMatching )
 			{
 				final TrackPair pair = new TrackPair(
@@ -226,8 +435,7 @@ public class OneToOneMatcher
 			}
 		}
 		// add a dummy track for representing no association
-		final TrackSegment dummyTrack = new TrackSegment();
-		final TrackToTrackDistance distance = new TrackToTrackDistance( ts, dummyTrack, distType, maxDist );
+		final TrackToTrackDistance distance = new TrackToTrackDistance( c1, null, distType, maxDist );
 		final TrackPair pair = new TrackPair(
 				ts,
 				new TrackSegment(),
@@ -241,89 +449,94 @@ public class OneToOneMatcher
 	/**
 	 * cluster of TrackPair objects that share common tracks
 	 */
-	private class TrackPairsCluster
+	static class TrackPairsCluster
 	{
-		private final Set< TrackSegment > usedReferenceTracks = new HashSet< TrackSegment >();
+		private final List< TrackSegment > referenceTrackList = new ArrayList< TrackSegment >();
 
-		private final Set< TrackSegment > usedCandidateTracks = new HashSet< TrackSegment >();
+		private final List< TrackSegment > candidateTrackList = new ArrayList< TrackSegment >();
 
-		private final List< TrackPair > trackPairs = new ArrayList< TrackPair >();
+		private final Map< TrackSegment, Integer > candidateIndices = new IdentityHashMap<>();
 
-		private double[][] costs;
-
-		private List< TrackSegment > candidateTrackList;
-
-		private List< TrackSegment > referenceTrackList;
+		/**
+		 * The feasible pairs of each reference track, in the order of the
+		 * reference track list.
+		 */
+		private final List< List< TrackPair > > referencePairs = new ArrayList<>();
 
-		public void mergeCluster( final TrackPairsCluster toMerge )
+		/**
+		 * Adds a reference track to this cluster, along with its feasible
+		 * pairs, and index the candidate tracks it uses.
+		 */
+		private void addReferenceTrack( final List< TrackPair > trackPairsList )
 		{
-			this.usedCandidateTracks.addAll( toMerge.usedCandidateTracks );
-			this.usedReferenceTracks.addAll( toMerge.usedReferenceTracks );
-			this.trackPairs.addAll( toMerge.trackPairs );
+			final int referenceIndex = referenceTrackList.size();
+			referenceTrackList.add( trackPairsList.get( 0 ).referenceTrack );
+			referencePairs.add( trackPairsList );
+			for ( final TrackPair tp : trackPairsList )
+			{
+				Integer candidateIndex = candidateIndices.get( tp.candidateTrack );
+				if ( candidateIndex == null )
+				{
+					candidateIndex = Integer.valueOf( candidateTrackList.size() );
+					candidateIndices.put( tp.candidateTrack, candidateIndex );
+					candidateTrackList.add( tp.candidateTrack );
+				}
+				tp.referenceIndex = referenceIndex;
+				tp.candidateIndex = candidateIndex.intValue();
+			}
 		}
 
 		/**
-		 * Compute the cost matrix for the assignment between reference and
-		 * candidate tracks of a TrackPairsCluster object
+		 * Compute the sparse cost matrix for the assignment between reference
+		 * and candidate tracks of a TrackPairsCluster object. Only feasible
+		 * pairs are stored.
 		 */
-		private void buildCostMatrix()
+		private SparseCostMatrix buildCostMatrix()
 		{
-			double maxDist = 0;
-			for ( final TrackPair tp : this.trackPairs )
-				maxDist = Math.max( maxDist, tp.distance );
-
-			candidateTrackList = new ArrayList< TrackSegment >();
-			candidateTrackList.addAll( usedCandidateTracks );
-			referenceTrackList = new ArrayList< TrackSegment >();
-			referenceTrackList.addAll( usedReferenceTracks );
-			costs = new double[ referenceTrackList.size() ][ candidateTrackList.size() ];
-
-			// fill costs
-			for ( int i = 0; i < costs.length; i++ )
-				for ( int j = 0; j < costs[ i ].length; j++ )
-					costs[ i ][ j ] = maxDist + 1;
-
-			for ( final TrackPair tp : this.trackPairs )
+			final int nRows = referenceTrackList.size();
+			final int[] rowStart = new int[ nRows + 1 ];
+			for ( int r = 0; r < nRows; r++ )
+				rowStart[ r + 1 ] = rowStart[ r ] + referencePairs.get( r ).size();
+
+			final int[] cols = new int[ rowStart[ nRows ] ];
+			final double[] costs = new double[ rowStart[ nRows ] ];
+			int k = 0;
+			for ( final List< TrackPair > trackPairsList : referencePairs )
 			{
-				tp.referenceIndex = referenceTrackList.indexOf( tp.referenceTrack );
-				tp.candidateIndex = candidateTrackList.indexOf( tp.candidateTrack );
-				costs[ tp.referenceIndex ][ tp.candidateIndex ] = tp.distance;
+				for ( final TrackPair tp : trackPairsList )
+				{
+					cols[ k ] = tp.candidateIndex;
+					costs[ k ] = tp.distance;
+					k++;
+				}
 			}
+			return new SparseCostMatrix( nRows, candidateTrackList.size(), rowStart, cols, costs );
 		}
 
 		/**
-		 * Build the list of track pairs that corresponds to a given matching
-		 * matrix
+		 * Build the list of track pairs that corresponds to a given
+		 * assignment
 		 * 
-		 * @param matching
-		 *            a boolean matrix indicating the association between
-		 *            reference tracks (rows) and candidate tracks (columns)
-		 * @return the list of TrackPair objects that correspond to the matching
+		 * @param assignment
+		 *            the index of the candidate track (column) associated to
+		 *            each reference track (row)
+		 * @return the list of TrackPair objects that correspond to the
+		 *         assignment
 		 */
-		private List< TrackPair > getAssignements( final boolean[][] matching ) throws Exception
+		private List< TrackPair > getAssignements( final int[] assignment ) throws Exception
 		{
-			final List< TrackPair > assignment = new ArrayList< TrackPair >();
+			final List< TrackPair > pairs = new ArrayList< TrackPair >();
 			for ( int referenceIndex = 0; referenceIndex < referenceTrackList.size(); referenceIndex++ )
 			{
-				boolean found = false;
-				int candidateIndex = -1;
-				for ( int j = 0; j < matching[ referenceIndex ].length; j++ )
-				{
-					if ( matching[ referenceIndex ][ j ] )
-					{
-						found = true;
-						candidateIndex = j;
-						break;
-					}
-				}
-				if ( !found )
+				final int candidateIndex = assignment[ referenceIndex ];
+				if ( candidateIndex < 0 )
 					throw new Exception( "No match found when building assignment" );
-				found = false;
-				for ( final TrackPair tp : trackPairs )
+				boolean found = false;
+				for ( final TrackPair tp : referencePairs.get( referenceIndex ) )
 				{
-					if ( tp.candidateIndex == candidateIndex && tp.referenceIndex == referenceIndex )
+					if ( tp.candidateIndex == candidateIndex )
 					{
-						assignment.add( tp );
+						pairs.add( tp );
 						found = true;
 						break;
 					}
@@ -331,7 +544,55 @@ public class OneToOneMatcher
 				if ( !found )
 					throw new Exception( "Track pair not found when building assignment" );
 			}
-			return assignment;
+			return pairs;
+		}
+	}
+
+	/**
+	 * Disjoint-set (union-find) structure over integer indices, with path
+	 * halving and union by size.
+	 */
+	static final class DisjointSet
+	{
+		private final int[] parent;
+
+		private final int[] size;
+
+		DisjointSet( final int n )
+		{
+			this.parent = new int[ n ];
+			this.size = new int[ n ];
+			for ( int i = 0; i < n; i++ )
+			{
+				parent[ i ] = i;
+				size[ i ] = 1;
+			}
+		}
+
+		int find( int i )
+		{
+			while ( parent[ i ] != i )
+			{
+				parent[ i ] = parent[ parent[ i ] ];
+				i = parent[ i ];
+			}
+			return i;
+		}
+
+		void union( final int i, final int j )
+		{
+			int ri = find( i );
+			int rj = find( j );
+			if ( ri == rj )
+				return;
+			if ( size[ ri ] < size[ rj ] )
+			{
+				final int tmp = ri;
+				ri = rj;
+				rj = tmp;
+			}
+			parent[ rj ] = ri;
+			size[ ri ] += size[ rj ];
 		}
 	}
 }
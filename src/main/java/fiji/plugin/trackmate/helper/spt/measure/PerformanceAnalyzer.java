@@ -22,7 +22,9 @@
 package fiji.plugin.trackmate.helper.spt.measure;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Utilities to compute several tracking performance criteria for a given
@@ -43,6 +45,20 @@ public class PerformanceAnalyzer
 
 	private final List< TrackPair > trackPairs;
 
+	/**
+	 * Index of the first pair of each reference track.
+	 */
+	private final Map< TrackSegment, Integer > referencePairIndices;
+
+	/**
+	 * Index of the first pair of each candidate track.
+	 */
+	private final Map< TrackSegment, Integer > candidatePairIndices;
+
+	private final PreparedReference reference;
+
+	private PerformanceReport report;
+
 	/**
 	 * Build the analyzer
 	 * 
@@ -59,12 +75,53 @@ public class PerformanceAnalyzer
 			final List< TrackSegment > candidateTracks,
 			final List< TrackPair > trackPairs )
 	{
+		this( referenceTracks, null, candidateTracks, trackPairs );
+	}
+
+	/**
+	 * Build the analyzer with a prepared reference, whose precomputed
+	 * quantities are reused when the criteria are computed for the gate it was
+	 * prepared for.
+	 * 
+	 * @param reference
+	 *            the prepared reference tracks
+	 * @param candidateTracks
+	 *            the set of candidate tracks
+	 * @param trackPairs
+	 *            the pairing between the set of tracks. Each track in the
+	 *            reference set has to be represented.
+	 */
+	public PerformanceAnalyzer(
+			final PreparedReference reference,
+			final List< TrackSegment > candidateTracks,
+			final List< TrackPair > trackPairs )
+	{
+		this( reference.getTracks(), reference, candidateTracks, trackPairs );
+	}
+
+	private PerformanceAnalyzer(
+			final List< TrackSegment > referenceTracks,
+			final PreparedReference reference,
+			final List< TrackSegment > candidateTracks,
+			final List< TrackPair > trackPairs )
+	{
+		this.reference = reference;
 		this.referenceTracks = new ArrayList< TrackSegment >();
 		this.referenceTracks.addAll( referenceTracks );
 		this.candidateTracks = new ArrayList< TrackSegment >();
 		this.candidateTracks.addAll( candidateTracks );
 		this.trackPairs = new ArrayList< TrackPair >();
 		this.trackPairs.addAll( trackPairs );
+
+		this.referencePairIndices = new IdentityHashMap<>();
+		this.candidatePairIndices = new IdentityHashMap<>();
+		for ( int i = 0; i < this.trackPairs.size(); i++ )
+		{
+			final TrackPair tp = this.trackPairs.get( i );
+			referencePairIndices.putIfAbsent( tp.referenceTrack, Integer.valueOf( i ) );
+			if ( tp.candidateTrack != null )
+				candidatePairIndices.putIfAbsent( tp.candidateTrack, Integer.valueOf( i ) );
+		}
 	}
 
 	/**
@@ -80,6 +137,8 @@ public class PerformanceAnalyzer
 	 */
 	public int getNumRefDetections()
 	{
+		if ( reference != null )
+			return reference.getNumDetections();
 		int numDetections = 0;
 		for ( final TrackSegment ts : referenceTracks )
 			numDetections += ( ts.getLastDetection().getT() - ts.getFirstDetection().getT() + 1 );
@@ -107,86 +166,164 @@ public class PerformanceAnalyzer
 	}
 
 	/**
-	 * @return the distance between the pairs
+	 * Returns the report of all the tracking performance criteria for the
+	 * specified distance type and gate.
+	 * <p>
+	 * The distance between the tracks of each pair is computed only once for
+	 * all the criteria, and the last report is kept, so that several criteria
+	 * can be queried for the same parameters without computing it again.
+	 * 
+	 * @param distType
+	 *            type of distance that is used for computing the costs of
+	 *            association
+	 * @param maxDist
+	 *            the gate (maximum Euclidian distance) for distance
+	 *            computation
+	 * @return the performance report.
 	 */
-	public double getPairedTracksDistance( final DistanceTypes distType, final double maxDist )
+	public synchronized PerformanceReport getReport( final DistanceTypes distType, final double maxDist )
 	{
-		double distance = 0;
-		for ( final TrackPair tp : trackPairs )
-		{
-			final TrackToTrackDistance d = new TrackToTrackDistance(
-					tp.referenceTrack,
-					tp.candidateTrack,
-					distType,
-					maxDist );
-			distance += d.distance;
-		}
-		return distance;
+		if ( report == null || report.getDistanceType() != distType || report.getMaxDist() != maxDist )
+			report = computeReport( distType, maxDist );
+		return report;
 	}
 
 	/**
-	 * @return the normalized distance between the pairs (alpha criterion)
+	 * Returns a report for the specified gate, for criteria that do not depend
+	 * on the distance type.
 	 */
-	public double getPairedTracksNormalizedDistance( final DistanceTypes distType, final double maxDist )
+	private synchronized PerformanceReport getReport( final double maxDist )
+	{
+		if ( report != null && report.getMaxDist() == maxDist )
+			return report;
+		return getReport( DistanceTypes.DISTANCE_MATCHING, maxDist );
+	}
+
+	private PerformanceReport computeReport( final DistanceTypes distType, final double maxDist )
 	{
-		double distance = 0;
-		for ( final TrackPair tp : trackPairs )
-		{
-			final TrackToTrackDistance d = new TrackToTrackDistance( tp.referenceTrack, tp.candidateTrack, distType, maxDist );
-			distance += d.distance;
-		}
 		/*
-		 * divide now by the maximum distance that corresponds to reference
-		 * tracks with no associated tracks
+		 * Distance between the tracks of each pair. The detection counts and
+		 * statistics do not depend on the distance type.
 		 */
-		double normalization = 0;
-		for ( final TrackSegment ts : referenceTracks )
+		final TrackToTrackDistance[] distances = new TrackToTrackDistance[ trackPairs.size() ];
+		double pairedTracksDistance = 0;
+		int numPairedDetections = 0;
+		int numMissedDetections = 0;
+		double sumDistance = 0;
+		double sumSquareDistance = 0;
+		double minDistance = Double.MAX_VALUE;
+		double maxDistance = 0;
+		for ( int i = 0; i < distances.length; i++ )
 		{
-			final TrackToTrackDistance d = new TrackToTrackDistance( ts, null, distType, maxDist );
-			normalization += d.distance;
+			final TrackPair tp = trackPairs.get( i );
+			final TrackToTrackDistance d = ( tp.profile != null && tp.profile.candidateTrack == tp.candidateTrack )
+					? tp.profile.evaluate( distType, maxDist )
+					: new TrackToTrackDistance( tp.referenceTrack, tp.candidateTrack, distType, maxDist );
+			distances[ i ] = d;
+			pairedTracksDistance += d.distance;
+			numPairedDetections += d.numMatchingDetections;
+			numMissedDetections += d.numNonMatchedDetections;
+			if ( tp.candidateTrack != null && !tp.candidateTrack.getDetectionList().isEmpty() )
+			{
+				sumDistance += d.sumDetectionDistance;
+				sumSquareDistance += d.sumSquareDetectionDistance;
+				if ( d.minDetectionDistance < minDistance )
+					minDistance = d.minDetectionDistance;
+				if ( d.maxDetectionDistance > maxDistance )
+					maxDistance = d.maxDetectionDistance;
+			}
 		}
-		return 1d - distance / normalization;
-	}
 
-	/**
-	 * @return the full distance between the pairs (beta criterion) that
-	 *         accounts for non-associated candidate tracks
-	 */
-	public double getFullTrackingScore( final DistanceTypes distType, final double maxDist )
-	{
-		double distance = 0;
-		for ( final TrackPair tp : trackPairs )
+		/*
+		 * Distance of the reference tracks with no associated track.
+		 */
+		double noAssociationDistance = 0;
+		if ( reference != null && reference.getMaxDist() == maxDist )
 		{
-			final TrackToTrackDistance d = new TrackToTrackDistance( tp.referenceTrack, tp.candidateTrack, distType, maxDist );
-			distance += d.distance;
+			noAssociationDistance = reference.getNoAssociationDistance( distType );
 		}
-		// compute the bound on the distance
-		double bound = 0;
-		for ( final TrackSegment ts : referenceTracks )
+		else
 		{
-			final TrackToTrackDistance d = new TrackToTrackDistance( ts, null, distType, maxDist );
-			bound += d.distance;
+			for ( final TrackSegment ts : referenceTracks )
+			{
+				final TrackToTrackDistance d = new TrackToTrackDistance( ts, null, distType, maxDist );
+				noAssociationDistance += d.distance;
+			}
 		}
-		// compute the penalty for wrong tracks
-		double penalty = 0;
+
+		/*
+		 * Penalty and wrong detections of the candidate tracks.
+		 */
+		double spuriousTracksPenalty = 0;
+		int numWrongDetections = 0;
 		for ( final TrackSegment ts : candidateTracks )
 		{
-			boolean found = false;
-			for ( final TrackPair tp : trackPairs )
+			final Integer pairIndex = candidatePairIndices.get( ts );
+			if ( pairIndex != null )
 			{
-				if ( tp.candidateTrack == ts )
-				{
-					found = true;
-					break;
-				}
+				numWrongDetections += distances[ pairIndex.intValue() ].numWrongDetections;
 			}
-			if ( !found )
+			else
 			{
 				final TrackToTrackDistance d = new TrackToTrackDistance( ts, null, distType, maxDist );
-				penalty += d.distance;
+				spuriousTracksPenalty += d.distance;
+				for ( final Detection detection : ts.getDetectionList() )
+					if ( detection.getDetectionType() == Detection.DETECTIONTYPE_REAL_DETECTION )
+						numWrongDetections++;
+				// Virtual detections are not considered as spurious detections.
 			}
 		}
-		return ( bound - distance ) / ( bound + penalty );
+
+		final double[] distanceDetectionData;
+		if ( numPairedDetections == 0 )
+		{
+			distanceDetectionData = new double[] { 0, 0, 0, 0 };
+		}
+		else
+		{
+			final double rmse = Math.sqrt( sumSquareDistance / numPairedDetections );
+			final double stdDistance = Math.sqrt( sumSquareDistance / numPairedDetections - Math.pow( sumDistance / numPairedDetections, 2 ) );
+			distanceDetectionData = new double[] { rmse, minDistance, maxDistance, stdDistance };
+		}
+
+		return new PerformanceReport(
+				distType,
+				maxDist,
+				pairedTracksDistance,
+				noAssociationDistance,
+				spuriousTracksPenalty,
+				getNumPairedTracks(),
+				getNumMissedTracks(),
+				getNumSpuriousTracks(),
+				numPairedDetections,
+				numMissedDetections,
+				numWrongDetections,
+				distanceDetectionData );
+	}
+
+	/**
+	 * @return the distance between the pairs
+	 */
+	public double getPairedTracksDistance( final DistanceTypes distType, final double maxDist )
+	{
+		return getReport( distType, maxDist ).getPairedTracksDistance();
+	}
+
+	/**
+	 * @return the normalized distance between the pairs (alpha criterion)
+	 */
+	public double getPairedTracksNormalizedDistance( final DistanceTypes distType, final double maxDist )
+	{
+		return getReport( distType, maxDist ).getAlpha();
+	}
+
+	/**
+	 * @return the full distance between the pairs (beta criterion) that
+	 *         accounts for non-associated candidate tracks
+	 */
+	public double getFullTrackingScore( final DistanceTypes distType, final double maxDist )
+	{
+		return getReport( distType, maxDist ).getBeta();
 	}
 
 	/**
@@ -194,22 +331,7 @@ public class PerformanceAnalyzer
 	 */
 	public int getNumSpuriousTracks()
 	{
-		int numSpuriousTracks = 0;
-		for ( final TrackSegment ts : candidateTracks )
-		{
-			boolean found = false;
-			for ( final TrackPair tp : trackPairs )
-			{
-				if ( tp.candidateTrack == ts )
-				{
-					found = true;
-					break;
-				}
-			}
-			if ( !found )
-				numSpuriousTracks++;
-		}
-		return numSpuriousTracks;
+		return candidateTracks.size() - getNumPairedTracks();
 	}
 
 	/**
@@ -221,15 +343,12 @@ public class PerformanceAnalyzer
 		int numMissedTrack = 0;
 		for ( final TrackSegment ts : referenceTracks )
 		{
+			final Integer pairIndex = referencePairIndices.get( ts );
 			boolean found = false;
-			for ( final TrackPair tp : trackPairs )
+			if ( pairIndex != null )
 			{
-				if ( tp.referenceTrack == ts )
-				{
-					if ( tp.candidateTrack != null && !tp.candidateTrack.getDetectionList().isEmpty() )
-						found = true;
-					break;
-				}
+				final TrackPair tp = trackPairs.get( pairIndex.intValue() );
+				found = tp.candidateTrack != null && !tp.candidateTrack.getDetectionList().isEmpty();
 			}
 			if ( !found )
 				numMissedTrack++;
@@ -244,19 +363,8 @@ public class PerformanceAnalyzer
 	{
 		int numCorrectTracks = 0;
 		for ( final TrackSegment ts : candidateTracks )
-		{
-			boolean found = false;
-			for ( final TrackPair tp : trackPairs )
-			{
-				if ( tp.candidateTrack == ts )
-				{
-					found = true;
-					break;
-				}
-			}
-			if ( found )
+			if ( candidatePairIndices.containsKey( ts ) )
 				numCorrectTracks++;
-		}
 		return numCorrectTracks;
 	}
 
@@ -265,13 +373,7 @@ public class PerformanceAnalyzer
 	 */
 	public int getNumPairedDetections( final double maxDist )
 	{
-		int numRecoveredDetections = 0;
-		for ( final TrackPair tp : trackPairs )
-		{
-			final TrackToTrackDistance d = new TrackToTrackDistance( tp.referenceTrack, tp.candidateTrack, DistanceTypes.DISTANCE_MATCHING, maxDist );
-			numRecoveredDetections += d.numMatchingDetections;
-		}
-		return numRecoveredDetections;
+		return getReport( maxDist ).getNumPairedDetections();
 	}
 
 	/**
@@ -280,13 +382,7 @@ public class PerformanceAnalyzer
 	 */
 	public int getNumMissedDetections( final double maxDist )
 	{
-		int numMissedDetections = 0;
-		for ( final TrackPair tp : trackPairs )
-		{
-			final TrackToTrackDistance d = new TrackToTrackDistance( tp.referenceTrack, tp.candidateTrack, DistanceTypes.DISTANCE_MATCHING, maxDist );
-			numMissedDetections += d.numNonMatchedDetections;
-		}
-		return numMissedDetections;
+		return getReport( maxDist ).getNumMissedDetections();
 	}
 
 	/**
@@ -295,29 +391,7 @@ public class PerformanceAnalyzer
 	 */
 	public int getNumWrongDetections( final double maxDist )
 	{
-		int numSpuriousDetections = 0;
-		for ( final TrackSegment ts : candidateTracks )
-		{
-			boolean found = false;
-			for ( final TrackPair tp : trackPairs )
-			{
-				if ( tp.candidateTrack == ts )
-				{
-					final TrackToTrackDistance d = new TrackToTrackDistance( tp.referenceTrack, tp.candidateTrack, DistanceTypes.DISTANCE_MATCHING, maxDist );
-					numSpuriousDetections += d.numWrongDetections;
-					found = true;
-					break;
-				}
-			}
-			if ( !found )
-			{
-				for ( final Detection d : ts.getDetectionList() )
-					if ( d.getDetectionType() == Detection.DETECTIONTYPE_REAL_DETECTION )
-						numSpuriousDetections++;
-				// Virtual detections are not considered as spurious detections.
-			}
-		}
-		return numSpuriousDetections;
+		return getReport( maxDist ).getNumWrongDetections();
 	}
 
 	public List< Double > getDistanceDetectionList( final double maxDist )
@@ -332,33 +406,7 @@ public class PerformanceAnalyzer
 
 	public double[] getDistanceDetectionData( final double maxDist )
 	{
-		double sumDistance = 0;
-		double sumSquareDistance = 0;
-		double minDistance = Double.MAX_VALUE;
-		double maxDistance = 0;
-		int numDetections = 0;
-		for ( final TrackPair tp : trackPairs )
-		{
-			if ( tp.candidateTrack != null && !tp.candidateTrack.getDetectionList().isEmpty() )
-			{
-				final TrackToTrackDistance d = new TrackToTrackDistance( tp.referenceTrack, tp.candidateTrack, DistanceTypes.DISTANCE_MATCHING, maxDist );
-				sumDistance += d.sumDetectionDistance;
-				sumSquareDistance += d.sumSquareDetectionDistance;
-				if ( d.minDetectionDistance < minDistance )
-					minDistance = d.minDetectionDistance;
-				if ( d.maxDetectionDistance > maxDistance )
-					maxDistance = d.maxDetectionDistance;
-				numDetections += d.numMatchingDetections;
-			}
-		}
-		if ( numDetections == 0 )
-			return new double[] { 0, 0, 0, 0 };
-		else
-		{
-			final double rmse = Math.sqrt( sumSquareDistance / numDetections );
-			final double stdDistance = Math.sqrt( sumSquareDistance / numDetections - Math.pow( sumDistance / numDetections, 2 ) );
-			return new double[] { rmse, minDistance, maxDistance, stdDistance };
-		}
+		return getReport( maxDist ).getDistanceDetectionData();
 	}
 
 	public List< Double > getAllPairsDetectionEuclidianDistances()
@@ -384,14 +432,10 @@ public class PerformanceAnalyzer
 		{
 			final int firstT = Math.max( t0_1, t0_2 );
 			final int endT = Math.min( tend_1, tend_2 );
-			for ( int t = firstT; t <= endT; t++ )
-			{
-				final Detection d1 = ts1.getDetectionAtTime( t );
-				final Detection d2 = ts2.getDetectionAtTime( t );
-				distanceList.add( Double.valueOf( Math.sqrt( ( d1.getX() - d2.getX() ) * ( d1.getX() - d2.getX() )
-						+ ( d1.getY() - d2.getY() ) * ( d1.getY() - d2.getY() )
-						+ ( d1.getZ() - d2.getZ() ) * ( d1.getZ() - d2.getZ() ) ) ) );
-			}
+			final double[] distances = DetectionDistanceKernel.distances( TrackCoordinates.of( ts1 ), TrackCoordinates.of( ts2 ), firstT, endT );
+			distanceList.ensureCapacity( distances.length );
+			for ( final double ed : distances )
+				distanceList.add( Double.valueOf( ed ) );
 		}
 		return distanceList;
 	}
@@ -0,0 +1,218 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper.spt.measure;
+
+/**
+ * Immutable summary of all the tracking performance criteria for a given
+ * pairing between a reference and candidate set of tracks, for one distance
+ * type and one gate.
+ * <p>
+ * Instances are created by {@link PerformanceAnalyzer#getReport(DistanceTypes, double)},
+ * which computes every track pair distance only once.
+ */
+public class PerformanceReport
+{
+
+	private final DistanceTypes distType;
+
+	private final double maxDist;
+
+	private final double pairedTracksDistance;
+
+	private final double noAssociationDistance;
+
+	private final double spuriousTracksPenalty;
+
+	private final int numPairedTracks;
+
+	private final int numMissedTracks;
+
+	private final int numSpuriousTracks;
+
+	private final int numPairedDetections;
+
+	private final int numMissedDetections;
+
+	private final int numWrongDetections;
+
+	private final double[] distanceDetectionData;
+
+	PerformanceReport(
+			final DistanceTypes distType,
+			final double maxDist,
+			final double pairedTracksDistance,
+			final double noAssociationDistance,
+			final double spuriousTracksPenalty,
+			final int numPairedTracks,
+			final int numMissedTracks,
+			final int numSpuriousTracks,
+			final int numPairedDetections,
+			final int numMissedDetections,
+			final int numWrongDetections,
+			final double[] distanceDetectionData )
+	{
+		this.distType = distType;
+		this.maxDist = maxDist;
+		this.pairedTracksDistance = pairedTracksDistance;
+		this.noAssociationDistance = noAssociationDistance;
+		this.spuriousTracksPenalty = spuriousTracksPenalty;
+		this.numPairedTracks = numPairedTracks;
+		this.numMissedTracks = numMissedTracks;
+		this.numSpuriousTracks = numSpuriousTracks;
+		this.numPairedDetections = numPairedDetections;
+		this.numMissedDetections = numMissedDetections;
+		this.numWrongDetections = numWrongDetections;
+		this.distanceDetectionData = distanceDetectionData;
+	}
+
+	public DistanceTypes getDistanceType()
+	{
+		return distType;
+	}
+
+	public double getMaxDist()
+	{
+		return maxDist;
+	}
+
+	/**
+	 * @return the distance between the pairs
+	 */
+	public double getPairedTracksDistance()
+	{
+		return pairedTracksDistance;
+	}
+
+	/**
+	 * @return the normalized distance between the pairs (alpha criterion)
+	 */
+	public double getAlpha()
+	{
+		return 1d - pairedTracksDistance / noAssociationDistance;
+	}
+
+	/**
+	 * @return the full distance between the pairs (beta criterion) that
+	 *         accounts for non-associated candidate tracks
+	 */
+	public double getBeta()
+	{
+		return ( noAssociationDistance - pairedTracksDistance ) / ( noAssociationDistance + spuriousTracksPenalty );
+	}
+
+	/**
+	 * @return the Jaccard similarity index between reference and candidate
+	 *         detections.
+	 */
+	public double getDetectionsJaccard()
+	{
+		return numPairedDetections / ( ( double ) numPairedDetections + ( double ) numMissedDetections + numWrongDetections );
+	}
+
+	/**
+	 * @return the Jaccard similarity index between reference and candidate
+	 *         tracks.
+	 */
+	public double getTracksJaccard()
+	{
+		return numPairedTracks / ( ( double ) numPairedTracks + ( double ) numMissedTracks + numSpuriousTracks );
+	}
+
+	/**
+	 * @return the root mean square error between paired detections.
+	 */
+	public double getRMSE()
+	{
+		return distanceDetectionData[ 0 ];
+	}
+
+	/**
+	 * @return the number of pairs between reference and candidate tracks
+	 */
+	public int getNumPairedTracks()
+	{
+		return numPairedTracks;
+	}
+
+	/**
+	 * @return the number of non-associated reference tracks (or associated with
+	 *         a dummy track)
+	 */
+	public int getNumMissedTracks()
+	{
+		return numMissedTracks;
+	}
+
+	/**
+	 * @return the number of non-associated candidate tracks
+	 */
+	public int getNumSpuriousTracks()
+	{
+		return numSpuriousTracks;
+	}
+
+	/**
+	 * @return the total number of paired detections
+	 */
+	public int getNumPairedDetections()
+	{
+		return numPairedDetections;
+	}
+
+	/**
+	 * @return the number of detections for the reference tracks that are not
+	 *         paired to a candidate detection
+	 */
+	public int getNumMissedDetections()
+	{
+		return numMissedDetections;
+	}
+
+	/**
+	 * @return the number of detections for the candidate tracks that are not
+	 *         paired to a reference detection
+	 */
+	public int getNumWrongDetections()
+	{
+		return numWrongDetections;
+	}
+
+	/**
+	 * @return a new <code>double[]</code> array with the RMSE, min, max and
+	 *         standard deviation of the distance between paired detections.
+	 */
+	public double[] getDistanceDetectionData()
+	{
+		return distanceDetectionData.clone();
+	}
+
+	/**
+	 * Returns a <code>double[]</code> array with alpha, beta, JSC, JSCtheta and
+	 * RMSE.
+	 * 
+	 * @return the ISBI SPT scores.
+	 */
+	public double[] toScores()
+	{
+		return new double[] { getAlpha(), getBeta(), getDetectionsJaccard(), getTracksJaccard(), getRMSE() };
+	}
+}
@@ -0,0 +1,280 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper.spt.measure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable set of reference tracks, prepared once for a given gate, with the
+ * quantities that do not depend on the candidate tracks.
+ * <p>
+ * This stores the normalization bounds of the alpha and beta criteria, the
+ * time span of each reference track, and an index of the reference tracks
+ * sorted by start time with their bounding boxes. The index is used to skip
+ * the pairs of tracks that cannot match because they do not overlap in time
+ * or are further apart than the gate. Instances can be shared read-only by
+ * several threads that score different candidate tracks against the same
+ * reference.
+ */
+public class PreparedReference
+{
+
+	private final List< TrackSegment > tracks;
+
+	private final double maxDist;
+
+	private final int[] firstT;
+
+	private final int[] lastT;
+
+	/**
+	 * Bounding box of each reference track, as <code>[ xmin, xmax, ymin,
+	 * ymax, zmin, zmax ]</code>.
+	 */
+	private final double[][] bounds;
+
+	/**
+	 * Reference track indices sorted by start time.
+	 */
+	private final int[] byFirstT;
+
+	/**
+	 * Start time of the reference tracks, in the order of {@link #byFirstT}.
+	 */
+	private final int[] sortedFirstT;
+
+	private final double euclidianNoAssociationDistance;
+
+	private final double matchingNoAssociationDistance;
+
+	private final int numDetections;
+
+	/**
+	 * Prepares a set of reference tracks.
+	 * 
+	 * @param referenceTracks
+	 *            the reference tracks. The list is copied, but the tracks
+	 *            themselves must not be modified afterwards.
+	 * @param maxDist
+	 *            the gate (maximum Euclidian distance) between detections.
+	 */
+	public PreparedReference( final List< TrackSegment > referenceTracks, final double maxDist )
+	{
+		this.tracks = Collections.unmodifiableList( new ArrayList<>( referenceTracks ) );
+		this.maxDist = maxDist;
+
+		final int n = tracks.size();
+		this.firstT = new int[ n ];
+		this.lastT = new int[ n ];
+		this.bounds = new double[ n ][];
+		double euclidian = 0;
+		double matching = 0;
+		int nDetections = 0;
+		for ( int i = 0; i < n; i++ )
+		{
+			final TrackSegment ts = tracks.get( i );
+			bounds[ i ] = getBounds( ts, false );
+			if ( ts.getDetectionList().isEmpty() )
+			{
+				firstT[ i ] = 0;
+				lastT[ i ] = -1;
+				continue;
+			}
+			firstT[ i ] = ts.getFirstDetection().getT();
+			lastT[ i ] = ts.getLastDetection().getT();
+			euclidian += new TrackToTrackDistance( ts, null, DistanceTypes.DISTANCE_EUCLIDIAN, maxDist ).distance;
+			matching += new TrackToTrackDistance( ts, null, DistanceTypes.DISTANCE_MATCHING, maxDist ).distance;
+			nDetections += ( lastT[ i ] - firstT[ i ] + 1 );
+		}
+		this.euclidianNoAssociationDistance = euclidian;
+		this.matchingNoAssociationDistance = matching;
+		this.numDetections = nDetections;
+
+		final Integer[] order = new Integer[ n ];
+		for ( int i = 0; i < n; i++ )
+			order[ i ] = Integer.valueOf( i );
+		Arrays.sort( order, Comparator.comparingInt( i -> firstT[ i.intValue() ] ) );
+		this.byFirstT = new int[ n ];
+		this.sortedFirstT = new int[ n ];
+		for ( int k = 0; k < n; k++ )
+		{
+			byFirstT[ k ] = order[ k ].intValue();
+			sortedFirstT[ k ] = firstT[ byFirstT[ k ] ];
+		}
+	}
+
+	/**
+	 * @return the reference tracks, as an unmodifiable list.
+	 */
+	public List< TrackSegment > getTracks()
+	{
+		return tracks;
+	}
+
+	/**
+	 * @return the gate this reference was prepared for.
+	 */
+	public double getMaxDist()
+	{
+		return maxDist;
+	}
+
+	/**
+	 * @return the number of reference tracks.
+	 */
+	public int size()
+	{
+		return tracks.size();
+	}
+
+	public int getFirstT( final int index )
+	{
+		return firstT[ index ];
+	}
+
+	public int getLastT( final int index )
+	{
+		return lastT[ index ];
+	}
+
+	/**
+	 * @return the total number of detections of the reference tracks.
+	 */
+	public int getNumDetections()
+	{
+		return numDetections;
+	}
+
+	/**
+	 * Returns the sum of the distances of all the reference tracks to a dummy
+	 * track, that is the normalization bound of the alpha and beta criteria.
+	 * 
+	 * @param distType
+	 *            the distance type.
+	 * @return the distance when no reference track is associated.
+	 */
+	public double getNoAssociationDistance( final DistanceTypes distType )
+	{
+		switch ( distType )
+		{
+		case DISTANCE_EUCLIDIAN:
+			return euclidianNoAssociationDistance;
+		case DISTANCE_MATCHING:
+			return matchingNoAssociationDistance;
+		default:
+			throw new IllegalArgumentException( "Unknown distance type: " + distType );
+		}
+	}
+
+	/**
+	 * Returns the indices of the reference tracks that may be matched with the
+	 * specified candidate track, in increasing order. A reference track is
+	 * excluded only if it does not overlap the candidate track in time, or if
+	 * its bounding box is further than the gate from the bounding box of the
+	 * real detections of the candidate track. Such a pair cannot have matching
+	 * detections.
+	 * 
+	 * @param candidate
+	 *            the candidate track.
+	 * @return a new array of reference track indices.
+	 */
+	public int[] getMatchableReferences( final TrackSegment candidate )
+	{
+		if ( candidate.getDetectionList().isEmpty() )
+			return new int[ 0 ];
+
+		final int t0 = candidate.getFirstDetection().getT();
+		final int t1 = candidate.getLastDetection().getT();
+		final double[] cb = getBounds( candidate, true );
+
+		// References starting after the end of the candidate are excluded.
+		int lo = 0;
+		int end = sortedFirstT.length;
+		while ( lo < end )
+		{
+			final int mid = ( lo + end ) >>> 1;
+			if ( sortedFirstT[ mid ] <= t1 )
+				lo = mid + 1;
+			else
+				end = mid;
+		}
+
+		final int[] matchable = new int[ end ];
+		int n = 0;
+		for ( int k = 0; k < end; k++ )
+		{
+			final int i = byFirstT[ k ];
+			if ( lastT[ i ] < t0 )
+				continue;
+			if ( isFurtherThanGate( bounds[ i ], cb ) )
+				continue;
+			matchable[ n++ ] = i;
+		}
+		final int[] out = Arrays.copyOf( matchable, n );
+		Arrays.sort( out );
+		return out;
+	}
+
+	private boolean isFurtherThanGate( final double[] b1, final double[] b2 )
+	{
+		for ( int d = 0; d < 3; d++ )
+		{
+			final double min1 = b1[ 2 * d ];
+			final double max1 = b1[ 2 * d + 1 ];
+			final double min2 = b2[ 2 * d ];
+			final double max2 = b2[ 2 * d + 1 ];
+			if ( min1 > max1 || min2 > max2 )
+				return true;
+			if ( min1 - max2 > maxDist || min2 - max1 > maxDist )
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Computes the bounding box of a track. Empty tracks have an empty
+	 * bounding box, with min larger than max.
+	 */
+	private static double[] getBounds( final TrackSegment ts, final boolean realOnly )
+	{
+		final double[] b = new double[] {
+				Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+				Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+				Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		for ( final Detection d : ts.getDetectionList() )
+		{
+			if ( realOnly && d.getDetectionType() != Detection.DETECTIONTYPE_REAL_DETECTION )
+				continue;
+			b[ 0 ] = Math.min( b[ 0 ], d.getX() );
+			b[ 1 ] = Math.max( b[ 1 ], d.getX() );
+			b[ 2 ] = Math.min( b[ 2 ], d.getY() );
+			b[ 3 ] = Math.max( b[ 3 ], d.getY() );
+			b[ 4 ] = Math.min( b[ 4 ], d.getZ() );
+			b[ 5 ] = Math.max( b[ 5 ], d.getZ() );
+		}
+		return b;
+	}
+}
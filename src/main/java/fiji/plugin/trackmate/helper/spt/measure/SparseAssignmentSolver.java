@@ -0,0 +1,273 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper.spt.measure;
+
+import java.util.Arrays;
+
+/**
+ * Solves the rectangular assignment problem on a sparse cost matrix, with the
+ * shortest augmenting path method of Jonker and Volgenant.
+ * <p>
+ * Each row is added in turn by finding the shortest augmenting path in the
+ * graph of reduced costs with Dijkstra's algorithm, after which the dual
+ * variables are updated so that reduced costs stay non-negative. Only the
+ * entries stored in the matrix are visited, so memory is proportional to the
+ * number of feasible associations, and each augmentation only explores the
+ * part of the graph reachable from the row being added.
+ * <p>
+ * Costs must be non-negative. The assignment returned has the same total cost
+ * as the one found by the Hungarian algorithm on the dense matrix padded with
+ * a prohibitive cost, but may differ from it when there are ties.
+ * <p>
+ * See: R. Jonker and A. Volgenant, "A shortest augmenting path algorithm for
+ * dense and sparse linear assignment problems", Computing 38, 325-340 (1987),
+ * and D. F. Crouse, "On implementing 2D rectangular assignment algorithms",
+ * IEEE Transactions on Aerospace and Electronic Systems 52, 1679-1696 (2016).
+ */
+public class SparseAssignmentSolver implements AssignmentSolver
+{
+
+	@Override
+	public int[] solve( final SparseCostMatrix costs ) throws Exception
+	{
+		final int nRows = costs.nRows;
+		final int nCols = costs.nCols;
+		if ( nRows > nCols )
+			throw new IllegalArgumentException( "The number of rows must be less than or equal to the number of columns." );
+
+		// Dual variables.
+		final double[] u = new double[ nRows ];
+		final double[] v = new double[ nCols ];
+
+		final int[] rowSol = new int[ nRows ];
+		final int[] colSol = new int[ nCols ];
+		Arrays.fill( rowSol, -1 );
+		Arrays.fill( colSol, -1 );
+
+		// Per-column state of the Dijkstra search.
+		final double[] shortestPathCosts = new double[ nCols ];
+		Arrays.fill( shortestPathCosts, Double.POSITIVE_INFINITY );
+		final int[] path = new int[ nCols ];
+		final boolean[] scannedCols = new boolean[ nCols ];
+
+		// Columns and rows touched by the current search, to reset them.
+		final int[] touchedCols = new int[ nCols ];
+		final int[] scannedRows = new int[ nRows ];
+		final ColumnHeap heap = new ColumnHeap( nCols );
+
+		for ( int curRow = 0; curRow < nRows; curRow++ )
+		{
+			int nTouched = 0;
+			int nScannedRows = 0;
+			double minVal = 0.;
+			int i = curRow;
+			int sink = -1;
+			heap.clear();
+
+			while ( sink < 0 )
+			{
+				scannedRows[ nScannedRows++ ] = i;
+				for ( int k = costs.rowStart[ i ]; k < costs.rowStart[ i + 1 ]; k++ )
+				{
+					final int j = costs.cols[ k ];
+					if ( scannedCols[ j ] )
+						continue;
+
+					final double r = minVal + costs.costs[ k ] - u[ i ] - v[ j ];
+					if ( r < shortestPathCosts[ j ] )
+					{
+						if ( shortestPathCosts[ j ] == Double.POSITIVE_INFINITY )
+							touchedCols[ nTouched++ ] = j;
+						path[ j ] = i;
+						shortestPathCosts[ j ] = r;
+						heap.push( j, r, colSol[ j ] < 0 );
+					}
+				}
+
+				// Closest column not scanned yet.
+				int j = -1;
+				while ( !heap.isEmpty() )
+				{
+					final int candidate = heap.pop();
+					if ( !scannedCols[ candidate ] )
+					{
+						j = candidate;
+						break;
+					}
+				}
+				if ( j < 0 )
+					throw new Exception( "No complete assignment found for row " + curRow + "." );
+
+				minVal = shortestPathCosts[ j ];
+				scannedCols[ j ] = true;
+				if ( colSol[ j ] < 0 )
+					sink = j;
+				else
+					i = colSol[ j ];
+			}
+
+			// Update dual variables.
+			u[ curRow ] += minVal;
+			for ( int k = 1; k < nScannedRows; k++ )
+			{
+				final int row = scannedRows[ k ];
+				u[ row ] += minVal - shortestPathCosts[ rowSol[ row ] ];
+			}
+			for ( int k = 0; k < nTouched; k++ )
+			{
+				final int col = touchedCols[ k ];
+				if ( scannedCols[ col ] )
+					v[ col ] -= minVal - shortestPathCosts[ col ];
+			}
+
+			// Augment along the path.
+			int j = sink;
+			while ( true )
+			{
+				final int row = path[ j ];
+				colSol[ j ] = row;
+				final int previous = rowSol[ row ];
+				rowSol[ row ] = j;
+				if ( row == curRow )
+					break;
+				j = previous;
+			}
+
+			// Reset the search state of the touched columns.
+			for ( int k = 0; k < nTouched; k++ )
+			{
+				final int col = touchedCols[ k ];
+				shortestPathCosts[ col ] = Double.POSITIVE_INFINITY;
+				scannedCols[ col ] = false;
+			}
+		}
+		return rowSol;
+	}
+
+	/**
+	 * Binary min-heap of columns keyed by their shortest path cost, with lazy
+	 * deletion: a column may be pushed several times and stale entries are
+	 * skipped when popped. On ties, unassigned columns come first, then
+	 * columns with the lowest index.
+	 */
+	private static final class ColumnHeap
+	{
+
+		private int[] cols;
+
+		private double[] keys;
+
+		private boolean[] free;
+
+		private int size;
+
+		private ColumnHeap( final int capacity )
+		{
+			final int c = Math.max( 16, capacity );
+			this.cols = new int[ c ];
+			this.keys = new double[ c ];
+			this.free = new boolean[ c ];
+		}
+
+		private void clear()
+		{
+			size = 0;
+		}
+
+		private boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		private void push( final int col, final double key, final boolean isFree )
+		{
+			if ( size == cols.length )
+			{
+				cols = Arrays.copyOf( cols, 2 * size );
+				keys = Arrays.copyOf( keys, 2 * size );
+				free = Arrays.copyOf( free, 2 * size );
+			}
+			int k = size++;
+			while ( k > 0 )
+			{
+				final int parent = ( k - 1 ) >>> 1;
+				if ( !lessThan( key, isFree, col, parent ) )
+					break;
+				set( k, parent );
+				k = parent;
+			}
+			cols[ k ] = col;
+			keys[ k ] = key;
+			free[ k ] = isFree;
+		}
+
+		private int pop()
+		{
+			final int top = cols[ 0 ];
+			size--;
+			if ( size > 0 )
+			{
+				final int col = cols[ size ];
+				final double key = keys[ size ];
+				final boolean isFree = free[ size ];
+				int k = 0;
+				while ( true )
+				{
+					int child = 2 * k + 1;
+					if ( child >= size )
+						break;
+					if ( child + 1 < size && lessThan( keys[ child + 1 ], free[ child + 1 ], cols[ child + 1 ], child ) )
+						child++;
+					if ( !lessThan( keys[ child ], free[ child ], cols[ child ], key, isFree, col ) )
+						break;
+					set( k, child );
+					k = child;
+				}
+				cols[ k ] = col;
+				keys[ k ] = key;
+				free[ k ] = isFree;
+			}
+			return top;
+		}
+
+		private void set( final int to, final int from )
+		{
+			cols[ to ] = cols[ from ];
+			keys[ to ] = keys[ from ];
+			free[ to ] = free[ from ];
+		}
+
+		private boolean lessThan( final double key, final boolean isFree, final int col, final int index )
+		{
+			return lessThan( key, isFree, col, keys[ index ], free[ index ], cols[ index ] );
+		}
+
+		private static boolean lessThan( final double k1, final boolean f1, final int c1, final double k2, final boolean f2, final int c2 )
+		{
+			if ( k1 != k2 )
+				return k1 < k2;
+			if ( f1 != f2 )
+				return f1;
+			return c1 < c2;
+		}
+	}
+}
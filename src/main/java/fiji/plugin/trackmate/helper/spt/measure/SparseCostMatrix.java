@@ -0,0 +1,127 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper.spt.measure;
+
+import java.util.Arrays;
+
+/**
+ * A cost matrix stored in compressed sparse row format. Only the entries that
+ * correspond to feasible associations are stored.
+ */
+public class SparseCostMatrix
+{
+
+	final int nRows;
+
+	final int nCols;
+
+	/**
+	 * Index in {@link #cols} and {@link #costs} of the first entry of each
+	 * row. Has <code>nRows + 1</code> elements.
+	 */
+	final int[] rowStart;
+
+	final int[] cols;
+
+	final double[] costs;
+
+	/**
+	 * Creates a sparse cost matrix.
+	 * 
+	 * @param nRows
+	 *            the number of rows.
+	 * @param nCols
+	 *            the number of columns.
+	 * @param rowStart
+	 *            the index of the first entry of each row in the column and
+	 *            cost arrays, followed by the total number of entries.
+	 * @param cols
+	 *            the column index of each entry.
+	 * @param costs
+	 *            the cost of each entry.
+	 */
+	public SparseCostMatrix( final int nRows, final int nCols, final int[] rowStart, final int[] cols, final double[] costs )
+	{
+		if ( rowStart.length != nRows + 1 )
+			throw new IllegalArgumentException( "Row start array must have " + ( nRows + 1 ) + " elements, but has " + rowStart.length + "." );
+		if ( cols.length != costs.length )
+			throw new IllegalArgumentException( "Column and cost arrays must have the same length." );
+		this.nRows = nRows;
+		this.nCols = nCols;
+		this.rowStart = rowStart;
+		this.cols = cols;
+		this.costs = costs;
+	}
+
+	public int getNumRows()
+	{
+		return nRows;
+	}
+
+	public int getNumCols()
+	{
+		return nCols;
+	}
+
+	/**
+	 * Returns the number of entries stored in this matrix.
+	 * 
+	 * @return the number of entries.
+	 */
+	public int size()
+	{
+		return cols.length;
+	}
+
+	/**
+	 * Returns the largest cost stored in this matrix, or 0 if it is empty.
+	 * 
+	 * @return the max cost.
+	 */
+	public double maxCost()
+	{
+		double max = 0;
+		for ( final double c : costs )
+			max = Math.max( max, c );
+		return max;
+	}
+
+	/**
+	 * Returns a dense version of this matrix, where missing entries are set
+	 * to the specified value.
+	 * 
+	 * @param fill
+	 *            the value of missing entries.
+	 * @return a new <code>double[][]</code> array.
+	 */
+	public double[][] toDense( final double fill )
+	{
+		final double[][] dense = new double[ nRows ][ nCols ];
+		for ( int r = 0; r < nRows; r++ )
+		{
+			Arrays.fill( dense[ r ], fill );
+			for ( int k = rowStart[ r ]; k < rowStart[ r + 1 ]; k++ )
+				dense[ r ][ cols[ k ] ] = costs[ k ];
+		}
+		return dense;
+	}
+}
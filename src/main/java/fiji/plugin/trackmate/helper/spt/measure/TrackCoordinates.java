@@ -0,0 +1,134 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper.spt.measure;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The detections of a track, laid out as contiguous coordinate arrays indexed
+ * by time.
+ * <p>
+ * Element <code>i</code> of the arrays holds the detection at time
+ * <code>t0 + i</code>. Tracks built by the importer have exactly one
+ * detection per time-point between their first and last detections, virtual
+ * detections filling the gaps. If a time-point has no detection, its
+ * coordinates are <code>NaN</code> and it is treated as a virtual detection.
+ * <p>
+ * The arrays are a snapshot: they are not updated if the track is modified
+ * afterwards.
+ */
+final class TrackCoordinates
+{
+
+	final int t0;
+
+	final int tend;
+
+	final double[] x;
+
+	final double[] y;
+
+	final double[] z;
+
+	/**
+	 * Whether the detection at each time-point is a real detection.
+	 */
+	final boolean[] real;
+
+	private TrackCoordinates( final int t0, final int tend )
+	{
+		this.t0 = t0;
+		this.tend = tend;
+		final int n = Math.max( 0, tend - t0 + 1 );
+		this.x = new double[ n ];
+		this.y = new double[ n ];
+		this.z = new double[ n ];
+		this.real = new boolean[ n ];
+		Arrays.fill( x, Double.NaN );
+		Arrays.fill( y, Double.NaN );
+		Arrays.fill( z, Double.NaN );
+	}
+
+	/**
+	 * Returns the number of time-points between the first and last
+	 * detections of the track.
+	 */
+	int length()
+	{
+		return x.length;
+	}
+
+	/**
+	 * Lays out the detections of a track.
+	 * 
+	 * @param ts
+	 *            the track, not empty.
+	 * @return a new coordinates instance.
+	 */
+	static TrackCoordinates of( final TrackSegment ts )
+	{
+		final TrackCoordinates c = new TrackCoordinates( ts.getFirstDetection().getT(), ts.getLastDetection().getT() );
+		final boolean[] filled = new boolean[ c.length() ];
+		for ( final Detection d : ts.getDetectionList() )
+		{
+			final int i = d.getT() - c.t0;
+			// Keep the first detection at each time, like getDetectionAtTime.
+			if ( i < 0 || i >= filled.length || filled[ i ] )
+				continue;
+			filled[ i ] = true;
+			c.x[ i ] = d.getX();
+			c.y[ i ] = d.getY();
+			c.z[ i ] = d.getZ();
+			c.real[ i ] = d.getDetectionType() == Detection.DETECTIONTYPE_REAL_DETECTION;
+		}
+		return c;
+	}
+
+	/**
+	 * Lays out the detections of several tracks. Empty tracks are not in the
+	 * returned map.
+	 * 
+	 * @param tracks
+	 *            the tracks.
+	 * @param parallel
+	 *            if <code>true</code>, the tracks are laid out on the common
+	 *            fork-join pool.
+	 * @return a new identity map from tracks to their coordinates.
+	 */
+	static Map< TrackSegment, TrackCoordinates > of( final List< TrackSegment > tracks, final boolean parallel )
+	{
+		final Stream< TrackSegment > stream = parallel ? tracks.parallelStream() : tracks.stream();
+		final List< TrackCoordinates > coordinates = stream
+				.map( ts -> ts.getDetectionList().isEmpty() ? null : of( ts ) )
+				.collect( Collectors.toList() );
+		final Map< TrackSegment, TrackCoordinates > map = new IdentityHashMap<>( tracks.size() );
+		for ( int i = 0; i < tracks.size(); i++ )
+			if ( coordinates.get( i ) != null )
+				map.put( tracks.get( i ), coordinates.get( i ) );
+		return map;
+	}
+}
@@ -0,0 +1,177 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper.spt.measure;
+
+import java.util.Arrays;
+
+/**
+ * The detection distances between a reference and a candidate track, computed
+ * once and independently of the gate.
+ * <p>
+ * A profile stores the Euclidian distance between the detections of the two
+ * tracks at each time-point where they overlap, so that the
+ * {@link TrackToTrackDistance} can be evaluated for any gate without looking
+ * up detections again. The evaluation uses the same
+ * {@link DetectionDistanceKernel} as the {@link TrackToTrackDistance}
+ * constructor, and yields identical values.
+ */
+final class TrackDistanceProfile
+{
+
+	final TrackSegment referenceTrack;
+
+	final TrackSegment candidateTrack;
+
+	private final int t0_1;
+
+	private final int tend_1;
+
+	private final int t0_2;
+
+	private final int tend_2;
+
+	private final boolean overlap;
+
+	/**
+	 * Distance between detections at each overlapping time-point, in time
+	 * order.
+	 */
+	private final double[] distances;
+
+	/**
+	 * Whether the candidate detection at each overlapping time-point is a
+	 * real detection.
+	 */
+	private final boolean[] real;
+
+	/**
+	 * Smallest distance to a real candidate detection. The two tracks match
+	 * for all gates strictly larger than this value.
+	 */
+	final double minRealDistance;
+
+	/**
+	 * Computes the profile of a pair of tracks.
+	 * 
+	 * @param ts1
+	 *            the reference track.
+	 * @param c1
+	 *            the coordinates of the reference track.
+	 * @param ts2
+	 *            the candidate track, not empty.
+	 * @param c2
+	 *            the coordinates of the candidate track.
+	 */
+	TrackDistanceProfile( final TrackSegment ts1, final TrackCoordinates c1, final TrackSegment ts2, final TrackCoordinates c2 )
+	{
+		this.referenceTrack = ts1;
+		this.candidateTrack = ts2;
+		this.t0_1 = c1.t0;
+		this.tend_1 = c1.tend;
+		this.t0_2 = c2.t0;
+		this.tend_2 = c2.tend;
+
+		// test if there is an intersection between segments
+		this.overlap = ( t0_2 >= t0_1 && t0_2 <= tend_1 ) || ( tend_2 >= t0_1 && tend_2 <= tend_1 ) || ( t0_2 <= t0_1 && tend_2 >= tend_1 );
+		if ( !overlap )
+		{
+			this.distances = new double[ 0 ];
+			this.real = new boolean[ 0 ];
+			this.minRealDistance = Double.POSITIVE_INFINITY;
+			return;
+		}
+
+		final int firstT = Math.max( t0_1, t0_2 );
+		final int endT = Math.min( tend_1, tend_2 );
+		this.distances = DetectionDistanceKernel.distances( c1, c2, firstT, endT );
+		this.real = Arrays.copyOfRange( c2.real, firstT - t0_2, endT - t0_2 + 1 );
+		double min = Double.POSITIVE_INFINITY;
+		for ( int i = 0; i < distances.length; i++ )
+			if ( real[ i ] && distances[ i ] < min )
+				min = distances[ i ];
+		this.minRealDistance = min;
+	}
+
+	/**
+	 * Returns <code>true</code> if the two tracks have at least one pair of
+	 * detections closer than the gate, that is if the pair is feasible for
+	 * this gate.
+	 */
+	boolean isMatching( final double maxDist )
+	{
+		return minRealDistance < maxDist;
+	}
+
+	/**
+	 * Evaluates the distance between the two tracks for the specified
+	 * distance type and gate.
+	 */
+	TrackToTrackDistance evaluate( final DistanceTypes distanceType, final double maxDist )
+	{
+		final TrackToTrackDistance d = new TrackToTrackDistance();
+		if ( !overlap )
+		{
+			d.numMatchingDetections = 0;
+			d.numWrongDetections += ( tend_2 - t0_2 + 1 );
+			d.numNonMatchedDetections += ( tend_1 - t0_1 + 1 );
+			d.isMatching = false;
+			switch ( distanceType )
+			{
+			case DISTANCE_EUCLIDIAN:
+				d.distance = maxDist * ( tend_1 - t0_1 + 1 );
+				break;
+			case DISTANCE_MATCHING:
+				d.distance = ( tend_1 - t0_1 + 1 );
+				break;
+			}
+			return d;
+		}
+
+		d.numWrongDetections += Math.max( 0, t0_1 - t0_2 );
+		d.numWrongDetections += Math.max( 0, tend_2 - tend_1 );
+
+		d.numNonMatchedDetections += Math.max( 0, t0_2 - t0_1 );
+		d.numNonMatchedDetections += Math.max( 0, tend_1 - tend_2 );
+
+		final int firstT = Math.max( t0_1, t0_2 );
+		final boolean euclidian = distanceType == DistanceTypes.DISTANCE_EUCLIDIAN;
+		d.distance = euclidian
+				? maxDist * ( Math.abs( t0_2 - t0_1 ) + Math.abs( tend_2 - tend_1 ) )
+				: ( Math.abs( t0_2 - t0_1 ) + Math.abs( tend_2 - tend_1 ) );
+		final boolean matching = DetectionDistanceKernel.accumulate( distances, real, 0, firstT, maxDist, euclidian, d );
+		// Only the Euclidian distance flags matching pairs.
+		d.isMatching = euclidian && matching;
+		return d;
+	}
+
+	/**
+	 * Creates the track pair of the two tracks for the specified gate, with
+	 * the Euclidian distance as cost.
+	 */
+	TrackPair toPair( final double maxDist )
+	{
+		final TrackToTrackDistance d = evaluate( DistanceTypes.DISTANCE_EUCLIDIAN, maxDist );
+		final TrackPair pair = new TrackPair( referenceTrack, candidateTrack, d.distance, d.firstMatchingTime, d.lastMatchingTime );
+		pair.profile = this;
+		return pair;
+	}
+}
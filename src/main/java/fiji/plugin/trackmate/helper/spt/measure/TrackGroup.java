@@ -102,6 +102,24 @@ public class TrackGroup
 		return null;
 	}
 
+	/**
+	 * Returns the track segment of this group with the specified id.
+	 * 
+	 * @param id
+	 *            the track segment id.
+	 * @return the track segment, or <code>null</code> if this group does not
+	 *         contain a track segment with this id.
+	 */
+	public TrackSegment getTrackSegmentById( final int id )
+	{
+		for ( final TrackSegment ts : trackSegmentList )
+		{
+			if ( ts.getId() == id )
+				return ts;
+		}
+		return null;
+	}
+
 	public void clearAllTrackSegment()
 	{
 		final ArrayList< TrackSegment > trackSegmentListCopy = new ArrayList< TrackSegment >( trackSegmentList );
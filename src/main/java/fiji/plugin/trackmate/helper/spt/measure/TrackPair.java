@@ -46,6 +46,11 @@ public class TrackPair
 
 	int referenceIndex;
 
+	/**
+	 * The distance profile of the two tracks, if it was precomputed.
+	 */
+	TrackDistanceProfile profile;
+
 	/**
 	 * Build the pair.
 	 * 
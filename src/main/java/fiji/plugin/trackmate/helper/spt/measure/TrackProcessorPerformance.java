@@ -22,7 +22,10 @@
 package fiji.plugin.trackmate.helper.spt.measure;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Main class for the track processor that computes tracking quality with
@@ -45,6 +48,10 @@ public class TrackProcessorPerformance
 
 	private final ArrayList< TrackSegment > spuriousTracks = new ArrayList< TrackSegment >();
 
+	private double assignmentCost = 0;
+
+	private double costLowerBound = 0;
+
 	public void setTrackGroups( final TrackGroup refTG, final TrackGroup candidateTG )
 	{
 		trackPairs.clear();
@@ -59,21 +66,134 @@ public class TrackProcessorPerformance
 			final List< TrackSegment > trackSegmentList2,
 			final double maxDist )
 	{
-		final boolean newMethod = true;
+		return pairTracks( trackSegmentList1, trackSegmentList2, maxDist, false );
+	}
+
+	/**
+	 * Pairs the reference and candidate tracks and returns an analyzer for
+	 * the pairing.
+	 * 
+	 * @param trackSegmentList1
+	 *            the reference tracks.
+	 * @param trackSegmentList2
+	 *            the candidate tracks.
+	 * @param maxDist
+	 *            the gate (maximum Euclidian distance) between detections.
+	 * @param parallel
+	 *            if <code>true</code>, the track pairing is computed over
+	 *            several threads. The results are identical to the
+	 *            sequential pairing.
+	 * @return a new {@link PerformanceAnalyzer}.
+	 */
+	public PerformanceAnalyzer pairTracks(
+			final List< TrackSegment > trackSegmentList1,
+			final List< TrackSegment > trackSegmentList2,
+			final double maxDist,
+			final boolean parallel )
+	{
+		if ( maxDist < 0 )
+			return null;
 		final OneToOneMatcher matcher = new OneToOneMatcher( trackSegmentList1, trackSegmentList2 );
-		final DistanceTypes distType = DistanceTypes.DISTANCE_EUCLIDIAN;
+		final List< TrackPair > pairs = pairTracks( matcher, trackSegmentList2, maxDist, new SparseAssignmentSolver(), parallel );
+		return new PerformanceAnalyzer( trackSegmentList1, trackSegmentList2, pairs );
+	}
+
+	/**
+	 * Pairs the candidate tracks with a prepared reference, using the gate the
+	 * reference was prepared for, and returns an analyzer for the pairing.
+	 * 
+	 * @param reference
+	 *            the prepared reference tracks.
+	 * @param candidateTracks
+	 *            the candidate tracks.
+	 * @param parallel
+	 *            if <code>true</code>, the track pairing is computed over
+	 *            several threads. The results are identical to the
+	 *            sequential pairing.
+	 * @return a new {@link PerformanceAnalyzer}.
+	 */
+	public PerformanceAnalyzer pairTracks(
+			final PreparedReference reference,
+			final List< TrackSegment > candidateTracks,
+			final boolean parallel )
+	{
+		return pairTracks( reference, candidateTracks, new SparseAssignmentSolver(), parallel );
+	}
+
+	/**
+	 * Pairs the candidate tracks with a prepared reference with the specified
+	 * assignment solver, and returns an analyzer for the pairing.
+	 * <p>
+	 * With an approximate solver, the pairing may not be optimal. The cost of
+	 * the pairing and a lower bound of the optimal cost are then given by
+	 * {@link #getAssignmentCost()} and {@link #getCostLowerBound()}.
+	 * 
+	 * @param reference
+	 *            the prepared reference tracks.
+	 * @param candidateTracks
+	 *            the candidate tracks.
+	 * @param solver
+	 *            the assignment solver.
+	 * @param parallel
+	 *            if <code>true</code>, the track pairing is computed over
+	 *            several threads.
+	 * @return a new {@link PerformanceAnalyzer}.
+	 */
+	public PerformanceAnalyzer pairTracks(
+			final PreparedReference reference,
+			final List< TrackSegment > candidateTracks,
+			final AssignmentSolver solver,
+			final boolean parallel )
+	{
+		final double maxDist = reference.getMaxDist();
 		if ( maxDist < 0 )
 			return null;
+		final OneToOneMatcher matcher = new OneToOneMatcher( reference, candidateTracks );
+		final List< TrackPair > pairs = pairTracks( matcher, candidateTracks, maxDist, solver, parallel );
+		return new PerformanceAnalyzer( reference, candidateTracks, pairs );
+	}
+
+	/**
+	 * @return the total Euclidian distance of the last pairing, that is the
+	 *         cost of the assignment that was found.
+	 */
+	public double getAssignmentCost()
+	{
+		return assignmentCost;
+	}
+
+	/**
+	 * @return a lower bound of the cost of the optimal pairing, for the last
+	 *         pairing.
+	 * @see OneToOneMatcher#getCostLowerBound()
+	 */
+	public double getCostLowerBound()
+	{
+		return costLowerBound;
+	}
+
+	private List< TrackPair > pairTracks(
+			final OneToOneMatcher matcher,
+			final List< TrackSegment > trackSegmentList2,
+			final double maxDist,
+			final AssignmentSolver solver,
+			final boolean parallel )
+	{
+		final DistanceTypes distType = DistanceTypes.DISTANCE_EUCLIDIAN;
 		final ArrayList< TrackPair > pairs = new ArrayList< TrackPair >();
 		try
 		{
-			pairs.addAll( matcher.pairTracks( maxDist, distType, newMethod ) );
+			pairs.addAll( matcher.pairTracks( maxDist, distType, solver, parallel ) );
 		}
 		catch ( final Exception e )
 		{
 			e.printStackTrace();
 			pairs.clear();
 		}
+		assignmentCost = 0;
+		for ( final TrackPair tp : pairs )
+			assignmentCost += tp.distance;
+		costLowerBound = matcher.getCostLowerBound();
 
 		// debug1.displayMs();
 
@@ -98,9 +218,11 @@ public class TrackProcessorPerformance
 				correctTracks.add( tp.candidateTrack );
 			}
 		}
+		final Set< TrackSegment > correctTrackSet = Collections.newSetFromMap( new IdentityHashMap<>() );
+		correctTrackSet.addAll( correctTracks );
 		for ( final TrackSegment ts : trackSegmentList2 )
 		{
-			if ( !correctTracks.contains( ts ) )
+			if ( !correctTrackSet.contains( ts ) )
 				spuriousTracks.add( ts );
 		}
 
@@ -109,11 +231,7 @@ public class TrackProcessorPerformance
 		trackPairs.clear();
 		trackPairs.addAll( pairs );
 
-		// Chronometer debug3 = new Chronometer("Perf Analyzer");
-		final PerformanceAnalyzer analyzer = new PerformanceAnalyzer( trackSegmentList1, trackSegmentList2, trackPairs );
-		// debug3.displayMs();
-
-		return analyzer;
+		return trackPairs;
 	}
 
 	public static ArrayList< TrackPair > pairTracks( final ArrayList< TrackSegment > trackSegmentList1,
@@ -40,10 +40,8 @@
 package fiji.plugin.trackmate.helper.spt.measure;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * TrackSegment is a pool of consecutive detection.
@@ -55,10 +53,14 @@ import java.util.Random;
 public class TrackSegment implements Cloneable
 {
 
-	protected static Map< TrackSegment, Integer > idHashMapList = new HashMap< TrackSegment, Integer >(); // 1-1
+	/**
+	 * Source of unique track ids. Ids are not registered anywhere, so that
+	 * tracks can be garbage-collected and created concurrently without
+	 * locking. Use {@link TrackGroup#getTrackSegmentById(int)} to find a track
+	 * by its id.
+	 */
+	private static final AtomicInteger ID_GENERATOR = new AtomicInteger();
 
-	protected static Map< Integer, TrackSegment > idKeyHashMapList = new HashMap< Integer, TrackSegment >(); // 1-1
-																												// hashmap.
 	private List< Detection > detectionList = new ArrayList< Detection >();
 
 	private List< TrackSegment > previousList = new ArrayList< TrackSegment >();
@@ -69,16 +71,6 @@ public class TrackSegment implements Cloneable
 
 	private int id = 0;
 
-	private static final Random RANDOM = new Random();
-
-	public static TrackSegment getTrackSegmentById( final int id )
-	{
-		synchronized ( idKeyHashMapList )
-		{
-			return idKeyHashMapList.get( Integer.valueOf( id ) );
-		}
-	}
-
 	public TrackSegment()
 	{
 		super();
@@ -122,77 +114,28 @@ public class TrackSegment implements Cloneable
 		previousList = new ArrayList< TrackSegment >( previousList );
 		nextList = new ArrayList< TrackSegment >( nextList );
 
-		generateId();
+		cloneSegment.generateId();
 
 		return cloneSegment;
 
 	}
 
-	public void removeId()
-	{
-		synchronized ( idKeyHashMapList )
-		{
-			synchronized ( idHashMapList )
-			{
-				idKeyHashMapList.remove( Integer.valueOf( id ) );
-				idHashMapList.remove( this );
-			}
-		}
-	}
-
 	public int getId()
 	{
 		return id;
 	}
 
+	/**
+	 * Assigns a new unique id to this track.
+	 */
 	public void generateId()
 	{
-		// just for safety
-		removeId();
-
-		synchronized ( idKeyHashMapList )
-		{
-			synchronized ( idHashMapList )
-			{
-				while ( true )
-				{
-					final Integer key = Integer.valueOf( RANDOM.nextInt() );
-
-					// available ?
-					if ( idKeyHashMapList.get( key ) == null )
-					{
-						idHashMapList.put( this, key );
-						idKeyHashMapList.put( key, this );
-
-						this.id = key.intValue();
-
-						return;
-					}
-				}
-			}
-		}
+		this.id = ID_GENERATOR.incrementAndGet();
 	}
 
 	public void setId( final int id )
 	{
-		final Integer key = Integer.valueOf( id );
-
-		synchronized ( idKeyHashMapList )
-		{
-			synchronized ( idHashMapList )
-			{
-				// available ?
-				if ( idKeyHashMapList.get( key ) == null )
-				{
-					idHashMapList.put( this, key );
-					idKeyHashMapList.put( key, this );
-
-					this.id = key.intValue();
-				}
-//				else
-//					System.out.println( "track id already loaded" );
-			}
-		}
+		this.id = id;
 	}
 
 	/** */
@@ -54,6 +54,13 @@ public class TrackToTrackDistance
 
 	double sumDetectionDistance = 0;
 
+	/**
+	 * Creates an empty distance, to be filled by a
+	 * {@link TrackDistanceProfile}.
+	 */
+	TrackToTrackDistance()
+	{}
+
 	/**
 	 * Compute the distance between two tracks
 	 * 
@@ -70,27 +77,49 @@ public class TrackToTrackDistance
 	 */
 	public TrackToTrackDistance( final TrackSegment ts1, final TrackSegment ts2, final DistanceTypes distanceType, final double maxDist )
 	{
-		if ( ts2 == null || ts2.getDetectionList().isEmpty() )
+		this( TrackCoordinates.of( ts1 ),
+				( ts2 == null || ts2.getDetectionList().isEmpty() ) ? null : TrackCoordinates.of( ts2 ),
+				distanceType, maxDist );
+	}
+
+	/**
+	 * Compute the distance between two tracks laid out as coordinate arrays.
+	 * 
+	 * @param c1
+	 *            the coordinates of the first track
+	 * @param c2
+	 *            the coordinates of the track with which to compare the first
+	 *            track, or <code>null</code> if it is empty
+	 * @param distanceType
+	 *            the type of distance between detections that is used for the
+	 *            computation
+	 * @param maxDist
+	 *            the gate that is used for computing the distance between
+	 *            detections
+	 */
+	TrackToTrackDistance( final TrackCoordinates c1, final TrackCoordinates c2, final DistanceTypes distanceType, final double maxDist )
+	{
+		if ( c2 == null )
 		{
 			isMatching = false;
 			switch ( distanceType )
 			{
 			case DISTANCE_EUCLIDIAN:
-				distance = maxDist * ( ts1.getLastDetection().getT() - ts1.getFirstDetection().getT() + 1 );
+				distance = maxDist * ( c1.tend - c1.t0 + 1 );
 				break;
 			case DISTANCE_MATCHING:
-				distance = ( ts1.getLastDetection().getT() - ts1.getFirstDetection().getT() + 1 );
+				distance = ( c1.tend - c1.t0 + 1 );
 				break;
 			}
 			numMatchingDetections = 0;
-			numNonMatchedDetections = ( ts1.getLastDetection().getT() - ts1.getFirstDetection().getT() + 1 );
+			numNonMatchedDetections = ( c1.tend - c1.t0 + 1 );
 			numWrongDetections = 0;
 			return;
 		}
-		final int t0_1 = ts1.getFirstDetection().getT();
-		final int tend_1 = ts1.getLastDetection().getT();
-		final int t0_2 = ts2.getFirstDetection().getT();
-		final int tend_2 = ts2.getLastDetection().getT();
+		final int t0_1 = c1.t0;
+		final int tend_1 = c1.tend;
+		final int t0_2 = c2.t0;
+		final int tend_2 = c2.tend;
 
 		// test if there is an intersection between segments
 		if ( ( t0_2 >= t0_1 && t0_2 <= tend_1 ) || ( tend_2 >= t0_1 && tend_2 <= tend_1 ) || ( t0_2 <= t0_1 && tend_2 >= tend_1 ) )
@@ -103,83 +132,20 @@ public class TrackToTrackDistance
 
 			final int firstT = Math.max( t0_1, t0_2 );
 			final int endT = Math.min( tend_1, tend_2 );
+			final double[] distances = DetectionDistanceKernel.distances( c1, c2, firstT, endT );
 			switch ( distanceType )
 			{
 			case DISTANCE_EUCLIDIAN:
 			{
 				distance = maxDist * ( Math.abs( t0_2 - t0_1 ) + Math.abs( tend_2 - tend_1 ) );
-				for ( int t = firstT; t <= endT; t++ )
-				{
-					final Detection d1 = ts1.getDetectionAtTime( t );
-					final Detection d2 = ts2.getDetectionAtTime( t );
-					final double ed = Math.sqrt( ( d1.getX() - d2.getX() ) * ( d1.getX() - d2.getX() ) + ( d1.getY() - d2.getY() ) * ( d1.getY() - d2.getY() ) + ( d1.getZ() - d2.getZ() ) * ( d1.getZ() - d2.getZ() ) );
-					if ( d2.getDetectionType() == Detection.DETECTIONTYPE_REAL_DETECTION && ed < maxDist )
-					{
-						if ( !isMatching )
-						{
-							firstMatchingTime = t;
-							isMatching = true;
-						}
-						lastMatchingTime = t;
-						distance += ed;
-						numMatchingDetections++;
-						// distance between detections
-						sumDetectionDistance += ed;
-						sumSquareDetectionDistance += ( ed * ed );
-						if ( ed < minDetectionDistance )
-							minDetectionDistance = ed;
-						else if ( ed > maxDetectionDistance )
-							maxDetectionDistance = ed;
-					}
-					else
-					{
-						// virtual detections are not considered as spurious
-						// detections
-						if ( d2.getDetectionType() == Detection.DETECTIONTYPE_REAL_DETECTION )
-							numWrongDetections++;
-						numNonMatchedDetections++;
-						distance += maxDist;
-					}
-				}
+				isMatching = DetectionDistanceKernel.accumulate( distances, c2.real, firstT - t0_2, firstT, maxDist, true, this );
 				break;
 			}
 			case DISTANCE_MATCHING:
 			{
-				boolean matching = false;
 				distance = ( Math.abs( t0_2 - t0_1 ) + Math.abs( tend_2 - tend_1 ) );
-				for ( int t = firstT; t <= endT; t++ )
-				{
-					final Detection d1 = ts1.getDetectionAtTime( t );
-					final Detection d2 = ts2.getDetectionAtTime( t );
-					final double ed = Math.sqrt( ( d1.getX() - d2.getX() ) * ( d1.getX() - d2.getX() ) + ( d1.getY() - d2.getY() ) * ( d1.getY() - d2.getY() ) + ( d1.getZ() - d2.getZ() ) * ( d1.getZ() - d2.getZ() ) );
-					if ( d2.getDetectionType() == Detection.DETECTIONTYPE_REAL_DETECTION && ed < maxDist )
-					{
-						if ( !matching )
-						{
-							firstMatchingTime = t;
-							matching = true;
-						}
-						lastMatchingTime = t;
-						// not penalty if matching
-						numMatchingDetections++;
-						// distance between detections
-						sumDetectionDistance += ed;
-						sumSquareDetectionDistance += ( ed * ed );
-						if ( ed < minDetectionDistance )
-							minDetectionDistance = ed;
-						else if ( ed > maxDetectionDistance )
-							maxDetectionDistance = ed;
-					}
-					else
-					{
-						distance++;
-						// virtual detections are not considered as spurious
-						// detections
-						if ( d2.getDetectionType() == Detection.DETECTIONTYPE_REAL_DETECTION )
-							numWrongDetections++;
-						numNonMatchedDetections++;
-					}
-				}
+				// matching pairs are not flagged for this distance
+				DetectionDistanceKernel.accumulate( distances, c2.real, firstT - t0_2, firstT, maxDist, false, this );
 				break;
 			}
 			}
@@ -187,16 +153,16 @@ public class TrackToTrackDistance
 		else
 		{
 			numMatchingDetections = 0;
-			numWrongDetections += ( ts2.getLastDetection().getT() - ts2.getFirstDetection().getT() + 1 );
-			numNonMatchedDetections += ( ts1.getLastDetection().getT() - ts1.getFirstDetection().getT() + 1 );
+			numWrongDetections += ( tend_2 - t0_2 + 1 );
+			numNonMatchedDetections += ( tend_1 - t0_1 + 1 );
 			isMatching = false;
 			switch ( distanceType )
 			{
 			case DISTANCE_EUCLIDIAN:
-				distance = maxDist * ( ts1.getLastDetection().getT() - ts1.getFirstDetection().getT() + 1 );
+				distance = maxDist * ( tend_1 - t0_1 + 1 );
 				break;
 			case DISTANCE_MATCHING:
-				distance = ( ts1.getLastDetection().getT() - ts1.getFirstDetection().getT() + 1 );
+				distance = ( tend_1 - t0_1 + 1 );
 				break;
 			}
 		}
@@ -0,0 +1,245 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
+import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.gui.Fonts;
+
+/**
+ * A log panel that only displays the last lines logged, so that it can be
+ * used for sweeps of any length.
+ * <p>
+ * The logger of this panel can be called from any thread and never waits for
+ * the EDT. Messages are stored in a buffer bounded to the number of lines
+ * displayed, oldest messages being dropped first, and are appended to the
+ * text pane in batches on the EDT. The full log should be written elsewhere,
+ * for instance with a {@link fiji.plugin.trackmate.helper.RotatingFileLogger}.
+ */
+public class BoundedLogPanel extends JPanel
+{
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Default maximal number of lines displayed.
+	 */
+	public static final int DEFAULT_MAX_LINES = 5000;
+
+	private final int maxLines;
+
+	private final JTextPane textPane;
+
+	private final JProgressBar progressBar;
+
+	private final Logger logger;
+
+	/**
+	 * Messages not displayed yet, guarded by itself.
+	 */
+	private final ArrayDeque< Message > pending = new ArrayDeque<>();
+
+	/**
+	 * Number of lines of the pending messages.
+	 */
+	private int pendingLines = 0;
+
+	private volatile double progress = 0.;
+
+	private volatile String status = "";
+
+	private final AtomicBoolean flushScheduled = new AtomicBoolean( false );
+
+	public BoundedLogPanel()
+	{
+		this( DEFAULT_MAX_LINES );
+	}
+
+	/**
+	 * Creates a log panel.
+	 * 
+	 * @param maxLines
+	 *            the maximal number of lines displayed.
+	 */
+	public BoundedLogPanel( final int maxLines )
+	{
+		this.maxLines = maxLines;
+		setLayout( new BorderLayout( 0, 5 ) );
+
+		progressBar = new JProgressBar( 0, 100 );
+		progressBar.setStringPainted( true );
+		progressBar.setString( "" );
+		progressBar.setFont( Fonts.SMALL_FONT );
+		add( progressBar, BorderLayout.NORTH );
+
+		textPane = new JTextPane();
+		textPane.setEditable( false );
+		textPane.setFont( Fonts.SMALL_FONT );
+		add( new JScrollPane( textPane ), BorderLayout.CENTER );
+
+		logger = new BoundedLogger();
+	}
+
+	/**
+	 * Returns the logger of this panel. It can be used from any thread.
+	 * 
+	 * @return the logger.
+	 */
+	public Logger getLogger()
+	{
+		return logger;
+	}
+
+	public JTextPane getTextPane()
+	{
+		return textPane;
+	}
+
+	private void append( final String message, final Color color )
+	{
+		synchronized ( pending )
+		{
+			final Message m = new Message( message, color );
+			pending.add( m );
+			pendingLines += m.lines;
+			// Drop the oldest messages, they would not be displayed anyway.
+			while ( pendingLines > maxLines && pending.size() > 1 )
+				pendingLines -= pending.removeFirst().lines;
+		}
+		scheduleFlush();
+	}
+
+	private void scheduleFlush()
+	{
+		if ( flushScheduled.compareAndSet( false, true ) )
+			SwingUtilities.invokeLater( this::flush );
+	}
+
+	/**
+	 * Appends the pending messages to the text pane and removes the lines in
+	 * excess, on the EDT.
+	 */
+	private void flush()
+	{
+		flushScheduled.set( false );
+		final List< Message > messages;
+		synchronized ( pending )
+		{
+			messages = new ArrayList<>( pending );
+			pending.clear();
+			pendingLines = 0;
+		}
+
+		progressBar.setValue( ( int ) Math.round( 100. * progress ) );
+		progressBar.setString( status );
+		if ( messages.isEmpty() )
+			return;
+
+		final StyledDocument doc = textPane.getStyledDocument();
+		try
+		{
+			for ( final Message m : messages )
+			{
+				final SimpleAttributeSet attributes = new SimpleAttributeSet();
+				StyleConstants.setForeground( attributes, m.color );
+				doc.insertString( doc.getLength(), m.text, attributes );
+			}
+			final Element root = doc.getDefaultRootElement();
+			final int nLines = root.getElementCount();
+			if ( nLines > maxLines )
+				doc.remove( 0, root.getElement( nLines - maxLines ).getStartOffset() );
+		}
+		catch ( final BadLocationException e )
+		{
+			e.printStackTrace();
+		}
+		textPane.setCaretPosition( doc.getLength() );
+	}
+
+	private final class BoundedLogger extends Logger
+	{
+
+		@Override
+		public void log( final String message, final Color color )
+		{
+			append( message, color == null ? Logger.NORMAL_COLOR : color );
+		}
+
+		@Override
+		public void error( final String message )
+		{
+			append( message, Logger.ERROR_COLOR );
+		}
+
+		@Override
+		public void setProgress( final double val )
+		{
+			progress = val;
+			scheduleFlush();
+		}
+
+		@Override
+		public void setStatus( final String status )
+		{
+			BoundedLogPanel.this.status = status;
+			scheduleFlush();
+		}
+	}
+
+	private static final class Message
+	{
+
+		private final String text;
+
+		private final Color color;
+
+		private final int lines;
+
+		private Message( final String text, final Color color )
+		{
+			this.text = text;
+			this.color = color;
+			int n = 0;
+			for ( int i = 0; i < text.length(); i++ )
+				if ( text.charAt( i ) == '\n' )
+					n++;
+			this.lines = n;
+		}
+	}
+}
@@ -26,12 +26,19 @@ import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.event.MouseEvent;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 
 import javax.swing.BorderFactory;
@@ -62,9 +69,8 @@ import fiji.plugin.trackmate.gui.Icons;
 import fiji.plugin.trackmate.gui.displaysettings.Colormap;
 import fiji.plugin.trackmate.helper.ResultsCrawler;
 import fiji.plugin.trackmate.helper.ResultsCrawler.CrawlerListener;
-import fiji.plugin.trackmate.helper.TrackingMetrics;
+import fiji.plugin.trackmate.helper.ResultsSnapshot;
 import fiji.plugin.trackmate.helper.TrackingMetricsTable;
-import fiji.plugin.trackmate.helper.TrackingMetricsType;
 import fiji.plugin.trackmate.helper.TrackingMetricsType.MetricValue;
 import fiji.plugin.trackmate.helper.TrackingMetricsType.MetricValueBound;
 import fiji.plugin.trackmate.helper.TrackingMetricsType.MetricValueOptimum;
@@ -79,14 +85,64 @@ import ij.WindowManager;
 import ij.gui.GenericDialog;
 import net.imglib2.util.ValuePair;
 
+/**
+ * Displays the best results found by a {@link ResultsCrawler}.
+ * <p>
+ * The tables and the report are computed on a separate thread from the
+ * snapshots published by the crawler, so that the UI stays responsive during
+ * live sweeps. Snapshots published while the previous one is processed are
+ * coalesced, and only the latest is displayed. Table rows are updated only if
+ * their result changed, tooltips are computed when they are shown, and the
+ * report is computed only when its tab is visible.
+ */
 public class CrawlerResultsPanel extends JPanel
 {
 
 	private static final long serialVersionUID = 1L;
 
+	private final BestDTTableModel bestDTTableModel;
+
+	private final BestValTableModel bestValTableModel;
+
+	private final JTable tableDT;
+
+	private final JTable tableVal;
+
+	private final JLabel lblCount;
+
+	private final JTextArea textArea;
+
+	/**
+	 * The latest snapshot published by the crawler.
+	 */
+	private final AtomicReference< ResultsSnapshot > latest;
+
+	/**
+	 * Whether the update thread is running.
+	 */
+	private final AtomicBoolean updating = new AtomicBoolean( false );
+
+	private volatile MetricValue target;
+
+	private volatile boolean reportVisible = false;
+
+	/**
+	 * Version of the snapshot and metric the tables were computed for.
+	 */
+	private volatile long tablesVersion = -1;
+
+	private volatile MetricValue tablesTarget;
+
+	/**
+	 * Version of the snapshot the report was computed for.
+	 */
+	private volatile long reportVersion = -1;
+
 	public CrawlerResultsPanel( final ResultsCrawler crawler, final ImagePlus imp )
 	{
 		final MetricValue defaultMetrics = crawler.getType().defaultMetric();
+		this.target = defaultMetrics;
+		this.latest = new AtomicReference<>( crawler.snapshot() );
 
 		setLayout( new BorderLayout( 0, 0 ) );
 		final JTabbedPane tabbedPane = new JTabbedPane( JTabbedPane.TOP );
@@ -104,7 +160,7 @@ public class CrawlerResultsPanel extends JPanel
 		panelBestDT.add( panelCount, BorderLayout.NORTH );
 		panelCount.setLayout( new BoxLayout( panelCount, BoxLayout.X_AXIS ) );
 
-		final JLabel lblCount = new JLabel();
+		lblCount = new JLabel();
 		lblCount.setFont( Fonts.FONT.deriveFont( Font.BOLD ) );
 		panelCount.add( lblCount );
 		panelCount.add( Box.createHorizontalGlue() );
@@ -117,8 +173,8 @@ public class CrawlerResultsPanel extends JPanel
 		final JScrollPane scrollPaneBestDT = new JScrollPane();
 		panelBestDT.add( scrollPaneBestDT, BorderLayout.CENTER );
 
-		final BestDTTableModel bestDTTableModel = new BestDTTableModel( crawler, imp );
-		final JTable tableDT = new JTable();
+		bestDTTableModel = new BestDTTableModel( crawler, imp );
+		tableDT = new TooltipTable( r -> bestDTTableModel.getTooltip( r ) );
 		tableDT.setFont( Fonts.FONT );
 		tableDT.setBackground( getBackground() );
 		tableDT.getTableHeader().setOpaque( false );
@@ -130,7 +186,7 @@ public class CrawlerResultsPanel extends JPanel
 		tableDT.setModel( bestDTTableModel );
 		tableDT.getTableHeader().setFont( Fonts.FONT.deriveFont( Font.ITALIC ) );
 		tableDT.setDefaultRenderer( Double.class, bestDTTableModel );
-		tableDT.setDefaultRenderer( String.class, new MyStringCellRenderer( r -> bestDTTableModel.tooltips[ r ] ) );
+		tableDT.setDefaultRenderer( String.class, new MyStringCellRenderer() );
 		tableDT.setSelectionMode( ListSelectionModel.SINGLE_INTERVAL_SELECTION );
 		scrollPaneBestDT.setViewportView( tableDT );
 
@@ -164,8 +220,8 @@ public class CrawlerResultsPanel extends JPanel
 		final JScrollPane scrollPaneBestVal = new JScrollPane();
 		panelBestVal.add( scrollPaneBestVal, BorderLayout.CENTER );
 
-		final BestValTableModel bestValTableModel = new BestValTableModel( crawler, imp, defaultMetrics );
-		final JTable tableVal = new JTable();
+		bestValTableModel = new BestValTableModel( crawler, imp );
+		tableVal = new TooltipTable( r -> bestValTableModel.getTooltip( r ) );
 		tableVal.setFont( Fonts.FONT );
 		tableVal.setRowHeight( 24 );
 		tableVal.setBackground( getBackground() );
@@ -176,7 +232,7 @@ public class CrawlerResultsPanel extends JPanel
 		tableVal.setAutoResizeMode( JTable.AUTO_RESIZE_OFF );
 		tableVal.setModel( bestValTableModel );
 		tableVal.setDefaultRenderer( Double.class, bestValTableModel );
-		tableVal.setDefaultRenderer( String.class, new MyStringCellRenderer( r -> bestValTableModel.getTooltip( r ) ) );
+		tableVal.setDefaultRenderer( String.class, new MyStringCellRenderer() );
 		tableVal.getTableHeader().setFont( Fonts.FONT.deriveFont( Font.ITALIC ) );
 		tableVal.setSelectionMode( ListSelectionModel.SINGLE_INTERVAL_SELECTION );
 		scrollPaneBestVal.setViewportView( tableVal );
@@ -185,7 +241,7 @@ public class CrawlerResultsPanel extends JPanel
 		 * Report.
 		 */
 
-		final JTextArea textArea = new JTextArea();
+		textArea = new JTextArea();
 		textArea.setBorder( null );
 		textArea.setEditable( false );
 		textArea.setFont( Fonts.SMALL_FONT_MONOSPACED );
@@ -196,20 +252,34 @@ public class CrawlerResultsPanel extends JPanel
 		 * Listeners.
 		 */
 
-		cmbboxMetrics.addActionListener( e -> bestValTableModel.setMetrics(
-				( MetricValue ) cmbboxMetrics.getSelectedItem() ) );
-
-		final CrawlerListener l = () -> {
-			bestDTTableModel.update();
-			bestValTableModel.update();
-			resizeColumnWidth( tableDT );
-			resizeColumnWidth( tableVal );
-			lblCount.setText( "Optimum over " + crawler.count( true ) + " valid results and "
-					+ crawler.count( false ) + " tests." );
-			textArea.setText( crawler.printReport() );
+		cmbboxMetrics.addActionListener( e -> {
+			target = ( MetricValue ) cmbboxMetrics.getSelectedItem();
+			requestUpdate();
+		} );
+
+		tabbedPane.addChangeListener( e -> {
+			reportVisible = tabbedPane.getSelectedComponent() == scrollPaneReport;
+			requestUpdate();
+		} );
+
+		final CrawlerListener l = new CrawlerListener()
+		{
+
+			@Override
+			public void crawled()
+			{
+				crawled( crawler.snapshot() );
+			}
+
+			@Override
+			public void crawled( final ResultsSnapshot snapshot )
+			{
+				latest.accumulateAndGet( snapshot, ( s1, s2 ) -> ( s2.version() > s1.version() ) ? s2 : s1 );
+				requestUpdate();
+			}
 		};
-		l.crawled();
 		crawler.listeners().add( l );
+		requestUpdate();
 
 		bestDTTableModel.addTableModelListener( e -> this.repaint() );
 		btnLaunchTrackMateDT.addActionListener( e -> {
@@ -232,71 +302,368 @@ public class CrawlerResultsPanel extends JPanel
 		} );
 	}
 
-	private static final class BestValTableModel extends AbstractTableModel implements TableCellRenderer
+	/**
+	 * Starts the update thread, unless it is already running.
+	 */
+	private void requestUpdate()
 	{
+		if ( updating.compareAndSet( false, true ) )
+			new Thread( this::update, "TrackMate Helper results panel update thread" ).start();
+	}
 
-		private static final long serialVersionUID = 1L;
+	/**
+	 * Updates the display until it shows the latest snapshot. Runs on the
+	 * update thread.
+	 */
+	private void update()
+	{
+		do
+		{
+			while ( updateNext() )
+				;
+			updating.set( false );
+			// An update may have been requested just before.
+		}
+		while ( !isUpToDate() && updating.compareAndSet( false, true ) );
+	}
 
-		private final ResultsCrawler crawler;
+	private boolean isUpToDate()
+	{
+		final long version = latest.get().version();
+		return version == tablesVersion && target == tablesTarget
+				&& ( !reportVisible || version == reportVersion );
+	}
 
-		private MetricValue target;
+	/**
+	 * Computes the next part of the display that is not up to date, and
+	 * hands it to the EDT.
+	 * 
+	 * @return <code>false</code> if the display was up to date.
+	 */
+	private boolean updateNext()
+	{
+		final ResultsSnapshot snapshot = latest.get();
+		final MetricValue metric = target;
+		if ( snapshot.version() != tablesVersion || metric != tablesTarget )
+		{
+			final BestRows dtRows = bestDTTableModel.compute( snapshot );
+			final BestRows valRows = bestValTableModel.compute( snapshot, metric );
+			final String count = "Optimum over " + snapshot.count( true ) + " valid results and "
+					+ snapshot.count( false ) + " tests.";
+			tablesVersion = snapshot.version();
+			tablesTarget = metric;
+			SwingUtilities.invokeLater( () -> {
+				if ( bestDTTableModel.apply( dtRows ) )
+					resizeColumnWidth( tableDT );
+				if ( bestValTableModel.apply( valRows ) )
+					resizeColumnWidth( tableVal );
+				lblCount.setText( count );
+			} );
+			return true;
+		}
+		if ( reportVisible && snapshot.version() != reportVersion )
+		{
+			final String report = snapshot.printReport();
+			reportVersion = snapshot.version();
+			SwingUtilities.invokeLater( () -> textArea.setText( report ) );
+			return true;
+		}
+		return false;
+	}
 
-		private final int ncols;
+	/**
+	 * The best result for one row of a table, computed on the update thread.
+	 */
+	private static final class BestRow
+	{
 
-		private final String[] columnNames;
+		/**
+		 * What the row is the best for. Rows with the same labels are the
+		 * same row in successive updates.
+		 */
+		private final String label1;
 
-		private int nrows;
+		private final String label2;
 
-		private Object[][] objs;
+		private final String csvFile;
 
-		private String[] tooltips;
+		/**
+		 * The table of the best result, or <code>null</code> if there is no
+		 * good result.
+		 */
+		private final TrackingMetricsTable results;
 
-		private final DefaultTableCellRenderer renderer;
+		private final int line;
 
-		private final double[] mint;
+		private final double[] values;
 
-		private final double[] maxt;
+		/**
+		 * Computed on the EDT when first shown.
+		 */
+		private String tooltip;
 
-		private final ImagePlus imp;
+		private BestRow( final String label1, final String label2, final ResultsSnapshot snapshot, final ValuePair< String, Integer > pair, final List< MetricValue > metricKeys )
+		{
+			this.label1 = label1;
+			this.label2 = label2;
+			this.csvFile = pair.getA();
+			this.results = snapshot.get( csvFile );
+			this.line = pair.getB().intValue();
+			this.values = new double[ metricKeys.size() ];
+			for ( int i = 0; i < values.length; i++ )
+				values[ i ] = ( results == null ) ? Double.NaN : results.getMetric( line, metricKeys.get( i ) );
+		}
 
-		private final TrackingMetricsType type;
+		/**
+		 * A row without result nor tooltip, displayed when there are no
+		 * results.
+		 */
+		private BestRow( final int nMetrics )
+		{
+			this.label1 = "";
+			this.label2 = "";
+			this.csvFile = null;
+			this.results = null;
+			this.line = -1;
+			this.values = new double[ nMetrics ];
+			Arrays.fill( values, Double.NaN );
+			this.tooltip = "";
+		}
+
+		private boolean sameRow( final BestRow other )
+		{
+			return Objects.equals( label1, other.label1 ) && Objects.equals( label2, other.label2 );
+		}
 
-		private final List< MetricValue > metricKeys;
+		private boolean sameResult( final BestRow other )
+		{
+			return Objects.equals( csvFile, other.csvFile ) && line == other.line && Arrays.equals( values, other.values );
+		}
 
-		public BestValTableModel( final ResultsCrawler crawler, final ImagePlus imp, final MetricValue target )
+		@SuppressWarnings( { "unchecked", "rawtypes" } )
+		private String tooltip()
 		{
-			this.crawler = crawler;
-			this.imp = imp;
+			if ( tooltip == null )
+			{
+				if ( results == null )
+				{
+					tooltip = "No good results";
+				}
+				else
+				{
+					final Map detectorParams = results.getDetectorParams( line );
+					final Map trackerParams = results.getTrackerParams( line );
+					final String str = "<html>Detector parameters for " + results.getDetector( line ) + ":\n"
+							+ TMUtils.echoMap( detectorParams, 0 )
+							+ "<p>"
+							+ "Tracker parameters for " + results.getTracker( line ) + ":\n"
+							+ TMUtils.echoMap( trackerParams, 0 )
+							+ "</html>";
+					tooltip = str.replaceAll( "[\\t|\\n|\\r]", "<br>" );
+				}
+			}
+			return tooltip;
+		}
+	}
+
+	/**
+	 * The rows of a table and the range of each metric over them, for the
+	 * colormap.
+	 */
+	private static final class BestRows
+	{
+
+		private final List< BestRow > rows;
+
+		/**
+		 * The metric the rows are the best for, <code>null</code> if each row
+		 * is the best for a different metric.
+		 */
+		private final MetricValue target;
+
+		private final double[] mint;
+
+		private final double[] maxt;
+
+		private BestRows( final List< BestRow > rows, final MetricValue target, final List< MetricValue > metricKeys )
+		{
+			this.rows = rows;
 			this.target = target;
-			this.type = crawler.getType();
-			this.metricKeys = type.metrics();
 			this.mint = new double[ metricKeys.size() ];
 			this.maxt = new double[ metricKeys.size() ];
+			for ( int i = 0; i < metricKeys.size(); i++ )
+			{
+				final MetricValue mv = metricKeys.get( i );
+				if ( mv.boundType == MetricValueBound.ZERO_TO_ONE )
+				{
+					mint[ i ] = 0.;
+					maxt[ i ] = 1.;
+				}
+				else if ( mv.boundType == MetricValueBound.UNBOUNDED )
+				{
+					mint[ i ] = Double.POSITIVE_INFINITY;
+					maxt[ i ] = Double.NEGATIVE_INFINITY;
+					for ( final BestRow row : rows )
+					{
+						if ( row.results == null )
+							continue;
+						final double val = row.values[ i ];
+						if ( val > maxt[ i ] )
+							maxt[ i ] = val;
+						if ( val < mint[ i ] )
+							mint[ i ] = val;
+					}
+				}
+				else
+				{
+					throw new IllegalArgumentException( "Unknown bound type for metric value: " + mv.boundType );
+				}
+			}
+		}
+
+		private static BestRows empty()
+		{
+			return new BestRows( Collections.emptyList(), null, Collections.emptyList() );
+		}
+	}
+
+	/**
+	 * Table model of rows of best results, computed on the update thread and
+	 * displayed on the EDT.
+	 */
+	private static abstract class BestTableModel extends AbstractTableModel implements TableCellRenderer
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		protected final List< MetricValue > metricKeys;
+
+		protected final ImagePlus imp;
+
+		protected final DefaultTableCellRenderer renderer;
+
+		/**
+		 * The rows displayed, modified only on the EDT.
+		 */
+		protected BestRows current = BestRows.empty();
+
+		protected BestTableModel( final ResultsCrawler crawler, final ImagePlus imp )
+		{
+			this.metricKeys = crawler.getType().metrics();
+			this.imp = imp;
+			this.renderer = new DefaultTableCellRenderer();
+		}
+
+		/**
+		 * Displays new rows, on the EDT. Only the rows whose result changed
+		 * are updated, unless rows were added or removed, or the range of a
+		 * metric changed.
+		 * 
+		 * @return <code>true</code> if rows were added or removed.
+		 */
+		protected boolean apply( final BestRows next )
+		{
+			final BestRows previous = current;
+			current = next;
+			final int n = next.rows.size();
+			boolean sameRows = previous.rows.size() == n;
+			for ( int r = 0; r < n && sameRows; r++ )
+				sameRows = next.rows.get( r ).sameRow( previous.rows.get( r ) );
+			if ( !sameRows )
+			{
+				fireTableDataChanged();
+				return true;
+			}
+
+			if ( !Arrays.equals( previous.mint, next.mint ) || !Arrays.equals( previous.maxt, next.maxt ) )
+			{
+				if ( n > 0 )
+					fireTableRowsUpdated( 0, n - 1 );
+				return false;
+			}
+
+			int start = -1;
+			for ( int r = 0; r <= n; r++ )
+			{
+				final boolean changed = r < n && !next.rows.get( r ).sameResult( previous.rows.get( r ) );
+				if ( changed && start < 0 )
+				{
+					start = r;
+				}
+				else if ( !changed && start >= 0 )
+				{
+					fireTableRowsUpdated( start, r - 1 );
+					start = -1;
+				}
+			}
+			return false;
+		}
+
+		public String getTooltip( final int row )
+		{
+			if ( row >= current.rows.size() )
+				return "";
+			return current.rows.get( row ).tooltip();
+		}
+
+		@Override
+		public int getRowCount()
+		{
+			return current.rows.size();
+		}
+
+		/**
+		 * Colors a cell according to the value of a metric, relative to its
+		 * range over the rows.
+		 */
+		protected void colorCell( final double val, final int i )
+		{
+			double valt = ( val - current.mint[ i ] ) / ( current.maxt[ i ] - current.mint[ i ] );
+
+			final MetricValue mv = metricKeys.get( i );
+			if ( mv.optimumType == MetricValueOptimum.LOWER_IS_BETTER )
+				valt = 1. - valt;
+
+			final Color bg = Double.isNaN( val ) ? null : cmap.getPaint( valt );
+			final Color fg = ( bg == null ) ? null : GuiUtils.textColorForBackground( bg );
+			renderer.setBackground( bg );
+			renderer.setForeground( fg );
+		}
+	}
+
+	private static final class BestValTableModel extends BestTableModel
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		private final int ncols;
+
+		private final String[] columnNames;
+
+		public BestValTableModel( final ResultsCrawler crawler, final ImagePlus imp )
+		{
+			super( crawler, imp );
 			this.ncols = metricKeys.size() + 2;
 			this.columnNames = new String[ ncols ];
 			columnNames[ 0 ] = "Detector";
 			columnNames[ 1 ] = "Tracker";
 			for ( int i = 0; i < metricKeys.size(); i++ )
 				columnNames[ i + 2 ] = metricKeys.get( i ).key;
-			this.renderer = new DefaultTableCellRenderer();
-			update();
 		}
 
 		public Settings getSettingsForRow( final int row )
 		{
-			if ( row < 0 || row >= objs.length )
+			if ( row < 0 || row >= current.rows.size() )
 				return null;
 
-			final String detector = ( String ) objs[ row ][ 0 ];
-			final String tracker = ( String ) objs[ row ][ 1 ];
-			final ValuePair< String, Integer > pair = crawler.bestFor( detector, tracker, target );
-			final TrackingMetricsTable results = crawler.get( pair.getA() );
+			final BestRow best = current.rows.get( row );
+			final TrackingMetricsTable results = best.results;
 			if ( results == null )
 			{
-				IJ.error( "TrackMate CTC helper", "No good settings to optimize " + target.description );
+				IJ.error( "TrackMate CTC helper", "No good settings to optimize " + current.target.description );
 				return null;
 			}
-			final int line = pair.getB();
+			final int line = best.line;
 
 			final String detector2 = results.getDetector( line );
 			final SpotDetectorFactoryBase< ? > detectorFactory = new DetectorProvider().getFactory( detector2 );
@@ -345,147 +712,35 @@ public class CrawlerResultsPanel extends JPanel
 			return settings;
 		}
 
-		public void setMetrics( final MetricValue desc )
-		{
-			target = desc;
-			update();
-		}
-
-		public String getTooltip( final int row )
-		{
-			if ( row >= tooltips.length )
-				return "";
-			return tooltips[ row ];
-		}
-
-		@SuppressWarnings( "rawtypes" )
-		private void update()
+		/**
+		 * Computes the best result of each detector and tracker combination,
+		 * of each detector and of each tracker, for the specified metric.
+		 */
+		private BestRows compute( final ResultsSnapshot snapshot, final MetricValue target )
 		{
-			// Values
-			final Set< String > dts = crawler.getDetectorTrackerCombination();
+			final Set< String > dts = snapshot.getDetectorTrackerCombination();
 			if ( dts.isEmpty() )
-			{
-				this.nrows = 1;
-				this.objs = new Object[ 1 ][ ncols ];
-				objs[ 0 ][ 0 ] = "";
-				objs[ 0 ][ 1 ] = "";
-				for ( int i = 2; i < ncols; i++ )
-					objs[ 0 ][ i ] = Double.NaN;
-
-				this.tooltips = new String[] { "" };
-				fireTableDataChanged();
-				return;
-			}
+				return new BestRows( Collections.singletonList( new BestRow( metricKeys.size() ) ), target, metricKeys );
 
-			final Set< String > detectors = crawler.getDetectors();
-			final Set< String > trackers = crawler.getTrackers();
+			final Set< String > detectors = snapshot.getDetectors();
+			final Set< String > trackers = snapshot.getTrackers();
 
-			this.nrows = dts.size() + detectors.size() + trackers.size();
-			this.objs = new Object[ nrows ][ ncols ];
-			// Row names.
-			int id = 0;
+			final List< BestRow > rows = new ArrayList<>( dts.size() + detectors.size() + trackers.size() );
 			// Combination.
 			for ( final String dt : dts )
 			{
 				final String[] split = dt.split( "," );
-				objs[ id ][ 0 ] = split[ 0 ].trim();
-				objs[ id ][ 1 ] = split[ 1 ].trim();
-				id++;
+				final String detector = split[ 0 ].trim();
+				final String tracker = split[ 1 ].trim();
+				rows.add( new BestRow( detector, tracker, snapshot, snapshot.bestFor( detector, tracker, target ), metricKeys ) );
 			}
 			// Detectors only.
 			for ( final String detector : detectors )
-			{
-				objs[ id ][ 0 ] = detector;
-				objs[ id ][ 1 ] = null;
-				id++;
-			}
+				rows.add( new BestRow( detector, null, snapshot, snapshot.bestFor( detector, null, target ), metricKeys ) );
 			// Trackers only.
 			for ( final String tracker : trackers )
-			{
-				objs[ id ][ 0 ] = null;
-				objs[ id ][ 1 ] = tracker;
-				id++;
-			}
-
-			this.tooltips = new String[ nrows ];
-
-			// Min & max.
-			for ( int i = 0; i < metricKeys.size(); i++ )
-			{
-				final MetricValue mv = metricKeys.get( i );
-				if ( mv.boundType == MetricValueBound.ZERO_TO_ONE )
-				{
-					mint[ i ] = 0.;
-					maxt[ i ] = 1.;
-				}
-				else if ( mv.boundType == MetricValueBound.UNBOUNDED )
-				{
-					// initialize so that we can compute true min & max later.
-					mint[ i ] = Double.POSITIVE_INFINITY;
-					maxt[ i ] = Double.NEGATIVE_INFINITY;
-				}
-				else
-				{
-					throw new IllegalArgumentException( "Unknown bound type for metric value: " + mv.boundType );
-				}
-			}
-
-			for ( int r = 0; r < nrows; r++ )
-			{
-				final String detector = ( String ) objs[ r ][ 0 ];
-				final String tracker = ( String ) objs[ r ][ 1 ];
-
-				final ValuePair< String, Integer > pair = crawler.bestFor( detector, tracker, target );
-				final TrackingMetricsTable results = crawler.get( pair.getA() );
-				if ( results == null )
-				{
-					tooltips[ r ] = "No good results";
-					for ( int c = 2; c < ncols; c++ )
-						objs[ r ][ c ] = null;
-				}
-				else
-				{
-					final int line = pair.getB();
-					final TrackingMetrics metrics = results.getMetrics( line );
-					for ( int i = 0; i < metricKeys.size(); i++ )
-						objs[ r ][ 2 + i ] = metrics.get( metricKeys.get( i ) );
-
-					// Tooltips.
-					final Map detectorParams = results.getDetectorParams( line );
-					final Map trackerParams = results.getTrackerParams( line );
-					final String detector2 = results.getDetector( line );
-					final String tracker2 = results.getTracker( line );
-					@SuppressWarnings( "unchecked" )
-					final String str = "<html>Detector parameters for " + detector2 + ":\n"
-							+ TMUtils.echoMap( detectorParams, 0 )
-							+ "<p>"
-							+ "Tracker parameters for " + tracker2 + ":\n"
-							+ TMUtils.echoMap( trackerParams, 0 )
-							+ "</html>";
-					tooltips[ r ] = str.replaceAll( "[\\t|\\n|\\r]", "<br>" );
-
-					// Min & max for unbounded values.
-					for ( int i = 0; i < metricKeys.size(); i++ )
-					{
-						final MetricValue mv = metricKeys.get( i );
-						if ( mv.boundType != MetricValueBound.UNBOUNDED )
-							continue;
-
-						final double val = metrics.get( mv );
-						if ( val > maxt[ i ] )
-							maxt[ i ] = val;
-						if ( val < mint[ i ] )
-							mint[ i ] = val;
-					}
-				}
-			}
-			SwingUtilities.invokeLater( () -> fireTableDataChanged() );
-		}
-
-		@Override
-		public int getRowCount()
-		{
-			return nrows;
+				rows.add( new BestRow( null, tracker, snapshot, snapshot.bestFor( null, tracker, target ), metricKeys ) );
+			return new BestRows( rows, target, metricKeys );
 		}
 
 		@Override
@@ -497,10 +752,22 @@ public class CrawlerResultsPanel extends JPanel
 		@Override
 		public Object getValueAt( final int rowIndex, final int columnIndex )
 		{
-			if ( objs.length == 0 || rowIndex >= objs.length || columnIndex >= objs[ 0 ].length )
+			if ( rowIndex >= current.rows.size() || columnIndex >= ncols )
 				return null;
 
-			return objs[ rowIndex ][ columnIndex ];
+			final BestRow row = current.rows.get( rowIndex );
+			switch ( columnIndex )
+			{
+			case 0:
+				return row.label1;
+			case 1:
+				return row.label2;
+			default:
+				// No value if there is no good result, but NaN if no results.
+				if ( row.results == null && !"".equals( row.label1 ) )
+					return null;
+				return Double.valueOf( row.values[ columnIndex - 2 ] );
+			}
 		}
 
 		@Override
@@ -545,66 +812,28 @@ public class CrawlerResultsPanel extends JPanel
 				{
 					// Color code performance.
 					if ( column >= 2 && column < 2 + metricKeys.size() )
-					{
-						// Corresponding metric value
-						final int i = column - 2;
-						final double val = ( ( Double ) value ).doubleValue();
-						double valt = ( val - mint[ i ] ) / ( maxt[ i ] - mint[ i ] );
-
-						final MetricValue mv = metricKeys.get( i );
-						if ( mv.optimumType == MetricValueOptimum.LOWER_IS_BETTER )
-							valt = 1. - valt;
-
-						final Color bg = Double.isNaN( val ) ? null : cmap.getPaint( valt );
-						final Color fg = ( bg == null ) ? null : GuiUtils.textColorForBackground( bg );
-						renderer.setBackground( bg );
-						renderer.setForeground( fg );
-					}
+						colorCell( ( ( Double ) value ).doubleValue(), column - 2 );
 				}
 				renderer.setPreferredSize( new Dimension( 60, 24 ) );
 			}
 
 			renderer.setBorder( padding );
-			renderer.setToolTipText( row >= tooltips.length ? "" : tooltips[ row ] );
 			return renderer;
 		}
 	}
 
-	private static final class BestDTTableModel extends AbstractTableModel implements TableCellRenderer
+	private static final class BestDTTableModel extends BestTableModel
 	{
 
 		private static final long serialVersionUID = 1L;
 
-		private final ResultsCrawler crawler;
-
-		private final int nrows;
-
 		private final int ncols;
 
 		private final String[] columnNames;
 
-		private final Object[][] objs;
-
-		private final String[] tooltips;
-
-		private final DefaultTableCellRenderer renderer;
-
-		private final double[] mint;
-
-		private final double[] maxt;
-
-		private final ImagePlus imp;
-
-		private final List< MetricValue > metricKeys;
-
 		public BestDTTableModel( final ResultsCrawler crawler, final ImagePlus imp )
 		{
-			this.crawler = crawler;
-			this.imp = imp;
-			this.metricKeys = crawler.getType().metrics();
-			this.mint = new double[ metricKeys.size() ];
-			this.maxt = new double[ metricKeys.size() ];
-			this.nrows = metricKeys.size();
+			super( crawler, imp );
 			this.ncols = metricKeys.size() + 4;
 			this.columnNames = new String[ ncols ];
 			columnNames[ 0 ] = "Best for";
@@ -613,25 +842,16 @@ public class CrawlerResultsPanel extends JPanel
 			columnNames[ 3 ] = "Tracker";
 			for ( int i = 0; i < metricKeys.size(); i++ )
 				columnNames[ i + 4 ] = metricKeys.get( i ).key;
-			// Values
-			this.objs = new Object[ nrows ][ ncols ];
-			// Row names.
-			for ( int i = 0; i < metricKeys.size(); i++ )
-				objs[ i ][ 0 ] = metricKeys.get( i ).description;
-			// Tooltips.
-			this.tooltips = new String[ nrows ];
-			this.renderer = new DefaultTableCellRenderer();
-			update();
 		}
 
 		public Settings getSettingsForRow( final int row )
 		{
-			if ( row < 0 || row >= objs.length )
+			if ( row < 0 || row >= current.rows.size() )
 				return null;
 
 			final MetricValue m = metricKeys.get( row );
-			final ValuePair< String, Integer > pair = crawler.bestFor( m );
-			final TrackingMetricsTable results = crawler.get( pair.getA() );
+			final BestRow best = current.rows.get( row );
+			final TrackingMetricsTable results = best.results;
 			if ( results == null )
 			{
 				IJ.error( "TrackMate CTC helper", "No good settings to optimize "
@@ -641,7 +861,7 @@ public class CrawlerResultsPanel extends JPanel
 			else
 			{
 				// Values.
-				final int line = pair.getB();
+				final int line = best.line;
 				final String detector = results.getDetector( line );
 				final SpotDetectorFactoryBase< ? > detectorFactory = new DetectorProvider().getFactory( detector );
 				if ( detectorFactory == null )
@@ -696,89 +916,15 @@ public class CrawlerResultsPanel extends JPanel
 			}
 		}
 
-		@SuppressWarnings( { "unchecked", "rawtypes" } )
-		private void update()
-		{
-			// Min & max.
-			for ( int i = 0; i < metricKeys.size(); i++ )
-			{
-				final MetricValue mv = metricKeys.get( i );
-				if ( mv.boundType == MetricValueBound.ZERO_TO_ONE )
-				{
-					mint[ i ] = 0.;
-					maxt[ i ] = 1.;
-				}
-				else if ( mv.boundType == MetricValueBound.UNBOUNDED )
-				{
-					// initialize so that we can compute true min & max later.
-					mint[ i ] = Double.POSITIVE_INFINITY;
-					maxt[ i ] = Double.NEGATIVE_INFINITY;
-				}
-				else
-				{
-					throw new IllegalArgumentException( "Unknown bound type for metric value: " + mv.boundType );
-				}
-			}
-
-			for ( int r = 0; r < nrows; r++ )
-			{
-				final MetricValue m = metricKeys.get( r );
-				final ValuePair< String, Integer > pair = crawler.bestFor( m );
-				final TrackingMetricsTable results = crawler.get( pair.getA() );
-				if ( results == null )
-				{
-					tooltips[ r ] = "No good results";
-					for ( int c = 1; c < ncols; c++ )
-						objs[ r ][ c ] = Double.NaN;
-					objs[ r ][ 2 ] = null;
-					objs[ r ][ 3 ] = null;
-				}
-				else
-				{
-					// Values.
-					final int line = pair.getB();
-					final TrackingMetrics metrics = results.getMetrics( line );
-					final String detector = results.getDetector( line );
-					final String tracker = results.getTracker( line );
-					objs[ r ][ 1 ] = metrics.get( m );
-					objs[ r ][ 2 ] = detector;
-					objs[ r ][ 3 ] = tracker;
-					for ( int i = 0; i < metricKeys.size(); i++ )
-						objs[ r ][ 4 + i ] = metrics.get( metricKeys.get( i ) );
-
-					// Tooltips.
-					final Map detectorParams = results.getDetectorParams( line );
-					final Map trackerParams = results.getTrackerParams( line );
-					final String str = "<html>Detector parameters for " + detector + ":\n"
-							+ TMUtils.echoMap( detectorParams, 0 )
-							+ "<p>"
-							+ "Tracker parameters for " + tracker + ":\n"
-							+ TMUtils.echoMap( trackerParams, 0 )
-							+ "</html>";
-					tooltips[ r ] = str.replaceAll( "[\\t|\\n|\\r]", "<br>" );
-
-					// Min & max for unbounded values.
-					for ( int i = 0; i < metricKeys.size(); i++ )
-					{
-						final MetricValue mv = metricKeys.get( i );
-						if ( mv.boundType != MetricValueBound.UNBOUNDED )
-							continue;
-
-						final double val = metrics.get( mv );
-						if ( val > maxt[ i ] )
-							maxt[ i ] = val;
-						if ( val < mint[ i ] )
-							mint[ i ] = val;
-					}
-				}
-			}
-			SwingUtilities.invokeLater( () -> fireTableDataChanged() );
-		}
-
-		@Override
-		public int getRowCount()
+		/**
+		 * Computes the best result for each metric.
+		 */
+		private BestRows compute( final ResultsSnapshot snapshot )
 		{
-			return nrows;
+			final List< BestRow > rows = new ArrayList<>( metricKeys.size() );
+			for ( final MetricValue m : metricKeys )
+				rows.add( new BestRow( m.description, null, snapshot, snapshot.bestFor( m ), metricKeys ) );
+			return new BestRows( rows, null, metricKeys );
 		}
 
 		@Override
@@ -790,10 +936,23 @@ public class CrawlerResultsPanel extends JPanel
 		@Override
 		public Object getValueAt( final int rowIndex, final int columnIndex )
 		{
-			if ( objs.length == 0 || rowIndex >= objs.length || columnIndex >= objs[ 0 ].length )
+			if ( rowIndex >= current.rows.size() || columnIndex >= ncols )
 				return null;
 
-			return objs[ rowIndex ][ columnIndex ];
+			final BestRow row = current.rows.get( rowIndex );
+			switch ( columnIndex )
+			{
+			case 0:
+				return row.label1;
+			case 1:
+				return Double.valueOf( row.values[ rowIndex ] );
+			case 2:
+				return ( row.results == null ) ? null : row.results.getDetector( row.line );
+			case 3:
+				return ( row.results == null ) ? null : row.results.getTracker( row.line );
+			default:
+				return Double.valueOf( row.values[ columnIndex - 4 ] );
+			}
 		}
 
 		@Override
@@ -838,32 +997,15 @@ public class CrawlerResultsPanel extends JPanel
 				else
 				{
 					// Color code performance.
-					if ( ( column >= 4 && column < 4 + metricKeys.size() ) || ( column == 1 ) )
-					{
-						final double val = ( ( Double ) value ).doubleValue();
-						// Corresponding metric value
-						final int i;
-						if ( column >= 4 && column < 4 + metricKeys.size() )
-							i = column - 4;
-						else
-							i = row;
-						double valt = ( val - mint[ i ] ) / ( maxt[ i ] - mint[ i ] );
-
-						final MetricValue mv = metricKeys.get( i );
-						if ( mv.optimumType == MetricValueOptimum.LOWER_IS_BETTER )
-							valt = 1. - valt;
-
-						final Color bg = Double.isNaN( val ) ? null : cmap.getPaint( valt );
-						final Color fg = ( bg == null ) ? null : GuiUtils.textColorForBackground( bg );
-						renderer.setBackground( bg );
-						renderer.setForeground( fg );
-					}
+					if ( column >= 4 && column < 4 + metricKeys.size() )
+						colorCell( ( ( Double ) value ).doubleValue(), column - 4 );
+					else if ( column == 1 )
+						colorCell( ( ( Double ) value ).doubleValue(), row );
 				}
 				renderer.setPreferredSize( new Dimension( 60, 24 ) );
 			}
 
 			renderer.setBorder( padding );
-			renderer.setToolTipText( tooltips[ row ] );
 			return renderer;
 		}
 	}
@@ -890,24 +1032,42 @@ public class CrawlerResultsPanel extends JPanel
 		}
 	}
 
-	private static final class MyStringCellRenderer extends DefaultTableCellRenderer
+	/**
+	 * A table that gets the tooltip of a row when it is shown, instead of
+	 * setting it on the renderer for each cell painted.
+	 */
+	private static final class TooltipTable extends JTable
 	{
 
 		private static final long serialVersionUID = 1L;
 
 		private final Function< Integer, String > tooltipSupplier;
 
-		public MyStringCellRenderer( final Function< Integer, String > tooltipSupplier )
+		public TooltipTable( final Function< Integer, String > tooltipSupplier )
 		{
 			this.tooltipSupplier = tooltipSupplier;
 		}
 
+		@Override
+		public String getToolTipText( final MouseEvent event )
+		{
+			final int row = rowAtPoint( event.getPoint() );
+			if ( row < 0 )
+				return null;
+			return tooltipSupplier.apply( row );
+		}
+	}
+
+	private static final class MyStringCellRenderer extends DefaultTableCellRenderer
+	{
+
+		private static final long serialVersionUID = 1L;
+
 		@Override
 		public Component getTableCellRendererComponent( final JTable table, final Object value, final boolean isSelected, final boolean hasFocus, final int row, final int column )
 		{
 			super.getTableCellRendererComponent( table, value, isSelected, hasFocus, row, column );
 			setBorder( padding );
-			setToolTipText( tooltipSupplier.apply( row ) );
 			return this;
 		}
 
@@ -25,7 +25,6 @@ import java.awt.BorderLayout;
 import java.awt.FlowLayout;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
-import java.util.Iterator;
 
 import javax.swing.BorderFactory;
 import javax.swing.JLabel;
@@ -33,7 +32,6 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSeparator;
 
-import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.gui.Fonts;
 import fiji.plugin.trackmate.helper.model.AbstractSweepModel;
 import fiji.plugin.trackmate.helper.model.AbstractSweepModel.ModelListener;
@@ -110,16 +108,20 @@ public class ModuleParameterSweepPanel extends JPanel
 		add( scrollPane, BorderLayout.CENTER );
 
 		final ModelListener infoListener = () -> {
-			final Iterator< Settings > it = model.iterator( new Settings(), 1 );
-			int ns = 0;
-			while ( it.hasNext() )
+			long ns;
+			try
 			{
-				it.next();
-				ns++;
+				ns = model.count();
 			}
-			final String str = ( ns == 1 )
-					? "Sweep over one setting for this detector."
-					: String.format( "Sweep over %d different settings for this detector.", ns );
+			catch ( final ArithmeticException e )
+			{
+				ns = -1;
+			}
+			final String str = ( ns < 0 )
+					? "Too many settings to sweep over for this detector."
+					: ( ns == 1 )
+							? "Sweep over one setting for this detector."
+							: String.format( "Sweep over %d different settings for this detector.", ns );
 			lblInfo.setText( str );
 		};
 		infoListener.modelChanged();
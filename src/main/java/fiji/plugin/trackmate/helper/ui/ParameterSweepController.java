@@ -56,6 +56,7 @@ public class ParameterSweepController implements Cancelable
 
 		gui = new ParameterSweepPanel( imp, model, crawler, gtPath );
 		runner.setBatchLogger( gui.logger );
+		runner.sweepListeners().add( gui.dashboard );
 
 		gui.btnRun.addActionListener( e -> run() );
 		gui.btnStop.addActionListener( e -> cancel( "User pressed the stop button." ) );
@@ -61,7 +61,6 @@ import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.features.track.TrackBranchingAnalyzer;
 import fiji.plugin.trackmate.gui.Fonts;
-import fiji.plugin.trackmate.gui.components.LogPanel;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackMateObject;
 import fiji.plugin.trackmate.helper.ResultsCrawler;
 import fiji.plugin.trackmate.helper.model.AbstractSweepModel.ModelListener;
@@ -105,6 +104,8 @@ public class ParameterSweepPanel extends JPanel
 
 	final Logger logger;
 
+	final SweepDashboardPanel dashboard;
+
 	final ResultsCrawler crawler;
 
 	public ParameterSweepPanel(
@@ -127,11 +128,14 @@ public class ParameterSweepPanel extends JPanel
 		tabbedPane.setBorder( new EmptyBorder( 5, 5, 5, 5 ) );
 		add( tabbedPane, BorderLayout.CENTER );
 
-		final LogPanel panelLog = new LogPanel();
+		final BoundedLogPanel panelLog = new BoundedLogPanel();
 		panelLog.getTextPane().setFont( Fonts.SMALL_FONT_MONOSPACED );
 		this.logger = panelLog.getLogger();
 		tabbedPane.addTab( "Log", null, panelLog, null );
 
+		this.dashboard = new SweepDashboardPanel();
+		tabbedPane.addTab( "Throughput", null, dashboard, null );
+
 		final CrawlerResultsPanel bestParamsPanel = new CrawlerResultsPanel( crawler, imp );
 		tabbedPane.addTab( "Best params", null, bestParamsPanel, null );
 
@@ -558,9 +562,19 @@ public class ParameterSweepPanel extends JPanel
 
 		// Count the number of different settings.
 		final ModelListener l1 = () -> {
-			final int count = model.count();
 			String str = "Parameter sweep configuration  -  ";
-			if ( count == 0 )
+			long count;
+			try
+			{
+				count = model.count();
+			}
+			catch ( final ArithmeticException e )
+			{
+				count = -1;
+			}
+			if ( count < 0 )
+				str += "Too many settings to test.";
+			else if ( count == 0 )
 				str += "Please select at least one detector and one tracker.";
 			else if ( count == 1 )
 				str += "One settings to test.";
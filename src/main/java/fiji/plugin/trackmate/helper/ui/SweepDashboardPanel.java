@@ -0,0 +1,316 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2021 - 2024 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.helper.ui;
+
+import static fiji.plugin.trackmate.gui.Fonts.FONT;
+import static fiji.plugin.trackmate.gui.Fonts.SMALL_FONT;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.GridLayout;
+import java.awt.Insets;
+import java.awt.RenderingHints;
+import java.util.Map;
+
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.border.EmptyBorder;
+
+import fiji.plugin.trackmate.helper.HelperRunner.SweepListener;
+import fiji.plugin.trackmate.helper.SweepEvent;
+import fiji.plugin.trackmate.helper.SweepStatistics;
+import fiji.plugin.trackmate.helper.SweepStatistics.Stage;
+
+/**
+ * Shows the throughput of a running parameter sweep: tests per minute,
+ * executed and skipped counts, utilization of the runner, estimated time
+ * remaining and the histograms of the detection, tracking and metrics
+ * timings.
+ * <p>
+ * The panel listens to the runner and accumulates the timings in a
+ * {@link SweepStatistics}. It refreshes once per second while a sweep runs,
+ * so the time since the last test keeps increasing when a test stalls.
+ */
+public class SweepDashboardPanel extends JPanel implements SweepListener
+{
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int REFRESH_DELAY = 1000;
+
+	private final SweepStatistics stats = new SweepStatistics();
+
+	private final Timer timer;
+
+	private final JLabel lblTests;
+
+	private final JLabel lblCounts;
+
+	private final JLabel lblRate;
+
+	private final JLabel lblUtilization;
+
+	private final JLabel lblElapsed;
+
+	private final JLabel lblEta;
+
+	private final JLabel lblLastTest;
+
+	private final HistogramPanel[] histograms;
+
+	public SweepDashboardPanel()
+	{
+		setLayout( new BorderLayout( 5, 5 ) );
+		setBorder( new EmptyBorder( 5, 5, 5, 5 ) );
+
+		final JPanel panelValues = new JPanel();
+		final GridBagLayout gblPanelValues = new GridBagLayout();
+		gblPanelValues.columnWeights = new double[] { 0.0, 1.0 };
+		panelValues.setLayout( gblPanelValues );
+		add( panelValues, BorderLayout.NORTH );
+
+		lblTests = addRow( panelValues, 0, "Tests processed:" );
+		lblCounts = addRow( panelValues, 1, "Executed / skipped / not run:" );
+		lblRate = addRow( panelValues, 2, "Tests per minute:" );
+		lblUtilization = addRow( panelValues, 3, "Runner utilization:" );
+		lblElapsed = addRow( panelValues, 4, "Elapsed:" );
+		lblEta = addRow( panelValues, 5, "Estimated time remaining:" );
+		lblLastTest = addRow( panelValues, 6, "Last test:" );
+
+		final Stage[] stages = Stage.values();
+		final JPanel panelHistograms = new JPanel( new GridLayout( stages.length, 1, 5, 5 ) );
+		histograms = new HistogramPanel[ stages.length ];
+		for ( final Stage stage : stages )
+		{
+			histograms[ stage.ordinal() ] = new HistogramPanel( stage );
+			panelHistograms.add( histograms[ stage.ordinal() ] );
+		}
+		add( panelHistograms, BorderLayout.CENTER );
+
+		timer = new Timer( REFRESH_DELAY, e -> refresh() );
+		refresh();
+	}
+
+	/**
+	 * Exposes the statistics shown in this panel.
+	 * 
+	 * @return the statistics.
+	 */
+	public SweepStatistics getStatistics()
+	{
+		return stats;
+	}
+
+	@Override
+	public void sweepStarted( final Map< String, Long > detectorCounts, final Map< String, Long > trackerCounts )
+	{
+		stats.sweepStarted( detectorCounts, trackerCounts );
+		SwingUtilities.invokeLater( () -> {
+			refresh();
+			timer.start();
+		} );
+	}
+
+	@Override
+	public void tested( final SweepEvent event )
+	{
+		stats.tested( event );
+	}
+
+	@Override
+	public void sweepFinished()
+	{
+		stats.sweepFinished();
+		SwingUtilities.invokeLater( () -> {
+			timer.stop();
+			refresh();
+		} );
+	}
+
+	private void refresh()
+	{
+		final long count = stats.getCount();
+		final long processed = stats.getProcessed();
+		lblTests.setText( count == 0
+				? "-"
+				: String.format( "%d / %d (%.1f%%)", processed, count, 100. * processed / count ) );
+		lblCounts.setText( String.format( "%d / %d / %d", stats.getExecuted(), stats.getSkipped(), stats.getNotRun() ) );
+		lblRate.setText( String.format( "%.1f over the last 5 min, %.1f overall", stats.getRecentRate(), stats.getRate() ) );
+		lblUtilization.setText( String.format( "%.0f%%", 100. * stats.getUtilization() ) );
+		lblElapsed.setText( formatDuration( stats.getElapsed() ) );
+		final double eta = stats.getEta();
+		lblEta.setText( stats.isRunning() && !Double.isNaN( eta ) ? formatDuration( eta ) : "-" );
+		final double sinceLast = stats.getTimeSinceLastTest();
+		lblLastTest.setText( Double.isNaN( sinceLast ) ? "-" : formatDuration( sinceLast ) + " ago" );
+
+		for ( final HistogramPanel histogram : histograms )
+			histogram.update( stats );
+	}
+
+	private static JLabel addRow( final JPanel panel, final int row, final String title )
+	{
+		final JLabel lblTitle = new JLabel( title );
+		lblTitle.setFont( SMALL_FONT.deriveFont( Font.BOLD ) );
+		final GridBagConstraints gbcTitle = new GridBagConstraints();
+		gbcTitle.anchor = GridBagConstraints.WEST;
+		gbcTitle.insets = new Insets( 0, 0, 5, 10 );
+		gbcTitle.gridx = 0;
+		gbcTitle.gridy = row;
+		panel.add( lblTitle, gbcTitle );
+
+		final JLabel lblValue = new JLabel( "-" );
+		lblValue.setFont( SMALL_FONT );
+		final GridBagConstraints gbcValue = new GridBagConstraints();
+		gbcValue.anchor = GridBagConstraints.WEST;
+		gbcValue.insets = new Insets( 0, 0, 5, 0 );
+		gbcValue.gridx = 1;
+		gbcValue.gridy = row;
+		panel.add( lblValue, gbcValue );
+		return lblValue;
+	}
+
+	/**
+	 * Formats a duration in seconds as hours, minutes and seconds.
+	 */
+	static String formatDuration( final double seconds )
+	{
+		final long s = Math.round( seconds );
+		if ( s < 60 )
+			return s + " s";
+		if ( s < 3600 )
+			return String.format( "%d min %02d s", s / 60, s % 60 );
+		return String.format( "%d h %02d min", s / 3600, ( s % 3600 ) / 60 );
+	}
+
+	/**
+	 * Formats a histogram bin bound.
+	 */
+	private static String formatBound( final double seconds )
+	{
+		if ( seconds < 1. )
+			return String.format( "%.0f ms", 1000. * seconds );
+		if ( seconds < 60. )
+			return String.format( "%.3g s", seconds );
+		return String.format( "%.0f min", seconds / 60. );
+	}
+
+	/**
+	 * Paints the histogram of the timings of one stage, with log-scaled
+	 * bins.
+	 */
+	private static final class HistogramPanel extends JComponent
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		private static final Color BAR_COLOR = new Color( 70, 130, 180 );
+
+		/**
+		 * Label the bins every that many bins.
+		 */
+		private static final int LABEL_EVERY = 4;
+
+		private final Stage stage;
+
+		private int[] counts = new int[ SweepStatistics.N_BINS ];
+
+		private String title;
+
+		private HistogramPanel( final Stage stage )
+		{
+			this.stage = stage;
+			this.title = stage.toString();
+			setPreferredSize( new Dimension( 300, 100 ) );
+			setFont( SMALL_FONT );
+		}
+
+		private void update( final SweepStatistics stats )
+		{
+			this.counts = stats.getHistogram( stage );
+			int n = 0;
+			for ( final int c : counts )
+				n += c;
+			this.title = ( n == 0 )
+					? stage.toString()
+					: String.format( "%s - %d timed, mean %.2f s, max %.2f s", stage, n, stats.getMean( stage ), stats.getMax( stage ) );
+			repaint();
+		}
+
+		@Override
+		protected void paintComponent( final Graphics g )
+		{
+			super.paintComponent( g );
+			final Graphics2D g2 = ( Graphics2D ) g;
+			g2.setRenderingHint( RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON );
+
+			final FontMetrics fm = g2.getFontMetrics( getFont() );
+			final int lineHeight = fm.getHeight();
+			final int width = getWidth();
+			final int top = lineHeight + 2;
+			final int bottom = getHeight() - lineHeight - 2;
+
+			g2.setFont( FONT.deriveFont( Font.BOLD, SMALL_FONT.getSize2D() ) );
+			g2.setColor( getForeground() );
+			g2.drawString( title, 0, fm.getAscent() );
+			g2.setFont( getFont() );
+
+			if ( bottom <= top )
+				return;
+
+			int max = 0;
+			for ( final int c : counts )
+				max = Math.max( max, c );
+
+			final double binWidth = ( double ) width / counts.length;
+			for ( int i = 0; i < counts.length; i++ )
+			{
+				final int x0 = ( int ) Math.round( i * binWidth );
+				final int x1 = ( int ) Math.round( ( i + 1 ) * binWidth );
+				if ( max > 0 && counts[ i ] > 0 )
+				{
+					final int h = Math.max( 1, ( int ) Math.round( ( double ) counts[ i ] / max * ( bottom - top ) ) );
+					g2.setColor( BAR_COLOR );
+					g2.fillRect( x0 + 1, bottom - h, Math.max( 1, x1 - x0 - 2 ), h );
+				}
+				final String label = formatBound( SweepStatistics.binLowerBound( i ) );
+				if ( i % LABEL_EVERY == 1 && x0 + 2 + fm.stringWidth( label ) <= width )
+				{
+					g2.setColor( getForeground() );
+					g2.drawLine( x0, bottom, x0, bottom + 3 );
+					g2.drawString( label, x0 + 2, bottom + fm.getAscent() + 1 );
+				}
+			}
+			g2.setColor( Color.GRAY );
+			g2.drawLine( 0, bottom, width, bottom );
+		}
+	}
+}